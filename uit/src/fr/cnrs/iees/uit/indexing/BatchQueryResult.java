@@ -0,0 +1,131 @@
+/**************************************************************************
+ *  UIT - a Universal Indexing Tree                                       *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            *
+ *                                                                        *
+ *  UIT is a generalisation and re-implementation of QuadTree and Octree  *
+ *  implementations by Paavo Toivanen as downloaded on 27/8/2018 on       *
+ *  <https://dev.solita.fi/2015/08/06/quad-tree.html>                     *
+ *                                                                        *
+ **************************************************************************
+ *  This file is part of UIT (Universal Indexing Tree).                   *
+ *                                                                        *
+ *  UIT is free software: you can redistribute it and/or modify           *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  UIT is distributed in the hope that it will be useful,                *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with UIT.  If not, see <https://www.gnu.org/licenses/gpl.html>. *
+ *                                                                        *
+ **************************************************************************/
+package fr.cnrs.iees.uit.indexing;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>The results of a batch of queries (cf. {@link RegionIndexingTree#queryBatch(fr.cnrs.iees.uit.space.Point[], double)}),
+ * stored in compressed sparse row format: the items found for all queries are stored in a single
+ * array, query after query, and the items found for query <em>i</em> are those of rank
+ * {@code start(i)} (included) to {@code end(i)} (excluded).</p>
+ *
+ * <p>Instances are immutable.</p>
+ *
+ * @author agent - 19 oct. 2026
+ *
+ * @param <T> the type of items found
+ */
+public final class BatchQueryResult<T> {
+
+	// offsets[i] is the rank of the first item of query i, offsets[nQueries] the total number of items
+	private final int[] offsets;
+	private final Object[] items;
+
+	BatchQueryResult(int[] offsets, Object[] items) {
+		super();
+		this.offsets = offsets;
+		this.items = items;
+	}
+
+	/**
+	 * concatenates the items found for every query
+	 * 
+	 * @param found the items found for every query
+	 * @return the results in compressed form
+	 */
+	static <T> BatchQueryResult<T> concatenate(Object[][] found) {
+		int[] offsets = new int[found.length+1];
+		for (int i=0; i<found.length; i++)
+			offsets[i+1] = offsets[i]+found[i].length;
+		Object[] items = new Object[offsets[found.length]];
+		for (int i=0; i<found.length; i++)
+			System.arraycopy(found[i],0,items,offsets[i],found[i].length);
+		return new BatchQueryResult<T>(offsets,items);
+	}
+
+	/**
+	 * @return the number of queries
+	 */
+	public int nQueries() {
+		return offsets.length-1;
+	}
+
+	/**
+	 * @return the total number of items found for all queries
+	 */
+	public int size() {
+		return offsets[offsets.length-1];
+	}
+
+	/**
+	 * @param query the rank of a query in the batch
+	 * @return the rank of the first item found for this query
+	 */
+	public int start(int query) {
+		return offsets[query];
+	}
+
+	/**
+	 * @param query the rank of a query in the batch
+	 * @return the rank following the last item found for this query
+	 */
+	public int end(int query) {
+		return offsets[query+1];
+	}
+
+	/**
+	 * @param query the rank of a query in the batch
+	 * @return the number of items found for this query
+	 */
+	public int count(int query) {
+		return offsets[query+1]-offsets[query];
+	}
+
+	/**
+	 * @param rank the rank of an item, between 0 and {@link #size()}
+	 * @return the item of this rank
+	 */
+	@SuppressWarnings("unchecked")
+	public T item(int rank) {
+		return (T) items[rank];
+	}
+
+	/**
+	 * @param query the rank of a query in the batch
+	 * @return a read-only view on the items found for this query
+	 */
+	@SuppressWarnings("unchecked")
+	public List<T> items(int query) {
+		return Collections.unmodifiableList(Arrays.asList((T[])items).subList(offsets[query],offsets[query+1]));
+	}
+
+}
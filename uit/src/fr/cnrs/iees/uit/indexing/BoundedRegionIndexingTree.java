@@ -60,4 +60,18 @@ public class BoundedRegionIndexingTree<T> extends RegionIndexingTree<T> {
 		root = new RegionIndexingNode<T>(null, domain, this);
 	}
 
+	/**
+	 * Same as {@link #BoundedRegionIndexingTree(Box)}, but items may be identified by reference
+	 * instead of by value, e.g. for agents which may be equal without being the same.
+	 * 
+	 * @param domain the region indexed by this tree
+	 * @param identity if true, items are compared with {@code ==} and hashed with 
+	 * {@link System#identityHashCode(Object)} instead of their {@code equals()} and {@code hashCode()}
+	 * methods
+	 */
+	public BoundedRegionIndexingTree(Box domain, boolean identity) {
+		super(domain,identity);
+		root = new RegionIndexingNode<T>(null, domain, this);
+	}
+
 }
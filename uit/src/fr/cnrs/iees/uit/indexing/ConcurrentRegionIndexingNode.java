@@ -0,0 +1,268 @@
+/**************************************************************************
+ *  UIT - a Universal Indexing Tree                                       *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            *
+ *                                                                        *
+ *  UIT is a generalisation and re-implementation of QuadTree and Octree  *
+ *  implementations by Paavo Toivanen as downloaded on 27/8/2018 on       *
+ *  <https://dev.solita.fi/2015/08/06/quad-tree.html>                     *
+ *                                                                        *
+ **************************************************************************
+ *  This file is part of UIT (Universal Indexing Tree).                   *
+ *                                                                        *
+ *  UIT is free software: you can redistribute it and/or modify           *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  UIT is distributed in the hope that it will be useful,                *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with UIT.  If not, see <https://www.gnu.org/licenses/gpl.html>. *
+ *                                                                        *
+ **************************************************************************/
+package fr.cnrs.iees.uit.indexing;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.locks.StampedLock;
+
+import au.edu.anu.omhtk.collections.QuickListOfLists;
+
+/**
+ * <p>{@linkplain IndexingNode} used in {@link ConcurrentRegionIndexingTree}s.</p>
+ * 
+ * <p>Every node has its own {@link StampedLock}, which protects its items while it is a leaf.
+ * A full leaf is split into all its 2<sup>dim</sup> children at once, and inner nodes are never
+ * merged back, so that the children of a node never change once it has been split. Queries can 
+ * then traverse inner nodes without any locking: only leaves are read under their lock stamp.
+ * Items are stored as in {@link RegionIndexingNode}, i.e. with their coordinates as one array
+ * per dimension.</p>
+ *
+ * @author agent - 19 oct. 2026
+ *
+ * @param <T> the type of object stored in this tree
+ */
+class ConcurrentRegionIndexingNode<T> extends IndexingNode<T,ConcurrentRegionIndexingNode<T>> {
+
+	/** the lock protecting the items of this node while it is a leaf */
+	protected final StampedLock lock = new StampedLock();
+	/** a unique number used to lock several leaves always in the same order */
+	protected final long id;
+	/** the depth of this node, i.e. the number of halvings of the root region to get its region */
+	protected final int depth;
+	// region
+	protected final double[] lower;
+	protected final double[] upper;
+	protected final double[] centre;
+
+	/** true once this node has been split. Volatile so that the children, set just before, 
+	 * are visible to threads traversing the tree without locking */
+	protected volatile boolean inner = false;
+
+	protected ConcurrentRegionIndexingNode(ConcurrentRegionIndexingNode<T> parent, 
+			double[] lower, double[] upper, long id) {
+		super();
+		this.parent = parent;
+		this.id = id;
+		depth = (parent==null) ? 0 : parent.depth+1;
+		this.lower = lower;
+		this.upper = upper;
+		centre = new double[lower.length];
+		for (int j=0; j<lower.length; j++)
+			centre[j] = (lower[j]+upper[j])/2;
+		initItems(RegionIndexingNode.LEAF_MAX_ITEMS,lower.length);
+	}
+
+	protected final boolean contains(double[] x) {
+		for (int j=0; j<lower.length; j++)
+			if ((x[j]<lower[j]) || (x[j]>upper[j]))
+				return false;
+		return true;
+	}
+
+	// non strict overlap, as items on the region border belong to it
+	protected final boolean overlaps(double[] lo, double[] up) {
+		for (int j=0; j<lower.length; j++)
+			if ((upper[j]<lo[j]) || (lower[j]>up[j]))
+				return false;
+		return true;
+	}
+
+	// squared distance from x to the region (0 if x is inside)
+	protected final double squaredDistance(double[] x) {
+		double d2 = 0.0;
+		for (int j=0; j<lower.length; j++) {
+			double d = Math.max(0.0,Math.max(lower[j]-x[j],x[j]-upper[j]));
+			d2 += d*d;
+		}
+		return d2;
+	}
+
+	// index of the child containing x - points on the centre go to the upper child
+	// the first dimension is the most significant bit, as in RegionIndexingNode
+	protected final int childIndex(double[] x) {
+		int index = 0;
+		for (int j=0; j<lower.length; j++)
+			index = (index<<1) | ((x[j]>=centre[j]) ? 1 : 0);
+		return index;
+	}
+
+	// appendItem(), setCoordinates() and removeItem() modify the leaf and must be called under its write lock
+
+	// true if this leaf can be split, i.e. the depth limit allows it and the split
+	// can separate its items (which is not the case if they all are at the same location)
+	protected boolean canSplit() {
+		if (depth>=RegionIndexingTree.DEFAULT_MAX_DEPTH)
+			return false;
+		for (int j=0; j<lanes.length; j++) {
+			double[] x = lanes[j];
+			for (int i=1; i<nitems; i++)
+				if (x[i]!=x[0])
+					return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Splits this leaf into 2<sup>dim</sup> children and spreads its items among them.
+	 * 
+	 * @param tree the tree, to get new node numbers and update its item-to-node map
+	 */
+	@SuppressWarnings("unchecked")
+	protected void split(ConcurrentRegionIndexingTree<T> tree) {
+		int dim = lower.length;
+		ConcurrentRegionIndexingNode<T>[] kids = new ConcurrentRegionIndexingNode[1<<dim];
+		for (int i=0; i<kids.length; i++) {
+			double[] lo = new double[dim];
+			double[] up = new double[dim];
+			for (int j=0; j<dim; j++) {
+				boolean upperHalf = ((i>>(dim-1-j)) & 1)==1;
+				lo[j] = upperHalf ? centre[j] : lower[j];
+				up[j] = upperHalf ? upper[j] : centre[j];
+			}
+			kids[i] = new ConcurrentRegionIndexingNode<T>(this,lo,up,tree.newNodeId());
+		}
+		for (int i=0; i<nitems; i++) {
+			double[] x = coordinatesAt(i);
+			kids[childIndex(x)].appendItem(items[i],x);
+		}
+		// the children are locked until published: once an item is mapped to a child, a concurrent
+		// removal or move may modify it, but only after this split is complete
+		long[] stamps = new long[kids.length];
+		for (int i=0; i<kids.length; i++)
+			stamps[i] = kids[i].lock.writeLock();
+		try {
+			// the item map is updated before the children are published: once published, they 
+			// may be split in turn and their items mapped to their own children
+			for (ConcurrentRegionIndexingNode<T> kid:kids)
+				for (int i=0; i<kid.nitems; i++)
+					tree.itemToNodeMap.put((T)kid.items[i],kid);
+			clear();
+			children = kids;
+			inner = true;
+		}
+		finally {
+			for (int i=0; i<kids.length; i++)
+				kids[i].lock.unlockWrite(stamps[i]);
+		}
+	}
+
+	/**
+	 * Copies the items and coordinates of this leaf. This may be called without locking, 
+	 * in which case the copy is only valid if the lock stamp is still valid afterwards.
+	 * 
+	 * @param copy where to copy
+	 * @return false if this node is not a leaf
+	 */
+	protected boolean copyTo(LeafCopy copy) {
+		if (inner)
+			return false;
+		// read every array once: they may be replaced meanwhile
+		Object[] its = items;
+		int n = Math.min(nitems,its.length);
+		double[][] x = new double[lanes.length][];
+		for (int j=0; j<lanes.length; j++) {
+			x[j] = lanes[j];
+			n = Math.min(n,x[j].length);
+		}
+		copy.ensureCapacity(n);
+		System.arraycopy(its,0,copy.items,0,n);
+		for (int j=0; j<lanes.length; j++)
+			System.arraycopy(x[j],0,copy.lanes[j],0,n);
+		copy.nitems = n;
+		return true;
+	}
+
+	/**
+	 * A copy of the content of a leaf, used by queries.
+	 */
+	protected static class LeafCopy {
+		protected Object[] items;
+		protected double[][] lanes;
+		protected int nitems = 0;
+
+		protected LeafCopy(int dim) {
+			super();
+			items = new Object[RegionIndexingNode.LEAF_MAX_ITEMS];
+			lanes = new double[dim][RegionIndexingNode.LEAF_MAX_ITEMS];
+		}
+
+		protected void ensureCapacity(int n) {
+			if (n>items.length) {
+				items = new Object[n];
+				for (int j=0; j<lanes.length; j++)
+					lanes[j] = new double[n];
+			}
+		}
+	}
+
+	// recursive
+	private void getAllItems(QuickListOfLists<T> list, ConcurrentRegionIndexingNode<T> node) {
+		if (node.inner)
+			for (ConcurrentRegionIndexingNode<T> c:node.children)
+				getAllItems(list,c);
+		else if (node.nitems>0)
+			list.addList(node.localItems());
+	}
+
+	/**
+	 * CAUTION: not thread-safe, use {@link ConcurrentRegionIndexingTree#getAllItems()} instead.
+	 */
+	@Override
+	public final Collection<T> items() {
+		QuickListOfLists<T> list = new QuickListOfLists<T>();
+		getAllItems(list,this);
+		return list;
+	}
+
+	/** 
+	 * CAUTION: must be called under the write lock.
+	 */
+	@Override
+	public final void clear() {
+		clearItems();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb=new StringBuilder();
+		sb.append("region=[")
+			.append(Arrays.toString(lower))
+			.append("-")
+			.append(Arrays.toString(upper))
+			.append("], items={");
+		for (int i=0; i<nitems; i++) {
+			if (i>0) sb.append(',');
+			sb.append(items[i].toString());
+		}
+		sb.append("}\n");
+		return sb.toString();
+	}
+
+}
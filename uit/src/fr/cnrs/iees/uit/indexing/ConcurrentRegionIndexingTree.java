@@ -0,0 +1,421 @@
+/**************************************************************************
+ *  UIT - a Universal Indexing Tree                                       *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            *
+ *                                                                        *
+ *  UIT is a generalisation and re-implementation of QuadTree and Octree  *
+ *  implementations by Paavo Toivanen as downloaded on 27/8/2018 on       *
+ *  <https://dev.solita.fi/2015/08/06/quad-tree.html>                     *
+ *                                                                        *
+ **************************************************************************
+ *  This file is part of UIT (Universal Indexing Tree).                   *
+ *                                                                        *
+ *  UIT is free software: you can redistribute it and/or modify           *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  UIT is distributed in the hope that it will be useful,                *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with UIT.  If not, see <https://www.gnu.org/licenses/gpl.html>. *
+ *                                                                        *
+ **************************************************************************/
+package fr.cnrs.iees.uit.indexing;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+import fr.cnrs.iees.uit.indexing.ConcurrentRegionIndexingNode.LeafCopy;
+import fr.cnrs.iees.uit.space.Box;
+import fr.cnrs.iees.uit.space.Point;
+import fr.cnrs.iees.uit.space.Sphere;
+
+/**
+ * <p>A thread-safe region tree with one lock per leaf.</p>
+ * 
+ * <p>Each node has its own {@link StampedLock}. Modifications ({@link #insert(Object, Point)}, 
+ * {@link #remove(Object)}, {@link #move(Object, Point)}) only write-lock the leaves they modify 
+ * (two for a move, always in the same order), so that threads working in distinct parts of 
+ * space do not contend. A full leaf is split into all its children at once, under its own 
+ * lock, and inner nodes are never merged back: once a node has been split, its children never 
+ * change. Queries thus traverse inner nodes without any locking, and read leaves 
+ * <em>optimistically</em> (cf. {@link StampedLock#tryOptimisticRead()}): a leaf is copied without
+ * locking and the copy is validated afterwards. Only if the leaf was modified meanwhile is it 
+ * read again under its read lock. The item-to-leaf map is a {@link ConcurrentHashMap} and the 
+ * tree size a {@link LongAdder}.</p>
+ * 
+ * <p>Every leaf is read atomically, but a query is not atomic as a whole: a query running
+ * during the move of an item from one leaf to another may miss it, or find it twice. Unlike 
+ * those of other trees, the collections returned by queries are copies: they are not modified
+ * by later changes to the tree. Box and sphere queries return exactly the items within their
+ * limits, including those on the limits.</p>
+ * 
+ * <p>Since all the 2<sup>dim</sup> children of a leaf are created when it is split, this tree
+ * is meant for low dimensions. All items must lie within the tree domain. Leaves are split
+ * up to depth {@value RegionIndexingTree#DEFAULT_MAX_DEPTH}, and never if all their items are 
+ * at the same location. Empty leaves are not removed, so that the tree structure only 
+ * grows as needed by the highest local densities of items.</p>
+ *
+ * @author agent - 19 oct. 2026
+ *
+ * @param <T> type of content to index
+ */
+public class ConcurrentRegionIndexingTree<T> implements IndexingTree<T,ConcurrentRegionIndexingNode<T>> {
+
+	private final int dim;
+	private final Box domain;
+	private final ConcurrentRegionIndexingNode<T> root;
+	private final AtomicLong nodeCount = new AtomicLong();
+	/** reverse mapping of items to leaves to find items without knowing their location */
+	protected final ConcurrentHashMap<T,ConcurrentRegionIndexingNode<T>> itemToNodeMap = new ConcurrentHashMap<>();
+	private final LongAdder size = new LongAdder();
+
+	/**
+	 * @param domain the region indexed by this tree
+	 */
+	public ConcurrentRegionIndexingTree(Box domain) {
+		super();
+		dim = domain.dim();
+		this.domain = domain;
+		root = new ConcurrentRegionIndexingNode<T>(null,
+			Coordinates.of(domain.lowerBounds()),
+			Coordinates.of(domain.upperBounds()),newNodeId());
+	}
+
+	// a new number for node locking order
+	protected long newNodeId() {
+		return nodeCount.getAndIncrement();
+	}
+
+	private double[] coordinates(Point at) {
+		double[] x = Coordinates.of(at);
+		if ((x.length!=dim) || !root.contains(x))
+			throw new IllegalArgumentException("ConcurrentRegionIndexingTree: location "+at
+				+" out of tree domain "+domain);
+		return x;
+	}
+
+	// the leaf containing x, found without locking (it may be split before being locked)
+	private ConcurrentRegionIndexingNode<T> leaf(double[] x) {
+		ConcurrentRegionIndexingNode<T> node = root;
+		while (node.inner)
+			node = node.children[node.childIndex(x)];
+		return node;
+	}
+
+	/**
+	 * Copies a leaf, optimistically first, then under its read lock if it was modified meanwhile.
+	 * 
+	 * @param node the node to read
+	 * @param copy where to copy the leaf content
+	 * @return false if the node is not a leaf (its children must be read instead)
+	 */
+	private boolean readLeaf(ConcurrentRegionIndexingNode<T> node, LeafCopy copy) {
+		long stamp = node.lock.tryOptimisticRead();
+		if (stamp!=0L) {
+			boolean leaf = node.copyTo(copy);
+			if (node.lock.validate(stamp))
+				return leaf;
+		}
+		stamp = node.lock.readLock();
+		try {
+			return node.copyTo(copy);
+		}
+		finally {
+			node.lock.unlockRead(stamp);
+		}
+	}
+
+	@Override
+	public final int dim() {
+		return dim;
+	}
+
+	/**
+	 * CAUTION: nodes are not protected against concurrent modifications.
+	 */
+	@Override
+	public ConcurrentRegionIndexingNode<T> root() {
+		return root;
+	}
+
+	/**
+	 * @return The {@link Box} region.
+	 */
+	public Box region() {
+		return domain;
+	}
+
+	@Override
+	public int size() {
+		return size.intValue();
+	}
+
+	/**
+	 * An item already present in this tree is not inserted again - use {@link #move(Object, Point)}
+	 * to change its location.
+	 * 
+	 * @throws IllegalArgumentException if the location is out of the tree domain
+	 */
+	@Override
+	public void insert(T item, Point at) {
+		double[] x = coordinates(at);
+		// loop in case the leaf is split meanwhile
+		while (true) {
+			ConcurrentRegionIndexingNode<T> leaf = leaf(x);
+			long stamp = leaf.lock.writeLock();
+			try {
+				if (!leaf.inner) {
+					if ((leaf.nitems>=RegionIndexingNode.LEAF_MAX_ITEMS) && leaf.canSplit())
+						leaf.split(this);
+					else {
+						if (itemToNodeMap.putIfAbsent(item,leaf)==null) {
+							leaf.appendItem(item,x);
+							size.increment();
+						}
+						return;
+					}
+				}
+			}
+			finally {
+				leaf.lock.unlockWrite(stamp);
+			}
+		}
+	}
+
+	@Override
+	public boolean remove(T item) {
+		// loop in case the item is moved to another leaf meanwhile
+		while (true) {
+			ConcurrentRegionIndexingNode<T> leaf = itemToNodeMap.get(item);
+			if (leaf==null)
+				return false;
+			long stamp = leaf.lock.writeLock();
+			try {
+				if (!leaf.inner && itemToNodeMap.remove(item,leaf)) {
+					leaf.removeItem(item);
+					size.decrement();
+					return true;
+				}
+			}
+			finally {
+				leaf.lock.unlockWrite(stamp);
+			}
+		}
+	}
+
+	/**
+	 * Moves an item to a new location, as a single operation for concurrent readers of its
+	 * former and new leaves.
+	 * 
+	 * @param item the item to move
+	 * @param to its new location
+	 * @return false if the item was not in the tree
+	 * @throws IllegalArgumentException if the location is out of the tree domain
+	 */
+	public boolean move(T item, Point to) {
+		double[] x = coordinates(to);
+		while (true) {
+			ConcurrentRegionIndexingNode<T> source = itemToNodeMap.get(item);
+			if (source==null)
+				return false;
+			ConcurrentRegionIndexingNode<T> target = leaf(x);
+			// lock in increasing node number order
+			ConcurrentRegionIndexingNode<T> first = (source.id<=target.id) ? source : target;
+			ConcurrentRegionIndexingNode<T> second = (first==source) ? target : source;
+			long stamp1 = first.lock.writeLock();
+			long stamp2 = (second!=first) ? second.lock.writeLock() : 0L;
+			try {
+				if (!source.inner && !target.inner && (itemToNodeMap.get(item)==source)) {
+					if (source==target) {
+						source.setCoordinates(source.indexOf(item),x);
+						return true;
+					}
+					if ((target.nitems>=RegionIndexingNode.LEAF_MAX_ITEMS) && target.canSplit())
+						target.split(this);
+					else {
+						source.removeItem(item);
+						target.appendItem(item,x);
+						itemToNodeMap.put(item,target);
+						return true;
+					}
+				}
+			}
+			finally {
+				if (second!=first)
+					second.lock.unlockWrite(stamp2);
+				first.lock.unlockWrite(stamp1);
+			}
+		}
+	}
+
+	// recursive
+	private void clear(ConcurrentRegionIndexingNode<T> node) {
+		if (!node.inner) {
+			long stamp = node.lock.writeLock();
+			try {
+				if (!node.inner) {
+					for (int i=0; i<node.nitems; i++)
+						if (itemToNodeMap.remove(node.itemAt(i),node))
+							size.decrement();
+					node.clear();
+					return;
+				}
+			}
+			finally {
+				node.lock.unlockWrite(stamp);
+			}
+		}
+		for (ConcurrentRegionIndexingNode<T> c:node.children)
+			clear(c);
+	}
+
+	/**
+	 * Removes all items, one leaf at a time. Items inserted concurrently may remain in the tree.
+	 */
+	@Override
+	public void clear() {
+		clear(root);
+	}
+
+	// recursive
+	private void collect(ConcurrentRegionIndexingNode<T> node, LeafCopy copy, List<T> result) {
+		if (readLeaf(node,copy)) {
+			for (int i=0; i<copy.nitems; i++)
+				result.add(itemAt(copy,i));
+		}
+		else
+			for (ConcurrentRegionIndexingNode<T> c:node.children)
+				collect(c,copy,result);
+	}
+
+	// recursive
+	private void collectWithin(ConcurrentRegionIndexingNode<T> node, double[] lo, double[] up,
+			LeafCopy copy, List<T> result) {
+		if (!node.overlaps(lo,up))
+			return;
+		if (readLeaf(node,copy)) {
+			for (int i=0; i<copy.nitems; i++) {
+				boolean in = true;
+				for (int j=0; j<dim; j++) {
+					double x = copy.lanes[j][i];
+					in &= (x>=lo[j]) && (x<=up[j]);
+				}
+				if (in)
+					result.add(itemAt(copy,i));
+			}
+		}
+		else
+			for (ConcurrentRegionIndexingNode<T> c:node.children)
+				collectWithin(c,lo,up,copy,result);
+	}
+
+	// recursive
+	private void collectWithin(ConcurrentRegionIndexingNode<T> node, double[] centre, double r2,
+			LeafCopy copy, List<T> result) {
+		if (node.squaredDistance(centre)>r2)
+			return;
+		if (readLeaf(node,copy)) {
+			for (int i=0; i<copy.nitems; i++)
+				if (squaredDistance(copy,i,centre)<=r2)
+					result.add(itemAt(copy,i));
+		}
+		else
+			for (ConcurrentRegionIndexingNode<T> c:node.children)
+				collectWithin(c,centre,r2,copy,result);
+	}
+
+	@SuppressWarnings("unchecked")
+	private T itemAt(LeafCopy copy, int i) {
+		return (T) copy.items[i];
+	}
+
+	private double squaredDistance(LeafCopy copy, int i, double[] x) {
+		double d2 = 0.0;
+		for (int j=0; j<dim; j++) {
+			double d = copy.lanes[j][i]-x[j];
+			d2 += d*d;
+		}
+		return d2;
+	}
+
+	@Override
+	public Collection<T> getItemsWithin(Box limits) {
+		List<T> result = new ArrayList<>();
+		collectWithin(root,Coordinates.of(limits.lowerBounds()),
+			Coordinates.of(limits.upperBounds()),new LeafCopy(dim),result);
+		return result;
+	}
+
+	@Override
+	public Collection<T> getItemsWithin(Sphere limits) {
+		List<T> result = new ArrayList<>();
+		collectWithin(root,Coordinates.of(limits.centre()),
+			limits.radius()*limits.radius(),new LeafCopy(dim),result);
+		return result;
+	}
+
+	@Override
+	public Collection<T> getAllItems() {
+		List<T> result = new ArrayList<>(size());
+		collect(root,new LeafCopy(dim),result);
+		return result;
+	}
+
+	// the state of a nearest item search
+	private static class Nearest {
+		Object item = null;
+		double d2 = Double.POSITIVE_INFINITY;
+	}
+
+	// recursive - visits the child containing x first, then the others closer than the best item
+	private void nearest(ConcurrentRegionIndexingNode<T> node, double[] x, LeafCopy copy, Nearest best) {
+		if (node.squaredDistance(x)>=best.d2)
+			return;
+		if (readLeaf(node,copy)) {
+			for (int i=0; i<copy.nitems; i++) {
+				double d2 = squaredDistance(copy,i,x);
+				if (d2<best.d2) {
+					best.d2 = d2;
+					best.item = copy.items[i];
+				}
+			}
+		}
+		else {
+			int k = node.childIndex(x);
+			nearest(node.children[k],x,copy,best);
+			for (int i=0; i<node.children.length; i++)
+				if (i!=k)
+					nearest(node.children[i],x,copy,best);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public T getNearestItem(Point at) {
+		Nearest best = new Nearest();
+		nearest(root,Coordinates.of(at),new LeafCopy(dim),best);
+		return (T) best.item;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(getClass().getSimpleName()).append('\n');
+		sb.append("region = ").append(domain.toString()).append('\n');
+		sb.append("size = ").append(size()).append('\n');
+		return sb.toString();
+	}
+
+}
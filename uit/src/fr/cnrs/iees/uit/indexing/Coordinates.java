@@ -0,0 +1,81 @@
+/**************************************************************************
+ *  UIT - a Universal Indexing Tree                                       *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            *
+ *                                                                        *
+ *  UIT is a generalisation and re-implementation of QuadTree and Octree  *
+ *  implementations by Paavo Toivanen as downloaded on 27/8/2018 on       *
+ *  <https://dev.solita.fi/2015/08/06/quad-tree.html>                     *
+ *                                                                        *
+ **************************************************************************
+ *  This file is part of UIT (Universal Indexing Tree).                   *
+ *                                                                        *
+ *  UIT is free software: you can redistribute it and/or modify           *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  UIT is distributed in the hope that it will be useful,                *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with UIT.  If not, see <https://www.gnu.org/licenses/gpl.html>. *
+ *                                                                        *
+ **************************************************************************/
+package fr.cnrs.iees.uit.indexing;
+
+import fr.cnrs.iees.uit.space.Box;
+import fr.cnrs.iees.uit.space.Point;
+
+/**
+ * <p>Conversions of {@link Point}s and {@link Box}es to arrays of coordinates.</p>
+ * 
+ * <p>Trees working on primitive coordinates (e.g. with {@link LeafScan}) read the coordinates of
+ * their {@code Point} and {@code Box} arguments once, with these methods, and then only use 
+ * {@code double} arrays.</p>
+ * 
+ * @author agent - 19 oct. 2026
+ *
+ */
+final class Coordinates {
+	// to prevent any instantiation
+	private Coordinates() {}
+
+	/**
+	 * @param p a point
+	 * @return a new array holding the coordinates of p
+	 */
+	static double[] of(Point p) {
+		double[] result = new double[p.dim()];
+		for (int i=0; i<result.length; i++)
+			result[i] = p.coordinate(i);
+		return result;
+	}
+
+	/**
+	 * @param b a box
+	 * @return a new array holding the lower bounds of b
+	 */
+	static double[] lowerBounds(Box b) {
+		double[] result = new double[b.dim()];
+		for (int i=0; i<result.length; i++)
+			result[i] = b.lowerBound(i);
+		return result;
+	}
+
+	/**
+	 * @param b a box
+	 * @return a new array holding the upper bounds of b
+	 */
+	static double[] upperBounds(Box b) {
+		double[] result = new double[b.dim()];
+		for (int i=0; i<result.length; i++)
+			result[i] = b.upperBound(i);
+		return result;
+	}
+
+}
@@ -0,0 +1,77 @@
+/**************************************************************************
+ *  UIT - a Universal Indexing Tree                                       *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            *
+ *                                                                        *
+ *  UIT is a generalisation and re-implementation of QuadTree and Octree  *
+ *  implementations by Paavo Toivanen as downloaded on 27/8/2018 on       *
+ *  <https://dev.solita.fi/2015/08/06/quad-tree.html>                     *
+ *                                                                        *
+ **************************************************************************
+ *  This file is part of UIT (Universal Indexing Tree).                   *
+ *                                                                        *
+ *  UIT is free software: you can redistribute it and/or modify           *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  UIT is distributed in the hope that it will be useful,                *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with UIT.  If not, see <https://www.gnu.org/licenses/gpl.html>. *
+ *                                                                        *
+ **************************************************************************/
+package fr.cnrs.iees.uit.indexing;
+
+import fr.cnrs.iees.uit.space.Box;
+
+/**
+ * <p>
+ * A region-based binary <em>k</em>-d tree where the size of the initial region is unknown
+ * (cf. {@link ExpandingRegionIndexingTree}). When a newly arriving point is outside the root
+ * region, the root region is extended along one axis at a time: the former root becomes one of 
+ * the two children of the new root.
+ * </p>
+ *
+ * @author agent - 19 oct. 2026
+ *
+ * @param <T> the type of objects indexed
+ */
+public class ExpandingKdRegionIndexingTree<T> extends KdRegionIndexingTree<T> {
+
+	/** 
+	 * Instantiate a completely empty expanding tree
+	 * 
+	 * @param dim the tree dimension
+	 */
+    public ExpandingKdRegionIndexingTree(int dim) {
+    	super(dim);
+    }
+
+    /** 
+     * Instantiate an empty indexing tree with a region ({@code Box}) to start with. This box can be later enlarged to fit
+	 * items located outside the initial box. 
+     * 
+     * @param domain the initial region
+     */
+    public ExpandingKdRegionIndexingTree(Box domain) {
+    	super(domain);
+    }
+
+	@Override
+	protected void insert(T item, double[] at) {
+        if (root == null)
+            root = new KdRegionIndexingNode<T>(null,at.clone(),at.clone(),0,this);
+        while (!root.contains(at))
+        	root = root.expandRootRegion(at);
+        if (root.parent!=null)
+        	throw new NullPointerException("CRITICAL - Problem in indexing tree expansion: root.parent is not null.");
+        super.insert(item,at);
+	}
+
+}
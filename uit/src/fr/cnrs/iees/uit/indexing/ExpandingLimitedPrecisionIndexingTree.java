@@ -59,10 +59,25 @@ public class ExpandingLimitedPrecisionIndexingTree<T> extends LimitedPrecisionIn
 		super(domain, precision);
 	}
 	
+	// true if at is in the root region, upper bounds excluded: a locator on the upper
+	// bound of the root would be stored in the lower child, while it belongs to the upper child
+	// once the root has been expanded
+	private boolean rootContains(Point at) {
+		for (int i=0; i<dim; i++) {
+			long x = factory.convert(at.coordinate(i),i);
+			if ((x>=root.upperBounds.coordinate(i)) || (x<root.lowerBounds.coordinate(i)))
+				return false;
+		}
+		return true;
+	}
+
 	@Override
 	public void insert(T item, Point at) {
-        while (!regionContainsLocator(root.lowerBounds,root.upperBounds,factory.newLocator(at)))
+        while (!rootContains(at))
         	root = root.expandRootRegion(at);
+        // the new root region may be too large for packed locators
+        if (packed && !rootPackable())
+        	unpackLocators();
         super.insert(item, at);
 	}
 
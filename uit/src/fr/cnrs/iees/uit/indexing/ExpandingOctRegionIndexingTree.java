@@ -0,0 +1,99 @@
+/**************************************************************************
+ *  UIT - a Universal Indexing Tree                                       *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            *
+ *                                                                        *
+ *  UIT is a generalisation and re-implementation of QuadTree and Octree  *
+ *  implementations by Paavo Toivanen as downloaded on 27/8/2018 on       *
+ *  <https://dev.solita.fi/2015/08/06/quad-tree.html>                     *
+ *                                                                        *
+ **************************************************************************
+ *  This file is part of UIT (Universal Indexing Tree).                   *
+ *                                                                        *
+ *  UIT is free software: you can redistribute it and/or modify           *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  UIT is distributed in the hope that it will be useful,                *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with UIT.  If not, see <https://www.gnu.org/licenses/gpl.html>. *
+ *                                                                        *
+ **************************************************************************/
+package fr.cnrs.iees.uit.indexing;
+
+import fr.cnrs.iees.uit.space.Box;
+
+/**
+ * <p>
+ * An octree where the size of the initial region is unknown. This is the
+ * 3-dimensional specialisation of {@link ExpandingRegionIndexingTree}: the root
+ * node region grows as required to enclose the newly arriving points, and is
+ * always a cube.
+ * </p>
+ *
+ * @author agent - 19 oct. 2026
+ *
+ * @param <T> the type of objects indexed
+ */
+public class ExpandingOctRegionIndexingTree<T> extends OctRegionIndexingTree<T> {
+
+	/** 
+	 * Instantiate a completely empty expanding tree
+	 */
+    public ExpandingOctRegionIndexingTree() {
+    	super();
+    }
+
+	/** 
+	 * Same as {@link #ExpandingOctRegionIndexingTree()}, with a choice of item semantics.
+	 * 
+	 * @param identity if true, items are identified by reference instead of by value
+	 */
+    public ExpandingOctRegionIndexingTree(boolean identity) {
+    	super(identity);
+    }
+
+    /** 
+     * Instantiate an empty indexing tree with a region ({@code Box}) to start with. This box can be later enlarged to fit
+	 * items located outside the initial box. 
+     * 
+     * @param domain the initial region - must be of dimension 3
+     */
+    public ExpandingOctRegionIndexingTree(Box domain) {
+    	this(domain,false);
+    }
+
+    /** 
+     * Same as {@link #ExpandingOctRegionIndexingTree(Box)}, with a choice of item semantics.
+     * 
+     * @param domain the initial region - must be of dimension 3
+     * @param identity if true, items are identified by reference instead of by value
+     */
+    public ExpandingOctRegionIndexingTree(Box domain, boolean identity) {
+    	super(identity);
+    	checkDim(domain.dim());
+    	Box reg = Box.boundingCube(domain.lowerBounds(),domain.upperBounds());
+    	root = new OctRegionIndexingNode<T>(null,
+    		reg.lowerBound(0),reg.lowerBound(1),reg.lowerBound(2),
+    		reg.upperBound(0),reg.upperBound(1),reg.upperBound(2),this);
+    }
+
+	@Override
+	public void insert(T item, double x, double y, double z) {
+        if (root == null)
+            root = new OctRegionIndexingNode<T>(null,x,y,z,x,y,z,this);
+        while (!root.contains(x,y,z))
+        	root = root.expandRootRegion(x,y,z);
+        if (root.parent!=null)
+        	throw new NullPointerException("CRITICAL - Problem in indexing tree expansion: root.parent is not null.");
+        super.insert(item,x,y,z);
+	}
+
+}
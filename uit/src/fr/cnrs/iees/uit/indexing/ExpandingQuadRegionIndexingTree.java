@@ -0,0 +1,98 @@
+/**************************************************************************
+ *  UIT - a Universal Indexing Tree                                       *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            *
+ *                                                                        *
+ *  UIT is a generalisation and re-implementation of QuadTree and Octree  *
+ *  implementations by Paavo Toivanen as downloaded on 27/8/2018 on       *
+ *  <https://dev.solita.fi/2015/08/06/quad-tree.html>                     *
+ *                                                                        *
+ **************************************************************************
+ *  This file is part of UIT (Universal Indexing Tree).                   *
+ *                                                                        *
+ *  UIT is free software: you can redistribute it and/or modify           *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  UIT is distributed in the hope that it will be useful,                *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with UIT.  If not, see <https://www.gnu.org/licenses/gpl.html>. *
+ *                                                                        *
+ **************************************************************************/
+package fr.cnrs.iees.uit.indexing;
+
+import fr.cnrs.iees.uit.space.Box;
+
+/**
+ * <p>
+ * A quadtree where the size of the initial region is unknown. This is the
+ * 2-dimensional specialisation of {@link ExpandingRegionIndexingTree}: the root
+ * node region grows as required to enclose the newly arriving points, and is
+ * always a square.
+ * </p>
+ *
+ * @author agent - 19 oct. 2026
+ *
+ * @param <T> the type of objects indexed
+ */
+public class ExpandingQuadRegionIndexingTree<T> extends QuadRegionIndexingTree<T> {
+
+	/** 
+	 * Instantiate a completely empty expanding tree
+	 */
+    public ExpandingQuadRegionIndexingTree() {
+    	super();
+    }
+
+	/** 
+	 * Same as {@link #ExpandingQuadRegionIndexingTree()}, with a choice of item semantics.
+	 * 
+	 * @param identity if true, items are identified by reference instead of by value
+	 */
+    public ExpandingQuadRegionIndexingTree(boolean identity) {
+    	super(identity);
+    }
+
+    /** 
+     * Instantiate an empty indexing tree with a region ({@code Box}) to start with. This box can be later enlarged to fit
+	 * items located outside the initial box. 
+     * 
+     * @param domain the initial region - must be of dimension 2
+     */
+    public ExpandingQuadRegionIndexingTree(Box domain) {
+    	this(domain,false);
+    }
+
+    /** 
+     * Same as {@link #ExpandingQuadRegionIndexingTree(Box)}, with a choice of item semantics.
+     * 
+     * @param domain the initial region - must be of dimension 2
+     * @param identity if true, items are identified by reference instead of by value
+     */
+    public ExpandingQuadRegionIndexingTree(Box domain, boolean identity) {
+    	super(identity);
+    	checkDim(domain.dim());
+    	Box reg = Box.boundingCube(domain.lowerBounds(),domain.upperBounds());
+    	root = new QuadRegionIndexingNode<T>(null,
+    		reg.lowerBound(0),reg.lowerBound(1),reg.upperBound(0),reg.upperBound(1),this);
+    }
+
+	@Override
+	public void insert(T item, double x, double y) {
+        if (root == null)
+            root = new QuadRegionIndexingNode<T>(null,x,y,x,y,this);
+        while (!root.contains(x,y))
+        	root = root.expandRootRegion(x,y);
+        if (root.parent!=null)
+        	throw new NullPointerException("CRITICAL - Problem in indexing tree expansion: root.parent is not null.");
+        super.insert(item,x,y);
+	}
+
+}
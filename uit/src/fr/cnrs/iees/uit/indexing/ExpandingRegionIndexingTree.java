@@ -69,6 +69,19 @@ public class ExpandingRegionIndexingTree<T> extends RegionIndexingTree<T> {
     	super(dim);
     }
 
+	/** 
+	 * Same as {@link #ExpandingRegionIndexingTree(int)}, but items may be identified by reference
+	 * instead of by value, e.g. for agents which may be equal without being the same.
+	 * 
+	 * @param dim the dimension of the space indexed
+	 * @param identity if true, items are compared with {@code ==} and hashed with 
+	 * {@link System#identityHashCode(Object)} instead of their {@code equals()} and {@code hashCode()}
+	 * methods
+	 */
+    public ExpandingRegionIndexingTree(int dim, boolean identity) {
+    	super(dim,identity);
+    }
+
     /** 
      * Instantiate an empty indexing tree with a region ({@code Box}) to start with. This box can be later enlarged to fit
 	 * items located outside the initial box. 
@@ -76,26 +89,44 @@ public class ExpandingRegionIndexingTree<T> extends RegionIndexingTree<T> {
      * @param domain the initial region.
      */
     public ExpandingRegionIndexingTree(Box domain) {
-    	super(domain.dim());
+    	this(domain,false);
+    }
+
+    /** 
+     * Same as {@link #ExpandingRegionIndexingTree(Box)}, with a choice of item semantics as in
+     * {@link #ExpandingRegionIndexingTree(int, boolean)}.
+     * 
+     * @param domain the initial region.
+     * @param identity if true, items are identified by reference instead of by value
+     */
+    public ExpandingRegionIndexingTree(Box domain, boolean identity) {
+    	super(domain.dim(),identity);
     	Box reg = Box.boundingCube(domain.lowerBounds(),domain.upperBounds());
     	root = new RegionIndexingNode<T>(null,reg,this);
     }
 
 	@Override
-	public void insert(T item, Point at) {
+	protected boolean insert(T item, Point at, ItemHandle<T> h) {
         if (root == null) {
 //        	Box reg = new BoxImpl(at.clone(),at.clone());
         	Box reg = Box.boundingBox(at.clone(),at.clone());
             root = new RegionIndexingNode<T>(null,reg,this);
         }
-        while (!root.region().contains(at))
+        while (!root.contains(at))
         	root = root.expandRootRegion(at);
 //        super.insert(item, at); //to fix rare bug ?
         if (root.parent!=null)
         	root = root.parent;
         if (root.parent!=null)
         	throw new NullPointerException("CRITICAL - Problem in indexing tree expansion: root.parent is not null.");
-        super.insert(item, at);
+        return super.insert(item, at, h);
+	}
+
+	// the former root does not always fit exactly into a child slot of the new root
+	// when the root region expands, so that sibling regions may overlap
+	@Override
+	protected boolean disjointRegions() {
+		return false;
 	}
 
 }
@@ -0,0 +1,75 @@
+/**************************************************************************
+ *  UIT - a Universal Indexing Tree                                       *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            *
+ *                                                                        *
+ *  UIT is a generalisation and re-implementation of QuadTree and Octree  *
+ *  implementations by Paavo Toivanen as downloaded on 27/8/2018 on       *
+ *  <https://dev.solita.fi/2015/08/06/quad-tree.html>                     *
+ *                                                                        *
+ **************************************************************************
+ *  This file is part of UIT (Universal Indexing Tree).                   *
+ *                                                                        *
+ *  UIT is free software: you can redistribute it and/or modify           *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  UIT is distributed in the hope that it will be useful,                *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with UIT.  If not, see <https://www.gnu.org/licenses/gpl.html>. *
+ *                                                                        *
+ **************************************************************************/
+package fr.cnrs.iees.uit.indexing;
+
+import java.util.Collection;
+
+/**
+ * <p>{@linkplain IndexingNode} of a {@link FrozenRegionIndexingTree}.</p>
+ * 
+ * <p>Frozen trees store their nodes as arrays: this class is only a read-only view on one of 
+ * them, made on demand.</p>
+ *
+ * @author agent - 19 oct. 2026
+ *
+ * @param <T> the type of object stored in this tree
+ */
+class FrozenRegionIndexingNode<T> extends IndexingNode<T,FrozenRegionIndexingNode<T>> {
+
+	private final FrozenRegionIndexingTree<T> tree;
+	// the rank of this node in the tree arrays
+	private final int node;
+
+	protected FrozenRegionIndexingNode(FrozenRegionIndexingTree<T> tree, int node) {
+		super();
+		this.tree = tree;
+		this.node = node;
+	}
+
+	@Override
+	public T item() {
+		Collection<T> items = items();
+		if (items.isEmpty())
+			return null;
+		if (items.size()==1)
+			return items.iterator().next();
+		throw new UnsupportedOperationException("Item list contains more than one item - use items() to get them.");
+	}
+
+	@Override
+	public Collection<T> items() {
+		return tree.subtreeItems(node);
+	}
+
+	@Override
+	public void clear() {
+		throw new UnsupportedOperationException("FrozenRegionIndexingTree nodes cannot be modified.");
+	}
+
+}
@@ -0,0 +1,436 @@
+/**************************************************************************
+ *  UIT - a Universal Indexing Tree                                       *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            *
+ *                                                                        *
+ *  UIT is a generalisation and re-implementation of QuadTree and Octree  *
+ *  implementations by Paavo Toivanen as downloaded on 27/8/2018 on       *
+ *  <https://dev.solita.fi/2015/08/06/quad-tree.html>                     *
+ *                                                                        *
+ **************************************************************************
+ *  This file is part of UIT (Universal Indexing Tree).                   *
+ *                                                                        *
+ *  UIT is free software: you can redistribute it and/or modify           *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  UIT is distributed in the hope that it will be useful,                *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with UIT.  If not, see <https://www.gnu.org/licenses/gpl.html>. *
+ *                                                                        *
+ **************************************************************************/
+package fr.cnrs.iees.uit.indexing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import au.edu.anu.omhtk.collections.QuickListOfLists;
+import fr.cnrs.iees.uit.space.Box;
+import fr.cnrs.iees.uit.space.Point;
+import fr.cnrs.iees.uit.space.Sphere;
+
+/**
+ * <p>An immutable, compact copy of a {@link RegionIndexingTree}, made by 
+ * {@link RegionIndexingTree#freeze()}.</p>
+ * 
+ * <p>There are no node objects and no hash maps: nodes are numbered in breadth-first order and
+ * described by arrays indexed by node rank (region bounds, rank of first child, number of 
+ * children, range of items). Items are packed into a single array in depth-first order, so that
+ * the items of any subtree form a contiguous range, and their coordinates into one array per 
+ * dimension in the same order. Queries thus scan contiguous memory, and whole subtrees within 
+ * a query region are returned as views on a range of the item array. Items and coordinates are
+ * copied in parallel from the source tree.</p>
+ * 
+ * <p>All fields are final and never modified after construction: a frozen tree can be queried
+ * by any number of threads without any synchronisation, while its source tree is modified.
+ * {@link #insert(Object, Point)}, {@link #remove(Object)} and {@link #clear()} throw an
+ * {@link UnsupportedOperationException}.</p>
+ * 
+ * <p>Although its structure is copied from a {@link RegionIndexingTree}, queries do not 
+ * miss items lying on node borders (cf. {@link IndexingTree#getItemsWithin(Box)}): box and 
+ * sphere queries return all the items within or on the border of their argument.</p>
+ *
+ * @author agent - 19 oct. 2026
+ *
+ * @param <T> type of content to index
+ */
+public class FrozenRegionIndexingTree<T> implements IndexingTree<T,FrozenRegionIndexingNode<T>> {
+
+	// minimal number of nodes copied by a parallel task
+	private static final int COPY_GRAIN = 256;
+
+	private final int dim;
+	private final int size;
+	/** node region bounds, node-major (bounds of node k in [k*dim,(k+1)*dim[) */
+	private final double[] lower;
+	private final double[] upper;
+	/** children of node k are nodes firstChild[k] to firstChild[k]+nchildren[k]-1 */
+	private final int[] firstChild;
+	private final int[] nchildren;
+	/** items of node k are in [itemFrom[k],localTo[k][, items of its subtree in [itemFrom[k],itemTo[k][ */
+	private final int[] itemFrom;
+	private final int[] localTo;
+	private final int[] itemTo;
+	/** items and their coordinates */
+	private final Object[] items;
+	private final double[][] lanes;
+	private final List<T> itemList;
+
+	/**
+	 * Copies a region tree. The source tree must not be modified during the copy.
+	 * 
+	 * @param source the tree to copy
+	 */
+	@SuppressWarnings("unchecked")
+	protected FrozenRegionIndexingTree(RegionIndexingTree<T> source) {
+		super();
+		dim = source.dim();
+		// breadth-first list of nodes
+		List<RegionIndexingNode<T>> nodes = new ArrayList<>();
+		if (source.root()!=null)
+			nodes.add(source.root());
+		for (int k=0; k<nodes.size(); k++) {
+			RegionIndexingNode<T> node = nodes.get(k);
+			if (node.children!=null)
+				for (RegionIndexingNode<T> child:node.children)
+					if (child!=null)
+						nodes.add(child);
+		}
+		int nn = nodes.size();
+		firstChild = new int[nn];
+		nchildren = new int[nn];
+		int next = 1;
+		for (int k=0; k<nn; k++) {
+			RegionIndexingNode<T> node = nodes.get(k);
+			firstChild[k] = next;
+			if (node.children!=null)
+				for (RegionIndexingNode<T> child:node.children)
+					if (child!=null)
+						nchildren[k]++;
+			next += nchildren[k];
+		}
+		// subtree sizes (children come after their parent)
+		int[] count = new int[nn];
+		for (int k=nn-1; k>=0; k--) {
+			count[k] = nodes.get(k).nitems;
+			for (int c=firstChild[k]; c<firstChild[k]+nchildren[k]; c++)
+				count[k] += count[c];
+		}
+		// item ranges in depth-first order: node items, then the items of each child subtree
+		itemFrom = new int[nn];
+		localTo = new int[nn];
+		itemTo = new int[nn];
+		for (int k=0; k<nn; k++) {
+			localTo[k] = itemFrom[k]+nodes.get(k).nitems;
+			itemTo[k] = itemFrom[k]+count[k];
+			int from = localTo[k];
+			for (int c=firstChild[k]; c<firstChild[k]+nchildren[k]; c++) {
+				itemFrom[c] = from;
+				from += count[c];
+			}
+		}
+		size = (nn>0) ? count[0] : 0;
+		lower = new double[nn*dim];
+		upper = new double[nn*dim];
+		items = new Object[size];
+		lanes = new double[dim][size];
+		ForkJoinPool.commonPool().invoke(new CopyTask<T>(nodes,0,nn,dim,itemFrom,lower,upper,items,lanes));
+		itemList = Collections.unmodifiableList(Arrays.asList((T[])items));
+	}
+
+	// copies bounds and items of a range of nodes, in parallel for large ranges
+	private static class CopyTask<T> extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final List<RegionIndexingNode<T>> nodes;
+		private final int from;
+		private final int to;
+		private final int dim;
+		private final int[] itemFrom;
+		private final double[] lower;
+		private final double[] upper;
+		private final Object[] items;
+		private final double[][] lanes;
+
+		private CopyTask(List<RegionIndexingNode<T>> nodes, int from, int to, int dim, int[] itemFrom,
+				double[] lower, double[] upper, Object[] items, double[][] lanes) {
+			super();
+			this.nodes = nodes;
+			this.from = from;
+			this.to = to;
+			this.dim = dim;
+			this.itemFrom = itemFrom;
+			this.lower = lower;
+			this.upper = upper;
+			this.items = items;
+			this.lanes = lanes;
+		}
+
+		@Override
+		protected void compute() {
+			if (to-from>COPY_GRAIN) {
+				int mid = (from+to)>>>1;
+				invokeAll(new CopyTask<T>(nodes,from,mid,dim,itemFrom,lower,upper,items,lanes),
+					new CopyTask<T>(nodes,mid,to,dim,itemFrom,lower,upper,items,lanes));
+				return;
+			}
+			for (int k=from; k<to; k++) {
+				RegionIndexingNode<T> node = nodes.get(k);
+				System.arraycopy(node.lower,0,lower,k*dim,dim);
+				System.arraycopy(node.upper,0,upper,k*dim,dim);
+				if (node.nitems>0) {
+					System.arraycopy(node.items,0,items,itemFrom[k],node.nitems);
+					for (int j=0; j<dim; j++)
+						System.arraycopy(node.lanes[j],0,lanes[j],itemFrom[k],node.nitems);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param node a node rank
+	 * @return a read-only view on the items of the subtree of this node
+	 */
+	protected List<T> subtreeItems(int node) {
+		return itemList.subList(itemFrom[node],itemTo[node]);
+	}
+
+	@SuppressWarnings("unchecked")
+	private T itemAt(int i) {
+		return (T) items[i];
+	}
+
+	@Override
+	public final int dim() {
+		return dim;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the number of nodes of this tree
+	 */
+	public int nNodes() {
+		return firstChild.length;
+	}
+
+	@Override
+	public FrozenRegionIndexingNode<T> root() {
+		if (firstChild.length==0)
+			return null;
+		return new FrozenRegionIndexingNode<T>(this,0);
+	}
+
+	/**
+	 * @return The {@link Box} region, null if the source tree had no root.
+	 */
+	public Box region() {
+		if (firstChild.length==0)
+			return null;
+		return Box.boundingBox(Point.newPoint(Arrays.copyOfRange(lower,0,dim)),
+			Point.newPoint(Arrays.copyOfRange(upper,0,dim)));
+	}
+
+	@Override
+	public void insert(T item, Point at) {
+		throw new UnsupportedOperationException("FrozenRegionIndexingTree cannot be modified.");
+	}
+
+	@Override
+	public boolean remove(T item) {
+		throw new UnsupportedOperationException("FrozenRegionIndexingTree cannot be modified.");
+	}
+
+	@Override
+	public void clear() {
+		throw new UnsupportedOperationException("FrozenRegionIndexingTree cannot be modified.");
+	}
+
+	@Override
+	public Collection<T> getAllItems() {
+		return itemList;
+	}
+
+	// true if the region of node k and the box [lo,up] have at least one common point
+	private boolean touches(int k, double[] lo, double[] up) {
+		int o = k*dim;
+		for (int j=0; j<dim; j++)
+			if ((upper[o+j]<lo[j]) || (lower[o+j]>up[j]))
+				return false;
+		return true;
+	}
+
+	private boolean isWithin(int k, double[] lo, double[] up) {
+		int o = k*dim;
+		for (int j=0; j<dim; j++)
+			if ((lower[o+j]<lo[j]) || (upper[o+j]>up[j]))
+				return false;
+		return true;
+	}
+
+	// recursive
+	private void collectWithin(int k, double[] lo, double[] up, QuickListOfLists<T> result, List<T> extraItems) {
+		if (isWithin(k,lo,up)) {
+			if (itemTo[k]>itemFrom[k])
+				result.addList(subtreeItems(k));
+			return;
+		}
+		for (int i=itemFrom[k]; i<localTo[k]; i++) {
+			boolean in = true;
+			for (int j=0; j<dim; j++) {
+				double x = lanes[j][i];
+				if ((x<lo[j]) || (x>up[j])) {
+					in = false;
+					break;
+				}
+			}
+			if (in)
+				extraItems.add(itemAt(i));
+		}
+		for (int c=firstChild[k]; c<firstChild[k]+nchildren[k]; c++)
+			if (touches(c,lo,up))
+				collectWithin(c,lo,up,result,extraItems);
+	}
+
+	@Override
+	public Collection<T> getItemsWithin(Box limits) {
+		List<T> extraItems = new ArrayList<>();
+		QuickListOfLists<T> result = new QuickListOfLists<T>();
+		double[] lo = Coordinates.lowerBounds(limits);
+		double[] up = Coordinates.upperBounds(limits);
+		if ((size>0) && touches(0,lo,up))
+			collectWithin(0,lo,up,result,extraItems);
+		result.addList(extraItems);
+		return result;
+	}
+
+	// squared distances from a point to the closest and farthest points of the region of node k
+	private double minSquaredDistance(int k, double[] x) {
+		int o = k*dim;
+		double d2 = 0.0;
+		for (int j=0; j<dim; j++) {
+			double d = Math.max(0.0,Math.max(lower[o+j]-x[j],x[j]-upper[o+j]));
+			d2 += d*d;
+		}
+		return d2;
+	}
+
+	private double maxSquaredDistance(int k, double[] x) {
+		int o = k*dim;
+		double d2 = 0.0;
+		for (int j=0; j<dim; j++) {
+			double d = Math.max(x[j]-lower[o+j],upper[o+j]-x[j]);
+			d2 += d*d;
+		}
+		return d2;
+	}
+
+	private double squaredDistance(int i, double[] x) {
+		double d2 = 0.0;
+		for (int j=0; j<dim; j++) {
+			double d = lanes[j][i]-x[j];
+			d2 += d*d;
+		}
+		return d2;
+	}
+
+	// recursive
+	private void collectWithin(int k, double[] c, double r2, QuickListOfLists<T> result, List<T> extraItems) {
+		if (maxSquaredDistance(k,c)<=r2) {
+			if (itemTo[k]>itemFrom[k])
+				result.addList(subtreeItems(k));
+			return;
+		}
+		for (int i=itemFrom[k]; i<localTo[k]; i++)
+			if (squaredDistance(i,c)<=r2)
+				extraItems.add(itemAt(i));
+		for (int ch=firstChild[k]; ch<firstChild[k]+nchildren[k]; ch++)
+			if (minSquaredDistance(ch,c)<=r2)
+				collectWithin(ch,c,r2,result,extraItems);
+	}
+
+	@Override
+	public Collection<T> getItemsWithin(Sphere limits) {
+		List<T> extraItems = new ArrayList<>();
+		QuickListOfLists<T> result = new QuickListOfLists<T>();
+		double[] c = Coordinates.of(limits.centre());
+		double r2 = limits.radius()*limits.radius();
+		if ((size>0) && (minSquaredDistance(0,c)<=r2))
+			collectWithin(0,c,r2,result,extraItems);
+		result.addList(extraItems);
+		return result;
+	}
+
+	// the state of a nearest item search
+	private static class Nearest {
+		double dist2 = Double.POSITIVE_INFINITY;
+		int item = -1;
+	}
+
+	// recursive - branch and bound, closest children first
+	private void nearest(int k, double[] x, Nearest search) {
+		for (int i=itemFrom[k]; i<localTo[k]; i++) {
+			double d2 = squaredDistance(i,x);
+			if (d2<search.dist2) {
+				search.dist2 = d2;
+				search.item = i;
+			}
+		}
+		int n = nchildren[k];
+		if (n==0)
+			return;
+		double[] d2 = new double[n];
+		int[] order = new int[n];
+		for (int i=0; i<n; i++) {
+			double d = minSquaredDistance(firstChild[k]+i,x);
+			// insertion sort by distance
+			int m = i;
+			while ((m>0) && (d2[m-1]>d)) {
+				d2[m] = d2[m-1];
+				order[m] = order[m-1];
+				m--;
+			}
+			d2[m] = d;
+			order[m] = firstChild[k]+i;
+		}
+		for (int i=0; i<n; i++) {
+			if (d2[i]>=search.dist2)
+				break;
+			nearest(order[i],x,search);
+		}
+	}
+
+	@Override
+	public T getNearestItem(Point at) {
+		if (size==0)
+			return null;
+		Nearest search = new Nearest();
+		nearest(0,Coordinates.of(at),search);
+		return itemAt(search.item);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(getClass().getSimpleName()).append('\n');
+		if (firstChild.length>0)
+			sb.append("region = ").append(region().toString()).append('\n');
+		sb.append("size = ").append(size).append(", nodes = ").append(nNodes()).append('\n');
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,542 @@
+/**************************************************************************
+ *  UIT - a Universal Indexing Tree                                       *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            *
+ *                                                                        *
+ *  UIT is a generalisation and re-implementation of QuadTree and Octree  *
+ *  implementations by Paavo Toivanen as downloaded on 27/8/2018 on       *
+ *  <https://dev.solita.fi/2015/08/06/quad-tree.html>                     *
+ *                                                                        *
+ **************************************************************************
+ *  This file is part of UIT (Universal Indexing Tree).                   *
+ *                                                                        *
+ *  UIT is free software: you can redistribute it and/or modify           *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  UIT is distributed in the hope that it will be useful,                *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with UIT.  If not, see <https://www.gnu.org/licenses/gpl.html>. *
+ *                                                                        *
+ **************************************************************************/
+package fr.cnrs.iees.uit.indexing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import au.edu.anu.omhtk.collections.QuickListOfLists;
+import fr.cnrs.iees.uit.indexing.location.LocatorFactory;
+import fr.cnrs.iees.uit.space.Box;
+import fr.cnrs.iees.uit.space.Point;
+import fr.cnrs.iees.uit.space.Sphere;
+
+/**
+ * <p>A flat, uniform grid implementation of {@link IndexingTree}.</p>
+ * 
+ * <p>When items are roughly evenly spread and queries use a fixed interaction radius, a 
+ * hierarchical tree is not needed: a grid of cells of size close to the query radius gives
+ * constant cost insertions, moves and removals, and neighbourhood queries that only look at
+ * the few cells around the query point.</p>
+ * 
+ * <p>Cell coordinates are computed by a {@link LocatorFactory} using the cell size as its precision, 
+ * i.e. an item at location <em>x</em> is stored in the cell of coordinates 
+ * {@code Math.round((x-lower)/cellSize)}, where <em>lower</em> is the lower bound of the grid domain.
+ * Cells are stored either:</p>
+ * <ul>
+ * <li>in a dense array, when the domain is known and the number of cells is not larger than 
+ * {@link #MAX_DENSE_CELLS}. All items must then lie within the domain;</li>
+ * <li>in a hash table, keyed by {@link LocatorFactory#pack(long[]) packed locators}, in other cases.
+ * Only non-empty cells are stored and items can be anywhere in space, but this is only possible in
+ * dimensions 2 and 3.</li>
+ * </ul>
+ * 
+ * <p>Queries visit all the cells overlapping or touching their argument and test the locations
+ * of the items in the cells crossed by its border: they return all the items within or on the border of the query box or sphere,
+ * including those lying on cell borders, which {@link RegionIndexingTree} misses (cf. 
+ * {@link IndexingTree#getItemsWithin(Box)}).</p>
+ * 
+ * <p>A grid has no root node: {@link #root()} returns {@code null}.</p>
+ *
+ * @author agent - 19 oct. 2026
+ *
+ * @param <T> type of content to index
+ */
+public class GridIndex<T> implements IndexingTree<T,GridIndexingNode<T>> {
+
+	/** the maximal number of cells of a grid stored as a dense array */
+	public static final int MAX_DENSE_CELLS = 1<<22;
+
+	private final int dim;
+	private final double cellSize;
+	private final LocatorFactory factory;
+	// dense storage: cells indexed by their coordinates, first dimension varying slowest
+	private GridIndexingNode<T>[] cells = null;
+	private long[] ncells = null;
+	// hashed storage: cells indexed by their packed coordinates (LongHashMap does not accept key 0)
+	private LongHashMap<GridIndexingNode<T>> cellTable = null;
+	private GridIndexingNode<T> zeroCell = null;
+	// all non-empty cells
+	private List<GridIndexingNode<T>> occupied = new ArrayList<>();
+	// reverse mapping of items to cells to facilitate removal of items without knowing their location
+	private Map<T,GridIndexingNode<T>> itemToNodeMap = new HashMap<>();
+
+	/**
+	 * Constructor for a grid covering a known domain. Cells are stored in a dense array if their
+	 * number is not larger than {@link #MAX_DENSE_CELLS}, in a hash table otherwise. Since hash 
+	 * tables use packed locators, grids with more cells are only possible in dimensions 2 and 3, 
+	 * and with cell coordinates within the limits of {@link LocatorFactory#canPack(long)}.
+	 * 
+	 * @param domain the region indexed by this grid
+	 * @param cellSize the length of cell sides
+	 * @throws IllegalArgumentException if the grid has more than {@link #MAX_DENSE_CELLS} cells 
+	 * and its cells cannot be stored in a hash table
+	 */
+	@SuppressWarnings("unchecked")
+	public GridIndex(Box domain, double cellSize) {
+		super();
+		dim = domain.dim();
+		this.cellSize = cellSize;
+		factory = new LocatorFactory(cellSize,domain);
+		long[] n = new long[dim];
+		double count = 1.0;
+		for (int j=0; j<dim; j++) {
+			n[j] = factory.convert(domain.upperBound(j),j)+1;
+			count *= n[j];
+		}
+		if (count<=MAX_DENSE_CELLS) {
+			ncells = n;
+			cells = new GridIndexingNode[(int)count];
+			return;
+		}
+		if (!factory.packable())
+			throw new IllegalArgumentException("GridIndex: "+dim+"-dimensional grids cannot have more than "
+				+MAX_DENSE_CELLS+" cells ("+count+" requested) - larger grids are only possible in dimensions 2 and 3");
+		for (int j=0; j<dim; j++)
+			if (!factory.canPack(n[j]-1))
+				throw new IllegalArgumentException("GridIndex: too many cells ("+n[j]+") along dimension "+j);
+		initCellTable();
+	}
+
+	/**
+	 * Constructor for a grid with no limits. Cells are stored in a hash table.
+	 * 
+	 * @param dim the dimension of space (2 or 3)
+	 * @param cellSize the length of cell sides
+	 */
+	public GridIndex(int dim, double cellSize) {
+		super();
+		this.dim = dim;
+		this.cellSize = cellSize;
+		Point origin = Point.newPoint(new double[dim]);
+		factory = new LocatorFactory(cellSize,Box.boundingBox(origin,origin));
+		initCellTable();
+	}
+
+	private void initCellTable() {
+		if (!factory.packable())
+			throw new IllegalArgumentException("GridIndex: unbounded grids are only possible in dimensions 2 and 3");
+		cellTable = new LongHashMap<>();
+	}
+
+	/**
+	 * @return the length of cell sides
+	 */
+	public double cellSize() {
+		return cellSize;
+	}
+
+	// the coordinates of the cell containing x
+	private long[] cellOf(double[] x) {
+		long[] k = new long[dim];
+		for (int j=0; j<dim; j++)
+			k[j] = factory.convert(x[j],j);
+		return k;
+	}
+
+	// the cell of coordinates k, null if empty or if k is out of the grid
+	private GridIndexingNode<T> cellAt(long[] k) {
+		if (cells!=null) {
+			int index = 0;
+			for (int j=0; j<dim; j++) {
+				if ((k[j]<0) || (k[j]>=ncells[j]))
+					return null;
+				index = (int)(index*ncells[j]+k[j]);
+			}
+			return cells[index];
+		}
+		for (int j=0; j<dim; j++)
+			if (!factory.canPack(k[j]))
+				return null;
+		long key = factory.pack(k);
+		return (key==0L) ? zeroCell : cellTable.get(key);
+	}
+
+	// stores a new cell (cell=null to remove it)
+	private void setCellAt(long[] k, GridIndexingNode<T> cell) {
+		if (cells!=null) {
+			int index = 0;
+			for (int j=0; j<dim; j++)
+				index = (int)(index*ncells[j]+k[j]);
+			cells[index] = cell;
+		}
+		else {
+			long key = factory.pack(k);
+			if (key==0L)
+				zeroCell = cell;
+			else if (cell==null)
+				cellTable.remove(key);
+			else
+				cellTable.put(key,cell);
+		}
+	}
+
+	private GridIndexingNode<T> getOrMakeCell(long[] k) {
+		if (cells!=null) {
+			for (int j=0; j<dim; j++)
+				if ((k[j]<0) || (k[j]>=ncells[j]))
+					throw new IllegalArgumentException("GridIndex: location outside of the grid domain");
+		}
+		GridIndexingNode<T> cell = cellAt(k);
+		if (cell==null) {
+			cell = new GridIndexingNode<T>(k);
+			setCellAt(k,cell);
+			cell.rank = occupied.size();
+			occupied.add(cell);
+		}
+		return cell;
+	}
+
+	// removes a cell when it becomes empty
+	private void dropCell(GridIndexingNode<T> cell) {
+		setCellAt(cell.cell,null);
+		GridIndexingNode<T> last = occupied.remove(occupied.size()-1);
+		if (last!=cell) {
+			occupied.set(cell.rank,last);
+			last.rank = cell.rank;
+		}
+		cell.rank = -1;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>An item already present in this grid is not inserted again - use {@link #move(Object, Point)}
+	 * to change its location.</p>
+	 */
+	@Override
+	public void insert(T item, Point at) {
+		if (itemToNodeMap.containsKey(item))
+			return;
+		double[] x = Coordinates.of(at);
+		GridIndexingNode<T> cell = getOrMakeCell(cellOf(x));
+		cell.appendItem(item,x);
+		itemToNodeMap.put(item,cell);
+	}
+
+	/**
+	 * Changes the location of an item. If the item stays in the same cell, this only updates its
+	 * coordinates.
+	 * 
+	 * @param item the item to move
+	 * @param to the new location of the item
+	 * @return false if the item was not found in this grid
+	 */
+	public boolean move(T item, Point to) {
+		GridIndexingNode<T> cell = itemToNodeMap.get(item);
+		if (cell==null)
+			return false;
+		double[] x = Coordinates.of(to);
+		long[] k = cellOf(x);
+		if (Arrays.equals(k,cell.cell))
+			cell.setCoordinates(cell.indexOf(item),x);
+		else {
+			GridIndexingNode<T> newCell = getOrMakeCell(k);
+			cell.removeItem(item);
+			if (cell.nitems==0)
+				dropCell(cell);
+			newCell.appendItem(item,x);
+			itemToNodeMap.put(item,newCell);
+		}
+		return true;
+	}
+
+	@Override
+	public boolean remove(T item) {
+		GridIndexingNode<T> cell = itemToNodeMap.remove(item);
+		if (cell!=null) {
+			cell.removeItem(item);
+			if (cell.nitems==0)
+				dropCell(cell);
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public int size() {
+		return itemToNodeMap.size();
+	}
+
+	@Override
+	public final int dim() {
+		return dim;
+	}
+
+	/**
+	 * A grid has no root node.
+	 * 
+	 * @return null
+	 */
+	@Override
+	public GridIndexingNode<T> root() {
+		return null;
+	}
+
+	@Override
+	public Collection<T> getAllItems() {
+		return Collections.unmodifiableList(new ArrayList<>(itemToNodeMap.keySet()));
+	}
+
+	@Override
+	public void clear() {
+		for (GridIndexingNode<T> cell:occupied) {
+			cell.clear();
+			cell.rank = -1;
+		}
+		occupied.clear();
+		itemToNodeMap.clear();
+		if (cells!=null)
+			Arrays.fill(cells,null);
+		else {
+			cellTable.clear();
+			zeroCell = null;
+		}
+	}
+
+	// number of cells of the block [from,to]
+	private static double blockSize(long[] from, long[] to) {
+		double n = 1.0;
+		for (int j=0; j<from.length; j++)
+			n *= Math.max(0,to[j]-from[j]+1);
+		return n;
+	}
+
+	// restricts the block [from,to] to the grid (dense storage only)
+	private void clamp(long[] from, long[] to) {
+		if (cells!=null)
+			for (int j=0; j<dim; j++) {
+				from[j] = Math.max(from[j],0);
+				to[j] = Math.min(to[j],ncells[j]-1);
+			}
+	}
+
+	/**
+	 * Collects the non-empty cells of the block [from,to] (inclusive bounds). If ring&gt;0, only the
+	 * cells at Chebyshev distance ring from cell c are collected.
+	 */
+	private void collectCells(long[] from, long[] to, long[] c, long ring, List<GridIndexingNode<T>> result) {
+		if (blockSize(from,to)==0.0)
+			return;
+		long[] k = from.clone();
+		int last = dim-1;
+		while (true) {
+			// true if k is strictly inside the ring along all axes but the last
+			boolean inner = ring>0;
+			for (int j=0; (j<last) && inner; j++)
+				inner = Math.abs(k[j]-c[j])<ring;
+			if (inner) {
+				// only the two ends of the ring along the last axis
+				k[last] = c[last]-ring;
+				if (k[last]>=from[last])
+					addCell(k,result);
+				k[last] = c[last]+ring;
+				if (k[last]<=to[last])
+					addCell(k,result);
+			}
+			else
+				for (k[last]=from[last]; k[last]<=to[last]; k[last]++)
+					addCell(k,result);
+			// next cell along the other axes
+			int j = last-1;
+			while ((j>=0) && (k[j]==to[j])) {
+				k[j] = from[j];
+				j--;
+			}
+			if (j<0)
+				break;
+			k[j]++;
+		}
+	}
+
+	private void addCell(long[] k, List<GridIndexingNode<T>> result) {
+		GridIndexingNode<T> cell = cellAt(k);
+		if (cell!=null)
+			result.add(cell);
+	}
+
+	// the non-empty cells of the block [from,to], or all non-empty cells if there are fewer of them
+	private List<GridIndexingNode<T>> cellsWithin(long[] from, long[] to) {
+		clamp(from,to);
+		if (blockSize(from,to)>occupied.size())
+			return occupied;
+		List<GridIndexingNode<T>> result = new ArrayList<>();
+		collectCells(from,to,null,0,result);
+		return result;
+	}
+
+	@Override
+	public Collection<T> getItemsWithin(Box limits) {
+		double[] lower = Coordinates.lowerBounds(limits);
+		double[] upper = Coordinates.upperBounds(limits);
+		long[] from = cellOf(lower);
+		long[] to = cellOf(upper);
+		long[] kfrom = from.clone();
+		long[] kto = to.clone();
+		List<T> extraItems = new ArrayList<>();
+		QuickListOfLists<T> result = new QuickListOfLists<T>();
+		boolean[] mask = new boolean[GridIndexingNode.CELL_CAPACITY];
+		for (GridIndexingNode<T> cell:cellsWithin(from,to)) {
+			// cells strictly between the cells of the box bounds only contain items within the box
+			boolean inner = true;
+			boolean outer = false;
+			for (int j=0; j<dim; j++) {
+				inner &= (cell.cell[j]>kfrom[j]) && (cell.cell[j]<kto[j]);
+				outer |= (cell.cell[j]<kfrom[j]) || (cell.cell[j]>kto[j]);
+			}
+			if (inner)
+				result.addList(cell.localItems());
+			else if (!outer) {
+				if (mask.length<cell.nitems)
+					mask = new boolean[cell.nitems];
+				if (LeafScan.withinBox(cell.lanes,cell.nitems,lower,upper,mask)>0)
+					for (int i=0; i<cell.nitems; i++)
+						if (mask[i])
+							extraItems.add(cell.itemAt(i));
+			}
+		}
+		result.addList(extraItems);
+		return result;
+	}
+
+	@Override
+	public Collection<T> getItemsWithin(Sphere limits) {
+		double[] centre = Coordinates.of(limits.centre());
+		double r = limits.radius();
+		double r2 = r*r;
+		double[] lower = new double[dim];
+		double[] upper = new double[dim];
+		for (int j=0; j<dim; j++) {
+			lower[j] = centre[j]-r;
+			upper[j] = centre[j]+r;
+		}
+		List<T> result = new ArrayList<>();
+		double[] d2 = new double[GridIndexingNode.CELL_CAPACITY];
+		boolean[] mask = new boolean[GridIndexingNode.CELL_CAPACITY];
+		for (GridIndexingNode<T> cell:cellsWithin(cellOf(lower),cellOf(upper))) {
+			if (mask.length<cell.nitems) {
+				d2 = new double[cell.nitems];
+				mask = new boolean[cell.nitems];
+			}
+			if (LeafScan.withinSphere(cell.lanes,cell.nitems,centre,r2,d2,mask)>0)
+				for (int i=0; i<cell.nitems; i++)
+					if (mask[i])
+						result.add(cell.itemAt(i));
+		}
+		return result;
+	}
+
+	// the state of a nearest neighbour search
+	private static class Nearest<T> {
+		double dist2 = Double.POSITIVE_INFINITY;
+		T item = null;
+		// all the items at distance dist2, if required
+		List<T> ties = null;
+		double[] d2 = new double[GridIndexingNode.CELL_CAPACITY];
+
+		void scan(GridIndexingNode<T> cell, double[] q) {
+			if (d2.length<cell.nitems)
+				d2 = new double[cell.nitems];
+			LeafScan.squaredDistances(cell.lanes,cell.nitems,q,d2);
+			for (int i=0; i<cell.nitems; i++) {
+				if (d2[i]<dist2) {
+					dist2 = d2[i];
+					item = cell.itemAt(i);
+					if (ties!=null)
+						ties.clear();
+				}
+				if ((ties!=null) && (d2[i]==dist2))
+					ties.add(cell.itemAt(i));
+			}
+		}
+	}
+
+	// searches cells in rings of increasing size around the cell of q
+	private void nearest(double[] q, Nearest<T> search) {
+		long[] c = cellOf(q);
+		List<GridIndexingNode<T>> ring = new ArrayList<>();
+		for (long r=0; ; r++) {
+			long[] from = new long[dim];
+			long[] to = new long[dim];
+			for (int j=0; j<dim; j++) {
+				from[j] = c[j]-r;
+				to[j] = c[j]+r;
+			}
+			// cheaper to scan all non-empty cells
+			if (Math.pow(2*r+1,dim)>occupied.size()) {
+				for (GridIndexingNode<T> cell:occupied)
+					search.scan(cell,q);
+				return;
+			}
+			clamp(from,to);
+			ring.clear();
+			collectCells(from,to,c,r,ring);
+			for (GridIndexingNode<T> cell:ring)
+				search.scan(cell,q);
+			// all the cells beyond this ring are farther than r cells from q
+			if (Math.sqrt(search.dist2)<r*cellSize)
+				return;
+		}
+	}
+
+	@Override
+	public T getNearestItem(Point at) {
+		if (occupied.isEmpty())
+			return null;
+		Nearest<T> search = new Nearest<>();
+		nearest(Coordinates.of(at),search);
+		return search.item;
+	}
+
+	@Override
+	public Collection<T> getNearestItems(Point at) {
+		Nearest<T> search = new Nearest<>();
+		search.ties = new ArrayList<>();
+		if (!occupied.isEmpty())
+			nearest(Coordinates.of(at),search);
+		return search.ties;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(getClass().getSimpleName()).append('\n');
+		sb.append("cell size = ").append(cellSize)
+			.append(", cells = ").append(occupied.size())
+			.append(", size = ").append(size()).append('\n');
+		for (GridIndexingNode<T> cell:occupied)
+			sb.append(cell.toString());
+		return sb.toString();
+	}
+
+}
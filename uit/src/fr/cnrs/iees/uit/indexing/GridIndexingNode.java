@@ -0,0 +1,83 @@
+/**************************************************************************
+ *  UIT - a Universal Indexing Tree                                       *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            *
+ *                                                                        *
+ *  UIT is a generalisation and re-implementation of QuadTree and Octree  *
+ *  implementations by Paavo Toivanen as downloaded on 27/8/2018 on       *
+ *  <https://dev.solita.fi/2015/08/06/quad-tree.html>                     *
+ *                                                                        *
+ **************************************************************************
+ *  This file is part of UIT (Universal Indexing Tree).                   *
+ *                                                                        *
+ *  UIT is free software: you can redistribute it and/or modify           *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  UIT is distributed in the hope that it will be useful,                *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with UIT.  If not, see <https://www.gnu.org/licenses/gpl.html>. *
+ *                                                                        *
+ **************************************************************************/
+package fr.cnrs.iees.uit.indexing;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * <p>{@linkplain IndexingNode} used in {@link GridIndex}es, i.e. a cell of the grid. Cells have
+ * no parent and no children.</p>
+ * 
+ * <p>Items are stored as in {@link RegionIndexingNode}, i.e. with their coordinates 
+ * as one array per dimension (cf. {@link LeafScan}).</p>
+ *
+ * @author agent - 19 oct. 2026
+ *
+ * @param <T> the type of object stored in this grid
+ */
+class GridIndexingNode<T> extends IndexingNode<T,GridIndexingNode<T>> {
+
+	/** the initial storage capacity of cells */
+	protected static int CELL_CAPACITY = 4;
+
+	/** the cell coordinates in the grid, as computed by a {@link fr.cnrs.iees.uit.indexing.location.LocatorFactory LocatorFactory} */
+	protected final long[] cell;
+	/** the rank of this cell in the list of non-empty cells of the grid */
+	protected int rank = -1;
+
+	protected GridIndexingNode(long[] cell) {
+		super();
+		this.cell = cell;
+		initItems(CELL_CAPACITY,cell.length);
+	}
+
+	@Override
+	public Collection<T> items() {
+		return localItems();
+	}
+
+	@Override
+	public void clear() {
+		clearItems();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb=new StringBuilder();
+		sb.append("cell=").append(Arrays.toString(cell)).append(", items={");
+		for (int i=0; i<nitems; i++) {
+			if (i>0) sb.append(',');
+			sb.append(items[i].toString());
+		}
+		sb.append("}\n");
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,183 @@
+/**************************************************************************
+ *  UIT - a Universal Indexing Tree                                       *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            *
+ *                                                                        *
+ *  UIT is a generalisation and re-implementation of QuadTree and Octree  *
+ *  implementations by Paavo Toivanen as downloaded on 27/8/2018 on       *
+ *  <https://dev.solita.fi/2015/08/06/quad-tree.html>                     *
+ *                                                                        *
+ **************************************************************************
+ *  This file is part of UIT (Universal Indexing Tree).                   *
+ *                                                                        *
+ *  UIT is free software: you can redistribute it and/or modify           *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  UIT is distributed in the hope that it will be useful,                *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with UIT.  If not, see <https://www.gnu.org/licenses/gpl.html>. *
+ *                                                                        *
+ **************************************************************************/
+package fr.cnrs.iees.uit.indexing;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import au.edu.anu.omhtk.collections.QuickListOfLists;
+
+/**
+ * <p>{@linkplain IndexingNode} used in {@link HashedRegionIndexingTree}s.</p>
+ * 
+ * <p>These nodes have no links to their parent or children: they are stored in a hash table of
+ * the tree, indexed by their <em>locational code</em> (a leading 1 bit followed by the child 
+ * indices of every level from the root). The parent of a node is found by removing the last 
+ * {@code dim} bits of its code, and its children by appending their index to its code. A node only
+ * records which of its children exist, as a bitmask.</p>
+ * 
+ * <p>Leaf items are stored as in {@link RegionIndexingNode}, i.e. with their coordinates 
+ * as one array per dimension (cf. {@link LeafScan}), together with their full depth 
+ * locational code.</p>
+ *
+ * @author agent - 19 oct. 2026
+ *
+ * @param <T> the type of object stored in this tree
+ */
+class HashedRegionIndexingNode<T> extends IndexingNode<T,HashedRegionIndexingNode<T>> {
+
+	/** the storage capacity of leaf nodes - may be made dynamic*/
+	protected static int LEAF_MAX_ITEMS = 10;
+
+	/** the locational code of this node */
+	protected final long code;
+	/** the depth of this node (0 for the root) */
+	protected final int depth;
+	/** bit i is set if child i exists */
+	protected long childMask = 0L;
+
+	/** the full depth locational codes of items, in the order of {@link #items} */
+	protected long[] codes = null;
+
+	protected HashedRegionIndexingTree<T> tree = null;
+
+	protected HashedRegionIndexingNode(long code, int depth, HashedRegionIndexingTree<T> tree) {
+		super();
+		this.code = code;
+		this.depth = depth;
+		this.tree = tree;
+	}
+
+	/**
+	 * @return true if this node has no children
+	 */
+	protected final boolean isLeaf() {
+		return childMask==0L;
+	}
+
+	protected void add(T item, double[] x, long xcode) {
+		if (items==null) {
+			initItems(LEAF_MAX_ITEMS,x.length);
+			codes = new long[LEAF_MAX_ITEMS];
+		}
+		int i = appendItem(item,x);
+		codes[i] = xcode;
+	}
+
+	// sets the location of the i-th item
+	protected void setLocation(int i, double[] x, long xcode) {
+		setCoordinates(i,x);
+		codes[i] = xcode;
+	}
+
+	@Override
+	protected void growItems(int capacity) {
+		super.growItems(capacity);
+		codes = Arrays.copyOf(codes,capacity);
+	}
+
+	@Override
+	protected void removeItemAt(int i) {
+		codes[i] = codes[nitems-1];
+		super.removeItemAt(i);
+	}
+
+	/**
+	 * Turns this leaf into an inner node, moving its items to its children. Children are only 
+	 * created if they receive items.
+	 */
+	protected void makeChildren() {
+		for (int i=0; i<nitems; i++) {
+			HashedRegionIndexingNode<T> child = tree.getOrMakeChild(this,tree.childIndex(codes[i],depth));
+			child.add(itemAt(i),coordinatesAt(i),codes[i]);
+			tree.itemToNodeMap.put(itemAt(i),child); // this will replace the former mapping
+		}
+		// inner nodes store no items
+		items = null;
+		lanes = null;
+		codes = null;
+		nitems = 0;
+	}
+
+	/**
+	 * @return true if the items of this leaf do not all have the same full depth code
+	 */
+	protected boolean canSplit() {
+		for (int i=1; i<nitems; i++)
+			if (codes[i]!=codes[0])
+				return true;
+		return false;
+	}
+
+	// recursive
+	private void getAllItems(QuickListOfLists<T> list, HashedRegionIndexingNode<T> node) {
+		if (node.nitems>0)
+			list.addList(node.localItems());
+		else
+			for (long m=node.childMask; m!=0L; m&=m-1L)
+				getAllItems(list,tree.child(node,Long.numberOfTrailingZeros(m)));
+	}
+
+	@Override
+	public Collection<T> items() {
+		QuickListOfLists<T> list = new QuickListOfLists<T>();
+		getAllItems(list,this);
+		return list;
+	}
+
+	@Override
+	public void clear() {
+		clearItems();
+	}
+
+	// for debugging
+	/**
+	 *
+	 * @return a short String description of this node
+	 */
+	protected String toShortString() {
+		StringBuilder sb=new StringBuilder();
+		sb.append("items={");
+		for (int i=0; i<nitems; i++) {
+			if (i>0) sb.append(',');
+			sb.append(items[i].toString());
+		}
+		sb.append("}\n");
+		return sb.toString();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb=new StringBuilder();
+		sb.append("code=").append(Long.toBinaryString(code)).append(", ");
+		sb.append(toShortString());
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,524 @@
+/**************************************************************************
+ *  UIT - a Universal Indexing Tree                                       *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            *
+ *                                                                        *
+ *  UIT is a generalisation and re-implementation of QuadTree and Octree  *
+ *  implementations by Paavo Toivanen as downloaded on 27/8/2018 on       *
+ *  <https://dev.solita.fi/2015/08/06/quad-tree.html>                     *
+ *                                                                        *
+ **************************************************************************
+ *  This file is part of UIT (Universal Indexing Tree).                   *
+ *                                                                        *
+ *  UIT is free software: you can redistribute it and/or modify           *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  UIT is distributed in the hope that it will be useful,                *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with UIT.  If not, see <https://www.gnu.org/licenses/gpl.html>. *
+ *                                                                        *
+ **************************************************************************/
+package fr.cnrs.iees.uit.indexing;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import au.edu.anu.omhtk.collections.QuickListOfLists;
+import fr.cnrs.iees.uit.space.Box;
+import fr.cnrs.iees.uit.space.Point;
+import fr.cnrs.iees.uit.space.Sphere;
+
+/**
+ * <p>A region-based <em>k</em>-d tree where nodes are stored in a hash table indexed by their 
+ * <em>locational code</em> instead of being linked by parent and child references (a 
+ * <em>linear</em> or <em>hashed</em> quadtree / octree).</p>
+ * 
+ * <p>The domain of the tree is divided into a grid of 2<sup>L</sup> cells along each axis, where
+ * L is the maximal depth of the tree. Every location is converted to the integer coordinates of its
+ * cell in this grid, as in {@link LimitedPrecisionIndexingTree}. The locational code of a node at depth 
+ * <em>d</em> is a leading 1 bit followed by the <em>d</em> most significant bits of these integer 
+ * coordinates, interleaved (first dimension first), i.e. the child indices of every level from 
+ * the root. The code of the parent of a node is obtained by removing its last {@code dim} bits, and
+ * the code of the ancestor of any location at any depth is a simple shift of the full depth code 
+ * of this location. Hence:</p>
+ * <ul>
+ * <li>point location finds the deepest node on the path of a location by a binary search on
+ * depth in the hash table, i.e. with a few table lookups whatever the tree depth;</li>
+ * <li>{@link #move(Object, Point)} jumps directly to the lowest common ancestor of the current and 
+ * new location of an item;</li>
+ * <li>range queries start at the lowest node containing the whole query region.</li>
+ * </ul>
+ * 
+ * <p>Codes must fit in a {@code long}, so L = 62/{@code dim} and the tree dimension cannot 
+ * exceed 6. Leaves are not split when all their items are in the same cell of the finest grid.</p>
+ * 
+ * <p>Leaves are selected on their integer coordinates in the finest grid, so that leaves
+ * only touching the query limits are searched too: both {@code getItemsWithin(..)} methods return
+ * all the items within or on the border of their argument, whereas {@link RegionIndexingTree} 
+ * misses those which also lie on a node border (cf. {@link IndexingTree#getItemsWithin(Box)}).
+ * All items are expected to lie within the tree domain; items outside the domain are stored in the
+ * border cells.</p>
+ *
+ * @author agent - 19 oct. 2026
+ *
+ * @param <T> type of content to index
+ */
+public class HashedRegionIndexingTree<T> extends AbstractIndexingTree<T,HashedRegionIndexingNode<T>> {
+
+	/** the maximal dimension of this tree */
+	public static final int MAX_DIM = 6;
+
+	private final Box domain;
+	// maximal depth of the tree
+	private final int levels;
+	private final long maxCoordinate;
+	private final long childIndexMask;
+	// conversion of coordinates to integer cell coordinates
+	private final double[] lower;
+	private final double[] scale;
+	// all nodes indexed by their locational code
+	private final LongHashMap<HashedRegionIndexingNode<T>> nodes = new LongHashMap<>();
+    // reverse mapping of items to nodes to facilitate removal of items without knowing their location
+	protected Map<T,HashedRegionIndexingNode<T>> itemToNodeMap = new HashMap<>();
+
+	/**
+	 * This constructor assumes all items will be contained within the box passed as
+	 * its argument.
+	 * 
+	 * @param domain the region indexed by this tree
+	 */
+	public HashedRegionIndexingTree(Box domain) {
+		super(domain);
+		if (dim>MAX_DIM)
+			throw new IllegalArgumentException("HashedRegionIndexingTree: dimension must not exceed "+MAX_DIM);
+		this.domain = domain;
+		levels = 62/dim;
+		maxCoordinate = (1L<<levels)-1;
+		childIndexMask = (1L<<dim)-1;
+		lower = Coordinates.lowerBounds(domain);
+		scale = new double[dim];
+		for (int j=0; j<dim; j++)
+			scale[j] = Math.scalb(1.0,levels)/domain.sideLength(j);
+		root = new HashedRegionIndexingNode<T>(1L,0,this);
+		nodes.put(1L,root);
+	}
+
+	/**
+	 * @return The {@link Box} region.
+	 */
+	public Box region() {
+		return domain;
+	}
+
+	// integer coordinates of the cell of the finest grid containing x, clamped to the domain
+	private long[] cellCoordinates(double[] x) {
+		long[] k = new long[dim];
+		for (int j=0; j<dim; j++) {
+			double c = Math.floor((x[j]-lower[j])*scale[j]);
+			if (c<=0.0)
+				k[j] = 0L;
+			else if (c>=maxCoordinate)
+				k[j] = maxCoordinate;
+			else
+				k[j] = (long) c;
+		}
+		return k;
+	}
+
+	// full depth locational code of integer cell coordinates
+	private long fullCode(long[] k) {
+		long code = 1L;
+		for (int bit=levels-1; bit>=0; bit--) {
+			int index = 0;
+			for (int j=0; j<dim; j++)
+				index = (index<<1) | (int)((k[j]>>>bit) & 1L);
+			code = (code<<dim) | index;
+		}
+		return code;
+	}
+
+	// full depth locational code of a location
+	private long fullCode(double[] x) {
+		return fullCode(cellCoordinates(x));
+	}
+
+	// code of the ancestor at depth d of a full depth code
+	private long prefix(long code, int d) {
+		return code>>>(dim*(levels-d));
+	}
+
+	// number of levels between a node at depth d and the deepest common ancestor of two codes at that depth
+	private int levelsToCommonAncestor(long code1, long code2) {
+		long diff = code1^code2;
+		return (64-Long.numberOfLeadingZeros(diff)+dim-1)/dim;
+	}
+
+	/**
+	 * @param code the full depth code of an item
+	 * @param depth the depth of a node on the item path
+	 * @return the index of the child of this node containing the item
+	 */
+	protected int childIndex(long code, int depth) {
+		return (int)((code>>>(dim*(levels-depth-1))) & childIndexMask);
+	}
+
+	/**
+	 * @param node a node
+	 * @param i a child index
+	 * @return child i of node, null if it does not exist
+	 */
+	protected HashedRegionIndexingNode<T> child(HashedRegionIndexingNode<T> node, int i) {
+		if ((node.childMask & (1L<<i))==0L)
+			return null;
+		return nodes.get((node.code<<dim)|i);
+	}
+
+	// called by nodes when they split
+	HashedRegionIndexingNode<T> getOrMakeChild(HashedRegionIndexingNode<T> node, int i) {
+		HashedRegionIndexingNode<T> child = child(node,i);
+		if (child==null) {
+			child = new HashedRegionIndexingNode<T>((node.code<<dim)|i,node.depth+1,this);
+			nodes.put(child.code,child);
+			node.childMask |= 1L<<i;
+		}
+		return child;
+	}
+
+	/**
+	 * Finds the deepest existing node on the path of a location, by a binary search on depth in the 
+	 * node table. Nodes on the path of a location exist down to its leaf, or to the inner node above
+	 * its leaf if this leaf is empty (hence absent).
+	 * 
+	 * @param code the full depth code of the location
+	 * @param from a depth at which the node on the path is known to exist
+	 * @param to the maximal depth of the node to find
+	 * @return the deepest existing node on the path, between depths from and to
+	 */
+	protected HashedRegionIndexingNode<T> locate(long code, int from, int to) {
+		HashedRegionIndexingNode<T> node = nodes.get(prefix(code,from));
+		int lo = from;
+		int hi = to;
+		while (lo<hi) {
+			int mid = (lo+hi+1)>>>1;
+			HashedRegionIndexingNode<T> n = nodes.get(prefix(code,mid));
+			if (n!=null) {
+				node = n;
+				lo = mid;
+			}
+			else
+				hi = mid-1;
+		}
+		return node;
+	}
+
+	@Override
+	public void insert(T item, Point at) {
+		double[] x = Coordinates.of(at);
+		insert(item,x,fullCode(x),0);
+	}
+
+	// inserts an item below the node at depth from on its path
+	private void insert(T item, double[] x, long code, int from) {
+		HashedRegionIndexingNode<T> node = locate(code,from,levels);
+		while (true) {
+			if (!node.isLeaf())
+				node = getOrMakeChild(node,childIndex(code,node.depth));
+			// do not insert same item twice at the same location
+			if (node.indexOf(item)>=0)
+				return;
+			// if list of items is full, expand to child nodes
+			// (impossible if all items are in the same cell: the leaf then overflows)
+			if ((node.nitems>=HashedRegionIndexingNode.LEAF_MAX_ITEMS) && node.canSplit())
+				node.makeChildren();
+			else {
+				node.add(item,x,code);
+				itemToNodeMap.put(item,node);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Changes the location of an item. If the item stays in the same leaf, this only updates its
+	 * coordinates. Otherwise the item is reinserted starting from the lowest common ancestor of its
+	 * former and new leaves.
+	 * 
+	 * @param item the item to move
+	 * @param to the new location of the item
+	 * @return false if the item was not found in this tree
+	 */
+	public boolean move(T item, Point to) {
+		HashedRegionIndexingNode<T> leaf = itemToNodeMap.get(item);
+		if (leaf==null)
+			return false;
+		double[] x = Coordinates.of(to);
+		long code = fullCode(x);
+		long path = prefix(code,leaf.depth);
+		if (path==leaf.code)
+			leaf.setLocation(leaf.indexOf(item),x,code);
+		else {
+			int ancestor = leaf.depth-levelsToCommonAncestor(path,leaf.code);
+			leaf.removeItem(item);
+			itemToNodeMap.remove(item);
+			dropNode(leaf);
+			// the common ancestor may have been dropped if it only contained this item
+			if (nodes.get(prefix(code,ancestor))==null)
+				ancestor = 0;
+			insert(item,x,code,ancestor);
+		}
+		return true;
+	}
+
+	// drop empty nodes to adjust tree structure to item content. A parent with no children left
+	// becomes an empty leaf and is dropped in turn.
+	private void dropNode(HashedRegionIndexingNode<T> node) {
+		while ((node.depth>0) && node.isLeaf() && (node.nitems==0)) {
+			nodes.remove(node.code);
+			node.tree = null;
+			HashedRegionIndexingNode<T> parent = nodes.get(node.code>>>dim);
+			parent.childMask &= ~(1L<<(node.code & childIndexMask));
+			node = parent;
+		}
+	}
+
+	@Override
+	public boolean remove(T item) {
+		HashedRegionIndexingNode<T> n = itemToNodeMap.remove(item);
+		if (n!=null) {
+			n.removeItem(item);
+			dropNode(n);
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public int size() {
+		return itemToNodeMap.size();
+	}
+
+	/**
+	 * Collects the non-empty leaves overlapping an integer box (in finest grid coordinates).
+	 * Leaves strictly inside the box only contain items within the matching region and are 
+	 * put in the inner list, the others in the border list.
+	 * 
+	 * @param node the node where to start the search
+	 * @param nlo the integer coordinates of the node lower corner
+	 * @param klo the lower bounds of the integer box
+	 * @param kup the upper bounds of the integer box
+	 */
+	// recursive
+	private void collectLeaves(HashedRegionIndexingNode<T> node, long[] nlo, long[] klo, long[] kup,
+			List<HashedRegionIndexingNode<T>> inner, List<HashedRegionIndexingNode<T>> border) {
+		long size = 1L<<(levels-node.depth);
+		boolean within = true;
+		for (int j=0; j<dim; j++) {
+			long a = nlo[j];
+			long b = a+size-1;
+			if ((b<klo[j]) || (a>kup[j]))
+				return;
+			within &= (a>klo[j]) && (b<kup[j]);
+		}
+		if (node.isLeaf()) {
+			if (node.nitems>0)
+				if (within)
+					inner.add(node);
+				else
+					border.add(node);
+		}
+		else {
+			long half = size>>>1;
+			for (long m=node.childMask; m!=0L; m&=m-1L) {
+				int i = Long.numberOfTrailingZeros(m);
+				for (int j=0; j<dim; j++)
+					if (((i>>(dim-1-j)) & 1)!=0)
+						nlo[j] += half;
+				collectLeaves(nodes.get((node.code<<dim)|i),nlo,klo,kup,inner,border);
+				for (int j=0; j<dim; j++)
+					if (((i>>(dim-1-j)) & 1)!=0)
+						nlo[j] -= half;
+			}
+		}
+	}
+
+	// collects the non-empty leaves overlapping a box, starting from the lowest node containing the box
+	private void collectLeaves(double[] lo, double[] up,
+			List<HashedRegionIndexingNode<T>> inner, List<HashedRegionIndexingNode<T>> border) {
+		long[] klo = cellCoordinates(lo);
+		long[] kup = cellCoordinates(up);
+		long clo = fullCode(klo);
+		int common = levels-levelsToCommonAncestor(clo,fullCode(kup));
+		HashedRegionIndexingNode<T> node = locate(clo,0,common);
+		// the node is on the path of klo: its lower corner is klo truncated at its depth
+		long[] nlo = new long[dim];
+		long mask = -1L<<(levels-node.depth);
+		for (int j=0; j<dim; j++)
+			nlo[j] = klo[j] & mask;
+		collectLeaves(node,nlo,klo,kup,inner,border);
+	}
+
+	@Override
+	public Collection<T> getItemsWithin(Box limits) {
+		double[] lo = Coordinates.lowerBounds(limits);
+		double[] up = Coordinates.upperBounds(limits);
+		List<HashedRegionIndexingNode<T>> inner = new ArrayList<>();
+		List<HashedRegionIndexingNode<T>> border = new ArrayList<>();
+		collectLeaves(lo,up,inner,border);
+		QuickListOfLists<T> result = new QuickListOfLists<T>();
+		// leaves fully contained in limits: insert all items
+		for (HashedRegionIndexingNode<T> n:inner)
+			result.addList(n.localItems());
+		// leaves not fully contained in limits: check all items
+		List<T> extraItems = new ArrayList<>();
+		boolean[] mask = new boolean[HashedRegionIndexingNode.LEAF_MAX_ITEMS];
+		for (HashedRegionIndexingNode<T> n:border) {
+			if (mask.length<n.nitems)
+				mask = new boolean[n.nitems];
+			if (LeafScan.withinBox(n.lanes,n.nitems,lo,up,mask)>0)
+				for (int i=0; i<n.nitems; i++)
+					if (mask[i])
+						extraItems.add(n.itemAt(i));
+		}
+		result.addList(extraItems);
+		return result;
+	}
+
+	@Override
+	public Collection<T> getItemsWithin(Sphere limits) {
+		double[] centre = Coordinates.of(limits.centre());
+		double r = limits.radius();
+		double r2 = r*r;
+		double[] lo = new double[dim];
+		double[] up = new double[dim];
+		for (int j=0; j<dim; j++) {
+			lo[j] = centre[j]-r;
+			up[j] = centre[j]+r;
+		}
+		List<HashedRegionIndexingNode<T>> leaves = new ArrayList<>();
+		collectLeaves(lo,up,leaves,leaves);
+		List<T> result = new ArrayList<>();
+		double[] d2 = new double[HashedRegionIndexingNode.LEAF_MAX_ITEMS];
+		boolean[] mask = new boolean[HashedRegionIndexingNode.LEAF_MAX_ITEMS];
+		for (HashedRegionIndexingNode<T> n:leaves) {
+			if (mask.length<n.nitems) {
+				d2 = new double[n.nitems];
+				mask = new boolean[n.nitems];
+			}
+			if (LeafScan.withinSphere(n.lanes,n.nitems,centre,r2,d2,mask)>0)
+				for (int i=0; i<n.nitems; i++)
+					if (mask[i])
+						result.add(n.itemAt(i));
+		}
+		return result;
+	}
+
+	// CAUTION: not resistant to multiple items at the same location !
+	@Override
+	public T getNearestItem(Point at) {
+		if (itemToNodeMap.isEmpty())
+			return null;
+		double[] q = Coordinates.of(at);
+		HashedRegionIndexingNode<T> node = locate(fullCode(q),0,levels);
+		double dist2 = Double.MAX_VALUE;
+		T theItem = null;
+		double[] d2 = new double[Math.max(node.nitems,HashedRegionIndexingNode.LEAF_MAX_ITEMS)];
+		LeafScan.squaredDistances(node.lanes,node.nitems,q,d2);
+		int k = LeafScan.indexOfMin(d2,node.nitems);
+		if (k>=0) {
+			theItem = node.itemAt(k);
+			dist2 = d2[k];
+		}
+		// search radius: the distance to the closest item found, or the node size if none
+		double r = Math.sqrt(dist2);
+		if (theItem==null) {
+			r = 0.0;
+			for (int j=0; j<dim; j++)
+				r = Math.max(r,domain.sideLength(j));
+			r = Math.scalb(r,-node.depth);
+		}
+		// all items closer than r are within the box around q - enlarge it until one is found
+		double[] lo = new double[dim];
+		double[] up = new double[dim];
+		List<HashedRegionIndexingNode<T>> leaves = new ArrayList<>();
+		while (true) {
+			for (int j=0; j<dim; j++) {
+				lo[j] = q[j]-r;
+				up[j] = q[j]+r;
+			}
+			leaves.clear();
+			collectLeaves(lo,up,leaves,leaves);
+			for (HashedRegionIndexingNode<T> n:leaves)
+				if (n!=node) {
+					if (d2.length<n.nitems)
+						d2 = new double[n.nitems];
+					LeafScan.squaredDistances(n.lanes,n.nitems,q,d2);
+					k = LeafScan.indexOfMin(d2,n.nitems);
+					if (d2[k]<dist2) {
+						dist2 = d2[k];
+						theItem = n.itemAt(k);
+					}
+				}
+			if (Math.sqrt(dist2)<=r)
+				return theItem;
+			r *= 2;
+		}
+	}
+
+	// recursive - called by toString();
+	private String nodeToString(HashedRegionIndexingNode<T> node, int depth, boolean s) {
+		StringBuilder sb = new StringBuilder();
+		if (node!=null) {
+			String indent = "";
+			for (int i=0; i<depth; i++)
+				indent += "--";
+			if (s) sb.append(indent).append(node.toShortString());
+			else sb.append(indent).append(node.toString());
+			for (long m=node.childMask; m!=0L; m&=m-1L)
+				sb.append(nodeToString(child(node,Long.numberOfTrailingZeros(m)),depth+1,s));
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(getClass().getSimpleName()+"\n");
+		sb.append(nodeToString(root,0,false));
+		return sb.toString();
+	}
+
+	/**
+	 *
+	 * @return a 'short' description of this tree
+	 */
+	public String toShortString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(getClass().getSimpleName()+"\n");
+		sb.append("region = ");
+		sb.append(domain.toString());
+		sb.append('\n');
+		sb.append(nodeToString(root,0,true));
+		return sb.toString();
+	}
+
+	@Override
+	public void clear() {
+		itemToNodeMap.clear();
+		nodes.clear();
+		root.clear();
+		root.childMask = 0L;
+		nodes.put(1L,root);
+	}
+
+}
@@ -28,7 +28,10 @@
  **************************************************************************/
 package fr.cnrs.iees.uit.indexing;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * <p>This class is both a wrapper used to store items in the tree and the node  type used to build
@@ -36,6 +39,12 @@ import java.util.Collection;
  * 
  * <p>This class and its subclasses are only internally used by {@link IndexingTree} implementations, 
  * so their visibility is limited to this package.</p>
+ * 
+ * <p>Leaves storing their items in arrays share the code managing them: {@link #items} holds 
+ * the first {@link #nitems} items, in no particular order, and {@link #lanes} their coordinates,
+ * one array per dimension (cf. {@link LeafScan}). Removing an item moves the last one to its 
+ * place. Subclasses keeping more data per item in other arrays extend {@link #growItems(int)}
+ * and {@link #removeItemAt(int)}.</p>
  *
  * @author Jacques Gignoux - 07-08-2018
  *
@@ -53,6 +62,272 @@ abstract class IndexingNode<T,N> {
 	 */
 	protected N[] children = null;
 
+	/**
+	 * <p>Occupancy bitmask of the children, for nodes using a <em>sparse</em> child representation: 
+	 * bit <em>i</em> is set if child <em>i</em> exists. In this representation, empty children
+	 * are not allocated and {@link #children} only contains the existing children, in increasing order of
+	 * their index. {@code null} if the node has no children or if {@code children} is a plain array.</p>
+	 */
+	protected long[] occupancy = null;
+
+	/** The items stored in this node (leaves storing items in arrays only), first {@link #nitems} entries */
+	protected Object[] items = null;
+
+	/** The item coordinates, one array per dimension, in the order of {@link #items} 
+	 * ({@code null} if item locations are stored otherwise) */
+	protected double[][] lanes = null;
+
+	/** The number of items stored in {@link #items} */
+	protected int nitems = 0;
+
+	/**
+	 * Turns this node into an inner node with no child, using the sparse child representation.
+	 * 
+	 * @param emptyChildren an empty array of the proper node type
+	 * @param nchildren the maximal number of children
+	 */
+	protected final void initChildren(N[] emptyChildren, int nchildren) {
+		children = emptyChildren;
+		occupancy = new long[Math.max(1,nchildren>>>6)];
+	}
+
+	/**
+	 * @param i a child index
+	 * @return true if child i exists
+	 */
+	protected final boolean hasChild(int i) {
+		return (occupancy[i>>>6] & (1L<<i)) != 0L;
+	}
+
+	// rank of child i in the children array, i.e. the number of existing children before it
+	private int childRank(int i) {
+		int w = i>>>6;
+		int rank = Long.bitCount(occupancy[w] & ((1L<<i)-1L));
+		for (int k=0; k<w; k++)
+			rank += Long.bitCount(occupancy[k]);
+		return rank;
+	}
+
+	/**
+	 * @param i a child index
+	 * @return child i, or null if it does not exist
+	 */
+	protected final N child(int i) {
+		if (hasChild(i))
+			return children[childRank(i)];
+		return null;
+	}
+
+	/**
+	 * @param from a child index
+	 * @return the index of the first existing child with index &ge; from, -1 if none
+	 */
+	protected final int nextChild(int from) {
+		int w = from>>>6;
+		if (w>=occupancy.length)
+			return -1;
+		long word = occupancy[w] & (-1L<<from);
+		while (word==0L) {
+			if (++w==occupancy.length)
+				return -1;
+			word = occupancy[w];
+		}
+		return (w<<6) + Long.numberOfTrailingZeros(word);
+	}
+
+	/**
+	 * Stores a new child at index i
+	 * 
+	 * @param i a child index
+	 * @param child the child node
+	 */
+	protected final void addChild(int i, N child) {
+		int r = childRank(i);
+		N[] newChildren = Arrays.copyOf(children,children.length+1);
+		System.arraycopy(children,r,newChildren,r+1,children.length-r);
+		newChildren[r] = child;
+		children = newChildren;
+		occupancy[i>>>6] |= 1L<<i;
+	}
+
+	/**
+	 * Replaces an existing child
+	 * 
+	 * @param i a child index
+	 * @param child the new child node
+	 */
+	protected final void replaceChild(int i, N child) {
+		children[childRank(i)] = child;
+	}
+
+	/**
+	 * Removes a child. If it was the last one, this node becomes a leaf.
+	 * 
+	 * @param child the child to remove
+	 * @return false if child was not found
+	 */
+	protected final boolean removeChild(N child) {
+		int r = 0;
+		for (int i=nextChild(0); i>=0; i=nextChild(i+1), r++)
+			if (children[r]==child) {
+				occupancy[i>>>6] &= ~(1L<<i);
+				if (children.length==1) {
+					children = null;
+					occupancy = null;
+				}
+				else {
+					N[] newChildren = Arrays.copyOf(children,children.length-1);
+					System.arraycopy(children,r+1,newChildren,r,children.length-r-1);
+					children = newChildren;
+				}
+				return true;
+			}
+		return false;
+	}
+
+	/**
+	 * Allocates empty item arrays.
+	 * 
+	 * @param capacity the initial capacity (&gt;0)
+	 * @param dim the number of coordinate lanes, 0 if item locations are stored otherwise
+	 */
+	protected final void initItems(int capacity, int dim) {
+		items = new Object[capacity];
+		lanes = (dim>0) ? new double[dim][capacity] : null;
+		nitems = 0;
+	}
+
+	/**
+	 * Enlarges the item arrays.
+	 * 
+	 * @param capacity the new capacity
+	 */
+	protected void growItems(int capacity) {
+		items = Arrays.copyOf(items,capacity);
+		if (lanes!=null)
+			for (int j=0; j<lanes.length; j++)
+				lanes[j] = Arrays.copyOf(lanes[j],capacity);
+	}
+
+	/**
+	 * Appends an item to the item arrays, doubling their capacity if they are full.
+	 * 
+	 * @param item the item to store
+	 * @param x the item coordinates, {@code null} if item locations are stored otherwise
+	 * @return the rank of the new item
+	 */
+	protected final int appendItem(Object item, double[] x) {
+		if (nitems==items.length)
+			growItems(2*nitems);
+		items[nitems] = item;
+		if (x!=null)
+			setCoordinates(nitems,x);
+		return nitems++;
+	}
+
+	/**
+	 * Sets the coordinates of the i<sup>th</sup> item
+	 * 
+	 * @param i an item rank
+	 * @param x the item coordinates
+	 */
+	protected final void setCoordinates(int i, double[] x) {
+		for (int j=0; j<lanes.length; j++)
+			lanes[j][i] = x[j];
+	}
+
+	/**
+	 * @param i an item rank
+	 * @return the coordinates of the i<sup>th</sup> item, in a new array
+	 */
+	protected final double[] coordinatesAt(int i) {
+		double[] x = new double[lanes.length];
+		for (int j=0; j<x.length; j++)
+			x[j] = lanes[j][i];
+		return x;
+	}
+
+	/**
+	 * @param i an item rank
+	 * @return the i<sup>th</sup> item
+	 */
+	@SuppressWarnings("unchecked")
+	protected final T itemAt(int i) {
+		return (T) items[i];
+	}
+
+	/**
+	 * @return true if items are compared by reference rather than with {@code equals()}
+	 */
+	protected boolean identity() {
+		return false;
+	}
+
+	/**
+	 * @param item an item
+	 * @return the rank of item in the item arrays, -1 if absent
+	 */
+	protected int indexOf(Object item) {
+		if (identity()) {
+			for (int i=0; i<nitems; i++)
+				if (item==items[i])
+					return i;
+		}
+		else
+			for (int i=0; i<nitems; i++)
+				if (item.equals(items[i]))
+					return i;
+		return -1;
+	}
+
+	/**
+	 * Removes the i<sup>th</sup> item: the last item takes its place.
+	 * 
+	 * @param i an item rank
+	 */
+	protected void removeItemAt(int i) {
+		int last = nitems-1;
+		items[i] = items[last];
+		items[last] = null;
+		if (lanes!=null)
+			for (int j=0; j<lanes.length; j++)
+				lanes[j][i] = lanes[j][last];
+		nitems = last;
+	}
+
+	/**
+	 * Removes an item from the item arrays.
+	 * 
+	 * @param item the item to remove
+	 * @return true if the item was found
+	 */
+	protected final boolean removeItem(Object item) {
+		int i = indexOf(item);
+		if (i<0)
+			return false;
+		removeItemAt(i);
+		return true;
+	}
+
+	/**
+	 * Removes all items, keeping the item arrays.
+	 */
+	protected final void clearItems() {
+		if (items!=null)
+			Arrays.fill(items,0,nitems,null);
+		nitems = 0;
+	}
+
+	/**
+	 * @return a copy of the items stored in this node only
+	 */
+	@SuppressWarnings("unchecked")
+	protected List<T> localItems() {
+		if (nitems==0)
+			return Collections.emptyList();
+		return Collections.unmodifiableList(Arrays.asList((T[])Arrays.copyOf(items,nitems)));
+	}
+
 //	/**
 //	 * Store an item into this node. ---> moved to descendants
 //	 *
@@ -66,7 +341,13 @@ abstract class IndexingNode<T,N> {
 	 * Will throw an Exception if more than one item is present in the node.
 	 * @return the only or first item contained in this node.
 	 */
-	public abstract T item();
+	public T item() {
+		if (nitems==0)
+			return null;
+		if (nitems==1)
+			return itemAt(0);
+		throw new UnsupportedOperationException("Item list contains more than one item - use items() to get them.");
+	}
 
 	/**
 	 * CAUTION: this returns <em>all</em> items starting at this node, including all those of its children nodes.
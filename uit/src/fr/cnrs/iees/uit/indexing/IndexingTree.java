@@ -29,6 +29,7 @@
 package fr.cnrs.iees.uit.indexing;
 
 import java.util.Collection;
+import java.util.stream.Stream;
 
 import fr.cnrs.iees.uit.space.Box;
 import fr.cnrs.iees.uit.space.Dimensioned;
@@ -45,6 +46,16 @@ import fr.cnrs.iees.omhtk.Sizeable;
  * tree structure, like binary trees, quad-trees and octrees. This interface is
  * the root of the hierarchy.
  * </p>
+ * <p>
+ * Items are identified by their {@code equals()} and {@code hashCode()} methods,
+ * e.g. to find the item to {@linkplain #remove(Object) remove}.
+ * {@link BoundedRegionIndexingTree}, {@link ExpandingRegionIndexingTree} and the
+ * quadtree and octree classes ({@link BoundedQuadRegionIndexingTree},
+ * {@link ExpandingQuadRegionIndexingTree}, {@link BoundedOctRegionIndexingTree},
+ * {@link ExpandingOctRegionIndexingTree}) have constructors taking an
+ * {@code identity} flag, which makes them identify items by reference instead.
+ * All other implementations always use value semantics.
+ * </p>
  *
  * @author Jacques Gignoux - 07-08-2018
  *
@@ -93,7 +104,12 @@ public interface IndexingTree<T,N extends IndexingNode<T,N>> extends Dimensioned
 	public abstract boolean remove(T item);
 
 	/**
-	 * Get all items within a {@linkplain Box} contained in the tree space.
+	 * <p>Get all items within a {@linkplain Box} contained in the tree space.</p>
+	 * <p>Items lying on the border of {@code limits} are within it (cf. 
+	 * {@link Box#contains(Point)}). However, {@link RegionIndexingTree} and the trees derived 
+	 * from it only search the nodes which strictly overlap {@code limits} (cf. 
+	 * {@link Box#overlaps(Box)}): they miss the items lying both on the border of 
+	 * {@code limits} and on the border of a node region.</p>
 	 * 
 	 * @param limits the Box in which to search for items
 	 * @return the list of items contained in the Box
@@ -101,7 +117,12 @@ public interface IndexingTree<T,N extends IndexingNode<T,N>> extends Dimensioned
 	public abstract Collection<T> getItemsWithin(Box limits);
 
 	/**
-	 * Get all items within a {@linkplain Sphere spherical region} contained in the tree space.
+	 * <p>Get all items within a {@linkplain Sphere spherical region} contained in the tree space.</p>
+	 * <p>Items lying on the surface of {@code limits} are within it (cf. 
+	 * {@link Sphere#contains(Point)}). As for {@link #getItemsWithin(Box)}, 
+	 * {@link RegionIndexingTree} may miss items lying on the border of a node region. It may 
+	 * also return items outside the sphere but within its bounding box (cf. 
+	 * {@link Sphere#contains(Box)}).</p>
 	 * 
 	 * @param limits the Sphere in which to search for items
 	 * @return the list of items contained in the Sphere
@@ -118,5 +139,41 @@ public interface IndexingTree<T,N extends IndexingNode<T,N>> extends Dimensioned
 	 * empties this tree
 	 */
 	public abstract void clear();
+
+	/**
+	 * @return a sequential stream over all items of this tree
+	 */
+	public default Stream<T> stream() {
+		return getAllItems().stream();
+	}
+
+	/**
+	 * @return a possibly parallel stream over all items of this tree
+	 */
+	public default Stream<T> parallelStream() {
+		return getAllItems().parallelStream();
+	}
+
+	/**
+	 * Get a stream over all items within a {@linkplain Box} contained in the tree space.
+	 * Call {@link Stream#parallel() parallel()} on it to process the items in parallel.
+	 * 
+	 * @param limits the Box in which to search for items
+	 * @return a sequential stream over the items contained in the Box
+	 */
+	public default Stream<T> streamWithin(Box limits) {
+		return getItemsWithin(limits).stream();
+	}
+
+	/**
+	 * Get a stream over all items within a {@linkplain Sphere spherical region} contained in the 
+	 * tree space. Call {@link Stream#parallel() parallel()} on it to process the items in parallel.
+	 * 
+	 * @param limits the Sphere in which to search for items
+	 * @return a sequential stream over the items contained in the Sphere
+	 */
+	public default Stream<T> streamWithin(Sphere limits) {
+		return getItemsWithin(limits).stream();
+	}
 	
 }
@@ -0,0 +1,56 @@
+/**************************************************************************
+ *  UIT - a Universal Indexing Tree                                       *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            *
+ *                                                                        *
+ *  UIT is a generalisation and re-implementation of QuadTree and Octree  *
+ *  implementations by Paavo Toivanen as downloaded on 27/8/2018 on       *
+ *  <https://dev.solita.fi/2015/08/06/quad-tree.html>                     *
+ *                                                                        *
+ **************************************************************************
+ *  This file is part of UIT (Universal Indexing Tree).                   *
+ *                                                                        *
+ *  UIT is free software: you can redistribute it and/or modify           *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  UIT is distributed in the hope that it will be useful,                *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with UIT.  If not, see <https://www.gnu.org/licenses/gpl.html>. *
+ *                                                                        *
+ **************************************************************************/
+package fr.cnrs.iees.uit.indexing;
+
+/**
+ * <p>An opaque reference to an item stored in a {@link RegionIndexingTree}, as returned by 
+ * {@link RegionIndexingTree#insertWithHandle(Object, fr.cnrs.iees.uit.space.Point) insertWithHandle(...)}.
+ * It records the node where the item is stored and its rank in this node, and is kept up to date
+ * by the tree when the item is moved to another node. It enables to remove or move the item 
+ * without looking it up in the tree item map, i.e. without calling its {@code hashCode()} method.</p>
+ *
+ * <p>A handle becomes invalid when its item is removed from the tree or when the tree is cleared.</p>
+ *
+ * @author agent - 19 oct. 2026
+ *
+ * @param <T> the type of the item
+ */
+public final class ItemHandle<T> {
+
+	// the node where the item is stored (null if the item was removed) and its rank there
+	RegionIndexingNode<T> node = null;
+	int slot = -1;
+	// the tree generation when the item was inserted, cf. RegionIndexingTree.clear()
+	int generation = 0;
+
+	ItemHandle() {
+		super();
+	}
+
+}
@@ -0,0 +1,403 @@
+/**************************************************************************
+ *  UIT - a Universal Indexing Tree                                       *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            *
+ *                                                                        *
+ *  UIT is a generalisation and re-implementation of QuadTree and Octree  *
+ *  implementations by Paavo Toivanen as downloaded on 27/8/2018 on       *
+ *  <https://dev.solita.fi/2015/08/06/quad-tree.html>                     *
+ *                                                                        *
+ **************************************************************************
+ *  This file is part of UIT (Universal Indexing Tree).                   *
+ *                                                                        *
+ *  UIT is free software: you can redistribute it and/or modify           *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  UIT is distributed in the hope that it will be useful,                *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with UIT.  If not, see <https://www.gnu.org/licenses/gpl.html>. *
+ *                                                                        *
+ **************************************************************************/
+package fr.cnrs.iees.uit.indexing;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import au.edu.anu.omhtk.collections.QuickListOfLists;
+import fr.cnrs.iees.uit.space.Box;
+import fr.cnrs.iees.uit.space.Point;
+
+/**
+ * <p>{@linkplain IndexingNode} used in {@link KdRegionIndexingTree}s. Unlike 
+ * {@link RegionIndexingNode}, which splits its region along all dimensions at once into 
+ * 2<sup>dim</sup> children, this node splits its region along a single axis into 2 children.</p>
+ * 
+ * <p>Leaf items are stored as in {@link RegionIndexingNode}, i.e. with their coordinates 
+ * as one array per dimension (cf. {@link LeafScan}).</p>
+ *
+ * @author agent - 19 oct. 2026
+ *
+ * @param <T> the type of object stored in this tree
+ */
+class KdRegionIndexingNode<T> extends IndexingNode<T,KdRegionIndexingNode<T>> {
+
+	/** the storage capacity of leaf nodes - may be made dynamic*/
+	protected static int LEAF_MAX_ITEMS = 10;
+
+	// built lazily from lower and upper when first needed
+	private Box region = null;
+	// region bounds
+	protected double[] lower;
+	protected double[] upper;
+	// the split axis and position: items with x[axis]>=split go to children[1], the others to children[0]
+	// for leaves, axis is the axis of the next split in cycling mode
+	protected int axis;
+	protected double split;
+
+	private int dim;
+
+	protected KdRegionIndexingTree<T> tree = null;
+
+	/**
+	 * 
+	 * @param parent a parent node (if null, this is the root node of the tree)
+	 * @param lower the lower bounds of the portion of space represented by this node
+	 * @param upper the upper bounds of the portion of space represented by this node
+	 * @param axis the axis of the first split of this node in cycling mode
+	 * @param tree the tree this node belongs to
+	 */
+	protected KdRegionIndexingNode(KdRegionIndexingNode<T> parent, double[] lower, double[] upper,
+			int axis, KdRegionIndexingTree<T> tree) {
+		super();
+		this.parent = parent;
+		this.tree = tree;
+		this.lower = lower;
+		this.upper = upper;
+		this.axis = axis;
+		dim = lower.length;
+	}
+
+	/**
+	 *
+	 * @return the portion of space represented by this node
+	 */
+	protected Box region() {
+		if (region==null)
+			region = Box.boundingBox(Point.newPoint(lower.clone()),Point.newPoint(upper.clone()));
+		return region;
+	}
+
+	/**
+	 * Same as {@code region().contains(loc)}, without instantiating the region.
+	 *
+	 * @param loc the point coordinates to test
+	 * @return true if loc is within (or on the edge of) this node region
+	 */
+	protected boolean contains(double[] loc) {
+		for (int i=0; i<dim; i++)
+			if ((loc[i]>upper[i]) || (loc[i]<lower[i]))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Same as {@code region().overlaps(limits)}, without instantiating the region.
+	 *
+	 * @param lo the lower bounds of the box to test
+	 * @param up the upper bounds of the box to test
+	 * @return true if this node region strictly overlaps the box
+	 */
+	protected boolean overlaps(double[] lo, double[] up) {
+		for (int i=0; i<dim; i++)
+			if ((upper[i]<=lo[i]) || (lower[i]>=up[i]))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Same as {@code limits.contains(region())}, without instantiating the region.
+	 *
+	 * @param lo the lower bounds of the box to test
+	 * @param up the upper bounds of the box to test
+	 * @return true if this node region is fully contained in the box
+	 */
+	protected boolean isWithin(double[] lo, double[] up) {
+		for (int i=0; i<dim; i++)
+			if ((lower[i]<lo[i]) || (upper[i]>up[i]))
+				return false;
+		return true;
+	}
+
+	/**
+	 * @param c the sphere centre coordinates
+	 * @param r2 the squared sphere radius
+	 * @return true if the whole region lies within distance r of c, i.e. its farthest corner does
+	 */
+	protected boolean isWithin(double[] c, double r2) {
+		double d2 = 0.0;
+		for (int i=0; i<dim; i++) {
+			double d = Math.max(c[i]-lower[i],upper[i]-c[i]);
+			d2 += d*d;
+		}
+		return d2<=r2;
+	}
+
+	/**
+	 * Same result as {@link fr.cnrs.iees.uit.space.Distance#distanceToClosestEdge(Point, Box)}
+	 * for this node region.
+	 */
+	protected double distanceToClosestEdge(double[] loc) {
+		boolean in = (loc[0]>=lower[0]) && (loc[0]<=upper[0]);
+		double dist = Math.min(Math.abs(loc[0]-lower[0]),Math.abs(loc[0]-upper[0]));
+		for (int i=1; i<dim; i++) {
+			double d = Math.min(Math.abs(loc[i]-lower[i]),Math.abs(loc[i]-upper[i]));
+			boolean isIn = (loc[i]>=lower[i]) && (loc[i]<=upper[i]);
+			if (in)
+				dist = isIn ? Math.min(dist,d) : d;
+			else if (!isIn)
+				dist = Math.sqrt(dist*dist+d*d);
+			in = isIn;
+		}
+		return dist;
+	}
+
+	// index of the child containing loc - points on the split go to the upper child
+	protected final int childIndex(double[] loc) {
+		return (loc[axis]>=split) ? 1 : 0;
+	}
+
+	/**
+	 * @param i the rank of an item in this node
+	 * @return the location of the i<sup>th</sup> item
+	 */
+	protected Point location(int i) {
+		return Point.newPoint(coordinatesAt(i));
+	}
+
+	private void add(T item, double[] x) {
+		if (items==null)
+			initItems(LEAF_MAX_ITEMS,dim);
+		appendItem(item,x);
+	}
+
+	// the following items are shifted to keep leaf items in insertion order
+	@Override
+	protected void removeItemAt(int i) {
+		int n = nitems-i-1;
+		System.arraycopy(items,i+1,items,i,n);
+		for (int j=0; j<dim; j++)
+			System.arraycopy(lanes[j],i+1,lanes[j],i,n);
+		nitems--;
+		items[nitems] = null;
+	}
+
+	/**
+	 * <p>Computes a new root region containing the point passed as an argument, by extending 
+	 * the region along the first axis where the point is outside. The former root becomes one of the
+	 * children of the new root, the other child being an empty node covering the extension. The 
+	 * extension doubles the region length along this axis, or more if needed to reach the point.</p>
+	 * <p>This method is only used in the {@linkplain ExpandingKdRegionIndexingTree}, and must be
+	 * called until the returned root contains the point.</p>
+	 * @param loc the point coordinates to include in the tree region
+	 * @return the new root node for the calling tree
+	 */
+	protected KdRegionIndexingNode<T> expandRootRegion(double[] loc) {
+		int a = 0;
+		while ((loc[a]>=lower[a]) && (loc[a]<=upper[a]))
+			a++;
+		double side = upper[a]-lower[a];
+		double[] newlows = lower.clone();
+		double[] newups = upper.clone();
+		double[] extlows = lower.clone();
+		double[] extups = upper.clone();
+		parent = new KdRegionIndexingNode<T>(null,newlows,newups,a,tree);
+		parent.children = newChildren();
+		if (loc[a]>upper[a]) {
+			newups[a] = Math.max(loc[a],upper[a]+side);
+			extlows[a] = upper[a];
+			extups[a] = newups[a];
+			// items on my upper bound must still be found in me
+			parent.split = Math.nextUp(upper[a]);
+			parent.children[0] = this;
+			parent.children[1] = new KdRegionIndexingNode<T>(parent,extlows,extups,(a+1)%dim,tree);
+		}
+		else {
+			newlows[a] = Math.min(loc[a],lower[a]-side);
+			extlows[a] = newlows[a];
+			extups[a] = lower[a];
+			parent.split = lower[a];
+			parent.children[0] = new KdRegionIndexingNode<T>(parent,extlows,extups,(a+1)%dim,tree);
+			parent.children[1] = this;
+		}
+		return parent;
+	}
+
+	@SuppressWarnings("unchecked")
+	private KdRegionIndexingNode<T>[] newChildren() {
+		return new KdRegionIndexingNode[2];
+	}
+
+	/**
+	 * Inserts an item in the leaf node containing its location, below this node.
+	 * 
+	 * @param item the item to insert
+	 * @param loc the item coordinates
+	 * @return the leaf node where the item was inserted, null if it was already there
+	 */
+	public KdRegionIndexingNode<T> insert(T item, double[] loc) {
+		KdRegionIndexingNode<T> node = this;
+		while (node.children!=null)
+			node = node.children[node.childIndex(loc)];
+		// do not insert same item twice at the same location
+		if (node.indexOf(item)>=0)
+			return null;
+		// if list of items is full, split the node in two
+		// (impossible if all items are at the same location: the leaf then overflows)
+		if ((node.nitems >= LEAF_MAX_ITEMS) && node.makeChildren())
+			return node.insert(item,loc);
+		node.add(item,loc);
+		return node;
+	}
+
+	// computes the split axis and position - returns false if all items are at the same location
+	private boolean chooseSplit() {
+		double bestSpread = 0.0;
+		int bestAxis = -1;
+		double bestMin = 0.0, bestMax = 0.0;
+		for (int j=0; j<dim; j++) {
+			double[] x = lanes[j];
+			double min = x[0], max = x[0];
+			for (int i=1; i<nitems; i++) {
+				if (x[i]<min) min = x[i];
+				if (x[i]>max) max = x[i];
+			}
+			if ((max-min)>bestSpread) {
+				bestSpread = max-min;
+				bestAxis = j;
+				bestMin = min;
+				bestMax = max;
+			}
+		}
+		if (bestAxis<0)
+			return false;
+		if (tree.splitRule==KdRegionIndexingTree.SplitRule.MAX_SPREAD) {
+			// split halfway between the extreme items, so that both children get items
+			axis = bestAxis;
+			split = (bestMin+bestMax)/2;
+			if (split<=bestMin)
+				split = bestMax;
+		}
+		else if (tree.splitRule==KdRegionIndexingTree.SplitRule.MEDIAN) {
+			axis = bestAxis;
+			split = median(lanes[bestAxis],bestMin);
+		}
+		else
+			split = (lower[axis]+upper[axis])/2;
+		return true;
+	}
+
+	// median of the first nitems values of x - if it is equal to the minimum (many items with the
+	// minimal value), the smallest value above the minimum is used so that both children get items
+	private double median(double[] x, double min) {
+		double[] sorted = Arrays.copyOf(x,nitems);
+		Arrays.sort(sorted);
+		int i = nitems/2;
+		while (sorted[i]<=min)
+			i++;
+		return sorted[i];
+	}
+
+	// create children nodes and move the contained items to them
+	private boolean makeChildren() {
+		if (!chooseSplit())
+			return false;
+		int next = (axis+1)%dim;
+		double[] lows = lower.clone();
+		double[] ups = upper.clone();
+		ups[axis] = split;
+		double[] lows2 = lower.clone();
+		lows2[axis] = split;
+		children = newChildren();
+		children[0] = new KdRegionIndexingNode<T>(this,lows,ups,next,tree);
+		children[1] = new KdRegionIndexingNode<T>(this,lows2,upper.clone(),next,tree);
+		// spread the extant items into the child nodes
+		for (int i=0; i<nitems; i++) {
+			double[] x = coordinatesAt(i);
+			KdRegionIndexingNode<T> newNode = children[childIndex(x)];
+			newNode.add(itemAt(i),x);
+			tree.itemToNodeMap.put(itemAt(i),newNode); // this will replace the former mapping
+		}
+		// empty the item list now they have been put in the child nodes
+		clear();
+		return true;
+	}
+
+	// recursive
+	private void getAllItems(QuickListOfLists<T> list, KdRegionIndexingNode<T> node) {
+		if (node.nitems>0)
+			list.addList(node.localItems());
+		else if (node.children!=null)
+			for (int i=0; i<node.children.length; i++)
+				getAllItems(list,node.children[i]);
+	}
+
+	@Override
+	public final Collection<T> items() {
+		QuickListOfLists<T> list = new QuickListOfLists<T>();
+		getAllItems(list,this);
+		return list;
+	}
+
+	@Override
+	public final void clear() {
+		items = null;
+		lanes = null;
+		nitems = 0;
+	}
+
+	// for debugging
+	/**
+	 *
+	 * @return a short String description of this node
+	 */
+	protected String toShortString() {
+		StringBuilder sb=new StringBuilder();
+		sb.append("items={");
+		for (int i=0; i<nitems; i++) {
+			if (i>0) sb.append(',');
+			sb.append(items[i].toString());
+		}
+		sb.append("}\n");
+		return sb.toString();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb=new StringBuilder();
+		sb.append("region=[")
+			.append(region().lowerBounds().toString())
+			.append("-")
+			.append(region().upperBounds().toString())
+			.append("], ");
+		if (children!=null)
+			sb.append("split=x").append(axis).append("@").append(split).append(", ");
+		sb.append("items={");
+		for (int i=0; i<nitems; i++) {
+			if (i>0) sb.append(',');
+			sb.append(items[i].toString())
+				.append("@")
+				.append(location(i).toString());
+		}
+		sb.append("}\n");
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,383 @@
+/**************************************************************************
+ *  UIT - a Universal Indexing Tree                                       *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            *
+ *                                                                        *
+ *  UIT is a generalisation and re-implementation of QuadTree and Octree  *
+ *  implementations by Paavo Toivanen as downloaded on 27/8/2018 on       *
+ *  <https://dev.solita.fi/2015/08/06/quad-tree.html>                     *
+ *                                                                        *
+ **************************************************************************
+ *  This file is part of UIT (Universal Indexing Tree).                   *
+ *                                                                        *
+ *  UIT is free software: you can redistribute it and/or modify           *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  UIT is distributed in the hope that it will be useful,                *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with UIT.  If not, see <https://www.gnu.org/licenses/gpl.html>. *
+ *                                                                        *
+ **************************************************************************/
+package fr.cnrs.iees.uit.indexing;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import au.edu.anu.omhtk.collections.QuickListOfLists;
+import fr.cnrs.iees.uit.space.Box;
+import fr.cnrs.iees.uit.space.Point;
+import fr.cnrs.iees.uit.space.Sphere;
+
+/**
+ * <p>A region-based binary <em>k</em>-d tree.</p>
+ * 
+ * <p>{@link RegionIndexingTree} splits full leaves along all dimensions at once, creating 
+ * 2<sup>dim</sup> children at every split. This is fine in low dimensions, but in high 
+ * dimensions (e.g. for dim&gt;4) most of these children are empty and the tree becomes 
+ * very costly in memory. This tree splits full leaves along a single axis at a time, so that every
+ * node has either 0 or 2 children. The split axis is chosen according to a {@link SplitRule}:</p>
+ * <ul>
+ * <li>{@link SplitRule#CYCLE} (the default): axes are used in turn when going down the tree, and 
+ * nodes are split at the middle of their region;</li>
+ * <li>{@link SplitRule#MAX_SPREAD}: the node is split along the axis where its items are most 
+ * spread, halfway between the extreme items along this axis. This adapts the tree to 
+ * data that are not evenly spread over all axes;</li>
+ * <li>{@link SplitRule#MEDIAN}: the node is split along the axis where its items are most 
+ * spread, at the median of the items along this axis. Both children then get about the same 
+ * number of items, so that the tree depth grows as log(n) even with strongly skewed 
+ * distributions (e.g. most items packed in a corner of the region), where splitting at the 
+ * middle of regions gives deep, unbalanced trees.</li>
+ * </ul>
+ * <p>A leaf whose items all share the same location is never split: it simply stores more items
+ * than its nominal capacity.</p>
+ * 
+ * <p>{@link #getItemsWithin(Box)} gives the same results as that of {@link RegionIndexingTree}, 
+ * i.e. it misses the items lying both on the border of its argument and on a node border (cf.
+ * {@link IndexingTree#getItemsWithin(Box)}). So does {@link #getItemsWithin(Sphere)}, but it
+ * never returns items outside the sphere.</p>
+ *
+ * @author agent - 19 oct. 2026
+ *
+ * @param <T> type of content to index
+ */
+public abstract class KdRegionIndexingTree<T> extends AbstractIndexingTree<T,KdRegionIndexingNode<T>> {
+
+	/**
+	 * How the split axis of a node is chosen
+	 */
+	public enum SplitRule {
+		/** axes are used in turn from the root, nodes are split in the middle of their region */
+		CYCLE,
+		/** nodes are split along the axis of maximal item spread, halfway between the extreme items */
+		MAX_SPREAD,
+		/** nodes are split along the axis of maximal item spread, at the median of the items */
+		MEDIAN
+	}
+
+	private boolean DYNAMIC_MAX_OBJECTS = false;
+    private double MAX_OBJ_TARGET_EXPONENT = 0.333333; // 0.5 a good general solution
+    // reverse mapping of items to nodes to facilitate removal of items without knowing their location
+    protected Map<T,KdRegionIndexingNode<T>> itemToNodeMap = new HashMap<>();
+    protected SplitRule splitRule = SplitRule.CYCLE;
+    // initial size of work arrays for leaf scans
+    private static final int LEAF_SCAN_SIZE = 16;
+
+    /**
+     * Constructor to use only when the initial region is unknown and has to be built from the first
+     * item put in.
+     * @param dim the tree dimension
+     */
+    protected KdRegionIndexingTree(int dim) {
+    	super(dim);
+    }
+
+    /**
+     * Constructor to use only when the initial region in which all points will be contained ('domain') is known
+     * @param domain the region indexed by this tree
+     */
+    protected KdRegionIndexingTree(Box domain) {
+    	super(domain);
+    	root = new KdRegionIndexingNode<T>(null,Coordinates.lowerBounds(domain),Coordinates.upperBounds(domain),0,this);
+    }
+
+    /**
+     * <p>Setting this to <strong>true</strong> will balance the tree depth and size following P. Tovainen's
+     * benchmarking (cf. {@link RegionIndexingTree#setOptimisation(boolean)}).</p>
+     *
+     * @param o whether optimisation should be enabled (<strong>true</strong>) or not (<strong>false</strong>).
+     */
+    public void setOptimisation(boolean o) {
+    	DYNAMIC_MAX_OBJECTS = o;
+    }
+
+    /**
+     * Sets the rule used to choose the split axis of nodes. Only affects the nodes split after
+     * this call.
+     * 
+     * @param rule the split rule
+     */
+    public void setSplitRule(SplitRule rule) {
+    	splitRule = rule;
+    }
+
+    /**
+     * @return the rule used to choose the split axis of nodes
+     */
+    public SplitRule splitRule() {
+    	return splitRule;
+    }
+
+    private void adjustMaxObjects() {
+        KdRegionIndexingNode.LEAF_MAX_ITEMS = Math.max(7,(int)Math.pow(itemToNodeMap.size(), MAX_OBJ_TARGET_EXPONENT));
+    }
+
+	@Override
+	public void insert(T item, Point at) {
+		insert(item,Coordinates.of(at));
+	}
+
+	// same as above, with the location given as raw coordinates
+	protected void insert(T item, double[] at) {
+		KdRegionIndexingNode<T> node = root.insert(item,at);
+        if (node!=null)
+        	itemToNodeMap.put(item,node);
+        if (DYNAMIC_MAX_OBJECTS && itemToNodeMap.size() % 100 == 0)
+            adjustMaxObjects();
+	}
+
+    // recursive
+    private void collectOverlappingNodes(double[] lo, double[] up,
+    		KdRegionIndexingNode<T> node, List<KdRegionIndexingNode<T>> nodes) {
+    	if (node!=null)
+    		if (node.overlaps(lo,up)) {
+    			if (node.children!=null) {
+    				collectOverlappingNodes(lo,up,node.children[0],nodes);
+    				collectOverlappingNodes(lo,up,node.children[1],nodes);
+    			}
+    			else
+    				nodes.add(node);
+    		}
+    }
+
+	protected List<KdRegionIndexingNode<T>> getNodesWithin(double[] lo, double[] up) {
+		List<KdRegionIndexingNode<T>> nodes = new ArrayList<>();
+		collectOverlappingNodes(lo,up,root,nodes);
+		return nodes;
+	}
+
+	// CAUTION. This method is only a helper method, cf. RegionIndexingTree.getNearestNode()
+	protected KdRegionIndexingNode<T> getNearestNode(double[] at) {
+		if (root==null)
+			return null;
+		KdRegionIndexingNode<T> node = root;
+		if (!node.contains(at))
+			return node;
+		while (node.children!=null)
+			node = node.children[node.childIndex(at)];
+		return node;
+	}
+
+	// CAUTION: not resistant to multiple items at the same location !
+	@Override
+	public T getNearestItem(Point at) {
+		double[] q = Coordinates.of(at);
+		KdRegionIndexingNode<T> node = getNearestNode(q);
+		double dist2 = Double.MAX_VALUE;
+		T theItem = null;
+		// find the item closest to the point
+		double[] d2 = new double[Math.max(node.nitems,LEAF_SCAN_SIZE)];
+		LeafScan.squaredDistances(node.lanes,node.nitems,q,d2);
+		int k = LeafScan.indexOfMin(d2,node.nitems);
+		if (k>=0) {
+			theItem = node.itemAt(k);
+			dist2 = d2[k];
+		}
+		// if the distance of the item to the point is larger than the distance
+		// of the point to the box edges, the item may be in the enclosing box
+		double dist = Math.sqrt(dist2);
+		if (dist > node.distanceToClosestEdge(q)) {
+			double[] lo = new double[dim];
+			double[] up = new double[dim];
+			for (int i=0; i<dim; i++) {
+				lo[i] = q[i]-dist;
+				up[i] = q[i]+dist;
+			}
+			for (KdRegionIndexingNode<T> n:getNodesWithin(lo,up))
+				if ((n!=node) && (n.nitems>0)) {
+					if (d2.length<n.nitems)
+						d2 = new double[n.nitems];
+					LeafScan.squaredDistances(n.lanes,n.nitems,q,d2);
+					k = LeafScan.indexOfMin(d2,n.nitems);
+					if (d2[k]<dist2) {
+						dist2 = d2[k];
+						theItem = n.itemAt(k);
+					}
+				}
+		}
+		return theItem;
+	}
+
+	// remove children when they are all empty to adjust tree structure to item content
+	private void shrinkNode(KdRegionIndexingNode<T> node) {
+		boolean shrink = true;
+		if (node.children!=null) {
+			for (KdRegionIndexingNode<T> c:node.children)
+				shrink = shrink && (c.children==null) && (c.nitems==0) ;
+			if (shrink) {
+				for (KdRegionIndexingNode<T> c:node.children)
+					c.tree = null;
+				node.children = null;
+				if (node.nitems==0)
+					if (node.parent!=null)
+						shrinkNode(node.parent);
+			}
+		}
+	}
+
+	@Override
+	public boolean remove(T item) {
+		KdRegionIndexingNode<T> n = itemToNodeMap.remove(item);
+		if (n!=null) {
+			n.removeItem(item);
+			if (n.nitems==0)
+				if (n.parent!=null)
+					shrinkNode(n.parent);
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public int size() {
+		return itemToNodeMap.size();
+	}
+
+    @Override
+	public Collection<T> getItemsWithin(Box limits) {
+    	double[] lower = Coordinates.lowerBounds(limits);
+    	double[] upper = Coordinates.upperBounds(limits);
+		List<T> extraItems = new ArrayList<>();
+		QuickListOfLists<T> result = new QuickListOfLists<T>();
+		boolean[] mask = new boolean[LEAF_SCAN_SIZE];
+		for (KdRegionIndexingNode<T> n:getNodesWithin(lower,upper))
+			if (n.nitems>0)
+				// node region fully contained in limits: insert all items
+				if (n.isWithin(lower,upper))
+					result.addList(n.localItems());
+				// node region not fully contained in limits: check all items
+				else {
+					if (mask.length<n.nitems)
+						mask = new boolean[n.nitems];
+					if (LeafScan.withinBox(n.lanes,n.nitems,lower,upper,mask)>0)
+						for (int i=0; i<n.nitems; i++)
+							if (mask[i])
+								extraItems.add(n.itemAt(i));
+				}
+		result.addList(extraItems);
+		return result;
+	}
+
+ 	@Override
+	public Collection<T> getItemsWithin(Sphere limits) {
+ 		double[] centre = Coordinates.of(limits.centre());
+ 		double r = limits.radius();
+ 		double r2 = r*r;
+		double[] lo = new double[dim];
+		double[] up = new double[dim];
+		for (int i=0; i<dim; i++) {
+			lo[i] = centre[i]-r;
+			up[i] = centre[i]+r;
+		}
+		List<T> extraItems = new ArrayList<>();
+		QuickListOfLists<T> result = new QuickListOfLists<T>();
+		double[] d2 = new double[LEAF_SCAN_SIZE];
+		boolean[] mask = new boolean[LEAF_SCAN_SIZE];
+		for (KdRegionIndexingNode<T> n:getNodesWithin(lo,up))
+			if (n.nitems>0)
+				if (n.isWithin(centre,r2))
+					result.addList(n.localItems());
+				else {
+					if (mask.length<n.nitems) {
+						d2 = new double[n.nitems];
+						mask = new boolean[n.nitems];
+					}
+					if (LeafScan.withinSphere(n.lanes,n.nitems,centre,r2,d2,mask)>0)
+						for (int i=0; i<n.nitems; i++)
+							if (mask[i])
+								extraItems.add(n.itemAt(i));
+				}
+		result.addList(extraItems);
+		return result;
+	}
+
+	// recursive - called by toString();
+	private String nodeToString(KdRegionIndexingNode<T> node, int depth, boolean s) {
+		StringBuilder sb = new StringBuilder();
+		if (node!=null) {
+			String indent = "";
+			for (int i=0; i<depth; i++)
+				indent += "--";
+			if (s) sb.append(indent).append(node.toShortString());
+			else sb.append(indent).append(node.toString());
+			if (node.children!=null)
+				for (int i=0; i<node.children.length; i++)
+					sb.append(nodeToString(node.children[i],depth+1,s));
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(getClass().getSimpleName()+"\n");
+		sb.append(nodeToString(root,0,false));
+		return sb.toString();
+	}
+
+	/**
+	 *
+	 * @return a 'short' description of this tree
+	 */
+	public String toShortString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(getClass().getSimpleName()+"\n");
+		if (root!=null) {
+			sb.append("region = ");
+			sb.append(root.region().toString());
+			sb.append('\n');
+		}
+		sb.append(nodeToString(root,0,true));
+		return sb.toString();
+	}
+
+	/**
+	 * @return The {@link Box} region.
+	 */
+	public Box region() {
+		if (root!=null)
+			return root.region();
+		else
+			return null;
+	}
+
+	@Override
+	public void clear() {
+		itemToNodeMap.clear();
+		if (root!=null) {
+			root.clear();
+			root.children = null;
+		}
+	}
+
+}
@@ -0,0 +1,150 @@
+/**************************************************************************
+ *  UIT - a Universal Indexing Tree                                       *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            *
+ *                                                                        *
+ *  UIT is a generalisation and re-implementation of QuadTree and Octree  *
+ *  implementations by Paavo Toivanen as downloaded on 27/8/2018 on       *
+ *  <https://dev.solita.fi/2015/08/06/quad-tree.html>                     *
+ *                                                                        *
+ **************************************************************************
+ *  This file is part of UIT (Universal Indexing Tree).                   *
+ *                                                                        *
+ *  UIT is free software: you can redistribute it and/or modify           *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  UIT is distributed in the hope that it will be useful,                *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with UIT.  If not, see <https://www.gnu.org/licenses/gpl.html>. *
+ *                                                                        *
+ **************************************************************************/
+package fr.cnrs.iees.uit.indexing;
+
+/**
+ * <p>Batch computations on the items of a leaf node, as used by {@link RegionIndexingTree} queries.</p>
+ * 
+ * <p>Item coordinates are stored as <em>lanes</em>: one {@code double[]} per dimension, holding
+ * the coordinates of all the items of a leaf in this dimension ({@code lanes[d][i]} is the 
+ * d<sup>th</sup> coordinate of item i). All methods loop over dimensions first and over items
+ * second, so that the inner loops are simple loops over contiguous arrays that the JIT compiler 
+ * can vectorise.</p>
+ * 
+ * <p>Results are exactly the same as those of the matching methods of 
+ * {@link fr.cnrs.iees.uit.space.Distance Distance}, {@link fr.cnrs.iees.uit.space.Box Box} and 
+ * {@link fr.cnrs.iees.uit.space.Sphere Sphere}, since coordinates are summed in the same order.</p>
+ * 
+ * @author agent - 19 oct. 2026
+ *
+ */
+final class LeafScan {
+	// to prevent any instantiation
+	private LeafScan() {}
+
+	/**
+	 * Squared euclidian distances of n items to a point.
+	 * 
+	 * @param lanes item coordinates, one array per dimension
+	 * @param n the number of items
+	 * @param q the point coordinates
+	 * @param out the squared distances of items to q (first n values are set)
+	 */
+	static void squaredDistances(double[][] lanes, int n, double[] q, double[] out) {
+		if (n==0)
+			return;
+		double[] x = lanes[0];
+		double c = q[0];
+		for (int i=0; i<n; i++) {
+			double d = x[i]-c;
+			out[i] = d*d;
+		}
+		for (int k=1; k<q.length; k++) {
+			x = lanes[k];
+			c = q[k];
+			for (int i=0; i<n; i++) {
+				double d = x[i]-c;
+				out[i] += d*d;
+			}
+		}
+	}
+
+	/**
+	 * Rank of the smallest value in an array (the first one in case of ties).
+	 * 
+	 * @param values the values to search
+	 * @param n the number of values
+	 * @return the index of the minimal value, -1 if n=0
+	 */
+	static int indexOfMin(double[] values, int n) {
+		int imin = -1;
+		double min = Double.MAX_VALUE;
+		for (int i=0; i<n; i++)
+			if (values[i]<min) {
+				min = values[i];
+				imin = i;
+			}
+		return imin;
+	}
+
+	/**
+	 * Tests which items are within a box (wide containment, cf. 
+	 * {@link fr.cnrs.iees.uit.space.Box#contains(fr.cnrs.iees.uit.space.Point) Box.contains(Point)}).
+	 * 
+	 * @param lanes item coordinates, one array per dimension
+	 * @param n the number of items
+	 * @param lower the box lower bounds
+	 * @param upper the box upper bounds
+	 * @param mask true for items contained in the box (first n values are set)
+	 * @return the number of items contained in the box
+	 */
+	static int withinBox(double[][] lanes, int n, double[] lower, double[] upper, boolean[] mask) {
+		if (n==0)
+			return 0;
+		for (int i=0; i<n; i++)
+			mask[i] = true;
+		for (int k=0; k<lower.length; k++) {
+			double[] x = lanes[k];
+			double lo = lower[k];
+			double up = upper[k];
+			for (int i=0; i<n; i++)
+				mask[i] &= (x[i]>=lo) & (x[i]<=up);
+		}
+		int count = 0;
+		for (int i=0; i<n; i++)
+			if (mask[i])
+				count++;
+		return count;
+	}
+
+	/**
+	 * Tests which items are within a sphere (wide containment, cf. 
+	 * {@link fr.cnrs.iees.uit.space.Sphere#contains(fr.cnrs.iees.uit.space.Point) Sphere.contains(Point)}).
+	 * 
+	 * @param lanes item coordinates, one array per dimension
+	 * @param n the number of items
+	 * @param centre the sphere centre
+	 * @param r2 the squared sphere radius
+	 * @param dist2 work array for squared distances (at least n long)
+	 * @param mask true for items contained in the sphere (first n values are set)
+	 * @return the number of items contained in the sphere
+	 */
+	static int withinSphere(double[][] lanes, int n, double[] centre, double r2, 
+			double[] dist2, boolean[] mask) {
+		squaredDistances(lanes,n,centre,dist2);
+		int count = 0;
+		for (int i=0; i<n; i++) {
+			mask[i] = dist2[i]<=r2;
+			if (mask[i])
+				count++;
+		}
+		return count;
+	}
+
+}
@@ -45,24 +45,29 @@ import fr.cnrs.iees.uit.space.Point;
 class LimitedPrecisionIndexingNode<T> 
 		extends IndexingNode<T, LimitedPrecisionIndexingNode<T>> {
 
-	private int mydepth = 0;
+	protected int mydepth = 0;
 	
 	/** the storage capacity of leaf nodes - may be made dynamic*/
 	protected static int LEAF_MAX_ITEMS = 10;
 //	protected static int LEAF_MAX_ITEMS = 2; // for testing only
 	
 	// region (not as box)
-	private long sideLength = 0;
+	protected long sideLength = 0;
 	protected Locator lowerBounds;
 	protected Locator upperBounds;
 
-	/** the list of (Locator,item) pairs stored in this node */
-	protected Map<T, Locator> items = new HashMap<>();
+	/** the locator coordinates of items: one packed locator per item if the tree uses packed 
+	 * locators, dim coordinates per item otherwise */
+	protected long[] locs = null;
 
 	private int dim;
 
 	protected LimitedPrecisionIndexingTree<T> tree = null;
 
+	/** locational code of this node: a leading 1 bit followed by the child indices
+	 * of every level from the root (used by the tree node table) */
+	protected long code = 1L;
+
 	public LimitedPrecisionIndexingNode(LimitedPrecisionIndexingNode<T> parent,
 			long sideLength, 
 			Locator lower,
@@ -78,105 +83,216 @@ class LimitedPrecisionIndexingNode<T>
 		dim = tree.dim;
 	}
 	
-	// returns the index of the child node containing the point loc
-	private int childIndex(Locator loc) {
-		int[] ix = new int[dim];
-		int index=0;
-		for (int i=0; i<dim; i++) {
-			int nn = -1;
-			if (loc.coordinate(i)-lowerBounds.coordinate(i)<sideLength/2)
-				nn=0;
-			else // if (loc.coordinate(i)>=sideLength/2)
-				nn=1;
-//			else { // debugging only - should never occur
-//				System.out.println("RARE BUG occurring!");
-//				System.out.println("for point "+loc.toString()+" in region ["+
-//					lowerBounds.toString()+upperBounds.toString()+"]");
-//			}
-//			long prop = (loc.coordinate(i)-lowerBounds.coordinate(i))
-//				/(sideLength);
-//			int nn = (int) Math.floor(2*prop);
-//			// could possibly nn equal 2 ? yes.
-//			if (nn==2)
-//				nn--;
-			ix[i] = nn;
+	/**
+	 * @param i the rank of an item in this node
+	 * @param j the index of the coordinate
+	 * @return the j<sup>th</sup> locator coordinate of the i<sup>th</sup> item
+	 */
+	protected long coordinate(int i, int j) {
+		if (tree.packed)
+			return tree.factory.packedCoordinate(locs[i],j);
+		return locs[i*dim+j];
+	}
+	
+	/**
+	 * @param i the rank of an item in this node
+	 * @return the locator of the i<sup>th</sup> item
+	 */
+	protected Locator locator(int i) {
+		if (tree.packed)
+			return tree.factory.unpack(locs[i]);
+		return tree.factory.newLocator(Arrays.copyOfRange(locs,i*dim,(i+1)*dim));
+	}
+	
+	/**
+	 * Squared distance of the i<sup>th</sup> item to a location given either as a packed
+	 * locator (if loc is null) or as a {@code Locator}.
+	 */
+	protected long squaredDistance(int i, long key, Locator loc) {
+		if (loc==null)
+			return tree.factory.packedSquaredDistance(locs[i],key);
+		long d = 0L;
+		for (int j=0; j<dim; j++) {
+			long x = coordinate(i,j)-loc.coordinate(j);
+			d += x*x;
+		}
+		return d;
+	}
+	
+	// number of entries of locs per item
+	private int stride() {
+		return tree.packed ? 1 : dim;
+	}
+
+	// allocates the item arrays of a leaf if needed
+	private void initLeaf() {
+		if (items==null) {
+			initItems(LEAF_MAX_ITEMS,0);
+			locs = new long[LEAF_MAX_ITEMS*stride()];
+		}
+	}
+
+	@Override
+	protected void growItems(int capacity) {
+		super.growItems(capacity);
+		locs = Arrays.copyOf(locs,capacity*stride());
+	}
+
+	@Override
+	protected void removeItemAt(int i) {
+		int last = nitems-1;
+		if (tree.packed)
+			locs[i] = locs[last];
+		else
+			System.arraycopy(locs,last*dim,locs,i*dim,dim);
+		super.removeItemAt(i);
+	}
+	
+	// adds an item at a location given either as a packed locator (if loc is null) or as a Locator
+	private void add(T item, long key, Locator loc) {
+		initLeaf();
+		int i = appendItem(item,null);
+		if (loc==null)
+			locs[i] = key;
+		else if (tree.packed)
+			locs[i] = tree.factory.pack(loc);
+		else
+			for (int j=0; j<dim; j++)
+				locs[i*dim+j] = loc.coordinate(j);
+	}
+	
+	// adds the i-th item of another node
+	private void add(LimitedPrecisionIndexingNode<T> from, int i) {
+		initLeaf();
+		int k = appendItem(from.items[i],null);
+		if (tree.packed)
+			locs[k] = from.locs[i];
+		else
+			System.arraycopy(from.locs,i*dim,locs,k*dim,dim);
+	}
+	
+	/**
+	 * Converts packed locators to plain coordinates - called by the tree when it stops
+	 * using packed locators.
+	 */
+	protected void unpackLocators() {
+		if (locs!=null) {
+			long[] newlocs = new long[items.length*dim];
+			for (int i=0; i<nitems; i++)
+				for (int j=0; j<dim; j++)
+					newlocs[i*dim+j] = tree.factory.packedCoordinate(locs[i],j);
+			locs = newlocs;
 		}
+	}
+	
+	// child index in one dimension for a coordinate x.
+	// Since side lengths are powers of 2, the child index in every dimension is the bit of the
+	// coordinate (relative to the lower bounds) matching half the side length. Coordinates are
+	// clamped to the node region so that out-of-region locators go to the closest children.
+	private int childBit(long x, int j, int bit) {
+		x = Math.min(Math.max(x-lowerBounds.coordinate(j),0L),sideLength-1);
+		return (int)((x>>>bit) & 1L);
+	}
+
+	// returns the index of the child node containing the point loc
+	protected int childIndex(Locator loc) {
+		int bit = Long.numberOfTrailingZeros(sideLength)-1;
+		int index = 0;
 		for (int i=0; i<dim; i++)
-			index += ix[i]*(1<<(dim-i-1));
+			index = (index<<1) | childBit(loc.coordinate(i),i,bit);
 		return index;
 	}
 	
-	// index computation for children - veery tricky - carefully checked, OK.
-    private void recurseMin(int depth, int itbase, long[][] result) {
-    	int itmax = 1<<(dim-depth-1);
-    	long min = lowerBounds.coordinate(depth);
-    	for (int i=0; i<itmax; i++)
-    		result[i+itbase][depth] = min;
-    	if (depth<dim-1)
-    		recurseMin(depth+1,itbase,result);
-    	long max = (min + upperBounds.coordinate(depth))/2;
-    	for (int i=0; i<itmax; i++)
-    		result[itmax+i+itbase][depth] = max;
-    	if (depth<dim-1)
-    		recurseMin(depth+1,itbase+itmax,result);
-    }
+	// same for a location given either as a packed locator (if loc is null) or as a Locator
+	private int childIndex(long key, Locator loc) {
+		if (loc!=null)
+			return childIndex(loc);
+		int bit = Long.numberOfTrailingZeros(sideLength)-1;
+		int index = 0;
+		for (int i=0; i<dim; i++)
+			index = (index<<1) | childBit(tree.factory.packedCoordinate(key,i),i,bit);
+		return index;
+	}
+	
+	// same for the i-th item of this node
+	private int itemChildIndex(int item) {
+		int bit = Long.numberOfTrailingZeros(sideLength)-1;
+		int index = 0;
+		for (int i=0; i<dim; i++)
+			index = (index<<1) | childBit(coordinate(item,i),i,bit);
+		return index;
+	}
 	
-    // create children nodes according to dimension and region
-    // moves contained items to them
-    
+	// child lower bounds are shifted by half the side length where the child index bit is 1
+	// (first dimension = most significant bit)
+	protected Locator childLowerBounds(int i) {
+		long half = sideLength/2;
+		long[] mins = new long[dim];
+		for (int j=0; j<dim; j++)
+			mins[j] = lowerBounds.coordinate(j) + ((i>>(dim-j-1)) & 1)*half;
+		return tree.factory.newLocator(mins);
+	}
+
+	// creates child i (children are only created when they receive an item)
+	private LimitedPrecisionIndexingNode<T> makeChild(int i) {
+		LimitedPrecisionIndexingNode<T> child = 
+			new LimitedPrecisionIndexingNode<T>(this,sideLength/2,childLowerBounds(i),tree,mydepth+1);
+		child.code = (code<<dim) | i;
+		addChild(i,child);
+		tree.registerChild(child);
+		return child;
+	}
+
+	// child i, created if needed
+	private LimitedPrecisionIndexingNode<T> getOrMakeChild(int i) {
+		LimitedPrecisionIndexingNode<T> child = child(i);
+		return (child==null) ? makeChild(i) : child;
+	}
+
+    // turns this node into an inner node and moves contained items to new children
+	// only the children receiving items are created
 	@SuppressWarnings("unchecked")
 	private void makeChildren() {
-		// work out the new region mins and maxs with the proper indexing
-    	long[][] mins = new long[1<<dim][dim];
-    	recurseMin(0,0,mins);
-//    	double[][] maxs = new double[1<<dim][dim];
-//    	recurseMax(0,0,maxs);
-    	// setup the new child nodes with the proper regions
-    	children = new LimitedPrecisionIndexingNode[1<<dim];
-    	for (int i=0; i<(1<<dim); i++) {
-    		Locator lower = tree.factory.newLocator(mins[i]);
-//    		Box reg = new BoxImpl(lower, upper);
-    		children[i] = new LimitedPrecisionIndexingNode<T>(this,sideLength/2,lower,tree,mydepth+1);
-    	}
+		initChildren(new LimitedPrecisionIndexingNode[0],1<<dim);
     	// spread the extant items into the child nodes
-    	for (Map.Entry<T,Locator> e:items.entrySet()) {
-    		LimitedPrecisionIndexingNode<T> newNode = children[childIndex(e.getValue())];
-    		newNode.insert(e.getKey(),e.getValue());
-    		tree.itemToNodeMap.put(e.getKey(),newNode); // this will replace the former mapping
+    	for (int i=0; i<nitems; i++) {
+    		LimitedPrecisionIndexingNode<T> newNode = getOrMakeChild(itemChildIndex(i));
+    		newNode.add(this,i);
+    		tree.itemToNodeMap.put(itemAt(i),newNode); // this will replace the former mapping
     	}
     	// empty the item list now they have been put in the child nodes
-    	items.clear();
+    	items = null;
+    	locs = null;
+    	nitems = 0;
 	}
 
-	// inserts item T in the proper (existing) child node of node 'node' - recursive
-	private LimitedPrecisionIndexingNode<T> insertInChild(T item,
-			LimitedPrecisionIndexingNode<T> node, 
-			Locator loc) {
-		while (node.children!=null) {
-			int i = node.childIndex(loc);
-			node = node.children[i];
+	/**
+	 * Inserts an item at a location given either as a packed locator (if loc is null) or
+	 * as a {@code Locator}.
+	 * 
+	 * @param item the item to insert
+	 * @param key the packed locator of the item (used only if loc is null)
+	 * @param loc the locator of the item
+	 * @return the node where the item was inserted, null if the item was already there
+	 */
+	public LimitedPrecisionIndexingNode<T> insert(T item, long key, Locator loc) {
+		LimitedPrecisionIndexingNode<T> node = this;
+		while (node.children!=null)
+			node = node.getOrMakeChild(node.childIndex(key,loc));
+		// do not insert same item twice at the same location
+		if (node.indexOf(item)>=0)
+			return null;
+		// if list of items is full, expand to child nodes
+		if ((node.nitems >= LEAF_MAX_ITEMS) && (node.mydepth<=tree.maxDepth)) {
+			node.makeChildren();
+			return node.insert(item,key,loc);
 		}
-		return node.insert(item,loc);
+		node.add(item,key,loc);
+		return node;
 	}
 	
 	public LimitedPrecisionIndexingNode<T> insert(T item, Locator loc) {
-		// do not insert same item twice at the same location
-		if (!items.containsKey(item)) {
-			// insert the item here or in my children
-			// if list of items is full, expand to child nodes
-			if ((items.size() >= LEAF_MAX_ITEMS) && (mydepth<=tree.maxDepth))
-				makeChildren();
-			// if there are child nodes, put the item in the proper child
-			if (children!=null)
-				return insertInChild(item, this,loc);
-			// otherwise, put it in this list
-			else {
-				items.put(item,loc);
-				return this;
-			}
-		}
-		else
-			return null;
+		return insert(item,0L,loc);
 	}
 
 	@Override
@@ -186,8 +302,8 @@ class LimitedPrecisionIndexingNode<T>
 
 	// recursive
 	private void getAllItems(QuickListOfLists<T> list, LimitedPrecisionIndexingNode<T> node) {
-		if (!node.items.isEmpty())
-			list.addList(node.items.keySet());
+		if (node.nitems>0)
+			list.addList(node.localItems());
 		else if (node.children!=null)
 			for (int i=0; i<node.children.length; i++)
 				getAllItems(list,node.children[i]);
@@ -202,7 +318,9 @@ class LimitedPrecisionIndexingNode<T>
 
 	@Override
 	public void clear() {
-		items.clear();
+		items = null;
+		locs = null;
+		nitems = 0;
 	}
 	
 	// CHECK THIS IN DETAIL!!!
@@ -224,17 +342,27 @@ class LimitedPrecisionIndexingNode<T>
 	protected String toShortString() {
 		StringBuilder sb=new StringBuilder();
 		sb.append("items={");
-		char sep = ',';
-		for (T item:items.keySet()) {
-			sb.append(item.toString())
-				.append(sep);
+		for (int i=0; i<nitems; i++) {
+			if (i>0) sb.append(',');
+			sb.append(items[i].toString());
 		}
-		if (sb.charAt(sb.length()-1)==sep)
-			sb.deleteCharAt(sb.length()-1);
 		sb.append("}\n");
 		return sb.toString();
 	}
 
+	/**
+	 * @param i a child index
+	 * @param s true for a short description
+	 * @return the description of child i if it does not exist, i.e. of an empty node 
+	 * (same as {@link #toString()} or {@link #toShortString()})
+	 */
+	protected String emptyChildToString(int i, boolean s) {
+		if (s)
+			return "items={}\n";
+		Locator lower = childLowerBounds(i);
+		return "region=["+lower.toString()+"-"+Locator.add(lower,sideLength/2).toString()+"], items={}\n";
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder sb=new StringBuilder();
@@ -244,15 +372,12 @@ class LimitedPrecisionIndexingNode<T>
 			.append(upperBounds.toString())
 			.append("], ");
 		sb.append("items={");
-		char sep = ',';
-		for (T item:items.keySet()) {
-			sb.append(item.toString())
+		for (int i=0; i<nitems; i++) {
+			if (i>0) sb.append(',');
+			sb.append(items[i].toString())
 				.append("@")
-				.append(items.get(item).toString())
-				.append(sep);
+				.append(locator(i).toString());
 		}
-		if (sb.charAt(sb.length()-1)==sep)
-			sb.deleteCharAt(sb.length()-1);
 		sb.append("}\n");
 		return sb.toString();
 	}
@@ -276,10 +401,10 @@ class LimitedPrecisionIndexingNode<T>
 			}
 			Locator lower = tree.factory.newLocator(newlows);
 			parent = new LimitedPrecisionIndexingNode<T>(null,sideLength*2,lower,tree,mydepth-1);
-			parent.makeChildren(); // this creates empty children in the parent
+			parent.makeChildren(); // this makes parent an inner node with no children
 			// place me in my parent's children
 			Locator centre = Locator.add(lowerBounds,sideLength/2);
-			parent.children[parent.childIndex(centre)] = this;
+			parent.addChild(parent.childIndex(centre),this);
 		}
 		return parent;
 	}
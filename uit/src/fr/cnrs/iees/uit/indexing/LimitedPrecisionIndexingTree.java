@@ -31,7 +31,6 @@ package fr.cnrs.iees.uit.indexing;
 import java.util.*;
 
 import au.edu.anu.omhtk.collections.QuickListOfLists;
-import fr.cnrs.iees.uit.indexing.location.IntDistance;
 import fr.cnrs.iees.uit.indexing.location.Locator;
 import fr.cnrs.iees.uit.indexing.location.LocatorFactory;
 import fr.cnrs.iees.uit.space.Box;
@@ -43,6 +42,12 @@ import fr.cnrs.iees.uit.space.Sphere;
  * Similar to a {@link BoundedRegionIndexingTree}, but internally using discrete
  * rather than continuous coordinates.
  * 
+ * <p>In dimensions 2 and 3, as long as all coordinates fit in the range allowed by
+ * {@link LocatorFactory#packable() packed locators}, item locations are stored as a single
+ * {@code long} per item and no {@link Locator} is instantiated when inserting items or locating
+ * points. The tree switches to plain {@code long} coordinates (one per dimension) as soon as
+ * a location cannot be packed.</p>
+ * 
  * @author Jacques Gignoux - 8 oct. 2020
  *
  */
@@ -66,6 +71,14 @@ public class LimitedPrecisionIndexingTree<T>
     protected int maxDepth = 0;
     private long maxSideLength = 0;
 
+    /** true if item locations are stored as packed locators */
+    protected boolean packed = false;
+
+    // optional table of nodes indexed by their locational code, for direct point location
+    private LongHashMap<LimitedPrecisionIndexingNode<T>> nodeTable = null;
+    // the root for which the node table was built (codes are relative to the root)
+    private LimitedPrecisionIndexingNode<T> nodeTableRoot = null;
+
 	/**
 	 * Constructor from a box. All items indexed by this tree will stay inside this box.
 	 * The precision argument is used to scale the
@@ -87,12 +100,46 @@ public class LimitedPrecisionIndexingTree<T>
 		// smallest power of 2 that is larger than maxS
 		while (maxSideLength < maxS) {
 			maxDepth++;
-			maxSideLength = 1<<maxDepth;
+			maxSideLength = 1L<<maxDepth;
 		}
 		long[] init = new long[dim];
 		Arrays.fill(init,0L);
 		Locator lowerBounds = factory.newLocator(init);
 		root = new LimitedPrecisionIndexingNode<T>(null,maxSideLength,lowerBounds,this,1);
+		packed = rootPackable();
+	}
+
+	// true if all locations in the root region can be packed (upper bounds are excluded)
+	protected boolean rootPackable() {
+		for (int i=0; i<dim; i++)
+			if (!factory.canPack(root.lowerBounds.coordinate(i)) || !factory.canPack(root.upperBounds.coordinate(i)-1))
+				return false;
+		return true;
+	}
+
+	// recursive
+	private void unpackLocators(LimitedPrecisionIndexingNode<T> node) {
+		node.unpackLocators();
+		if (node.children!=null) // only existing children
+			for (int i=0; i<node.children.length; i++)
+				unpackLocators(node.children[i]);
+	}
+
+	/**
+	 * Stops using packed locators - all item locations are converted to plain coordinates.
+	 */
+	protected void unpackLocators() {
+		if (packed) {
+			unpackLocators(root);
+			packed = false;
+		}
+	}
+
+	// coordinate of a location given either as a packed locator (if loc is null) or as a Locator
+	private long coordinate(long key, Locator loc, int i) {
+		if (loc==null)
+			return factory.packedCoordinate(key,i);
+		return loc.coordinate(i);
 	}
 
     /**
@@ -109,6 +156,129 @@ public class LimitedPrecisionIndexingTree<T>
     	DYNAMIC_MAX_OBJECTS = o;
     }
 	
+    /**
+     * <p>Setting this to <strong>true</strong> will maintain a hash table of all nodes indexed by their
+     * depth and path from the root (a <em>locational code</em> made of the child indices, i.e. the
+     * interleaved bits of locator coordinates). Point location and insertion then find the
+     * deepest node containing a locator with a few hash table lookups instead of a walk from the root.</p>
+     *
+     * <p>The table is only used if {@code dim} &#215; (tree depth) is lower than 63, so that
+     * locational codes fit into a {@code long}. It costs one table entry per node.</p>
+     *
+     * @param t whether the node table should be used (<strong>true</strong>) or not (<strong>false</strong>).
+     */
+    public void setNodeTable(boolean t) {
+    	if (t) {
+    		nodeTable = new LongHashMap<>();
+    		nodeTableRoot = null; // forces building the table on first use
+    	}
+    	else {
+    		nodeTable = null;
+    		nodeTableRoot = null;
+    	}
+    }
+
+    // number of levels below root down to nodes of side 1
+    private int levels() {
+    	return Long.numberOfTrailingZeros(root.sideLength);
+    }
+
+    // recursive
+    private void fillNodeTable(LimitedPrecisionIndexingNode<T> node, long code) {
+    	node.code = code;
+    	nodeTable.put(code,node);
+    	if (node.children!=null)
+    		for (int i=node.nextChild(0); i>=0; i=node.nextChild(i+1))
+    			fillNodeTable(node.child(i),(code<<dim)|i);
+    }
+
+    // (re)builds the node table - called when the root changed
+    private void buildNodeTable() {
+    	nodeTable.clear();
+    	nodeTableRoot = root;
+    	if (dim*levels()<63)
+    		fillNodeTable(root,1L);
+    }
+
+    // true if the node table can be used for point location
+    private boolean nodeTableReady() {
+    	if (nodeTable==null)
+    		return false;
+    	if (nodeTableRoot!=root)
+    		buildNodeTable();
+    	return nodeTable.size()>0;
+    }
+
+    // called by nodes when they make a child
+    void registerChild(LimitedPrecisionIndexingNode<T> node) {
+    	if ((nodeTable!=null) && (nodeTableRoot==root) && (nodeTable.size()>0))
+    		nodeTable.put(node.code,node);
+    }
+
+    // child index at a given bit of the locator coordinates, relative to the root lower bounds.
+    // Coordinates are clamped to the root region as in LimitedPrecisionIndexingNode.childIndex()
+    private int pathIndex(long key, Locator at, int bit) {
+    	int index = 0;
+    	for (int i=0; i<dim; i++) {
+    		long x = Math.min(Math.max(coordinate(key,at,i)-root.lowerBounds.coordinate(i),0L),root.sideLength-1);
+    		index = (index<<1) | (int)((x>>>bit) & 1L);
+    	}
+    	return index;
+    }
+
+    /**
+     * Finds the deepest existing node on the path of a locator. The path is computed directly from
+     * the locator coordinate bits (one bit per dimension and level), so no region test is needed.
+     * If the node table is enabled, the deepest node is found by a binary search on depth
+     * in the table.
+     *
+     * @param key the packed locator (used only if at is null)
+     * @param at the locator
+     * @return the leaf node on the path of at, or the inner node above it if this leaf 
+     * is empty (hence absent)
+     */
+    protected LimitedPrecisionIndexingNode<T> descend(long key, Locator at) {
+    	int levels = levels();
+    	if (nodeTableReady()) {
+    		// full depth locational code of at
+    		long code = 1L;
+    		for (int bit=levels-1; bit>=0; bit--)
+    			code = (code<<dim) | pathIndex(key,at,bit);
+    		// nodes on the path exist down to the leaf or its absent ancestor: binary search on the level
+    		LimitedPrecisionIndexingNode<T> node = root;
+    		int lo = 0;
+    		int hi = levels;
+    		while (lo<hi) {
+    			int mid = (lo+hi+1)>>>1;
+    			LimitedPrecisionIndexingNode<T> n = nodeTable.get(code>>>(dim*(levels-mid)));
+    			if (n!=null) {
+    				node = n;
+    				lo = mid;
+    			}
+    			else
+    				hi = mid-1;
+    		}
+    		return node;
+    	}
+    	return descend(root,key,at);
+    }
+
+    // same, walking down from node
+    private LimitedPrecisionIndexingNode<T> descend(LimitedPrecisionIndexingNode<T> node, long key, Locator at) {
+    	int bit = Long.numberOfTrailingZeros(node.sideLength)-1;
+    	while (node.children!=null) {
+    		LimitedPrecisionIndexingNode<T> child = node.child(pathIndex(key,at,bit--));
+    		if (child==null)
+    			break;
+    		node = child;
+    	}
+    	return node;
+    }
+
+    protected LimitedPrecisionIndexingNode<T> descend(Locator at) {
+    	return descend(0L,at);
+    }
+
     private void adjustMaxObjects() {
     	LimitedPrecisionIndexingNode.LEAF_MAX_ITEMS = Math.max(7,
         	(int)Math.pow(itemToNodeMap.size(), 
@@ -117,42 +287,42 @@ public class LimitedPrecisionIndexingTree<T>
     
 	@Override
 	public void insert(T item, Point at) {
-		Locator atloc = factory.newLocator(at);
-		LimitedPrecisionIndexingNode<T> node = root.insert(item, atloc);
+		LimitedPrecisionIndexingNode<T> node;
+		if (packed && !factory.canPack(at))
+			unpackLocators();
+		if (packed) {
+			long key = factory.pack(at);
+			node = descend(key,null).insert(item,key,null);
+		}
+		else {
+			Locator atloc = factory.newLocator(at);
+			node = descend(atloc).insert(item,atloc);
+		}
         if (node!=null)
         	itemToNodeMap.put(item,node);
         if (DYNAMIC_MAX_OBJECTS && itemToNodeMap.size() % 100 == 0)
             adjustMaxObjects();
 	}
 
-	// remove children when they are all empty to adjust tree structure to item content
-	private void shrinkNode(LimitedPrecisionIndexingNode<T> node) {
-		boolean shrink = true;
-		if (node.children!=null) {
-			for (LimitedPrecisionIndexingNode<T> c:node.children)
-				shrink = shrink && (c.children==null) && (c.items.isEmpty()) ;
-			if (shrink) {
-				for (LimitedPrecisionIndexingNode<T> c:node.children)
-					c.tree = null;
-				node.children = null;
-				if (node.items.isEmpty())
-					if (node.parent!=null)
-						shrinkNode(node.parent);
-			}
+	// drop empty nodes to adjust tree structure to item content. A parent with no children left
+	// becomes an empty leaf and is dropped in turn.
+	private void dropNode(LimitedPrecisionIndexingNode<T> node) {
+		while ((node.parent!=null) && (node.children==null) && (node.nitems==0)) {
+			node.parent.removeChild(node);
+			node.tree = null;
+			if ((nodeTable!=null) && (nodeTableRoot==root))
+				nodeTable.remove(node.code);
+			node = node.parent;
 		}
 	}
 	
 	@Override
 	public boolean remove(T item) {
-		if (itemToNodeMap.containsKey(item)) {
+		LimitedPrecisionIndexingNode<T> n = itemToNodeMap.remove(item);
+		if (n!=null) {
 			// remove the item in its node list
-			LimitedPrecisionIndexingNode<T> n = itemToNodeMap.get(item);
-			n.items.remove(item);
-			if (n.items.isEmpty())
-				if (n.parent!=null)
-					shrinkNode(n.parent);
-			// remove it from list here.
-			itemToNodeMap.remove(item);
+			n.removeItem(item);
+			dropNode(n);
 			return true;
 		}
 		return false;
@@ -163,32 +333,55 @@ public class LimitedPrecisionIndexingTree<T>
 		throw new UnsupportedOperationException();
 	}
 	
-	// CHECK THIS CAREFULLY with points on edges!
 	// CAUTION. This method is only a helper method. It should not be made public.
 	// It will return the node containing the point, but for points on borders
 	// it may not be the box in which an item is to be found.
 	// So this is safe as long as algos using it are able to jump out if distance to edge = 0
 	// Use with caution.
 	protected LimitedPrecisionIndexingNode<T> getNearestNode(Locator at) {
+		return getNearestNode(0L,at);
+	}
+
+	// same for a location given either as a packed locator (if at is null) or as a Locator
+	private LimitedPrecisionIndexingNode<T> getNearestNode(long key, Locator at) {
 		if (root==null)
 			return null;
-		LimitedPrecisionIndexingNode<T> node = root;
-		boolean stop = false;
-//		while ((!stop) && node.region().contains(at)) {
-		while ((!stop) && regionContainsLocator(node.lowerBounds,node.upperBounds,at)) {
-			if (node.children!=null) {
-				for (int i=0; i<node.children.length; i++)
-//					if (node.children[i].region().contains(at)) {
-					if (regionContainsLocator(node.children[i].lowerBounds,
-							node.children[i].upperBounds,at)) {
-						node = node.children[i];
-						break;
-					}
-			}
-			else
-				stop =true;
+		for (int i=0; i<dim; i++) {
+			long x = coordinate(key,at,i);
+			if ((x>root.upperBounds.coordinate(i)) || (x<root.lowerBounds.coordinate(i)))
+				return root;
 		}
-		return node;
+		// locators on a child border go to the upper child, as when inserting
+		return descend(key,at);
+	}
+
+	// the node of an item, or the root if the item is not in this tree
+	private LimitedPrecisionIndexingNode<T> startNode(T from) {
+		LimitedPrecisionIndexingNode<T> node = itemToNodeMap.get(from);
+		return (node==null) ? root : node;
+	}
+
+	// true if the i-th coordinate of a location lies in the half-open region of node, where
+	// descend() puts it (locators on the upper bound of a node go to its upper neighbour)
+	private boolean holds(LimitedPrecisionIndexingNode<T> node, long x, int i) {
+		return (x>=node.lowerBounds.coordinate(i)) && (x<node.upperBounds.coordinate(i));
+	}
+
+	// same as getNearestNode(key,at), but climbs up from a node close to the location until a node
+	// containing it is found, then descends from there
+	private LimitedPrecisionIndexingNode<T> getNearestNode(long key, Locator at, LimitedPrecisionIndexingNode<T> from) {
+		if ((from==null) || (from==root))
+			return getNearestNode(key,at);
+		LimitedPrecisionIndexingNode<T> node = from;
+		climb: while (node.parent!=null) {
+			for (int i=0; i<dim; i++)
+				if (!holds(node,coordinate(key,at,i),i)) {
+					node = node.parent;
+					continue climb;
+				}
+			return descend(node,key,at);
+		}
+		return getNearestNode(key,at);
 	}
 
 	@Override
@@ -206,17 +399,41 @@ public class LimitedPrecisionIndexingTree<T>
 	 */
 	// QUESTION: should we also return the distance ? It may be useful in many cases...
 	public Collection<T> getNearestItems(Point at, int rank) {
-		Locator atloc = factory.newLocator(at);
+		return nearestItems(at,rank,root);
+	}
+
+	/**
+	 * <p>Same as {@link #getNearestItems(Point, int)}, but the search starts from the node of an item
+	 * (e.g. the item searching for its neighbours) instead of the root, climbing up only as far as 
+	 * needed. This is faster when the item is close to the location.</p>
+	 * 
+	 * @param at the location which neighbours are searched
+	 * @param rank the rank of the  neighbour wanted (1 = neares neighbour, 2 = second nearest, etc.)
+	 * @param from an item of this tree close to the location (ignored if not in this tree)
+	 * @return the rank<sup>th</sup> nearest item to the point argument
+	 */
+	public Collection<T> getNearestItems(Point at, int rank, T from) {
+		return nearestItems(at,rank,startNode(from));
+	}
+
+	private Collection<T> nearestItems(Point at, int rank, LimitedPrecisionIndexingNode<T> from) {
+		// the location of at, either packed or as a Locator
+		long atkey = 0L;
+		Locator atloc = null;
+		if (packed && factory.canPack(at))
+			atkey = factory.pack(at);
+		else
+			atloc = factory.newLocator(at);
 		// find box enclosing the point
-		LimitedPrecisionIndexingNode<T> node = getNearestNode(atloc);
+		LimitedPrecisionIndexingNode<T> node = getNearestNode(atkey,atloc,from);
 		long dist2 = Long.MAX_VALUE;
 		SortedMap<Long,List<T>> foundItems = new TreeMap<>();
 		// find the item closest to the point
-		for (T item: node.items.keySet()) {
-			long d = IntDistance.squaredEuclidianDistance(node.items.get(item),atloc);
+		for (int i=0; i<node.nitems; i++) {
+			long d = node.squaredDistance(i,atkey,atloc);
 			if (foundItems.get(d)==null)
 				foundItems.put(d, new LinkedList<T>());
-			foundItems.get(d).add(item);
+			foundItems.get(d).add(node.itemAt(i));
 //			if (d<dist2) {
 //				theItem = item;
 //				dist2 = d;
@@ -237,14 +454,14 @@ public class LimitedPrecisionIndexingTree<T>
 			Box b = Box.boundingBox(s);
 			Locator lows = factory.newLocator(b.lowerBounds());
 			Locator ups = factory.newLocator(b.upperBounds());
-			Collection<LimitedPrecisionIndexingNode<T>> list = getNodesWithin(lows,ups);
+			Collection<LimitedPrecisionIndexingNode<T>> list = getNodesWithin(lows,ups,node);
 			for (LimitedPrecisionIndexingNode<T> n:list)
 				if (n!=node)
-					for (T it: n.items.keySet()) {
-						long d = IntDistance.squaredEuclidianDistance(n.items.get(it),atloc);
+					for (int i=0; i<n.nitems; i++) {
+						long d = n.squaredDistance(i,atkey,atloc);
 						if (foundItems.get(d)==null)
 							foundItems.put(d, new LinkedList<T>());
-						foundItems.get(d).add(it);
+						foundItems.get(d).add(n.itemAt(i));
 			}
 		}
 		if (rank==1)
@@ -281,6 +498,24 @@ public class LimitedPrecisionIndexingTree<T>
 		collectOverlappingNodes(lower,upper,root,nodes);
 		return nodes;
 	}
+
+	// same, searching from the smallest ancestor of node containing the region
+	private Collection<LimitedPrecisionIndexingNode<T>> getNodesWithin(Locator lower, Locator upper, 
+			LimitedPrecisionIndexingNode<T> node) {
+		List<LimitedPrecisionIndexingNode<T>> nodes = new ArrayList<LimitedPrecisionIndexingNode<T>>();
+		if (node!=null) {
+			climb: while (node.parent!=null) {
+				for (int i=0; i<dim; i++)
+					if (!holds(node,lower.coordinate(i),i) || !holds(node,upper.coordinate(i),i)) {
+						node = node.parent;
+						continue climb;
+					}
+				break;
+			}
+			collectOverlappingNodes(lower,upper,node,nodes);
+		}
+		return nodes;
+	}
 	
 	protected boolean regionContainsLocator(Locator regionLows, Locator regionUps, Locator loc) {
 		for (int i=0; i<dim; i++)
@@ -296,13 +531,20 @@ public class LimitedPrecisionIndexingTree<T>
 			regionContainsLocator(regionLows,regionUps,boxUps);
 	}
 
-	// CHECK THIS !!
-	private boolean sphereContainsPoint(Locator centre, long radius, Locator loc) {
-		long rsq = 0;
-		for (int i=0; i<dim; i++) {
-			long x = loc.coordinate(i)-centre.coordinate(i);
-			rsq += x*x;
+	// true if the i-th item of node n is within the region
+	private boolean regionContainsItem(Locator regionLows, Locator regionUps,
+			LimitedPrecisionIndexingNode<T> n, int i) {
+		for (int j=0; j<dim; j++) {
+			long x = n.coordinate(i,j);
+			if ((x>regionUps.coordinate(j)) || (x<regionLows.coordinate(j)))
+				return false;
 		}
+		return true;
+	}
+
+	// CHECK THIS !!
+	// rsq = squared distance of the point to the sphere centre
+	private boolean sphereContainsPoint(long rsq, long radius) {
 		// stupid optimisation
 		if (radius<sqrtMax)
 			return (rsq<=radius*radius);
@@ -312,46 +554,85 @@ public class LimitedPrecisionIndexingTree<T>
 
 	@Override
 	public Collection<T> getItemsWithin(Box limits) {
+		return itemsWithin(limits,root);
+	}
+
+	/**
+	 * <p>Same as {@link #getItemsWithin(Box)}, but the search starts from the node of an item 
+	 * close to the box (e.g. the item searching for its neighbours) instead of the root, climbing
+	 * up only as far as needed.</p>
+	 * 
+	 * @param limits the Box in which to search for items
+	 * @param from an item of this tree close to the box (ignored if not in this tree)
+	 * @return the list of items contained in the Box
+	 */
+	public Collection<T> getItemsWithin(Box limits, T from) {
+		return itemsWithin(limits,startNode(from));
+	}
+
+	private Collection<T> itemsWithin(Box limits, LimitedPrecisionIndexingNode<T> from) {
     	// get all nodes overlapping limits (including children)
 		Locator lows = factory.newLocator(limits.lowerBounds());
 		Locator ups = factory.newLocator(limits.upperBounds());
-		Collection<LimitedPrecisionIndexingNode<T>> blist = getNodesWithin(lows,ups);
+		Collection<LimitedPrecisionIndexingNode<T>> blist = getNodesWithin(lows,ups,from);
 		List<T> extraItems = new ArrayList<>();
 		QuickListOfLists<T> result = new QuickListOfLists<T>();
 		// search node list for items
 		for (LimitedPrecisionIndexingNode<T> n:blist)
-			if (!n.items.isEmpty()) // we dont care about empty nodes
+			if (n.nitems>0) // we dont care about empty nodes
 				// node region fully contained in limits: insert all items
 //				if (limits.contains(n.region()))
 				if (regionContainsBox(lows,ups,n.lowerBounds,n.upperBounds))
-					result.addList(n.items.keySet());
+					result.addList(n.localItems());
 				// node region not fully contained in limits: check all items
-				else for (T item:n.items.keySet())
+				else for (int i=0; i<n.nitems; i++)
 //					if (limits.contains(n.items.get(item)))
-					if (regionContainsLocator(lows,ups,n.items.get(item)))
-						extraItems.add(item);
+					if (regionContainsItem(lows,ups,n,i))
+						extraItems.add(n.itemAt(i));
 		result.addList(extraItems);
 		return result;
 	}
 
 	@Override
 	public Collection<T> getItemsWithin(Sphere limits) {
+		return itemsWithin(limits,root);
+	}
+
+	/**
+	 * <p>Same as {@link #getItemsWithin(Sphere)}, but the search starts from the node of an item,
+	 * as in {@link #getItemsWithin(Box, Object)}.</p>
+	 * 
+	 * @param limits the Sphere in which to search for items
+	 * @param from an item of this tree close to the sphere (ignored if not in this tree)
+	 * @return the list of items contained in the Sphere
+	 */
+	public Collection<T> getItemsWithin(Sphere limits, T from) {
+		return itemsWithin(limits,startNode(from));
+	}
+
+	private Collection<T> itemsWithin(Sphere limits, LimitedPrecisionIndexingNode<T> from) {
 		Box blim = Box.boundingBox(limits);
 		Locator lows = factory.newLocator(blim.lowerBounds());
 		Locator ups = factory.newLocator(blim.upperBounds());
-		Locator centre = factory.newLocator(limits.centre());
+		// the sphere centre, either packed or as a Locator
+		long ckey = 0L;
+		Locator centre = null;
+		if (packed && factory.canPack(limits.centre()))
+			ckey = factory.pack(limits.centre());
+		else
+			centre = factory.newLocator(limits.centre());
 		long radius = Math.round(limits.radius()/factory.precision());
-		Collection<LimitedPrecisionIndexingNode<T>> blist = getNodesWithin(lows,ups);
+		Collection<LimitedPrecisionIndexingNode<T>> blist = getNodesWithin(lows,ups,from);
 		List<T> extraItems = new ArrayList<>();
 		QuickListOfLists<T> result = new QuickListOfLists<T>();
 		for (LimitedPrecisionIndexingNode<T> n:blist)
-			if (!n.items.isEmpty())
+			if (n.nitems>0)
 				if (regionContainsBox(lows,ups,n.lowerBounds,n.upperBounds))
-					result.addList(n.items.keySet());
-				else for (T item:n.items.keySet())
+					result.addList(n.localItems());
+				else for (int i=0; i<n.nitems; i++)
 //					if (limits.contains(n.items.get(item)))
-					if (sphereContainsPoint(centre,radius,n.items.get(item)))
-						extraItems.add(item);
+					if (sphereContainsPoint(n.squaredDistance(i,ckey,centre),radius))
+						extraItems.add(n.itemAt(i));
 		result.addList(extraItems);
 		return result;
 	}
@@ -370,9 +651,13 @@ public class LimitedPrecisionIndexingTree<T>
 				indent += "--";
 			if (s) sb.append(indent).append(node.toShortString());
 			else sb.append(indent).append(node.toString());
+			// absent children are described as empty nodes
 			if (node.children!=null)
-				for (int i=0; i<node.children.length; i++)
-					sb.append(nodeToString(node.children[i],depth+1,s));
+				for (int i=0; i<(1<<dim); i++)
+					if (node.hasChild(i))
+						sb.append(nodeToString(node.child(i),depth+1,s));
+					else
+						sb.append(indent).append("--").append(node.emptyChildToString(i,s));
 		}
 		return sb.toString();
 	}
@@ -405,8 +690,12 @@ public class LimitedPrecisionIndexingTree<T>
 	@Override
 	public void clear() {
 		itemToNodeMap.clear();
-		root.items.clear();
+		root.clear();
 		root.children = null;
+		root.occupancy = null;
+		packed = rootPackable();
+		if (nodeTable!=null)
+			nodeTableRoot = null;
 	}
 
 }
@@ -0,0 +1,188 @@
+/**************************************************************************
+ *  UIT - a Universal Indexing Tree                                       *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            *
+ *                                                                        *
+ *  UIT is a generalisation and re-implementation of QuadTree and Octree  *
+ *  implementations by Paavo Toivanen as downloaded on 27/8/2018 on       *
+ *  <https://dev.solita.fi/2015/08/06/quad-tree.html>                     *
+ *                                                                        *
+ **************************************************************************
+ *  This file is part of UIT (Universal Indexing Tree).                   *
+ *                                                                        *
+ *  UIT is free software: you can redistribute it and/or modify           *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  UIT is distributed in the hope that it will be useful,                *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with UIT.  If not, see <https://www.gnu.org/licenses/gpl.html>. *
+ *                                                                        *
+ **************************************************************************/
+package fr.cnrs.iees.uit.indexing;
+
+import java.util.Arrays;
+
+/**
+ * <p>A minimal hash map with primitive {@code long} keys, using open addressing (linear probing)
+ * so that lookups do not allocate (no boxing of keys, no entry objects).</p>
+ * 
+ * <p>The key value 0 is reserved to mark empty slots and cannot be used. Indexing trees use it
+ * with <em>locational codes</em> (a leading 1 bit followed by the child indices of every level
+ * from the root), which are never 0.</p>
+ * 
+ * <p>This class is only internally used by {@link IndexingTree} implementations, 
+ * so its visibility is limited to this package.</p>
+ *
+ * @author agent - 19 oct. 2026
+ *
+ * @param <V> the type of values stored
+ */
+class LongHashMap<V> {
+
+	private static final int MIN_CAPACITY = 16;
+	// maximal load factor is 1/2
+	private long[] keys;
+	private Object[] values;
+	private int size = 0;
+	private int mask;
+
+	LongHashMap() {
+		super();
+		keys = new long[MIN_CAPACITY];
+		values = new Object[MIN_CAPACITY];
+		mask = MIN_CAPACITY-1;
+	}
+
+	// spreads key bits (murmur3 finaliser)
+	private static int hash(long key) {
+		key ^= key>>>33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key>>>33;
+		return (int) key;
+	}
+
+	/**
+	 * @param key a non-zero key
+	 * @return the value matching the key, null if absent
+	 */
+	@SuppressWarnings("unchecked")
+	V get(long key) {
+		int i = hash(key) & mask;
+		long k;
+		while ((k=keys[i])!=0L) {
+			if (k==key)
+				return (V) values[i];
+			i = (i+1) & mask;
+		}
+		return null;
+	}
+
+	/**
+	 * @param key a non-zero key
+	 * @param value the value to store
+	 * @return the former value matching the key, null if none
+	 */
+	@SuppressWarnings("unchecked")
+	V put(long key, V value) {
+		if (key==0L)
+			throw new IllegalArgumentException("LongHashMap: 0 cannot be used as a key");
+		int i = hash(key) & mask;
+		long k;
+		while ((k=keys[i])!=0L) {
+			if (k==key) {
+				V old = (V) values[i];
+				values[i] = value;
+				return old;
+			}
+			i = (i+1) & mask;
+		}
+		keys[i] = key;
+		values[i] = value;
+		if (++size > (keys.length>>1))
+			resize(keys.length<<1);
+		return null;
+	}
+
+	/**
+	 * @param key a non-zero key
+	 * @return the value removed, null if key was absent
+	 */
+	@SuppressWarnings("unchecked")
+	V remove(long key) {
+		int i = hash(key) & mask;
+		long k;
+		while ((k=keys[i])!=0L) {
+			if (k==key) {
+				V old = (V) values[i];
+				deleteSlot(i);
+				size--;
+				return old;
+			}
+			i = (i+1) & mask;
+		}
+		return null;
+	}
+
+	// backward shift deletion: moves the following entries of the probe sequence
+	// so that no 'tombstone' is needed
+	private void deleteSlot(int free) {
+		int i = free;
+		while (true) {
+			i = (i+1) & mask;
+			long k = keys[i];
+			if (k==0L)
+				break;
+			int home = hash(k) & mask;
+			// entry at i can move to free only if its home slot is not in ]free,i]
+			if (((i-home) & mask) >= ((i-free) & mask)) {
+				keys[free] = k;
+				values[free] = values[i];
+				free = i;
+			}
+		}
+		keys[free] = 0L;
+		values[free] = null;
+	}
+
+	private void resize(int capacity) {
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+		keys = new long[capacity];
+		values = new Object[capacity];
+		mask = capacity-1;
+		for (int j=0; j<oldKeys.length; j++)
+			if (oldKeys[j]!=0L) {
+				int i = hash(oldKeys[j]) & mask;
+				while (keys[i]!=0L)
+					i = (i+1) & mask;
+				keys[i] = oldKeys[j];
+				values[i] = oldValues[j];
+			}
+	}
+
+	int size() {
+		return size;
+	}
+
+	void clear() {
+		if (keys.length>MIN_CAPACITY) {
+			keys = new long[MIN_CAPACITY];
+			values = new Object[MIN_CAPACITY];
+			mask = MIN_CAPACITY-1;
+		}
+		else {
+			Arrays.fill(keys,0L);
+			Arrays.fill(values,null);
+		}
+		size = 0;
+	}
+
+}
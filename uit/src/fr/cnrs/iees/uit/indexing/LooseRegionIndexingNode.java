@@ -0,0 +1,403 @@
+/**************************************************************************
+ *  UIT - a Universal Indexing Tree                                       *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            *
+ *                                                                        *
+ *  UIT is a generalisation and re-implementation of QuadTree and Octree  *
+ *  implementations by Paavo Toivanen as downloaded on 27/8/2018 on       *
+ *  <https://dev.solita.fi/2015/08/06/quad-tree.html>                     *
+ *                                                                        *
+ **************************************************************************
+ *  This file is part of UIT (Universal Indexing Tree).                   *
+ *                                                                        *
+ *  UIT is free software: you can redistribute it and/or modify           *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  UIT is distributed in the hope that it will be useful,                *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with UIT.  If not, see <https://www.gnu.org/licenses/gpl.html>. *
+ *                                                                        *
+ **************************************************************************/
+package fr.cnrs.iees.uit.indexing;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import au.edu.anu.omhtk.collections.QuickListOfLists;
+import fr.cnrs.iees.uit.space.Box;
+import fr.cnrs.iees.uit.space.Point;
+
+/**
+ * <p>{@linkplain IndexingNode} used in {@link LooseRegionIndexingTree}s.</p>
+ * 
+ * <p>Every node has a <em>tight</em> region, obtained by halving its parent region as in
+ * {@link RegionIndexingNode}, and a <em>loose</em> region with the same centre, enlarged by the 
+ * tree looseness factor. The extent of every item stored in a node is contained in the 
+ * node loose region. Unlike in other region trees, inner nodes may store items: those
+ * that are too large to fit in the loose region of any child.</p>
+ * 
+ * <p>Item extents are stored as boxes with a radius, i.e. the set of points within 
+ * {@code radius} of the box: a box has a zero radius, a sphere is a point box with a 
+ * radius, a point is a point box with a zero radius. Box bounds are stored as 
+ * one array per dimension (cf. {@link LeafScan}).</p>
+ *
+ * @author agent - 19 oct. 2026
+ *
+ * @param <T> the type of object stored in this tree
+ */
+class LooseRegionIndexingNode<T> extends IndexingNode<T,LooseRegionIndexingNode<T>> {
+
+	/** the storage capacity of leaf nodes - may be made dynamic*/
+	protected static int LEAF_MAX_ITEMS = 10;
+
+	// built lazily from lower and upper when first needed
+	private Box region = null;
+	// tight region bounds and centre
+	protected double[] lower;
+	protected double[] upper;
+	protected double[] centre;
+	// loose region bounds
+	protected double[] looseLower;
+	protected double[] looseUpper;
+
+	/** the item extents, in the order of {@link #items}: box bounds as one array per dimension, and radius */
+	protected double[][] lows = null;
+	protected double[][] ups = null;
+	protected double[] radii = null;
+
+	/** the depth of this node (0 for the root) */
+	protected int depth = 0;
+
+	private int dim;
+
+	protected LooseRegionIndexingTree<T> tree = null;
+
+	/**
+	 * 
+	 * @param parent a parent node (if null, this is the root node of the tree)
+	 * @param lower the lower bounds of the tight region of this node
+	 * @param upper the upper bounds of the tight region of this node
+	 * @param tree the tree this node belongs to
+	 */
+	protected LooseRegionIndexingNode(LooseRegionIndexingNode<T> parent, double[] lower, double[] upper,
+			LooseRegionIndexingTree<T> tree) {
+		super();
+		this.parent = parent;
+		this.tree = tree;
+		this.lower = lower;
+		this.upper = upper;
+		dim = lower.length;
+		if (parent!=null)
+			depth = parent.depth+1;
+		centre = new double[dim];
+		looseLower = new double[dim];
+		looseUpper = new double[dim];
+		for (int j=0; j<dim; j++) {
+			centre[j] = (lower[j]+upper[j])/2;
+			double half = tree.looseness*(upper[j]-lower[j])/2;
+			looseLower[j] = centre[j]-half;
+			looseUpper[j] = centre[j]+half;
+		}
+	}
+
+	/**
+	 *
+	 * @return the tight region of this node
+	 */
+	protected Box region() {
+		if (region==null)
+			region = Box.boundingBox(Point.newPoint(lower.clone()),Point.newPoint(upper.clone()));
+		return region;
+	}
+
+	/**
+	 * @return true if this node has no items and no children
+	 */
+	protected boolean isEmpty() {
+		return (nitems==0) && ((children==null) || (children.length==0));
+	}
+
+	// index of the child containing the centre of a box - centres on the node centre go to the upper child
+	private int childIndex(double[] lo, double[] up) {
+		int index = 0;
+		for (int j=0; j<dim; j++)
+			index = (index<<1) | (((lo[j]+up[j])/2>=centre[j]) ? 1 : 0);
+		return index;
+	}
+
+	// true if the loose region of child i contains the box [lo-r,up+r]
+	private boolean childFits(int i, double[] lo, double[] up, double r) {
+		for (int j=0; j<dim; j++) {
+			boolean upperHalf = ((i>>(dim-1-j)) & 1)==1;
+			double l = upperHalf ? centre[j] : lower[j];
+			double u = upperHalf ? upper[j] : centre[j];
+			double c = (l+u)/2;
+			double half = tree.looseness*(u-l)/2;
+			if ((lo[j]-r<c-half) || (up[j]+r>c+half))
+				return false;
+		}
+		return true;
+	}
+
+	// child bounds are either the lower bound and the centre or the centre and the upper bound,
+	// depending on the bit of the child index for this dimension (first dimension = most significant bit)
+	private LooseRegionIndexingNode<T> makeChild(int i) {
+		double[] lo = new double[dim];
+		double[] up = new double[dim];
+		for (int j=0; j<dim; j++)
+			if (((i>>(dim-1-j)) & 1)==1) {
+				lo[j] = centre[j];
+				up[j] = upper[j];
+			}
+			else {
+				lo[j] = lower[j];
+				up[j] = centre[j];
+			}
+		LooseRegionIndexingNode<T> child = new LooseRegionIndexingNode<T>(this,lo,up,tree);
+		addChild(i,child);
+		return child;
+	}
+
+	/**
+	 * @param lo the extent box lower bounds
+	 * @param up the extent box upper bounds
+	 * @param r the extent radius
+	 * @return the index of the child where the extent should go, -1 if it does not fit in any child
+	 */
+	protected int fittingChild(double[] lo, double[] up, double r) {
+		int i = childIndex(lo,up);
+		return childFits(i,lo,up,r) ? i : -1;
+	}
+
+	/**
+	 * Inserts an item in the deepest node whose loose region contains its extent, below this node.
+	 * 
+	 * @param item the item to insert
+	 * @param lo the extent box lower bounds
+	 * @param up the extent box upper bounds
+	 * @param r the extent radius
+	 * @return the node where the item was inserted, null if it was already there
+	 */
+	public LooseRegionIndexingNode<T> insert(T item, double[] lo, double[] up, double r) {
+		LooseRegionIndexingNode<T> node = this;
+		while (node.children!=null) {
+			int i = node.fittingChild(lo,up,r);
+			if (i<0)
+				break;
+			LooseRegionIndexingNode<T> child = node.child(i);
+			if (child==null)
+				child = node.makeChild(i);
+			node = child;
+		}
+		// do not insert same item twice at the same location
+		if (node.indexOf(item)>=0)
+			return null;
+		node.add(item,lo,up,r);
+		// if list of items is full, move the items that fit into children
+		if ((node.children==null) && (node.nitems>LEAF_MAX_ITEMS) && node.canSplit()) {
+			node.makeChildren();
+			return tree.itemToNodeMap.get(item);
+		}
+		return node;
+	}
+
+	// true if the node is not too deep and its items do not all have the same extent
+	private boolean canSplit() {
+		if (depth>=tree.maxDepth)
+			return false;
+		for (int i=1; i<nitems; i++) {
+			if (radii[i]!=radii[0])
+				return true;
+			for (int j=0; j<dim; j++)
+				if ((lows[j][i]!=lows[j][0]) || (ups[j][i]!=ups[j][0]))
+					return true;
+		}
+		return false;
+	}
+
+	// move the items that fit into the children. Items too large stay in this node.
+	@SuppressWarnings("unchecked")
+	private void makeChildren() {
+		initChildren(new LooseRegionIndexingNode[0],1<<dim);
+		double[] lo = new double[dim];
+		double[] up = new double[dim];
+		int n = nitems;
+		nitems = 0;
+		for (int i=0; i<n; i++) {
+			for (int j=0; j<dim; j++) {
+				lo[j] = lows[j][i];
+				up[j] = ups[j][i];
+			}
+			T item = itemAt(i);
+			double r = radii[i];
+			items[i] = null;
+			int k = fittingChild(lo,up,r);
+			if (k<0) {
+				// keep it here
+				items[nitems] = item;
+				for (int j=0; j<dim; j++) {
+					lows[j][nitems] = lo[j];
+					ups[j][nitems] = up[j];
+				}
+				radii[nitems] = r;
+				nitems++;
+				tree.itemToNodeMap.put(item,this);
+			}
+			else {
+				LooseRegionIndexingNode<T> child = child(k);
+				if (child==null)
+					child = makeChild(k);
+				tree.itemToNodeMap.put(item,child.insert(item,lo.clone(),up.clone(),r));
+			}
+		}
+	}
+
+	private void add(T item, double[] lo, double[] up, double r) {
+		if (items==null) {
+			initItems(LEAF_MAX_ITEMS+1,0);
+			lows = new double[dim][LEAF_MAX_ITEMS+1];
+			ups = new double[dim][LEAF_MAX_ITEMS+1];
+			radii = new double[LEAF_MAX_ITEMS+1];
+		}
+		int i = appendItem(item,null);
+		for (int j=0; j<dim; j++) {
+			lows[j][i] = lo[j];
+			ups[j][i] = up[j];
+		}
+		radii[i] = r;
+	}
+
+	@Override
+	protected void growItems(int capacity) {
+		super.growItems(capacity);
+		radii = Arrays.copyOf(radii,capacity);
+		for (int j=0; j<dim; j++) {
+			lows[j] = Arrays.copyOf(lows[j],capacity);
+			ups[j] = Arrays.copyOf(ups[j],capacity);
+		}
+	}
+
+	@Override
+	protected void removeItemAt(int i) {
+		int last = nitems-1;
+		radii[i] = radii[last];
+		for (int j=0; j<dim; j++) {
+			lows[j][i] = lows[j][last];
+			ups[j][i] = ups[j][last];
+		}
+		super.removeItemAt(i);
+	}
+
+	/**
+	 * Squared distance between the extent box of item i and a box, along all axes where they 
+	 * do not overlap. The item extent overlaps the box if this is not larger than its squared radius.
+	 * 
+	 * @param i the item rank
+	 * @param lo the box lower bounds
+	 * @param up the box upper bounds
+	 * @return the squared distance between the two boxes (0 if they overlap)
+	 */
+	protected double squaredDistance(int i, double[] lo, double[] up) {
+		double d2 = 0.0;
+		for (int j=0; j<dim; j++) {
+			double d = Math.max(0.0,Math.max(lows[j][i]-up[j],lo[j]-ups[j][i]));
+			d2 += d*d;
+		}
+		return d2;
+	}
+
+	/**
+	 * @param lo the box lower bounds
+	 * @param up the box upper bounds
+	 * @return true if the loose region of this node and the box have at least one common point
+	 */
+	protected boolean looseOverlaps(double[] lo, double[] up) {
+		for (int j=0; j<dim; j++)
+			if ((looseUpper[j]<lo[j]) || (looseLower[j]>up[j]))
+				return false;
+		return true;
+	}
+
+	/**
+	 * @param lo the box lower bounds
+	 * @param up the box upper bounds
+	 * @return true if the loose region of this node is within the box
+	 */
+	protected boolean looseWithin(double[] lo, double[] up) {
+		for (int j=0; j<dim; j++)
+			if ((looseLower[j]<lo[j]) || (looseUpper[j]>up[j]))
+				return false;
+		return true;
+	}
+
+	/**
+	 * @param x a point
+	 * @return the squared distance from the point to the loose region of this node
+	 */
+	protected double looseSquaredDistance(double[] x) {
+		double d2 = 0.0;
+		for (int j=0; j<dim; j++) {
+			double d = Math.max(0.0,Math.max(looseLower[j]-x[j],x[j]-looseUpper[j]));
+			d2 += d*d;
+		}
+		return d2;
+	}
+
+	// recursive
+	private void getAllItems(QuickListOfLists<T> list, LooseRegionIndexingNode<T> node) {
+		if (node.nitems>0)
+			list.addList(node.localItems());
+		if (node.children!=null)
+			for (int i=0; i<node.children.length; i++)
+				getAllItems(list,node.children[i]);
+	}
+
+	@Override
+	public final Collection<T> items() {
+		QuickListOfLists<T> list = new QuickListOfLists<T>();
+		getAllItems(list,this);
+		return list;
+	}
+
+	@Override
+	public final void clear() {
+		clearItems();
+	}
+
+	// for debugging
+	/**
+	 *
+	 * @return a short String description of this node
+	 */
+	protected String toShortString() {
+		StringBuilder sb=new StringBuilder();
+		sb.append("items={");
+		for (int i=0; i<nitems; i++) {
+			if (i>0) sb.append(',');
+			sb.append(items[i].toString());
+		}
+		sb.append("}\n");
+		return sb.toString();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb=new StringBuilder();
+		sb.append("region=[")
+			.append(region().lowerBounds().toString())
+			.append("-")
+			.append(region().upperBounds().toString())
+			.append("], ");
+		sb.append(toShortString());
+		return sb.toString();
+	}
+
+}
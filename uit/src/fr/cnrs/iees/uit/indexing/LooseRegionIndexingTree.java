@@ -0,0 +1,343 @@
+/**************************************************************************
+ *  UIT - a Universal Indexing Tree                                       *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            *
+ *                                                                        *
+ *  UIT is a generalisation and re-implementation of QuadTree and Octree  *
+ *  implementations by Paavo Toivanen as downloaded on 27/8/2018 on       *
+ *  <https://dev.solita.fi/2015/08/06/quad-tree.html>                     *
+ *                                                                        *
+ **************************************************************************
+ *  This file is part of UIT (Universal Indexing Tree).                   *
+ *                                                                        *
+ *  UIT is free software: you can redistribute it and/or modify           *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  UIT is distributed in the hope that it will be useful,                *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with UIT.  If not, see <https://www.gnu.org/licenses/gpl.html>. *
+ *                                                                        *
+ **************************************************************************/
+package fr.cnrs.iees.uit.indexing;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import au.edu.anu.omhtk.collections.QuickListOfLists;
+import fr.cnrs.iees.uit.space.Box;
+import fr.cnrs.iees.uit.space.Point;
+import fr.cnrs.iees.uit.space.Sphere;
+
+/**
+ * <p>A <em>loose</em> region-based <em>k</em>-d tree, for items with a spatial extent.</p>
+ * 
+ * <p>Other indexing trees index items as points. When items have an extent (e.g. plant crowns
+ * or animal home ranges), finding the items overlapping a region with these trees requires to 
+ * enlarge the query region by the largest item extent, and then to check all items found.
+ * In this tree, items are inserted with their extent, given as a {@link Box} or a {@link Sphere}.
+ * Nodes have a <em>loose</em> region: their usual region, enlarged by a <em>looseness</em>
+ * factor around its centre. An item is stored in the deepest node whose loose region 
+ * contains its extent, i.e. small items are stored deep in the tree and large items close to the
+ * root. With the default looseness factor of 2, any item smaller than the region of a node fits
+ * in the loose region of the child containing its centre.</p>
+ * 
+ * <p>{@link #getItemsWithin(Box)} and {@link #getItemsWithin(Sphere)} return the items whose
+ * extent overlaps the query region, i.e. have at least one point in common with it. Items inserted
+ * with {@link #insert(Object, Point)} have no extent, so that for them the results are the same as
+ * with {@link RegionIndexingTree}. {@link #getNearestItem(Point)} returns the item with the
+ * closest extent (distance 0 if the point is within the extent).</p>
+ * 
+ * <p>All items are expected to lie within the tree domain; items outside the domain are stored 
+ * in the root node.</p>
+ *
+ * @author agent - 19 oct. 2026
+ *
+ * @param <T> type of content to index
+ */
+public class LooseRegionIndexingTree<T> extends AbstractIndexingTree<T,LooseRegionIndexingNode<T>> {
+
+	/** the default looseness factor */
+	public static final double DEFAULT_LOOSENESS = 2.0;
+
+    // reverse mapping of items to nodes to facilitate removal of items without knowing their location
+    protected Map<T,LooseRegionIndexingNode<T>> itemToNodeMap = new HashMap<>();
+    /** the ratio of loose region to tight region side lengths */
+    protected final double looseness;
+    /** maximal depth of the tree (only reached with very small items) */
+    protected int maxDepth = RegionIndexingTree.DEFAULT_MAX_DEPTH;
+
+	/**
+	 * This constructor assumes all items will be contained within the box passed as
+	 * its argument.
+	 * 
+	 * @param domain the region indexed by this tree
+	 */
+	public LooseRegionIndexingTree(Box domain) {
+		this(domain,DEFAULT_LOOSENESS);
+	}
+
+	/**
+	 * This constructor assumes all items will be contained within the box passed as
+	 * its argument.
+	 * 
+	 * @param domain the region indexed by this tree
+	 * @param looseness the ratio of loose region to region side lengths (&ge;1). 1 gives a
+	 * plain region tree where items crossing node limits stay in upper nodes.
+	 */
+	public LooseRegionIndexingTree(Box domain, double looseness) {
+		super(domain);
+		if (looseness<1.0)
+			throw new IllegalArgumentException("LooseRegionIndexingTree: looseness must be at least 1");
+		this.looseness = looseness;
+		root = new LooseRegionIndexingNode<T>(null,Coordinates.lowerBounds(domain),
+			Coordinates.upperBounds(domain),this);
+	}
+
+	/**
+	 * @return the ratio of loose region to region side lengths
+	 */
+	public double looseness() {
+		return looseness;
+	}
+
+	// inserts an extent in the tree
+	private void insert(T item, double[] lo, double[] up, double r) {
+		LooseRegionIndexingNode<T> node = root.insert(item,lo,up,r);
+		if (node!=null)
+			itemToNodeMap.put(item,node);
+	}
+
+	/**
+	 * Inserts an item with no extent.
+	 */
+	@Override
+	public void insert(T item, Point at) {
+		double[] x = Coordinates.of(at);
+		insert(item,x,x.clone(),0.0);
+	}
+
+	/**
+	 * Inserts an item with a box extent.
+	 * 
+	 * @param item the object to insert
+	 * @param extent the region covered by the item
+	 */
+	public void insert(T item, Box extent) {
+		insert(item,Coordinates.lowerBounds(extent),Coordinates.upperBounds(extent),0.0);
+	}
+
+	/**
+	 * Inserts an item with a spherical extent.
+	 * 
+	 * @param item the object to insert
+	 * @param extent the region covered by the item
+	 */
+	public void insert(T item, Sphere extent) {
+		double[] c = Coordinates.of(extent.centre());
+		insert(item,c,c.clone(),extent.radius());
+	}
+
+	// remove empty nodes to adjust tree structure to item content
+	private void dropNode(LooseRegionIndexingNode<T> node) {
+		while ((node.parent!=null) && node.isEmpty()) {
+			node.parent.removeChild(node);
+			node.tree = null;
+			node = node.parent;
+		}
+	}
+
+	@Override
+	public boolean remove(T item) {
+		LooseRegionIndexingNode<T> n = itemToNodeMap.remove(item);
+		if (n!=null) {
+			n.removeItem(item);
+			dropNode(n);
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public int size() {
+		return itemToNodeMap.size();
+	}
+
+	// recursive - items whose extent overlaps the box [lo,up] (r = 0) or the sphere of centre lo=up
+	// and radius r. Nodes whose loose region is within the query region return all their items.
+	// The root is always searched as it also stores the items lying out of the tree domain.
+	private void collectItems(LooseRegionIndexingNode<T> node, double[] lo, double[] up, double r,
+			double[] qlo, double[] qup, QuickListOfLists<T> result, List<T> extraItems) {
+		boolean isRoot = node.parent==null;
+		if (!isRoot && !node.looseOverlaps(qlo,qup))
+			return;
+		if (!isRoot && node.looseWithin(qlo,qup) && ((r==0.0) || (farthestSquaredDistance(node,lo)<=r*r)))
+			result.addList(node.items());
+		else {
+			for (int i=0; i<node.nitems; i++) {
+				double ri = node.radii[i]+r;
+				if (node.squaredDistance(i,lo,up)<=ri*ri)
+					extraItems.add(node.itemAt(i));
+			}
+			if (node.children!=null)
+				for (int i=0; i<node.children.length; i++)
+					collectItems(node.children[i],lo,up,r,qlo,qup,result,extraItems);
+		}
+	}
+
+	// squared distance from a point to the farthest corner of the loose region of a node
+	private double farthestSquaredDistance(LooseRegionIndexingNode<T> node, double[] x) {
+		double d2 = 0.0;
+		for (int j=0; j<dim; j++) {
+			double d = Math.max(x[j]-node.looseLower[j],node.looseUpper[j]-x[j]);
+			d2 += d*d;
+		}
+		return d2;
+	}
+
+	/**
+	 * Get all items whose extent overlaps a {@linkplain Box}.
+	 * 
+	 * @param limits the Box in which to search for items
+	 * @return the list of items overlapping the Box
+	 */
+	@Override
+	public Collection<T> getItemsWithin(Box limits) {
+		double[] lo = Coordinates.lowerBounds(limits);
+		double[] up = Coordinates.upperBounds(limits);
+		List<T> extraItems = new ArrayList<>();
+		QuickListOfLists<T> result = new QuickListOfLists<T>();
+		collectItems(root,lo,up,0.0,lo,up,result,extraItems);
+		result.addList(extraItems);
+		return result;
+	}
+
+	/**
+	 * Get all items whose extent overlaps a {@linkplain Sphere}.
+	 * 
+	 * @param limits the Sphere in which to search for items
+	 * @return the list of items overlapping the Sphere
+	 */
+	@Override
+	public Collection<T> getItemsWithin(Sphere limits) {
+		double[] c = Coordinates.of(limits.centre());
+		double r = limits.radius();
+		double[] qlo = new double[dim];
+		double[] qup = new double[dim];
+		for (int j=0; j<dim; j++) {
+			qlo[j] = c[j]-r;
+			qup[j] = c[j]+r;
+		}
+		List<T> extraItems = new ArrayList<>();
+		QuickListOfLists<T> result = new QuickListOfLists<T>();
+		collectItems(root,c,c,r,qlo,qup,result,extraItems);
+		result.addList(extraItems);
+		return result;
+	}
+
+	// the state of a nearest item search
+	private static class Nearest<T> {
+		double dist2 = Double.POSITIVE_INFINITY;
+		T item = null;
+	}
+
+	// recursive - branch and bound on the distance to node loose regions
+	private void nearest(LooseRegionIndexingNode<T> node, double[] x, Nearest<T> search) {
+		for (int i=0; i<node.nitems; i++) {
+			double d = Math.max(0.0,Math.sqrt(node.squaredDistance(i,x,x))-node.radii[i]);
+			if (d*d<search.dist2) {
+				search.dist2 = d*d;
+				search.item = node.itemAt(i);
+			}
+		}
+		if (node.children!=null) {
+			// visit children closest first
+			int n = node.children.length;
+			double[] d2 = new double[n];
+			int[] order = new int[n];
+			for (int i=0; i<n; i++) {
+				d2[i] = node.children[i].looseSquaredDistance(x);
+				int k = i;
+				while ((k>0) && (d2[order[k-1]]>d2[i])) {
+					order[k] = order[k-1];
+					k--;
+				}
+				order[k] = i;
+			}
+			for (int i=0; i<n; i++)
+				if (d2[order[i]]<search.dist2)
+					nearest(node.children[order[i]],x,search);
+		}
+	}
+
+	@Override
+	public T getNearestItem(Point at) {
+		Nearest<T> search = new Nearest<>();
+		nearest(root,Coordinates.of(at),search);
+		return search.item;
+	}
+
+	// recursive - called by toString();
+	private String nodeToString(LooseRegionIndexingNode<T> node, int depth, boolean s) {
+		StringBuilder sb = new StringBuilder();
+		if (node!=null) {
+			String indent = "";
+			for (int i=0; i<depth; i++)
+				indent += "--";
+			if (s) sb.append(indent).append(node.toShortString());
+			else sb.append(indent).append(node.toString());
+			if (node.children!=null)
+				for (int i=0; i<node.children.length; i++)
+					sb.append(nodeToString(node.children[i],depth+1,s));
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(getClass().getSimpleName()+"\n");
+		sb.append(nodeToString(root,0,false));
+		return sb.toString();
+	}
+
+	/**
+	 *
+	 * @return a 'short' description of this tree
+	 */
+	public String toShortString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(getClass().getSimpleName()+"\n");
+		sb.append("region = ");
+		sb.append(root.region().toString());
+		sb.append(", looseness = ").append(looseness).append('\n');
+		sb.append(nodeToString(root,0,true));
+		return sb.toString();
+	}
+
+	/**
+	 * @return The {@link Box} region.
+	 */
+	public Box region() {
+		return root.region();
+	}
+
+	@Override
+	public void clear() {
+		itemToNodeMap.clear();
+		root.clear();
+		root.children = null;
+		root.occupancy = null;
+	}
+
+}
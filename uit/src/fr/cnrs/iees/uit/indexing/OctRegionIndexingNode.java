@@ -0,0 +1,303 @@
+/**************************************************************************
+ *  UIT - a Universal Indexing Tree                                       *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            *
+ *                                                                        *
+ *  UIT is a generalisation and re-implementation of QuadTree and Octree  *
+ *  implementations by Paavo Toivanen as downloaded on 27/8/2018 on       *
+ *  <https://dev.solita.fi/2015/08/06/quad-tree.html>                     *
+ *                                                                        *
+ **************************************************************************
+ *  This file is part of UIT (Universal Indexing Tree).                   *
+ *                                                                        *
+ *  UIT is free software: you can redistribute it and/or modify           *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  UIT is distributed in the hope that it will be useful,                *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with UIT.  If not, see <https://www.gnu.org/licenses/gpl.html>. *
+ *                                                                        *
+ **************************************************************************/
+package fr.cnrs.iees.uit.indexing;
+
+import java.util.Collection;
+
+import au.edu.anu.omhtk.collections.QuickListOfLists;
+import fr.cnrs.iees.uit.space.Box;
+import fr.cnrs.iees.uit.space.Point;
+
+/**
+ * <p>{@linkplain IndexingNode} used in {@link OctRegionIndexingTree}s, i.e. a
+ * {@link RegionIndexingNode} specialised for dimension 3.</p>
+ * 
+ * <p>Region bounds are stored as plain {@code double} fields and leaf items are stored with their 
+ * coordinates in parallel arrays, cf. {@link QuadRegionIndexingNode}.</p>
+ *
+ * @author agent - 19 oct. 2026
+ *
+ * @param <T> the type of object stored in this tree
+ */
+class OctRegionIndexingNode<T> extends IndexingNode<T,OctRegionIndexingNode<T>> {
+
+	/** the storage capacity of leaf nodes - may be made dynamic*/
+	protected static int LEAF_MAX_ITEMS = 10;
+
+	// region
+	protected double xmin, ymin, zmin, xmax, ymax, zmax;
+	// region centre
+	protected double xc, yc, zc;
+	private Box region = null;
+
+	/** the depth of this node, i.e. the number of halvings of the root region to get its region
+	 * (may be negative after the expansion of the root, cf. {@link #expandRootRegion(double, double, double)}) */
+	protected int depth = 0;
+
+	protected OctRegionIndexingTree<T> tree = null;
+
+	protected OctRegionIndexingNode(OctRegionIndexingNode<T> parent,
+			double xmin, double ymin, double zmin, double xmax, double ymax, double zmax,
+			OctRegionIndexingTree<T> tree) {
+		super();
+		this.parent = parent;
+		this.tree = tree;
+		initItems(LEAF_MAX_ITEMS,3);
+		if (parent!=null)
+			depth = parent.depth+1;
+		setRegion(xmin,ymin,zmin,xmax,ymax,zmax);
+	}
+
+	private void setRegion(double xmin, double ymin, double zmin, double xmax, double ymax, double zmax) {
+		this.xmin = xmin;
+		this.ymin = ymin;
+		this.zmin = zmin;
+		this.xmax = xmax;
+		this.ymax = ymax;
+		this.zmax = zmax;
+		xc = (xmin+xmax)/2;
+		yc = (ymin+ymax)/2;
+		zc = (zmin+zmax)/2;
+		region = null;
+	}
+
+	/**
+	 * @return the portion of space represented by this node
+	 */
+	protected Box region() {
+		if (region==null)
+			region = Box.boundingBox(Point.newPoint(xmin,ymin,zmin),Point.newPoint(xmax,ymax,zmax));
+		return region;
+	}
+
+	protected final boolean contains(double x, double y, double z) {
+		return (x>=xmin) && (x<=xmax) && (y>=ymin) && (y<=ymax) && (z>=zmin) && (z<=zmax);
+	}
+
+	// strict overlap, cf. Box.overlaps()
+	protected final boolean overlaps(double lx, double ly, double lz, double ux, double uy, double uz) {
+		return (xmax>lx) && (xmin<ux) && (ymax>ly) && (ymin<uy) && (zmax>lz) && (zmin<uz);
+	}
+
+	protected final boolean isWithin(double lx, double ly, double lz, double ux, double uy, double uz) {
+		return (xmin>=lx) && (xmax<=ux) && (ymin>=ly) && (ymax<=uy) && (zmin>=lz) && (zmax<=uz);
+	}
+
+	// true if the whole region lies within distance r of (x,y,z), i.e. its farthest corner does
+	protected final boolean isWithin(double x, double y, double z, double r2) {
+		double dx = Math.max(x-xmin,xmax-x);
+		double dy = Math.max(y-ymin,ymax-y);
+		double dz = Math.max(z-zmin,zmax-z);
+		return dx*dx+dy*dy+dz*dz <= r2;
+	}
+
+	// one step of Distance.distanceToClosestEdge(), from one dimension to the next
+	private static double edgeStep(boolean wasIn, double dist, boolean isIn, double d) {
+		if (wasIn)
+			return isIn ? Math.min(dist,d) : d;
+		else
+			return isIn ? dist : Math.sqrt(dist*dist+d*d);
+	}
+
+	/**
+	 * Same result as {@link fr.cnrs.iees.uit.space.Distance#distanceToClosestEdge(Point, Box)}
+	 * for this node region.
+	 */
+	protected final double distanceToClosestEdge(double x, double y, double z) {
+		boolean inx = (x>=xmin) && (x<=xmax);
+		boolean iny = (y>=ymin) && (y<=ymax);
+		boolean inz = (z>=zmin) && (z<=zmax);
+		double dist = Math.min(Math.abs(x-xmin),Math.abs(x-xmax));
+		dist = edgeStep(inx,dist,iny,Math.min(Math.abs(y-ymin),Math.abs(y-ymax)));
+		return edgeStep(iny,dist,inz,Math.min(Math.abs(z-zmin),Math.abs(z-zmax)));
+	}
+
+	// index of the child containing (x,y,z) - points on the centre go to the upper child
+	// x is the most significant bit, as in RegionIndexingNode
+	protected final int childIndex(double x, double y, double z) {
+		return ((x>=xc) ? 4 : 0) | ((y>=yc) ? 2 : 0) | ((z>=zc) ? 1 : 0);
+	}
+
+	@Override
+	protected final boolean identity() {
+		return (tree!=null) && tree.identity;
+	}
+
+	private void add(T item, double x, double y, double z) {
+		int i = appendItem(item,null);
+		lanes[0][i] = x;
+		lanes[1][i] = y;
+		lanes[2][i] = z;
+	}
+
+	/**
+	 * <p>Computes a new region containing the point passed as an argument.</p>
+	 * <p>This method is only used in the {@linkplain ExpandingOctRegionIndexingTree}.</p>
+	 * @param x first coordinate of the point to include in the tree region
+	 * @param y second coordinate of the point to include in the tree region
+	 * @param z third coordinate of the point to include in the tree region
+	 * @return the new root node for the calling tree
+	 */
+	protected OctRegionIndexingNode<T> expandRootRegion(double x, double y, double z) {
+		// if the region is null, enlarge it using the new point as the limit (cf. Box.boundingCube())
+		if ((xmax-xmin)*(ymax-ymin)*(zmax-zmin)==0.0) {
+			double lx = Math.min(xmin,x);
+			double ly = Math.min(ymin,y);
+			double lz = Math.min(zmin,z);
+			double side = Math.max(Math.max(Math.max(xmin,x)-lx,Math.max(ymin,y)-ly),Math.max(zmin,z)-lz);
+			setRegion(lx,ly,lz,lx+side,ly+side,lz+side);
+			return this;
+		}
+		else {
+			if (parent==null) {
+				double lx = xmin, ly = ymin, lz = zmin, ux = xmax, uy = ymax, uz = zmax;
+				if (x<xmin) lx = xmin-(xmax-xmin);
+				if (x>xmax) ux = xmax+(xmax-xmin);
+				if (y<ymin) ly = ymin-(ymax-ymin);
+				if (y>ymax) uy = ymax+(ymax-ymin);
+				if (z<zmin) lz = zmin-(zmax-zmin);
+				if (z>zmax) uz = zmax+(zmax-zmin);
+				parent = new OctRegionIndexingNode<T>(null,lx,ly,lz,ux,uy,uz,tree);
+				parent.depth = depth-1;
+				parent.makeChildren(); // this creates empty children in the parent
+				// place me in my parent's children
+				parent.children[parent.childIndex(xc,yc,zc)] = this;
+			}
+			return parent;
+		}
+	}
+
+	public OctRegionIndexingNode<T> insert(T item, double x, double y, double z) {
+		OctRegionIndexingNode<T> node = this;
+		while (node.children!=null)
+			node = node.children[node.childIndex(x,y,z)];
+		// do not insert same item twice at the same location
+		if (node.indexOf(item)>=0)
+			return null;
+		// if list of items is full, expand to child nodes
+		// (if not possible, the list overflows its nominal capacity)
+		if ((node.nitems >= LEAF_MAX_ITEMS) && node.canSplit()) {
+			node.makeChildren();
+			return node.insert(item,x,y,z);
+		}
+		node.add(item,x,y,z);
+		return node;
+	}
+
+	// true if this leaf can be split, i.e. the tree depth and cell size limits allow it and the split
+	// can separate its items (which is not the case if they all are at the same location)
+	private boolean canSplit() {
+		if (depth-tree.root.depth >= tree.maxDepth)
+			return false;
+		if (Math.max(Math.max(xmax-xmin,ymax-ymin),zmax-zmin)/2 < tree.minCellSize)
+			return false;
+		for (int i=1; i<nitems; i++)
+			if ((lanes[0][i]!=lanes[0][0]) || (lanes[1][i]!=lanes[1][0]) || (lanes[2][i]!=lanes[2][0]))
+				return true;
+		return false;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void makeChildren() {
+		children = new OctRegionIndexingNode[8];
+		children[0] = new OctRegionIndexingNode<T>(this,xmin,ymin,zmin,xc,yc,zc,tree);
+		children[1] = new OctRegionIndexingNode<T>(this,xmin,ymin,zc,xc,yc,zmax,tree);
+		children[2] = new OctRegionIndexingNode<T>(this,xmin,yc,zmin,xc,ymax,zc,tree);
+		children[3] = new OctRegionIndexingNode<T>(this,xmin,yc,zc,xc,ymax,zmax,tree);
+		children[4] = new OctRegionIndexingNode<T>(this,xc,ymin,zmin,xmax,yc,zc,tree);
+		children[5] = new OctRegionIndexingNode<T>(this,xc,ymin,zc,xmax,yc,zmax,tree);
+		children[6] = new OctRegionIndexingNode<T>(this,xc,yc,zmin,xmax,ymax,zc,tree);
+		children[7] = new OctRegionIndexingNode<T>(this,xc,yc,zc,xmax,ymax,zmax,tree);
+		// spread the extant items into the child nodes
+		for (int i=0; i<nitems; i++) {
+			OctRegionIndexingNode<T> newNode = children[childIndex(lanes[0][i],lanes[1][i],lanes[2][i])];
+			newNode.add(itemAt(i),lanes[0][i],lanes[1][i],lanes[2][i]);
+			tree.itemToNodeMap.put(itemAt(i),newNode); // this will replace the former mapping
+		}
+		// empty the item list now they have been put in the child nodes
+		clear();
+	}
+
+	// recursive
+	private void getAllItems(QuickListOfLists<T> list, OctRegionIndexingNode<T> node) {
+		if (node.nitems>0)
+			list.addList(node.localItems());
+		else if (node.children!=null)
+			for (int i=0; i<node.children.length; i++)
+				getAllItems(list,node.children[i]);
+	}
+
+	@Override
+	public final Collection<T> items() {
+		QuickListOfLists<T> list = new QuickListOfLists<T>();
+		getAllItems(list,this);
+		return list;
+	}
+
+	@Override
+	public final void clear() {
+		clearItems();
+	}
+
+	// for debugging
+	/**
+	 *
+	 * @return a short String description of this node
+	 */
+	protected String toShortString() {
+		StringBuilder sb=new StringBuilder();
+		sb.append("items={");
+		for (int i=0; i<nitems; i++) {
+			if (i>0) sb.append(',');
+			sb.append(items[i].toString());
+		}
+		sb.append("}\n");
+		return sb.toString();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb=new StringBuilder();
+		sb.append("region=[")
+			.append(region().lowerBounds().toString())
+			.append("-")
+			.append(region().upperBounds().toString())
+			.append("], ");
+		sb.append("items={");
+		for (int i=0; i<nitems; i++) {
+			if (i>0) sb.append(',');
+			sb.append(items[i].toString())
+				.append("@")
+				.append(Point.newPoint(lanes[0][i],lanes[1][i],lanes[2][i]).toString());
+		}
+		sb.append("}\n");
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,433 @@
+/**************************************************************************
+ *  UIT - a Universal Indexing Tree                                       *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            *
+ *                                                                        *
+ *  UIT is a generalisation and re-implementation of QuadTree and Octree  *
+ *  implementations by Paavo Toivanen as downloaded on 27/8/2018 on       *
+ *  <https://dev.solita.fi/2015/08/06/quad-tree.html>                     *
+ *                                                                        *
+ **************************************************************************
+ *  This file is part of UIT (Universal Indexing Tree).                   *
+ *                                                                        *
+ *  UIT is free software: you can redistribute it and/or modify           *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  UIT is distributed in the hope that it will be useful,                *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with UIT.  If not, see <https://www.gnu.org/licenses/gpl.html>. *
+ *                                                                        *
+ **************************************************************************/
+package fr.cnrs.iees.uit.indexing;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import au.edu.anu.omhtk.collections.QuickListOfLists;
+import fr.cnrs.iees.uit.space.Box;
+import fr.cnrs.iees.uit.space.Point;
+import fr.cnrs.iees.uit.space.Sphere;
+
+/**
+ * <p>A region-based octree, i.e. a {@link RegionIndexingTree} specialised for dimension 3.</p>
+ * 
+ * <p>This is the 3-dimensional counterpart of {@link QuadRegionIndexingTree}, with all 
+ * computations on locations done on primitive values. As for quadtrees, box queries miss the
+ * same items on node borders as {@link RegionIndexingTree}, while sphere queries only return
+ * items within the sphere.</p>
+ *
+ * @author agent - 19 oct. 2026
+ *
+ * @param <T> type of content to index
+ */
+public abstract class OctRegionIndexingTree<T> extends AbstractIndexingTree<T,OctRegionIndexingNode<T>> {
+
+	private boolean DYNAMIC_MAX_OBJECTS = false;
+    private double MAX_OBJ_TARGET_EXPONENT = 0.333333; // 0.5 a good general solution
+    // reverse mapping of items to nodes to facilitate removal of items without knowing their location
+    protected Map<T,OctRegionIndexingNode<T>> itemToNodeMap;
+    /** true if items are identified by reference rather than by {@code equals()} */
+    protected final boolean identity;
+    /** maximal depth of tree, relative to the root */
+    protected int maxDepth = RegionIndexingTree.DEFAULT_MAX_DEPTH;
+    /** minimal side length of node regions */
+    protected double minCellSize = 0.0;
+
+    /**
+     * Constructor to use only when the initial region is unknown and has to be built from the first
+     * item put in.
+     */
+    protected OctRegionIndexingTree() {
+    	this(false);
+    }
+
+    /**
+     * Same as {@link #OctRegionIndexingTree()}, with a choice of item semantics 
+     * (cf. {@link RegionIndexingTree#RegionIndexingTree(int, boolean)}).
+     * @param identity if true, items are identified by reference ({@code ==}, {@link System#identityHashCode(Object)})
+     * rather than by {@code equals()} and {@code hashCode()}
+     */
+    protected OctRegionIndexingTree(boolean identity) {
+    	super(3);
+    	this.identity = identity;
+    	itemToNodeMap = newItemMap();
+    }
+
+    /**
+     * Constructor to use only when the initial region in which all points will be contained ('domain') is known
+     * @param domain the region indexed by this tree - must be of dimension 3
+     */
+    protected OctRegionIndexingTree(Box domain) {
+    	this(domain,false);
+    }
+
+    /**
+     * Same as {@link #OctRegionIndexingTree(Box)}, with a choice of item semantics.
+     * @param domain the region indexed by this tree - must be of dimension 3
+     * @param identity if true, items are identified by reference ({@code ==}, {@link System#identityHashCode(Object)})
+     * rather than by {@code equals()} and {@code hashCode()}
+     */
+    protected OctRegionIndexingTree(Box domain, boolean identity) {
+    	super(domain);
+    	checkDim(domain.dim());
+    	this.identity = identity;
+    	itemToNodeMap = newItemMap();
+    	root = new OctRegionIndexingNode<T>(null,
+    		domain.lowerBound(0),domain.lowerBound(1),domain.lowerBound(2),
+    		domain.upperBound(0),domain.upperBound(1),domain.upperBound(2),this);
+    }
+
+    private Map<T,OctRegionIndexingNode<T>> newItemMap() {
+    	if (identity)
+    		return new IdentityHashMap<>();
+    	return new HashMap<>();
+    }
+
+    protected static void checkDim(int d) {
+    	if (d!=3)
+    		throw new IllegalArgumentException("OctRegionIndexingTree: arguments must be of dimension 3");
+    }
+
+    /**
+     * <p>Setting this to <strong>true</strong> will balance the tree depth and size following P. Tovainen's
+     * benchmarking (cf. {@link RegionIndexingTree#setOptimisation(boolean)}).</p>
+     *
+     * @param o whether optimisation should be enabled (<strong>true</strong>) or not (<strong>false</strong>).
+     */
+    public void setOptimisation(boolean o) {
+    	DYNAMIC_MAX_OBJECTS = o;
+    }
+
+    /**
+     * <p>Sets the maximal depth of the tree, i.e. the maximal number of times the root region can be
+     * halved (default {@value RegionIndexingTree#DEFAULT_MAX_DEPTH}). Leaves at this depth are never 
+     * split and store all the items falling in their region (cf. {@link RegionIndexingTree#setMaxDepth(int)}).</p>
+     * 
+     * <p>Whatever the depth limit, a leaf is never split if all its items are at exactly the same 
+     * location.</p>
+     * 
+     * @param depth the maximal depth (&ge;1)
+     */
+    public void setMaxDepth(int depth) {
+    	maxDepth = depth;
+    }
+
+    /**
+     * <p>Sets the minimal size of node regions, i.e. leaves which largest side is lower than 
+     * 2 &#215; {@code size} are never split and store all the items falling in their region
+     * (default 0, cf. {@link RegionIndexingTree#setMinCellSize(double)}).</p>
+     * 
+     * @param size the minimal side of node regions
+     */
+    public void setMinCellSize(double size) {
+    	minCellSize = size;
+    }
+
+    private void adjustMaxObjects() {
+        OctRegionIndexingNode.LEAF_MAX_ITEMS = Math.max(7,(int)Math.pow(itemToNodeMap.size(), MAX_OBJ_TARGET_EXPONENT));
+    }
+
+	@Override
+	public void insert(T item, Point at) {
+		checkDim(at.dim());
+		insert(item,at.x(),at.y(),at.z());
+	}
+
+	/**
+	 * <p>Insert an object in the tree at a given location</p>
+	 * @param item the object to insert
+	 * @param x the first coordinate of the location where to insert it
+	 * @param y the second coordinate of the location where to insert it
+	 * @param z the third coordinate of the location where to insert it
+	 */
+	public void insert(T item, double x, double y, double z) {
+		OctRegionIndexingNode<T> node = root.insert(item,x,y,z);
+        if (node!=null)
+        	itemToNodeMap.put(item,node);
+        if (DYNAMIC_MAX_OBJECTS && itemToNodeMap.size() % 100 == 0)
+            adjustMaxObjects();
+	}
+
+    // recursive
+    private void collectOverlappingNodes(double lx, double ly, double lz, double ux, double uy, double uz,
+    		OctRegionIndexingNode<T> node, List<OctRegionIndexingNode<T>> nodes) {
+    	if (node!=null)
+    		if (node.overlaps(lx,ly,lz,ux,uy,uz)) {
+    			if (node.children!=null)
+    				for (int i=0; i<node.children.length; i++)
+    					collectOverlappingNodes(lx,ly,lz,ux,uy,uz,node.children[i],nodes);
+    			else
+    				nodes.add(node);
+    		}
+    }
+
+	protected List<OctRegionIndexingNode<T>> getNodesWithin(double lx, double ly, double lz,
+			double ux, double uy, double uz) {
+		List<OctRegionIndexingNode<T>> nodes = new ArrayList<>();
+		collectOverlappingNodes(lx,ly,lz,ux,uy,uz,root,nodes);
+		return nodes;
+	}
+
+	// CAUTION. This method is only a helper method, cf. RegionIndexingTree.getNearestNode()
+	protected OctRegionIndexingNode<T> getNearestNode(double x, double y, double z) {
+		if (root==null)
+			return null;
+		OctRegionIndexingNode<T> node = root;
+		if (!node.contains(x,y,z))
+			return node;
+		while (node.children!=null)
+			node = node.children[node.childIndex(x,y,z)];
+		return node;
+	}
+
+	// CAUTION: not resistant to multiple items at the same location !
+	@Override
+	public T getNearestItem(Point at) {
+		checkDim(at.dim());
+		return getNearestItem(at.x(),at.y(),at.z());
+	}
+
+	/**
+	 * <p>Get the item closest to location.</p>
+	 * @param x the first coordinate of the location
+	 * @param y the second coordinate of the location
+	 * @param z the third coordinate of the location
+	 * @return the item closest to this location
+	 * @see IndexingTree#getNearestItem(Point)
+	 */
+	public T getNearestItem(double x, double y, double z) {
+		OctRegionIndexingNode<T> node = getNearestNode(x,y,z);
+		double dist2 = Double.MAX_VALUE;
+		T theItem = null;
+		for (int i=0; i<node.nitems; i++) {
+			double dx = node.lanes[0][i]-x;
+			double dy = node.lanes[1][i]-y;
+			double dz = node.lanes[2][i]-z;
+			double d = dx*dx+dy*dy+dz*dz;
+			if (d<dist2) {
+				theItem = node.itemAt(i);
+				dist2 = d;
+			}
+		}
+		// if the distance of the item to the point is larger than the distance
+		// of the point to the box edges, the item may be in the enclosing box
+		double dist = Math.sqrt(dist2);
+		if (dist > node.distanceToClosestEdge(x,y,z)) {
+			for (OctRegionIndexingNode<T> n:getNodesWithin(x-dist,y-dist,z-dist,x+dist,y+dist,z+dist))
+				if (n!=node)
+					for (int i=0; i<n.nitems; i++) {
+						double dx = n.lanes[0][i]-x;
+						double dy = n.lanes[1][i]-y;
+						double dz = n.lanes[2][i]-z;
+						double d = dx*dx+dy*dy+dz*dz;
+						if (d<dist2) {
+							theItem = n.itemAt(i);
+							dist2 = d;
+						}
+					}
+		}
+		return theItem;
+	}
+
+	// remove children when they are all empty to adjust tree structure to item content
+	private void shrinkNode(OctRegionIndexingNode<T> node) {
+		boolean shrink = true;
+		if (node.children!=null) {
+			for (OctRegionIndexingNode<T> c:node.children)
+				shrink = shrink && (c.children==null) && (c.nitems==0) ;
+			if (shrink) {
+				for (OctRegionIndexingNode<T> c:node.children)
+					c.tree = null;
+				node.children = null;
+				if (node.nitems==0)
+					if (node.parent!=null)
+						shrinkNode(node.parent);
+			}
+		}
+	}
+
+	@Override
+	public boolean remove(T item) {
+		OctRegionIndexingNode<T> n = itemToNodeMap.remove(item);
+		if (n!=null) {
+			n.removeItem(item);
+			if (n.nitems==0)
+				if (n.parent!=null)
+					shrinkNode(n.parent);
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public int size() {
+		return itemToNodeMap.size();
+	}
+
+    @Override
+	public Collection<T> getItemsWithin(Box limits) {
+    	checkDim(limits.dim());
+    	return getItemsWithin(limits.lowerBound(0),limits.lowerBound(1),limits.lowerBound(2),
+    		limits.upperBound(0),limits.upperBound(1),limits.upperBound(2));
+    }
+
+	/**
+	 * Get all items within a box contained in the tree space.
+	 *
+	 * @param lx lower bound of the box in the first dimension
+	 * @param ly lower bound of the box in the second dimension
+	 * @param lz lower bound of the box in the third dimension
+	 * @param ux upper bound of the box in the first dimension
+	 * @param uy upper bound of the box in the second dimension
+	 * @param uz upper bound of the box in the third dimension
+	 * @return the list of items contained in the box
+	 * @see IndexingTree#getItemsWithin(Box)
+	 */
+	public Collection<T> getItemsWithin(double lx, double ly, double lz, double ux, double uy, double uz) {
+		List<T> extraItems = new ArrayList<>();
+		QuickListOfLists<T> result = new QuickListOfLists<T>();
+		for (OctRegionIndexingNode<T> n:getNodesWithin(lx,ly,lz,ux,uy,uz))
+			if (n.nitems>0)
+				// node region fully contained in limits: insert all items
+				if (n.isWithin(lx,ly,lz,ux,uy,uz))
+					result.addList(n.localItems());
+				// node region not fully contained in limits: check all items
+				else for (int i=0; i<n.nitems; i++) {
+					double x = n.lanes[0][i];
+					double y = n.lanes[1][i];
+					double z = n.lanes[2][i];
+					if ((x>=lx) && (x<=ux) && (y>=ly) && (y<=uy) && (z>=lz) && (z<=uz))
+						extraItems.add(n.itemAt(i));
+				}
+		result.addList(extraItems);
+		return result;
+	}
+
+ 	@Override
+	public Collection<T> getItemsWithin(Sphere limits) {
+ 		checkDim(limits.dim());
+ 		Point c = limits.centre();
+ 		return getItemsWithin(c.x(),c.y(),c.z(),limits.radius());
+ 	}
+
+	/**
+	 * Get all items within a sphere contained in the tree space.
+	 *
+	 * @param x first coordinate of the sphere centre
+	 * @param y second coordinate of the sphere centre
+	 * @param z third coordinate of the sphere centre
+	 * @param radius radius of the sphere
+	 * @return the list of items contained in the sphere
+	 * @see IndexingTree#getItemsWithin(Sphere)
+	 */
+	public Collection<T> getItemsWithin(double x, double y, double z, double radius) {
+		double r2 = radius*radius;
+		List<T> extraItems = new ArrayList<>();
+		QuickListOfLists<T> result = new QuickListOfLists<T>();
+		for (OctRegionIndexingNode<T> n:getNodesWithin(x-radius,y-radius,z-radius,x+radius,y+radius,z+radius))
+			if (n.nitems>0)
+				if (n.isWithin(x,y,z,r2))
+					result.addList(n.localItems());
+				else for (int i=0; i<n.nitems; i++) {
+					double dx = n.lanes[0][i]-x;
+					double dy = n.lanes[1][i]-y;
+					double dz = n.lanes[2][i]-z;
+					if (dx*dx+dy*dy+dz*dz<=r2)
+						extraItems.add(n.itemAt(i));
+				}
+		result.addList(extraItems);
+		return result;
+	}
+
+	// recursive - called by toString();
+	private String nodeToString(OctRegionIndexingNode<T> node, int depth, boolean s) {
+		StringBuilder sb = new StringBuilder();
+		if (node!=null) {
+			String indent = "";
+			for (int i=0; i<depth; i++)
+				indent += "--";
+			if (s) sb.append(indent).append(node.toShortString());
+			else sb.append(indent).append(node.toString());
+			if (node.children!=null)
+				for (int i=0; i<node.children.length; i++)
+					sb.append(nodeToString(node.children[i],depth+1,s));
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(getClass().getSimpleName()+"\n");
+		sb.append(nodeToString(root,0,false));
+		return sb.toString();
+	}
+
+	/**
+	 *
+	 * @return a 'short' description of this tree
+	 */
+	public String toShortString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(getClass().getSimpleName()+"\n");
+		if (root!=null) {
+			sb.append("region = ");
+			sb.append(root.region().toString());
+			sb.append('\n');
+		}
+		sb.append(nodeToString(root,0,true));
+		return sb.toString();
+	}
+
+	/**
+	 * @return The {@link Box} region.
+	 */
+	public Box region() {
+		if (root!=null)
+			return root.region();
+		else
+			return null;
+	}
+
+	@Override
+	public void clear() {
+		itemToNodeMap.clear();
+		if (root!=null) {
+			root.clear();
+			root.children = null;
+		}
+	}
+
+}
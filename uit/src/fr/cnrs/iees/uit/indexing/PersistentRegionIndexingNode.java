@@ -0,0 +1,389 @@
+/**************************************************************************
+ *  UIT - a Universal Indexing Tree                                       *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            *
+ *                                                                        *
+ *  UIT is a generalisation and re-implementation of QuadTree and Octree  *
+ *  implementations by Paavo Toivanen as downloaded on 27/8/2018 on       *
+ *  <https://dev.solita.fi/2015/08/06/quad-tree.html>                     *
+ *                                                                        *
+ **************************************************************************
+ *  This file is part of UIT (Universal Indexing Tree).                   *
+ *                                                                        *
+ *  UIT is free software: you can redistribute it and/or modify           *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  UIT is distributed in the hope that it will be useful,                *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with UIT.  If not, see <https://www.gnu.org/licenses/gpl.html>. *
+ *                                                                        *
+ **************************************************************************/
+package fr.cnrs.iees.uit.indexing;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import au.edu.anu.omhtk.collections.QuickListOfLists;
+import fr.cnrs.iees.uit.space.Box;
+import fr.cnrs.iees.uit.space.Point;
+
+/**
+ * <p>Immutable {@linkplain IndexingNode} used in {@link PersistentRegionIndexingTree}s.</p>
+ * 
+ * <p>Nodes are never modified after construction: insertions and removals return a new node,
+ * made of copies of the nodes on the path from this node to the modified leaf, while all other
+ * subtrees are shared with this node. As a consequence, nodes have no parent (a node may belong to
+ * many versions of a tree) and all their children are stored in a full array of 2<sup>dim</sup>
+ * entries, with null for empty children. Leaf items are stored with their coordinates, one array
+ * per dimension (cf. {@link LeafScan}), in arrays of exactly the item count length. They are 
+ * set once by the constructor and never modified.</p>
+ *
+ * @author agent - 19 oct. 2026
+ *
+ * @param <T> the type of object stored in this tree
+ */
+class PersistentRegionIndexingNode<T> extends IndexingNode<T,PersistentRegionIndexingNode<T>> {
+
+	/** the storage capacity of leaf nodes */
+	protected static final int LEAF_MAX_ITEMS = 10;
+
+	/** region bounds and centre */
+	protected final double[] lower;
+	protected final double[] upper;
+	protected final double[] centre;
+	/** the depth of this node in the tree */
+	protected final int depth;
+	/** the number of items in the subtree */
+	protected final int size;
+
+	private final int dim;
+
+	// leaf constructor
+	private PersistentRegionIndexingNode(double[] lower, double[] upper, int depth, 
+			Object[] items, double[][] lanes) {
+		super();
+		this.lower = lower;
+		this.upper = upper;
+		this.depth = depth;
+		this.items = items;
+		this.lanes = lanes;
+		nitems = items.length;
+		size = items.length;
+		dim = lower.length;
+		centre = centre(lower,upper);
+	}
+
+	// inner node constructor
+	private PersistentRegionIndexingNode(double[] lower, double[] upper, int depth, 
+			PersistentRegionIndexingNode<T>[] children, int size) {
+		super();
+		this.lower = lower;
+		this.upper = upper;
+		this.depth = depth;
+		this.children = children;
+		this.size = size;
+		dim = lower.length;
+		centre = centre(lower,upper);
+	}
+
+	private static double[] centre(double[] lower, double[] upper) {
+		double[] c = new double[lower.length];
+		for (int j=0; j<c.length; j++)
+			c[j] = (lower[j]+upper[j])/2;
+		return c;
+	}
+
+	/**
+	 * @param lower the region lower bounds
+	 * @param upper the region upper bounds
+	 * @return an empty leaf
+	 */
+	protected static <T> PersistentRegionIndexingNode<T> emptyLeaf(double[] lower, double[] upper) {
+		return new PersistentRegionIndexingNode<T>(lower,upper,0,new Object[0],new double[lower.length][0]);
+	}
+
+	/**
+	 * @return true if this node is a leaf
+	 */
+	protected final boolean isLeaf() {
+		return items!=null;
+	}
+
+	/**
+	 * @return the portion of space represented by this node
+	 */
+	protected Box region() {
+		return Box.boundingBox(Point.newPoint(lower.clone()),Point.newPoint(upper.clone()));
+	}
+
+	// index of the child containing x - points on the centre go to the upper child
+	// the first dimension is the most significant bit, as in RegionIndexingNode
+	protected final int childIndex(double[] x) {
+		int index = 0;
+		for (int j=0; j<dim; j++)
+			index = (index<<1) | ((x[j]>=centre[j]) ? 1 : 0);
+		return index;
+	}
+
+	// region of child i
+	private void childBounds(int i, double[] lo, double[] up) {
+		for (int j=0; j<dim; j++)
+			if (((i>>(dim-1-j)) & 1)==1) {
+				lo[j] = centre[j];
+				up[j] = upper[j];
+			}
+			else {
+				lo[j] = lower[j];
+				up[j] = centre[j];
+			}
+	}
+
+	// true if the n items are at the same location
+	private static boolean sameLocation(double[][] lanes, int n) {
+		for (int j=0; j<lanes.length; j++)
+			for (int i=1; i<n; i++)
+				if (lanes[j][i]!=lanes[j][0])
+					return false;
+		return true;
+	}
+
+	/**
+	 * Builds a subtree from a set of items. Leaves are split until they contain at most 
+	 * {@link #LEAF_MAX_ITEMS} items, unless they are at maximal depth or their items are all 
+	 * at the same location.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> PersistentRegionIndexingNode<T> build(double[] lower, double[] upper, int depth, 
+			Object[] items, double[][] lanes, int n, int maxDepth) {
+		int dim = lower.length;
+		if ((n<=LEAF_MAX_ITEMS) || (depth>=maxDepth) || sameLocation(lanes,n)) {
+			double[][] ls = new double[dim][];
+			for (int j=0; j<dim; j++)
+				ls[j] = Arrays.copyOf(lanes[j],n);
+			return new PersistentRegionIndexingNode<T>(lower,upper,depth,Arrays.copyOf(items,n),ls);
+		}
+		PersistentRegionIndexingNode<T> node = new PersistentRegionIndexingNode<T>(lower,upper,depth,
+			new PersistentRegionIndexingNode[0],n);
+		int nchildren = 1<<dim;
+		int[] index = new int[n];
+		int[] count = new int[nchildren];
+		double[] x = new double[dim];
+		for (int i=0; i<n; i++) {
+			for (int j=0; j<dim; j++)
+				x[j] = lanes[j][i];
+			index[i] = node.childIndex(x);
+			count[index[i]]++;
+		}
+		PersistentRegionIndexingNode<T>[] children = new PersistentRegionIndexingNode[nchildren];
+		for (int k=0; k<nchildren; k++)
+			if (count[k]>0) {
+				Object[] its = new Object[count[k]];
+				double[][] ls = new double[dim][count[k]];
+				int m = 0;
+				for (int i=0; i<n; i++)
+					if (index[i]==k) {
+						its[m] = items[i];
+						for (int j=0; j<dim; j++)
+							ls[j][m] = lanes[j][i];
+						m++;
+					}
+				double[] lo = new double[dim];
+				double[] up = new double[dim];
+				node.childBounds(k,lo,up);
+				children[k] = build(lo,up,depth+1,its,ls,m,maxDepth);
+			}
+		return new PersistentRegionIndexingNode<T>(lower,upper,depth,children,n);
+	}
+
+	/**
+	 * Inserts an item. This node is not modified.
+	 * 
+	 * @param item the item to insert
+	 * @param x its coordinates
+	 * @param maxDepth the maximal depth of the tree
+	 * @return a new node containing the items of this node and the new item
+	 */
+	protected PersistentRegionIndexingNode<T> insert(T item, double[] x, int maxDepth) {
+		if (isLeaf()) {
+			int n = items.length;
+			Object[] its = Arrays.copyOf(items,n+1);
+			its[n] = item;
+			double[][] ls = new double[dim][];
+			for (int j=0; j<dim; j++) {
+				ls[j] = Arrays.copyOf(lanes[j],n+1);
+				ls[j][n] = x[j];
+			}
+			if (n+1>LEAF_MAX_ITEMS)
+				return build(lower,upper,depth,its,ls,n+1,maxDepth);
+			return new PersistentRegionIndexingNode<T>(lower,upper,depth,its,ls);
+		}
+		int i = childIndex(x);
+		PersistentRegionIndexingNode<T> child = children[i];
+		PersistentRegionIndexingNode<T>[] newChildren = children.clone();
+		if (child==null) {
+			double[] lo = new double[dim];
+			double[] up = new double[dim];
+			childBounds(i,lo,up);
+			double[][] ls = new double[dim][1];
+			for (int j=0; j<dim; j++)
+				ls[j][0] = x[j];
+			newChildren[i] = new PersistentRegionIndexingNode<T>(lo,up,depth+1,new Object[] {item},ls);
+		}
+		else
+			newChildren[i] = child.insert(item,x,maxDepth);
+		return new PersistentRegionIndexingNode<T>(lower,upper,depth,newChildren,size+1);
+	}
+
+	/**
+	 * Removes an item. This node is not modified.
+	 * 
+	 * @param item the item to remove
+	 * @param x its coordinates
+	 * @return a new node without the item, this node if the item was not found, null if the new 
+	 * node would be empty
+	 */
+	protected PersistentRegionIndexingNode<T> remove(T item, double[] x) {
+		if (isLeaf()) {
+			int k = indexOf(item);
+			if (k<0)
+				return this;
+			if (items.length==1)
+				return null;
+			int n = items.length-1;
+			Object[] its = new Object[n];
+			System.arraycopy(items,0,its,0,k);
+			System.arraycopy(items,k+1,its,k,n-k);
+			double[][] ls = new double[dim][n];
+			for (int j=0; j<dim; j++) {
+				System.arraycopy(lanes[j],0,ls[j],0,k);
+				System.arraycopy(lanes[j],k+1,ls[j],k,n-k);
+			}
+			return new PersistentRegionIndexingNode<T>(lower,upper,depth,its,ls);
+		}
+		int i = childIndex(x);
+		PersistentRegionIndexingNode<T> child = children[i];
+		if (child==null)
+			return this;
+		PersistentRegionIndexingNode<T> newChild = child.remove(item,x);
+		if (newChild==child)
+			return this;
+		if (size==1)
+			return null;
+		PersistentRegionIndexingNode<T>[] newChildren = children.clone();
+		newChildren[i] = newChild;
+		PersistentRegionIndexingNode<T> node = new PersistentRegionIndexingNode<T>(lower,upper,depth,newChildren,size-1);
+		// few items left: merge them into a single leaf
+		if (size-1<=LEAF_MAX_ITEMS) {
+			Object[] its = new Object[size-1];
+			double[][] ls = new double[dim][size-1];
+			node.collect(its,ls,0);
+			return new PersistentRegionIndexingNode<T>(lower,upper,depth,its,ls);
+		}
+		return node;
+	}
+
+	// recursive - copies all items of the subtree into its and ls from rank from, returns the next rank
+	private int collect(Object[] its, double[][] ls, int from) {
+		if (isLeaf()) {
+			System.arraycopy(items,0,its,from,items.length);
+			for (int j=0; j<dim; j++)
+				System.arraycopy(lanes[j],0,ls[j],from,items.length);
+			return from+items.length;
+		}
+		for (int i=0; i<children.length; i++)
+			if (children[i]!=null)
+				from = children[i].collect(its,ls,from);
+		return from;
+	}
+
+	/**
+	 * @return a view on the items stored in this node only (empty for inner nodes)
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	protected List<T> localItems() {
+		if (!isLeaf())
+			return Collections.emptyList();
+		return Collections.unmodifiableList(Arrays.asList((T[])items));
+	}
+
+	@Override
+	public T item() {
+		if (size==0)
+			return null;
+		if ((size==1) && isLeaf())
+			return itemAt(0);
+		throw new UnsupportedOperationException("Item list contains more than one item - use items() to get them.");
+	}
+
+	// recursive
+	private void getAllItems(QuickListOfLists<T> list) {
+		if (isLeaf()) {
+			if (items.length>0)
+				list.addList(localItems());
+		}
+		else
+			for (int i=0; i<children.length; i++)
+				if (children[i]!=null)
+					children[i].getAllItems(list);
+	}
+
+	@Override
+	public final Collection<T> items() {
+		QuickListOfLists<T> list = new QuickListOfLists<T>();
+		getAllItems(list);
+		return list;
+	}
+
+	/**
+	 * Persistent nodes cannot be modified.
+	 */
+	@Override
+	public final void clear() {
+		throw new UnsupportedOperationException("Persistent nodes cannot be modified.");
+	}
+
+	// for debugging
+	/**
+	 *
+	 * @return a short String description of this node
+	 */
+	protected String toShortString() {
+		StringBuilder sb=new StringBuilder();
+		if (isLeaf()) {
+			sb.append("items={");
+			for (int i=0; i<items.length; i++) {
+				if (i>0) sb.append(',');
+				sb.append(items[i].toString());
+			}
+			sb.append("}");
+		}
+		else
+			sb.append(size).append(" items");
+		sb.append('\n');
+		return sb.toString();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb=new StringBuilder();
+		sb.append("region=[")
+			.append(region().lowerBounds().toString())
+			.append("-")
+			.append(region().upperBounds().toString())
+			.append("], ");
+		sb.append(toShortString());
+		return sb.toString();
+	}
+
+}
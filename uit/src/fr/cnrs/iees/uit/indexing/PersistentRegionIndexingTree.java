@@ -0,0 +1,449 @@
+/**************************************************************************
+ *  UIT - a Universal Indexing Tree                                       *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            *
+ *                                                                        *
+ *  UIT is a generalisation and re-implementation of QuadTree and Octree  *
+ *  implementations by Paavo Toivanen as downloaded on 27/8/2018 on       *
+ *  <https://dev.solita.fi/2015/08/06/quad-tree.html>                     *
+ *                                                                        *
+ **************************************************************************
+ *  This file is part of UIT (Universal Indexing Tree).                   *
+ *                                                                        *
+ *  UIT is free software: you can redistribute it and/or modify           *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  UIT is distributed in the hope that it will be useful,                *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with UIT.  If not, see <https://www.gnu.org/licenses/gpl.html>. *
+ *                                                                        *
+ **************************************************************************/
+package fr.cnrs.iees.uit.indexing;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import au.edu.anu.omhtk.collections.QuickListOfLists;
+import fr.cnrs.iees.uit.space.Box;
+import fr.cnrs.iees.uit.space.Point;
+import fr.cnrs.iees.uit.space.Sphere;
+
+/**
+ * <p>A <em>persistent</em> region-based <em>k</em>-d tree, i.e. a tree whose past versions 
+ * remain available after modifications.</p>
+ * 
+ * <p>Nodes are immutable ({@link PersistentRegionIndexingNode}): {@link #insert(Object, Point)},
+ * {@link #remove(Object)} and {@link #move(Object, Point)} copy the nodes on the path from the root 
+ * to the modified leaf, and share all other subtrees with the previous version. They cost
+ * O(depth &#215; 2<sup>dim</sup>) in time and memory. The tree then advances to the new version.
+ * {@link #snapshot()} returns the current version in O(1), as an immutable {@link IndexingTree}.</p>
+ * 
+ * <p>This is typical of simulations where each time step reads the previous state while
+ * computing the next one: at the beginning of a step, take a snapshot of the tree, query it 
+ * during the step while modifying the tree, and discard it at the end. The previous state is
+ * never copied.</p>
+ * 
+ * <p>This tree itself must only be modified and queried by one thread at a time. Snapshots are
+ * immutable, and can be queried by any number of threads without synchronisation once safely
+ * published (e.g. through a final field or a concurrent collection).</p>
+ * 
+ * <p>Unlike those of {@link RegionIndexingTree} (cf. {@link IndexingTree#getItemsWithin(Box)}),
+ * box and sphere queries also return the items lying on the border of their argument when
+ * these are on a node border too.</p>
+ *
+ * @author agent - 19 oct. 2026
+ *
+ * @param <T> type of content to index
+ */
+public class PersistentRegionIndexingTree<T> implements IndexingTree<T,PersistentRegionIndexingNode<T>> {
+
+	private final int dim;
+	private final Box domain;
+	/** maximal depth of tree, relative to the root */
+	protected int maxDepth = RegionIndexingTree.DEFAULT_MAX_DEPTH;
+	/** the current version */
+	private PersistentRegionIndexingNode<T> root;
+	// item locations, to find items on removal
+	private final Map<T,double[]> locations = new HashMap<>();
+
+	/**
+	 * This constructor assumes all items will be contained within the box passed as
+	 * its argument.
+	 * 
+	 * @param domain the region indexed by this tree
+	 */
+	public PersistentRegionIndexingTree(Box domain) {
+		super();
+		dim = domain.dim();
+		this.domain = domain;
+		root = PersistentRegionIndexingNode.emptyLeaf(Coordinates.lowerBounds(domain),
+			Coordinates.upperBounds(domain));
+	}
+
+	/**
+	 * Sets the maximal depth of the tree (cf. {@link RegionIndexingTree#setMaxDepth(int)}).
+	 * 
+	 * @param depth the maximal depth (&ge;1)
+	 */
+	public void setMaxDepth(int depth) {
+		maxDepth = depth;
+	}
+
+	/**
+	 * Returns the current version of this tree. Later modifications of this tree do not
+	 * affect the snapshot.
+	 * 
+	 * @return an immutable view on the current version of this tree
+	 */
+	public IndexingTree<T,PersistentRegionIndexingNode<T>> snapshot() {
+		return new Snapshot<T>(root,domain);
+	}
+
+	@Override
+	public final int dim() {
+		return dim;
+	}
+
+	@Override
+	public int size() {
+		return root.size;
+	}
+
+	@Override
+	public PersistentRegionIndexingNode<T> root() {
+		return root;
+	}
+
+	/**
+	 * @return The {@link Box} region.
+	 */
+	public Box region() {
+		return domain;
+	}
+
+	/**
+	 * An item already present in this tree is not inserted again - use {@link #move(Object, Point)}
+	 * to change its location.
+	 */
+	@Override
+	public void insert(T item, Point at) {
+		if (locations.containsKey(item))
+			return;
+		double[] x = Coordinates.of(at);
+		locations.put(item,x);
+		root = root.insert(item,x,maxDepth);
+	}
+
+	@Override
+	public boolean remove(T item) {
+		double[] x = locations.remove(item);
+		if (x==null)
+			return false;
+		PersistentRegionIndexingNode<T> node = root.remove(item,x);
+		if (node==null)
+			node = PersistentRegionIndexingNode.emptyLeaf(root.lower,root.upper);
+		root = node;
+		return true;
+	}
+
+	/**
+	 * Moves an item to a new location.
+	 * 
+	 * @param item the item to move
+	 * @param to its new location
+	 * @return false if the item was not in the tree
+	 */
+	public boolean move(T item, Point to) {
+		if (!remove(item))
+			return false;
+		insert(item,to);
+		return true;
+	}
+
+	@Override
+	public void clear() {
+		locations.clear();
+		root = PersistentRegionIndexingNode.emptyLeaf(root.lower,root.upper);
+	}
+
+	@Override
+	public Collection<T> getAllItems() {
+		return root.items();
+	}
+
+	@Override
+	public T getNearestItem(Point at) {
+		return getNearestItem(root,at);
+	}
+
+	@Override
+	public Collection<T> getItemsWithin(Box limits) {
+		return getItemsWithin(root,limits);
+	}
+
+	@Override
+	public Collection<T> getItemsWithin(Sphere limits) {
+		return getItemsWithin(root,limits);
+	}
+
+	@Override
+	public String toString() {
+		return toString(this,root);
+	}
+
+	//----------------------------------------------------------------------------------------
+	// Queries on any version
+
+	// true if the region of node and the box [lo,up] have at least one common point
+	private static boolean touches(PersistentRegionIndexingNode<?> node, double[] lo, double[] up) {
+		for (int j=0; j<lo.length; j++)
+			if ((node.upper[j]<lo[j]) || (node.lower[j]>up[j]))
+				return false;
+		return true;
+	}
+
+	private static boolean isWithin(PersistentRegionIndexingNode<?> node, double[] lo, double[] up) {
+		for (int j=0; j<lo.length; j++)
+			if ((node.lower[j]<lo[j]) || (node.upper[j]>up[j]))
+				return false;
+		return true;
+	}
+
+	// recursive
+	private static <T> void collectWithin(PersistentRegionIndexingNode<T> node, double[] lo, double[] up,
+			QuickListOfLists<T> result, List<T> extraItems) {
+		if (isWithin(node,lo,up) && (node.size>0))
+			result.addList(node.items());
+		else if (node.isLeaf()) {
+			int n = node.nitems;
+			boolean[] mask = new boolean[n];
+			if (LeafScan.withinBox(node.lanes,n,lo,up,mask)>0)
+				for (int i=0; i<n; i++)
+					if (mask[i])
+						extraItems.add(node.itemAt(i));
+		}
+		else
+			for (int i=0; i<node.children.length; i++)
+				if ((node.children[i]!=null) && touches(node.children[i],lo,up))
+					collectWithin(node.children[i],lo,up,result,extraItems);
+	}
+
+	private static <T> Collection<T> getItemsWithin(PersistentRegionIndexingNode<T> root, Box limits) {
+		List<T> extraItems = new ArrayList<>();
+		QuickListOfLists<T> result = new QuickListOfLists<T>();
+		double[] lo = Coordinates.lowerBounds(limits);
+		double[] up = Coordinates.upperBounds(limits);
+		if (touches(root,lo,up))
+			collectWithin(root,lo,up,result,extraItems);
+		result.addList(extraItems);
+		return result;
+	}
+
+	// squared distances from a point to the closest and farthest points of a node region
+	private static double minSquaredDistance(PersistentRegionIndexingNode<?> node, double[] x) {
+		double d2 = 0.0;
+		for (int j=0; j<x.length; j++) {
+			double d = Math.max(0.0,Math.max(node.lower[j]-x[j],x[j]-node.upper[j]));
+			d2 += d*d;
+		}
+		return d2;
+	}
+
+	private static double maxSquaredDistance(PersistentRegionIndexingNode<?> node, double[] x) {
+		double d2 = 0.0;
+		for (int j=0; j<x.length; j++) {
+			double d = Math.max(x[j]-node.lower[j],node.upper[j]-x[j]);
+			d2 += d*d;
+		}
+		return d2;
+	}
+
+	// recursive
+	private static <T> void collectWithin(PersistentRegionIndexingNode<T> node, double[] c, double r2,
+			QuickListOfLists<T> result, List<T> extraItems) {
+		if ((maxSquaredDistance(node,c)<=r2) && (node.size>0))
+			result.addList(node.items());
+		else if (node.isLeaf()) {
+			int n = node.nitems;
+			boolean[] mask = new boolean[n];
+			if (LeafScan.withinSphere(node.lanes,n,c,r2,new double[n],mask)>0)
+				for (int i=0; i<n; i++)
+					if (mask[i])
+						extraItems.add(node.itemAt(i));
+		}
+		else
+			for (int i=0; i<node.children.length; i++)
+				if ((node.children[i]!=null) && (minSquaredDistance(node.children[i],c)<=r2))
+					collectWithin(node.children[i],c,r2,result,extraItems);
+	}
+
+	private static <T> Collection<T> getItemsWithin(PersistentRegionIndexingNode<T> root, Sphere limits) {
+		List<T> extraItems = new ArrayList<>();
+		QuickListOfLists<T> result = new QuickListOfLists<T>();
+		double[] c = Coordinates.of(limits.centre());
+		double r2 = limits.radius()*limits.radius();
+		if (minSquaredDistance(root,c)<=r2)
+			collectWithin(root,c,r2,result,extraItems);
+		result.addList(extraItems);
+		return result;
+	}
+
+	// the state of a nearest item search
+	private static class Nearest<T> {
+		double dist2 = Double.POSITIVE_INFINITY;
+		T item = null;
+	}
+
+	// recursive - branch and bound, closest children first
+	private static <T> void nearest(PersistentRegionIndexingNode<T> node, double[] x, Nearest<T> search) {
+		if (node.isLeaf()) {
+			int n = node.nitems;
+			double[] d2 = new double[n];
+			LeafScan.squaredDistances(node.lanes,n,x,d2);
+			int k = LeafScan.indexOfMin(d2,n);
+			if ((k>=0) && (d2[k]<search.dist2)) {
+				search.dist2 = d2[k];
+				search.item = node.itemAt(k);
+			}
+		}
+		else {
+			int n = node.children.length;
+			double[] d2 = new double[n];
+			int[] order = new int[n];
+			int m = 0;
+			for (int i=0; i<n; i++)
+				if (node.children[i]!=null) {
+					double d = minSquaredDistance(node.children[i],x);
+					// insertion sort by distance
+					int k = m;
+					while ((k>0) && (d2[k-1]>d)) {
+						d2[k] = d2[k-1];
+						order[k] = order[k-1];
+						k--;
+					}
+					d2[k] = d;
+					order[k] = i;
+					m++;
+				}
+			for (int k=0; k<m; k++) {
+				if (d2[k]>=search.dist2)
+					break;
+				nearest(node.children[order[k]],x,search);
+			}
+		}
+	}
+
+	private static <T> T getNearestItem(PersistentRegionIndexingNode<T> root, Point at) {
+		Nearest<T> search = new Nearest<>();
+		nearest(root,Coordinates.of(at),search);
+		return search.item;
+	}
+
+	// recursive - called by toString();
+	private static String nodeToString(PersistentRegionIndexingNode<?> node, int depth) {
+		StringBuilder sb = new StringBuilder();
+		String indent = "";
+		for (int i=0; i<depth; i++)
+			indent += "--";
+		sb.append(indent).append(node.toString());
+		if (!node.isLeaf())
+			for (int i=0; i<node.children.length; i++)
+				if (node.children[i]!=null)
+					sb.append(nodeToString(node.children[i],depth+1));
+		return sb.toString();
+	}
+
+	private static String toString(Object tree, PersistentRegionIndexingNode<?> root) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(tree.getClass().getSimpleName()+"\n");
+		sb.append(nodeToString(root,0));
+		return sb.toString();
+	}
+
+	//----------------------------------------------------------------------------------------
+
+	/**
+	 * An immutable version of a persistent tree
+	 * 
+	 * @param <T> type of content to index
+	 */
+	private static final class Snapshot<T> implements IndexingTree<T,PersistentRegionIndexingNode<T>> {
+
+		private final PersistentRegionIndexingNode<T> root;
+		private final Box domain;
+
+		private Snapshot(PersistentRegionIndexingNode<T> root, Box domain) {
+			super();
+			this.root = root;
+			this.domain = domain;
+		}
+
+		@Override
+		public int dim() {
+			return domain.dim();
+		}
+
+		@Override
+		public int size() {
+			return root.size;
+		}
+
+		@Override
+		public PersistentRegionIndexingNode<T> root() {
+			return root;
+		}
+
+		@Override
+		public void insert(T item, Point at) {
+			throw new UnsupportedOperationException("Snapshots cannot be modified.");
+		}
+
+		@Override
+		public boolean remove(T item) {
+			throw new UnsupportedOperationException("Snapshots cannot be modified.");
+		}
+
+		@Override
+		public void clear() {
+			throw new UnsupportedOperationException("Snapshots cannot be modified.");
+		}
+
+		@Override
+		public Collection<T> getAllItems() {
+			return root.items();
+		}
+
+		@Override
+		public T getNearestItem(Point at) {
+			return PersistentRegionIndexingTree.getNearestItem(root,at);
+		}
+
+		@Override
+		public Collection<T> getItemsWithin(Box limits) {
+			return PersistentRegionIndexingTree.getItemsWithin(root,limits);
+		}
+
+		@Override
+		public Collection<T> getItemsWithin(Sphere limits) {
+			return PersistentRegionIndexingTree.getItemsWithin(root,limits);
+		}
+
+		@Override
+		public String toString() {
+			return PersistentRegionIndexingTree.toString(this,root);
+		}
+
+	}
+
+}
@@ -0,0 +1,285 @@
+/**************************************************************************
+ *  UIT - a Universal Indexing Tree                                       *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            *
+ *                                                                        *
+ *  UIT is a generalisation and re-implementation of QuadTree and Octree  *
+ *  implementations by Paavo Toivanen as downloaded on 27/8/2018 on       *
+ *  <https://dev.solita.fi/2015/08/06/quad-tree.html>                     *
+ *                                                                        *
+ **************************************************************************
+ *  This file is part of UIT (Universal Indexing Tree).                   *
+ *                                                                        *
+ *  UIT is free software: you can redistribute it and/or modify           *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  UIT is distributed in the hope that it will be useful,                *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with UIT.  If not, see <https://www.gnu.org/licenses/gpl.html>. *
+ *                                                                        *
+ **************************************************************************/
+package fr.cnrs.iees.uit.indexing;
+
+import java.util.Collection;
+
+import au.edu.anu.omhtk.collections.QuickListOfLists;
+import fr.cnrs.iees.uit.space.Box;
+import fr.cnrs.iees.uit.space.Point;
+
+/**
+ * <p>{@linkplain IndexingNode} used in {@link QuadRegionIndexingTree}s, i.e. a
+ * {@link RegionIndexingNode} specialised for dimension 2.</p>
+ * 
+ * <p>Region bounds are stored as plain {@code double} fields and leaf items are stored with their 
+ * coordinates in parallel arrays, so that all computations on locations are done on primitive
+ * values without any call to {@link Point#coordinate(int)}.</p>
+ *
+ * @author agent - 19 oct. 2026
+ *
+ * @param <T> the type of object stored in this tree
+ */
+class QuadRegionIndexingNode<T> extends IndexingNode<T,QuadRegionIndexingNode<T>> {
+
+	/** the storage capacity of leaf nodes - may be made dynamic*/
+	protected static int LEAF_MAX_ITEMS = 10;
+
+	// region
+	protected double xmin, ymin, xmax, ymax;
+	// region centre
+	protected double xc, yc;
+	private Box region = null;
+
+	/** the depth of this node, i.e. the number of halvings of the root region to get its region
+	 * (may be negative after the expansion of the root, cf. {@link #expandRootRegion(double, double)}) */
+	protected int depth = 0;
+
+	protected QuadRegionIndexingTree<T> tree = null;
+
+	protected QuadRegionIndexingNode(QuadRegionIndexingNode<T> parent,
+			double xmin, double ymin, double xmax, double ymax,
+			QuadRegionIndexingTree<T> tree) {
+		super();
+		this.parent = parent;
+		this.tree = tree;
+		initItems(LEAF_MAX_ITEMS,2);
+		if (parent!=null)
+			depth = parent.depth+1;
+		setRegion(xmin,ymin,xmax,ymax);
+	}
+
+	private void setRegion(double xmin, double ymin, double xmax, double ymax) {
+		this.xmin = xmin;
+		this.ymin = ymin;
+		this.xmax = xmax;
+		this.ymax = ymax;
+		xc = (xmin+xmax)/2;
+		yc = (ymin+ymax)/2;
+		region = null;
+	}
+
+	/**
+	 * @return the portion of space represented by this node
+	 */
+	protected Box region() {
+		if (region==null)
+			region = Box.boundingBox(Point.newPoint(xmin,ymin),Point.newPoint(xmax,ymax));
+		return region;
+	}
+
+	protected final boolean contains(double x, double y) {
+		return (x>=xmin) && (x<=xmax) && (y>=ymin) && (y<=ymax);
+	}
+
+	// strict overlap, cf. Box.overlaps()
+	protected final boolean overlaps(double lx, double ly, double ux, double uy) {
+		return (xmax>lx) && (xmin<ux) && (ymax>ly) && (ymin<uy);
+	}
+
+	protected final boolean isWithin(double lx, double ly, double ux, double uy) {
+		return (xmin>=lx) && (xmax<=ux) && (ymin>=ly) && (ymax<=uy);
+	}
+
+	// true if the whole region lies within distance r of (x,y), i.e. its farthest corner does
+	protected final boolean isWithin(double x, double y, double r2) {
+		double dx = Math.max(x-xmin,xmax-x);
+		double dy = Math.max(y-ymin,ymax-y);
+		return dx*dx+dy*dy <= r2;
+	}
+
+	/**
+	 * Same result as {@link fr.cnrs.iees.uit.space.Distance#distanceToClosestEdge(Point, Box)}
+	 * for this node region.
+	 */
+	protected final double distanceToClosestEdge(double x, double y) {
+		double dx = Math.min(Math.abs(x-xmin),Math.abs(x-xmax));
+		double dy = Math.min(Math.abs(y-ymin),Math.abs(y-ymax));
+		boolean inx = (x>=xmin) && (x<=xmax);
+		boolean iny = (y>=ymin) && (y<=ymax);
+		if (inx)
+			return iny ? Math.min(dx,dy) : dy;
+		else
+			return iny ? dx : Math.sqrt(dx*dx+dy*dy);
+	}
+
+	// index of the child containing (x,y) - points on the centre go to the upper child
+	// x is the most significant bit, as in RegionIndexingNode
+	protected final int childIndex(double x, double y) {
+		return ((x>=xc) ? 2 : 0) | ((y>=yc) ? 1 : 0);
+	}
+
+	@Override
+	protected final boolean identity() {
+		return (tree!=null) && tree.identity;
+	}
+
+	private void add(T item, double x, double y) {
+		int i = appendItem(item,null);
+		lanes[0][i] = x;
+		lanes[1][i] = y;
+	}
+
+	/**
+	 * <p>Computes a new region containing the point passed as an argument.</p>
+	 * <p>This method is only used in the {@linkplain ExpandingQuadRegionIndexingTree}.</p>
+	 * @param x first coordinate of the point to include in the tree region
+	 * @param y second coordinate of the point to include in the tree region
+	 * @return the new root node for the calling tree
+	 */
+	protected QuadRegionIndexingNode<T> expandRootRegion(double x, double y) {
+		// if the region is null, enlarge it using the new point as the limit (cf. Box.boundingCube())
+		if ((xmax-xmin)*(ymax-ymin)==0.0) {
+			double lx = Math.min(xmin,x);
+			double ly = Math.min(ymin,y);
+			double side = Math.max(Math.max(xmin,x)-lx,Math.max(ymin,y)-ly);
+			setRegion(lx,ly,lx+side,ly+side);
+			return this;
+		}
+		else {
+			if (parent==null) {
+				double lx = xmin, ly = ymin, ux = xmax, uy = ymax;
+				if (x<xmin) lx = xmin-(xmax-xmin);
+				if (x>xmax) ux = xmax+(xmax-xmin);
+				if (y<ymin) ly = ymin-(ymax-ymin);
+				if (y>ymax) uy = ymax+(ymax-ymin);
+				parent = new QuadRegionIndexingNode<T>(null,lx,ly,ux,uy,tree);
+				parent.depth = depth-1;
+				parent.makeChildren(); // this creates empty children in the parent
+				// place me in my parent's children
+				parent.children[parent.childIndex(xc,yc)] = this;
+			}
+			return parent;
+		}
+	}
+
+	public QuadRegionIndexingNode<T> insert(T item, double x, double y) {
+		QuadRegionIndexingNode<T> node = this;
+		while (node.children!=null)
+			node = node.children[node.childIndex(x,y)];
+		// do not insert same item twice at the same location
+		if (node.indexOf(item)>=0)
+			return null;
+		// if list of items is full, expand to child nodes
+		// (if not possible, the list overflows its nominal capacity)
+		if ((node.nitems >= LEAF_MAX_ITEMS) && node.canSplit()) {
+			node.makeChildren();
+			return node.insert(item,x,y);
+		}
+		node.add(item,x,y);
+		return node;
+	}
+
+	// true if this leaf can be split, i.e. the tree depth and cell size limits allow it and the split
+	// can separate its items (which is not the case if they all are at the same location)
+	private boolean canSplit() {
+		if (depth-tree.root.depth >= tree.maxDepth)
+			return false;
+		if (Math.max(xmax-xmin,ymax-ymin)/2 < tree.minCellSize)
+			return false;
+		for (int i=1; i<nitems; i++)
+			if ((lanes[0][i]!=lanes[0][0]) || (lanes[1][i]!=lanes[1][0]))
+				return true;
+		return false;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void makeChildren() {
+		children = new QuadRegionIndexingNode[4];
+		children[0] = new QuadRegionIndexingNode<T>(this,xmin,ymin,xc,yc,tree);
+		children[1] = new QuadRegionIndexingNode<T>(this,xmin,yc,xc,ymax,tree);
+		children[2] = new QuadRegionIndexingNode<T>(this,xc,ymin,xmax,yc,tree);
+		children[3] = new QuadRegionIndexingNode<T>(this,xc,yc,xmax,ymax,tree);
+		// spread the extant items into the child nodes
+		for (int i=0; i<nitems; i++) {
+			QuadRegionIndexingNode<T> newNode = children[childIndex(lanes[0][i],lanes[1][i])];
+			newNode.add(itemAt(i),lanes[0][i],lanes[1][i]);
+			tree.itemToNodeMap.put(itemAt(i),newNode); // this will replace the former mapping
+		}
+		// empty the item list now they have been put in the child nodes
+		clear();
+	}
+
+	// recursive
+	private void getAllItems(QuickListOfLists<T> list, QuadRegionIndexingNode<T> node) {
+		if (node.nitems>0)
+			list.addList(node.localItems());
+		else if (node.children!=null)
+			for (int i=0; i<node.children.length; i++)
+				getAllItems(list,node.children[i]);
+	}
+
+	@Override
+	public final Collection<T> items() {
+		QuickListOfLists<T> list = new QuickListOfLists<T>();
+		getAllItems(list,this);
+		return list;
+	}
+
+	@Override
+	public final void clear() {
+		clearItems();
+	}
+
+	// for debugging
+	/**
+	 *
+	 * @return a short String description of this node
+	 */
+	protected String toShortString() {
+		StringBuilder sb=new StringBuilder();
+		sb.append("items={");
+		for (int i=0; i<nitems; i++) {
+			if (i>0) sb.append(',');
+			sb.append(items[i].toString());
+		}
+		sb.append("}\n");
+		return sb.toString();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb=new StringBuilder();
+		sb.append("region=[")
+			.append(region().lowerBounds().toString())
+			.append("-")
+			.append(region().upperBounds().toString())
+			.append("], ");
+		sb.append("items={");
+		for (int i=0; i<nitems; i++) {
+			if (i>0) sb.append(',');
+			sb.append(items[i].toString())
+				.append("@")
+				.append(Point.newPoint(lanes[0][i],lanes[1][i]).toString());
+		}
+		sb.append("}\n");
+		return sb.toString();
+	}
+
+}
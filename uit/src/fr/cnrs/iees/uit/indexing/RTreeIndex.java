@@ -0,0 +1,1054 @@
+/**************************************************************************
+ *  UIT - a Universal Indexing Tree                                       *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            *
+ *                                                                        *
+ *  UIT is a generalisation and re-implementation of QuadTree and Octree  *
+ *  implementations by Paavo Toivanen as downloaded on 27/8/2018 on       *
+ *  <https://dev.solita.fi/2015/08/06/quad-tree.html>                     *
+ *                                                                        *
+ **************************************************************************
+ *  This file is part of UIT (Universal Indexing Tree).                   *
+ *                                                                        *
+ *  UIT is free software: you can redistribute it and/or modify           *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  UIT is distributed in the hope that it will be useful,                *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with UIT.  If not, see <https://www.gnu.org/licenses/gpl.html>. *
+ *                                                                        *
+ **************************************************************************/
+package fr.cnrs.iees.uit.indexing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import au.edu.anu.omhtk.collections.QuickListOfLists;
+import fr.cnrs.iees.uit.space.Box;
+import fr.cnrs.iees.uit.space.Point;
+import fr.cnrs.iees.uit.space.Sphere;
+
+/**
+ * <p>An R-tree, for items with a rectangular or spherical extent.</p>
+ * 
+ * <p>Items are inserted with a {@link Box} (or a {@link Point}, i.e. a box of size 0) or a 
+ * {@link Sphere}. The tree is built on bounding boxes, and a sphere is kept with its own 
+ * bounding box; queries then test the sphere itself. Unlike 
+ * region trees, which split space, an R-tree groups items: every node holds up to 
+ * {@code maxEntries} entries (items in leaves, child nodes in inner nodes), and is described
+ * by the bounding box of its entries. All leaves are at the same depth, and the bounding boxes
+ * of nodes may overlap.</p>
+ * 
+ * <p>Insertion follows the R*-tree heuristics (Beckmann <em>et al.</em> 1990): the subtree
+ * receiving a new item minimises the overlap enlargement of leaves and the area enlargement of 
+ * upper nodes; a full node first reinserts 30% of its entries (those farthest from its centre), 
+ * and is only split if this has already been done at its level during the current insertion; 
+ * splits choose the axis minimising the margins of the two groups, and then the distribution 
+ * minimising their overlap. When all items are known in advance, the
+ * {@link #RTreeIndex(int, Map) bulk-loading constructor} builds a packed tree by 
+ * <em>Sort-Tile-Recursive</em> (Leutenegger <em>et al.</em> 1997), which is much faster and gives
+ * better queries. Items can be inserted and removed afterwards.</p>
+ * 
+ * <p>Queries:</p>
+ * <ul>
+ * <li>{@link #getItemsWithin(Box)} and {@link #getItemsWithin(Sphere)} return the items whose extent
+ * is fully contained in the query region (with point items, as in other trees);</li>
+ * <li>{@link #getItemsOverlapping(Box)} returns the items whose extent overlaps the box, in the
+ * sense of {@link Box#overlaps(Box)} for box extents; a sphere extent overlaps the box if its 
+ * centre is closer than its radius to the box;</li>
+ * <li>{@link #getItemsContaining(Point)} (<em>stabbing query</em>) and 
+ * {@link #getItemsContaining(Box)} return the items whose extent contains the argument, in the
+ * sense of {@link Box#contains(Point)} and {@link Box#contains(Box)}, or of 
+ * {@link Sphere#contains(Point)} for all the corners of the argument;</li>
+ * <li>{@link #getNearestItem(Point)} returns the item with the closest extent (distance 0 if the
+ * point is within the extent).</li>
+ * </ul>
+ *
+ * @author agent - 19 oct. 2026
+ *
+ * @param <T> type of content to index
+ */
+public class RTreeIndex<T> implements IndexingTree<T,RTreeIndexingNode<T>> {
+
+	/** the default maximal number of entries in a node */
+	public static final int DEFAULT_MAX_ENTRIES = 16;
+
+	private final int dim;
+	private final int maxEntries;
+	private final int minEntries;
+	// the number of entries reinserted when a node overflows
+	private final int reinsertCount;
+	private RTreeIndexingNode<T> root;
+	// reverse mapping of items to leaves to facilitate removal of items without knowing their location
+	protected Map<T,RTreeIndexingNode<T>> itemToNodeMap = new HashMap<>();
+	// levels where entries have been reinserted during the current insertion (bit i = level i)
+	private long reinsertedLevels = 0L;
+
+	/**
+	 * Builds an empty tree.
+	 * 
+	 * @param dim the dimension of space
+	 */
+	public RTreeIndex(int dim) {
+		this(dim,DEFAULT_MAX_ENTRIES);
+	}
+
+	/**
+	 * Builds an empty tree.
+	 * 
+	 * @param dim the dimension of space
+	 * @param maxEntries the maximal number of entries in a node (&ge;4)
+	 */
+	public RTreeIndex(int dim, int maxEntries) {
+		super();
+		if (dim<1)
+			throw new IllegalArgumentException("RTreeIndex: dimension must be at least 1");
+		if (maxEntries<4)
+			throw new IllegalArgumentException("RTreeIndex: nodes must have at least 4 entries");
+		this.dim = dim;
+		this.maxEntries = maxEntries;
+		minEntries = Math.max(2,(int)(0.4*maxEntries));
+		reinsertCount = Math.max(1,(int)(0.3*maxEntries));
+		root = newNode(0);
+	}
+
+	/**
+	 * Builds a packed tree from a set of items and their extents (Sort-Tile-Recursive bulk loading).
+	 * The map is not used after construction.
+	 * 
+	 * @param dim the dimension of space
+	 * @param extents the items to index, with their extents
+	 */
+	public RTreeIndex(int dim, Map<T,Box> extents) {
+		this(dim,extents,DEFAULT_MAX_ENTRIES);
+	}
+
+	/**
+	 * Builds a packed tree from a set of items and their extents (Sort-Tile-Recursive bulk loading).
+	 * The map is not used after construction.
+	 * 
+	 * @param dim the dimension of space
+	 * @param extents the items to index, with their extents
+	 * @param maxEntries the maximal number of entries in a node (&ge;4)
+	 */
+	public RTreeIndex(int dim, Map<T,Box> extents, int maxEntries) {
+		this(dim,maxEntries);
+		int n = extents.size();
+		if (n==0)
+			return;
+		Object[] entries = new Object[n];
+		double[][] lo = new double[dim][n];
+		double[][] up = new double[dim][n];
+		int i = 0;
+		for (Map.Entry<T,Box> e:extents.entrySet()) {
+			Box b = e.getValue();
+			if (b.dim()!=dim)
+				throw new IllegalArgumentException("RTreeIndex: extent of wrong dimension");
+			entries[i] = e.getKey();
+			for (int j=0; j<dim; j++) {
+				lo[j][i] = b.lowerBound(j);
+				up[j][i] = b.upperBound(j);
+			}
+			i++;
+		}
+		// pack entries into nodes, level by level, until there is only one node
+		int level = 0;
+		List<RTreeIndexingNode<T>> nodes = pack(entries,lo,up,n,level);
+		while (nodes.size()>1) {
+			n = nodes.size();
+			entries = nodes.toArray();
+			lo = new double[dim][n];
+			up = new double[dim][n];
+			for (i=0; i<n; i++)
+				for (int j=0; j<dim; j++) {
+					lo[j][i] = nodes.get(i).lower[j];
+					up[j][i] = nodes.get(i).upper[j];
+				}
+			nodes = pack(entries,lo,up,n,++level);
+		}
+		root = nodes.get(0);
+	}
+
+	private RTreeIndexingNode<T> newNode(int level) {
+		return new RTreeIndexingNode<T>(level,dim,maxEntries+1);
+	}
+
+	// Sort-Tile-Recursive packing of n entries into full nodes of a given level
+	private List<RTreeIndexingNode<T>> pack(Object[] entries, double[][] lo, double[][] up, int n, int level) {
+		double[][] centres = new double[dim][n];
+		for (int j=0; j<dim; j++)
+			for (int i=0; i<n; i++)
+				centres[j][i] = (lo[j][i]+up[j][i])/2;
+		int[] order = new int[n];
+		for (int i=0; i<n; i++)
+			order[i] = i;
+		List<RTreeIndexingNode<T>> nodes = new ArrayList<>();
+		tile(order,0,n,0,centres,entries,lo,up,level,nodes);
+		return nodes;
+	}
+
+	// recursive - sorts entries along an axis, cuts them into slabs and tiles each slab
+	// along the next axis. Along the last axis, slabs are cut into nodes.
+	@SuppressWarnings("unchecked")
+	private void tile(int[] order, int from, int to, int axis, double[][] centres,
+			Object[] entries, double[][] lo, double[][] up, int level, List<RTreeIndexingNode<T>> nodes) {
+		int count = to-from;
+		if ((axis==dim-1) || (count<=maxEntries)) {
+			sort(order,from,to,centres[axis]);
+			double[] elo = new double[dim];
+			double[] eup = new double[dim];
+			for (int k=from; k<to; k+=maxEntries) {
+				RTreeIndexingNode<T> node = newNode(level);
+				for (int m=k; m<Math.min(k+maxEntries,to); m++) {
+					int e = order[m];
+					for (int j=0; j<dim; j++) {
+						elo[j] = lo[j][e];
+						eup[j] = up[j][e];
+					}
+					node.append(entries[e],elo,eup,null);
+					if (level==0)
+						itemToNodeMap.put((T)entries[e],node);
+				}
+				node.computeBounds();
+				nodes.add(node);
+			}
+		}
+		else {
+			sort(order,from,to,centres[axis]);
+			int pages = (count+maxEntries-1)/maxEntries;
+			int slabs = (int) Math.ceil(Math.pow(pages,1.0/(dim-axis)));
+			int slabSize = ((pages+slabs-1)/slabs)*maxEntries;
+			for (int k=from; k<to; k+=slabSize)
+				tile(order,k,Math.min(k+slabSize,to),axis+1,centres,entries,lo,up,level,nodes);
+		}
+	}
+
+	// sorts order[from..to[ by increasing key[order[i]] - quicksort, insertion sort for short ranges
+	private static void sort(int[] order, int from, int to, double[] key) {
+		while (to-from>16) {
+			int mid = (from+to)>>>1;
+			double a = key[order[from]];
+			double b = key[order[mid]];
+			double c = key[order[to-1]];
+			double pivot = Math.max(Math.min(a,b),Math.min(Math.max(a,b),c));
+			int i = from;
+			int j = to-1;
+			while (i<=j) {
+				while (key[order[i]]<pivot) i++;
+				while (key[order[j]]>pivot) j--;
+				if (i<=j) {
+					int o = order[i];
+					order[i] = order[j];
+					order[j] = o;
+					i++;
+					j--;
+				}
+			}
+			// recurse on the smaller part, loop on the larger
+			if (j+1-from<to-i) {
+				sort(order,from,j+1,key);
+				from = i;
+			}
+			else {
+				sort(order,i,to,key);
+				to = j+1;
+			}
+		}
+		for (int i=from+1; i<to; i++) {
+			int o = order[i];
+			double k = key[o];
+			int m = i;
+			while ((m>from) && (key[order[m-1]]>k)) {
+				order[m] = order[m-1];
+				m--;
+			}
+			order[m] = o;
+		}
+	}
+
+	@Override
+	public final int dim() {
+		return dim;
+	}
+
+	@Override
+	public int size() {
+		return itemToNodeMap.size();
+	}
+
+	@Override
+	public RTreeIndexingNode<T> root() {
+		return root;
+	}
+
+	/**
+	 * @return the bounding box of all item extents, null if the tree is empty
+	 */
+	public Box region() {
+		return root.region();
+	}
+
+	/**
+	 * @return the number of levels of the tree
+	 */
+	public int height() {
+		return root.level+1;
+	}
+
+	//----------------------------------------------------------------------------------------
+	// Insertion
+
+	/**
+	 * Inserts an item with no extent.
+	 */
+	@Override
+	public void insert(T item, Point at) {
+		double[] x = Coordinates.of(at);
+		insert(item,x,x.clone(),null);
+	}
+
+	/**
+	 * Inserts an item with a box extent. An item already in the tree is not inserted again.
+	 * 
+	 * @param item the object to insert
+	 * @param extent the region covered by the item
+	 */
+	public void insert(T item, Box extent) {
+		insert(item,Coordinates.lowerBounds(extent),Coordinates.upperBounds(extent),null);
+	}
+
+	/**
+	 * Inserts an item with a sphere extent. An item already in the tree is not inserted again.
+	 * The tree is organised with the bounding box of the sphere, but queries test the sphere 
+	 * itself.
+	 * 
+	 * @param item the object to insert
+	 * @param extent the region covered by the item
+	 */
+	public void insert(T item, Sphere extent) {
+		if (extent.dim()!=dim)
+			throw new IllegalArgumentException("RTreeIndex: extent of wrong dimension");
+		double[] c = Coordinates.of(extent.centre());
+		double r = extent.radius();
+		double[] lo = new double[dim];
+		double[] up = new double[dim];
+		for (int j=0; j<dim; j++) {
+			lo[j] = c[j]-r;
+			up[j] = c[j]+r;
+		}
+		double[] sphere = Arrays.copyOf(c,dim+1);
+		sphere[dim] = r;
+		insert(item,lo,up,sphere);
+	}
+
+	private void insert(T item, double[] lo, double[] up, double[] sphere) {
+		if (itemToNodeMap.containsKey(item))
+			return;
+		reinsertedLevels = 0L;
+		insertEntry(item,lo,up,sphere,0);
+	}
+
+	// inserts an entry in a node of the given level
+	@SuppressWarnings("unchecked")
+	private void insertEntry(Object entry, double[] lo, double[] up, double[] sphere, int level) {
+		RTreeIndexingNode<T> node = chooseNode(lo,up,level);
+		node.append(entry,lo,up,sphere);
+		if (level==0)
+			itemToNodeMap.put((T)entry,node);
+		if (node.n>maxEntries)
+			overflow(node);
+		else
+			adjustBounds(node);
+	}
+
+	// recomputes node bounds up to the root
+	private void adjustBounds(RTreeIndexingNode<T> node) {
+		while (node!=null) {
+			node.computeBounds();
+			RTreeIndexingNode<T> parent = node.parent;
+			if (parent!=null)
+				parent.updateEntryBounds(parent.indexOf(node));
+			node = parent;
+		}
+	}
+
+	// descends from the root to the best node of the given level to receive an entry
+	private RTreeIndexingNode<T> chooseNode(double[] lo, double[] up, int level) {
+		RTreeIndexingNode<T> node = root;
+		while (node.level>level) {
+			int best = (node.level==1) ? leastOverlapEnlargement(node,lo,up) : leastAreaEnlargement(node,lo,up);
+			node = node.children[best];
+		}
+		return node;
+	}
+
+	// volume of the union of entry i and box [lo,up]
+	private double unionVolume(RTreeIndexingNode<T> node, int i, double[] lo, double[] up) {
+		double v = 1.0;
+		for (int j=0; j<dim; j++)
+			v *= Math.max(node.ups[j][i],up[j])-Math.min(node.lows[j][i],lo[j]);
+		return v;
+	}
+
+	private double volume(RTreeIndexingNode<T> node, int i) {
+		double v = 1.0;
+		for (int j=0; j<dim; j++)
+			v *= node.ups[j][i]-node.lows[j][i];
+		return v;
+	}
+
+	// volume of the intersection of entry i and box [lo,up]
+	private double overlapVolume(RTreeIndexingNode<T> node, int i, double[] lo, double[] up) {
+		double v = 1.0;
+		for (int j=0; j<dim; j++) {
+			double d = Math.min(node.ups[j][i],up[j])-Math.max(node.lows[j][i],lo[j]);
+			if (d<=0.0)
+				return 0.0;
+			v *= d;
+		}
+		return v;
+	}
+
+	// entry needing the least area enlargement to include [lo,up], ties resolved by the smallest area
+	private int leastAreaEnlargement(RTreeIndexingNode<T> node, double[] lo, double[] up) {
+		int best = 0;
+		double bestEnl = Double.POSITIVE_INFINITY;
+		double bestVol = Double.POSITIVE_INFINITY;
+		for (int i=0; i<node.n; i++) {
+			double vol = volume(node,i);
+			double enl = unionVolume(node,i,lo,up)-vol;
+			if ((enl<bestEnl) || ((enl==bestEnl) && (vol<bestVol))) {
+				best = i;
+				bestEnl = enl;
+				bestVol = vol;
+			}
+		}
+		return best;
+	}
+
+	// entry needing the least overlap enlargement with other entries to include [lo,up], 
+	// ties resolved by the least area enlargement, then by the smallest area
+	private int leastOverlapEnlargement(RTreeIndexingNode<T> node, double[] lo, double[] up) {
+		int best = 0;
+		double bestOvl = Double.POSITIVE_INFINITY;
+		double bestEnl = Double.POSITIVE_INFINITY;
+		double bestVol = Double.POSITIVE_INFINITY;
+		double[] elo = new double[dim];
+		double[] eup = new double[dim];
+		double[] ulo = new double[dim];
+		double[] uup = new double[dim];
+		for (int i=0; i<node.n; i++) {
+			node.entryBounds(i,elo,eup);
+			for (int j=0; j<dim; j++) {
+				ulo[j] = Math.min(elo[j],lo[j]);
+				uup[j] = Math.max(eup[j],up[j]);
+			}
+			double ovl = 0.0;
+			for (int k=0; k<node.n; k++)
+				if (k!=i)
+					ovl += overlapVolume(node,k,ulo,uup)-overlapVolume(node,k,elo,eup);
+			double vol = volume(node,i);
+			double enl = unionVolume(node,i,lo,up)-vol;
+			if ((ovl<bestOvl) || ((ovl==bestOvl) && 
+				((enl<bestEnl) || ((enl==bestEnl) && (vol<bestVol))))) {
+				best = i;
+				bestOvl = ovl;
+				bestEnl = enl;
+				bestVol = vol;
+			}
+		}
+		return best;
+	}
+
+	// a node has too many entries: reinsert some of them or split it
+	private void overflow(RTreeIndexingNode<T> node) {
+		if ((node!=root) && ((reinsertedLevels & (1L<<node.level))==0L)) {
+			reinsertedLevels |= 1L<<node.level;
+			reinsert(node);
+		}
+		else
+			split(node);
+	}
+
+	// removes the entries farthest from the node centre and inserts them again, closest first
+	private void reinsert(RTreeIndexingNode<T> node) {
+		node.computeBounds();
+		int n = node.n;
+		double[] d2 = new double[n];
+		int[] order = new int[n];
+		for (int i=0; i<n; i++) {
+			order[i] = i;
+			for (int j=0; j<dim; j++) {
+				double d = (node.lows[j][i]+node.ups[j][i]-node.lower[j]-node.upper[j])/2;
+				d2[i] += d*d;
+			}
+		}
+		sort(order,0,n,d2);
+		int p = reinsertCount;
+		Object[] removed = new Object[p];
+		double[][] rlo = new double[p][dim];
+		double[][] rup = new double[p][dim];
+		double[][] rsph = new double[p][];
+		for (int k=0; k<p; k++) {
+			int i = order[n-p+k];
+			removed[k] = node.entry(i);
+			node.entryBounds(i,rlo[k],rup[k]);
+			rsph[k] = node.sphereAt(i);
+		}
+		// entry ranks change on removal
+		for (int k=0; k<p; k++)
+			node.removeEntry(node.indexOf(removed[k]));
+		adjustBounds(node);
+		for (int k=0; k<p; k++)
+			insertEntry(removed[k],rlo[k],rup[k],rsph[k],node.level);
+	}
+
+	// splits a node in two, possibly propagating the split upwards
+	@SuppressWarnings("unchecked")
+	private void split(RTreeIndexingNode<T> node) {
+		int n = node.n;
+		int[] order = new int[n];
+		int k = chooseSplit(node,order);
+		Object[] entries = new Object[n];
+		double[][] elo = new double[n][dim];
+		double[][] eup = new double[n][dim];
+		double[][] esph = new double[n][];
+		for (int i=0; i<n; i++) {
+			entries[i] = node.entry(order[i]);
+			node.entryBounds(order[i],elo[i],eup[i]);
+			esph[i] = node.sphereAt(order[i]);
+		}
+		node.clear();
+		RTreeIndexingNode<T> sibling = newNode(node.level);
+		for (int i=0; i<k; i++)
+			node.append(entries[i],elo[i],eup[i],esph[i]);
+		for (int i=k; i<n; i++) {
+			sibling.append(entries[i],elo[i],eup[i],esph[i]);
+			if (node.level==0)
+				itemToNodeMap.put((T)entries[i],sibling);
+		}
+		node.computeBounds();
+		sibling.computeBounds();
+		if (node==root) {
+			root = newNode(node.level+1);
+			root.append(node,node.lower,node.upper,null);
+			root.append(sibling,sibling.lower,sibling.upper,null);
+			root.computeBounds();
+		}
+		else {
+			RTreeIndexingNode<T> parent = node.parent;
+			parent.updateEntryBounds(parent.indexOf(node));
+			parent.append(sibling,sibling.lower,sibling.upper,null);
+			if (parent.n>maxEntries)
+				overflow(parent);
+			else
+				adjustBounds(parent);
+		}
+	}
+
+	// bounding boxes of the first k entries (pre[k]) and of the entries from k on (suf[k]), in order ord
+	private void cumulatedBounds(RTreeIndexingNode<T> node, int[] ord, 
+			double[][] preLo, double[][] preUp, double[][] sufLo, double[][] sufUp) {
+		int n = node.n;
+		for (int j=0; j<dim; j++) {
+			double[] l = node.lows[j];
+			double[] u = node.ups[j];
+			double lo = Double.POSITIVE_INFINITY;
+			double up = Double.NEGATIVE_INFINITY;
+			for (int k=0; k<n; k++) {
+				lo = Math.min(lo,l[ord[k]]);
+				up = Math.max(up,u[ord[k]]);
+				preLo[k+1][j] = lo;
+				preUp[k+1][j] = up;
+			}
+			lo = Double.POSITIVE_INFINITY;
+			up = Double.NEGATIVE_INFINITY;
+			for (int k=n-1; k>=0; k--) {
+				lo = Math.min(lo,l[ord[k]]);
+				up = Math.max(up,u[ord[k]]);
+				sufLo[k][j] = lo;
+				sufUp[k][j] = up;
+			}
+		}
+	}
+
+	private double margin(double[] lo, double[] up) {
+		double m = 0.0;
+		for (int j=0; j<dim; j++)
+			m += up[j]-lo[j];
+		return m;
+	}
+
+	private double volume(double[] lo, double[] up) {
+		double v = 1.0;
+		for (int j=0; j<dim; j++)
+			v *= up[j]-lo[j];
+		return v;
+	}
+
+	private double overlapVolume(double[] alo, double[] aup, double[] blo, double[] bup) {
+		double v = 1.0;
+		for (int j=0; j<dim; j++) {
+			double d = Math.min(aup[j],bup[j])-Math.max(alo[j],blo[j]);
+			if (d<=0.0)
+				return 0.0;
+			v *= d;
+		}
+		return v;
+	}
+
+	// R* split: chooses the axis minimising the sum of margins of all distributions, then the 
+	// distribution minimising overlap (then area) on this axis. Entries are sorted by their lower 
+	// or upper bounds. Returns the size of the first group, the entry order in ord.
+	private int chooseSplit(RTreeIndexingNode<T> node, int[] ord) {
+		int n = node.n;
+		int m = minEntries;
+		double[][] preLo = new double[n+1][dim];
+		double[][] preUp = new double[n+1][dim];
+		double[][] sufLo = new double[n+1][dim];
+		double[][] sufUp = new double[n+1][dim];
+		int[] tmp = new int[n];
+		int bestAxis = 0;
+		double bestMargin = Double.POSITIVE_INFINITY;
+		for (int axis=0; axis<dim; axis++) {
+			double s = 0.0;
+			for (int b=0; b<2; b++) {
+				for (int i=0; i<n; i++)
+					tmp[i] = i;
+				sort(tmp,0,n,(b==0) ? node.lows[axis] : node.ups[axis]);
+				cumulatedBounds(node,tmp,preLo,preUp,sufLo,sufUp);
+				for (int k=m; k<=n-m; k++)
+					s += margin(preLo[k],preUp[k])+margin(sufLo[k],sufUp[k]);
+			}
+			if (s<bestMargin) {
+				bestMargin = s;
+				bestAxis = axis;
+			}
+		}
+		int bestK = m;
+		double bestOverlap = Double.POSITIVE_INFINITY;
+		double bestVolume = Double.POSITIVE_INFINITY;
+		for (int b=0; b<2; b++) {
+			for (int i=0; i<n; i++)
+				tmp[i] = i;
+			sort(tmp,0,n,(b==0) ? node.lows[bestAxis] : node.ups[bestAxis]);
+			cumulatedBounds(node,tmp,preLo,preUp,sufLo,sufUp);
+			for (int k=m; k<=n-m; k++) {
+				double ovl = overlapVolume(preLo[k],preUp[k],sufLo[k],sufUp[k]);
+				double vol = volume(preLo[k],preUp[k])+volume(sufLo[k],sufUp[k]);
+				if ((ovl<bestOverlap) || ((ovl==bestOverlap) && (vol<bestVolume))) {
+					bestOverlap = ovl;
+					bestVolume = vol;
+					bestK = k;
+					System.arraycopy(tmp,0,ord,0,n);
+				}
+			}
+		}
+		return bestK;
+	}
+
+	//----------------------------------------------------------------------------------------
+	// Removal
+
+	@Override
+	public boolean remove(T item) {
+		RTreeIndexingNode<T> leaf = itemToNodeMap.remove(item);
+		if (leaf==null)
+			return false;
+		leaf.removeEntry(leaf.indexOf(item));
+		condense(leaf);
+		return true;
+	}
+
+	// removes underfull nodes from the leaf to the root and reinserts their items
+	private void condense(RTreeIndexingNode<T> node) {
+		List<RTreeIndexingNode<T>> orphans = new ArrayList<>();
+		while (node!=root) {
+			RTreeIndexingNode<T> parent = node.parent;
+			int i = parent.indexOf(node);
+			if (node.n<minEntries) {
+				parent.removeEntry(i);
+				node.parent = null;
+				orphans.add(node);
+			}
+			else {
+				node.computeBounds();
+				parent.updateEntryBounds(i);
+			}
+			node = parent;
+		}
+		root.computeBounds();
+		// shorten the tree
+		while ((root.level>0) && (root.n==1)) {
+			root = root.children[0];
+			root.parent = null;
+		}
+		if ((root.level>0) && (root.n==0))
+			root = newNode(0);
+		double[] lo = new double[dim];
+		double[] up = new double[dim];
+		for (RTreeIndexingNode<T> orphan:orphans)
+			reinsertItems(orphan,lo,up);
+	}
+
+	// recursive
+	private void reinsertItems(RTreeIndexingNode<T> node, double[] lo, double[] up) {
+		if (node.level==0)
+			for (int i=0; i<node.n; i++) {
+				node.entryBounds(i,lo,up);
+				reinsertedLevels = 0L;
+				insertEntry(node.itemAt(i),lo,up,node.sphereAt(i),0);
+			}
+		else
+			for (int i=0; i<node.n; i++)
+				reinsertItems(node.children[i],lo,up);
+	}
+
+	@Override
+	public void clear() {
+		itemToNodeMap.clear();
+		root = newNode(0);
+	}
+
+	//----------------------------------------------------------------------------------------
+	// Queries
+
+	@Override
+	public Collection<T> getAllItems() {
+		return root.items();
+	}
+
+	// true if entry i and box [lo,up] have at least one common point
+	private boolean touches(RTreeIndexingNode<T> node, int i, double[] lo, double[] up) {
+		for (int j=0; j<dim; j++)
+			if ((node.ups[j][i]<lo[j]) || (node.lows[j][i]>up[j]))
+				return false;
+		return true;
+	}
+
+	// true if entry i is within box [lo,up] (wide containment)
+	private boolean isWithin(RTreeIndexingNode<T> node, int i, double[] lo, double[] up) {
+		for (int j=0; j<dim; j++)
+			if ((node.lows[j][i]<lo[j]) || (node.ups[j][i]>up[j]))
+				return false;
+		return true;
+	}
+
+	// recursive
+	private void collectWithin(RTreeIndexingNode<T> node, double[] lo, double[] up,
+			QuickListOfLists<T> result, List<T> extraItems) {
+		for (int i=0; i<node.n; i++)
+			if (isWithin(node,i,lo,up)) {
+				if (node.level==0)
+					extraItems.add(node.itemAt(i));
+				else
+					result.addList(node.children[i].items());
+			}
+			else if ((node.level>0) && touches(node,i,lo,up))
+				collectWithin(node.children[i],lo,up,result,extraItems);
+	}
+
+	/**
+	 * Get all items whose extent is within a {@linkplain Box} (wide containment, cf. 
+	 * {@link Box#contains(Box)}).
+	 * 
+	 * @param limits the Box in which to search for items
+	 * @return the list of items contained in the Box
+	 */
+	@Override
+	public Collection<T> getItemsWithin(Box limits) {
+		List<T> extraItems = new ArrayList<>();
+		QuickListOfLists<T> result = new QuickListOfLists<T>();
+		collectWithin(root,Coordinates.lowerBounds(limits),Coordinates.upperBounds(limits),
+			result,extraItems);
+		result.addList(extraItems);
+		return result;
+	}
+
+	// squared distances from a point to the closest and farthest points of entry i
+	private double minSquaredDistance(RTreeIndexingNode<T> node, int i, double[] x) {
+		double d2 = 0.0;
+		for (int j=0; j<dim; j++) {
+			double d = Math.max(0.0,Math.max(node.lows[j][i]-x[j],x[j]-node.ups[j][i]));
+			d2 += d*d;
+		}
+		return d2;
+	}
+
+	private double maxSquaredDistance(RTreeIndexingNode<T> node, int i, double[] x) {
+		double d2 = 0.0;
+		for (int j=0; j<dim; j++) {
+			double d = Math.max(x[j]-node.lows[j][i],node.ups[j][i]-x[j]);
+			d2 += d*d;
+		}
+		return d2;
+	}
+
+	// squared distances from a point to the centre of a sphere extent and to a box [lo,up]
+	private double squaredDistance(double[] sphere, double[] x) {
+		double d2 = 0.0;
+		for (int j=0; j<dim; j++) {
+			double d = x[j]-sphere[j];
+			d2 += d*d;
+		}
+		return d2;
+	}
+
+	private double squaredDistance(double[] sphere, double[] lo, double[] up) {
+		double d2 = 0.0;
+		for (int j=0; j<dim; j++) {
+			double d = Math.max(0.0,Math.max(lo[j]-sphere[j],sphere[j]-up[j]));
+			d2 += d*d;
+		}
+		return d2;
+	}
+
+	// squared distance from a point to the closest point of entry i, 0 if within the entry
+	private double entrySquaredDistance(RTreeIndexingNode<T> node, int i, double[] x) {
+		double[] sphere = node.sphereAt(i);
+		if (sphere==null)
+			return minSquaredDistance(node,i,x);
+		double d = Math.max(0.0,Math.sqrt(squaredDistance(sphere,x))-sphere[dim]);
+		return d*d;
+	}
+
+	// true if entry i is within the sphere of centre c and radius r (wide containment)
+	private boolean isWithin(RTreeIndexingNode<T> node, int i, double[] c, double r) {
+		double[] sphere = node.sphereAt(i);
+		if (sphere==null)
+			return maxSquaredDistance(node,i,c)<=r*r;
+		return Math.sqrt(squaredDistance(sphere,c))+sphere[dim]<=r;
+	}
+
+	// recursive
+	private void collectWithin(RTreeIndexingNode<T> node, double[] c, double r,
+			QuickListOfLists<T> result, List<T> extraItems) {
+		for (int i=0; i<node.n; i++)
+			if (isWithin(node,i,c,r)) {
+				if (node.level==0)
+					extraItems.add(node.itemAt(i));
+				else
+					result.addList(node.children[i].items());
+			}
+			else if ((node.level>0) && (minSquaredDistance(node,i,c)<=r*r))
+				collectWithin(node.children[i],c,r,result,extraItems);
+	}
+
+	/**
+	 * Get all items whose extent is within a {@linkplain Sphere}.
+	 * 
+	 * @param limits the Sphere in which to search for items
+	 * @return the list of items contained in the Sphere
+	 */
+	@Override
+	public Collection<T> getItemsWithin(Sphere limits) {
+		List<T> extraItems = new ArrayList<>();
+		QuickListOfLists<T> result = new QuickListOfLists<T>();
+		collectWithin(root,Coordinates.of(limits.centre()),
+			limits.radius(),result,extraItems);
+		result.addList(extraItems);
+		return result;
+	}
+
+	// recursive - strict overlap, cf. Box.overlaps()
+	private void collectOverlapping(RTreeIndexingNode<T> node, double[] lo, double[] up,
+			QuickListOfLists<T> result, List<T> extraItems) {
+		for (int i=0; i<node.n; i++) {
+			boolean overlaps = true;
+			boolean inside = true;
+			for (int j=0; j<dim; j++) {
+				double l = node.lows[j][i];
+				double u = node.ups[j][i];
+				if ((u<=lo[j]) || (l>=up[j])) {
+					overlaps = false;
+					break;
+				}
+				if ((l<=lo[j]) || (u>=up[j]))
+					inside = false;
+			}
+			if (overlaps) {
+				if (node.level==0) {
+					// a sphere extent overlaps the box if its centre is closer than its radius
+					double[] sphere = node.sphereAt(i);
+					if ((sphere==null) || (squaredDistance(sphere,lo,up)<sphere[dim]*sphere[dim]))
+						extraItems.add(node.itemAt(i));
+				}
+				// all items of a node strictly inside the box overlap it
+				else if (inside)
+					result.addList(node.children[i].items());
+				else
+					collectOverlapping(node.children[i],lo,up,result,extraItems);
+			}
+		}
+	}
+
+	/**
+	 * Get all items whose extent overlaps a {@linkplain Box}, in the sense of {@link Box#overlaps(Box)}
+	 * (i.e. extents sharing only an edge with the box are not overlapping). A sphere extent 
+	 * overlaps the box if its centre is closer than its radius to the box.
+	 * 
+	 * @param limits the Box in which to search for items
+	 * @return the list of items overlapping the Box
+	 */
+	public Collection<T> getItemsOverlapping(Box limits) {
+		List<T> extraItems = new ArrayList<>();
+		QuickListOfLists<T> result = new QuickListOfLists<T>();
+		collectOverlapping(root,Coordinates.lowerBounds(limits),Coordinates.upperBounds(limits),
+			result,extraItems);
+		result.addList(extraItems);
+		return result;
+	}
+
+	// true if a sphere extent contains the box [lo,up], i.e. its farthest corner (cf. 
+	// Sphere#contains(Point)); always true for box extents (null)
+	private boolean sphereContains(double[] sphere, double[] lo, double[] up) {
+		if (sphere==null)
+			return true;
+		double d2 = 0.0;
+		for (int j=0; j<dim; j++) {
+			double d = Math.max(sphere[j]-lo[j],up[j]-sphere[j]);
+			d2 += d*d;
+		}
+		return d2<=sphere[dim]*sphere[dim];
+	}
+
+	// recursive - entries whose box contains [lo,up] (wide containment)
+	private void collectContaining(RTreeIndexingNode<T> node, double[] lo, double[] up, List<T> result) {
+		for (int i=0; i<node.n; i++) {
+			boolean contains = true;
+			for (int j=0; j<dim; j++)
+				if ((node.lows[j][i]>lo[j]) || (node.ups[j][i]<up[j])) {
+					contains = false;
+					break;
+				}
+			if (contains) {
+				if (node.level==0) {
+					if (sphereContains(node.sphereAt(i),lo,up))
+						result.add(node.itemAt(i));
+				}
+				else
+					collectContaining(node.children[i],lo,up,result);
+			}
+		}
+	}
+
+	/**
+	 * Get all items whose extent contains a {@linkplain Point}, in the sense of {@link Box#contains(Point)}
+	 * or {@link Sphere#contains(Point)} (i.e. a point on the edge of an extent is contained in it).
+	 * 
+	 * @param at the location
+	 * @return the list of items containing the location
+	 */
+	public Collection<T> getItemsContaining(Point at) {
+		double[] x = Coordinates.of(at);
+		List<T> result = new ArrayList<>();
+		collectContaining(root,x,x,result);
+		return result;
+	}
+
+	/**
+	 * Get all items whose extent contains a {@linkplain Box}, in the sense of {@link Box#contains(Box)}.
+	 * A sphere extent contains the box if it contains all its corners.
+	 * 
+	 * @param limits the Box to search for
+	 * @return the list of items containing the Box
+	 */
+	public Collection<T> getItemsContaining(Box limits) {
+		List<T> result = new ArrayList<>();
+		collectContaining(root,Coordinates.lowerBounds(limits),Coordinates.upperBounds(limits),
+			result);
+		return result;
+	}
+
+	// the state of a nearest item search
+	private static class Nearest<T> {
+		double dist2 = Double.POSITIVE_INFINITY;
+		T item = null;
+	}
+
+	// recursive - branch and bound, closest entries first
+	private void nearest(RTreeIndexingNode<T> node, double[] x, Nearest<T> search) {
+		int n = node.n;
+		if (node.level==0) {
+			for (int i=0; i<n; i++) {
+				double d2 = entrySquaredDistance(node,i,x);
+				if (d2<search.dist2) {
+					search.dist2 = d2;
+					search.item = node.itemAt(i);
+				}
+			}
+		}
+		else {
+			double[] d2 = new double[n];
+			int[] order = new int[n];
+			for (int i=0; i<n; i++) {
+				d2[i] = minSquaredDistance(node,i,x);
+				order[i] = i;
+			}
+			sort(order,0,n,d2);
+			for (int i=0; i<n; i++) {
+				if (d2[order[i]]>=search.dist2)
+					break;
+				nearest(node.children[order[i]],x,search);
+			}
+		}
+	}
+
+	/**
+	 * Get the item whose extent is closest to location (distance 0 if the location is within
+	 * the extent).
+	 */
+	@Override
+	public T getNearestItem(Point at) {
+		Nearest<T> search = new Nearest<>();
+		nearest(root,Coordinates.of(at),search);
+		return search.item;
+	}
+
+	// recursive - called by toString();
+	private String nodeToString(RTreeIndexingNode<T> node, int depth) {
+		StringBuilder sb = new StringBuilder();
+		String indent = "";
+		for (int i=0; i<depth; i++)
+			indent += "--";
+		sb.append(indent).append(node.toString());
+		if (node.level>0)
+			for (int i=0; i<node.n; i++)
+				sb.append(nodeToString(node.children[i],depth+1));
+		return sb.toString();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(getClass().getSimpleName()).append('\n');
+		sb.append(nodeToString(root,0));
+		return sb.toString();
+	}
+
+	/**
+	 *
+	 * @return a 'short' description of this tree
+	 */
+	public String toShortString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(getClass().getSimpleName()).append('\n');
+		if (size()>0)
+			sb.append("region = ").append(region().toString()).append('\n');
+		sb.append("size = ").append(size()).append(", height = ").append(height()).append('\n');
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,328 @@
+/**************************************************************************
+ *  UIT - a Universal Indexing Tree                                       *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            *
+ *                                                                        *
+ *  UIT is a generalisation and re-implementation of QuadTree and Octree  *
+ *  implementations by Paavo Toivanen as downloaded on 27/8/2018 on       *
+ *  <https://dev.solita.fi/2015/08/06/quad-tree.html>                     *
+ *                                                                        *
+ **************************************************************************
+ *  This file is part of UIT (Universal Indexing Tree).                   *
+ *                                                                        *
+ *  UIT is free software: you can redistribute it and/or modify           *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  UIT is distributed in the hope that it will be useful,                *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with UIT.  If not, see <https://www.gnu.org/licenses/gpl.html>. *
+ *                                                                        *
+ **************************************************************************/
+package fr.cnrs.iees.uit.indexing;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import au.edu.anu.omhtk.collections.QuickListOfLists;
+import fr.cnrs.iees.uit.space.Box;
+import fr.cnrs.iees.uit.space.Point;
+
+/**
+ * <p>{@linkplain IndexingNode} used in {@link RTreeIndex}es.</p>
+ * 
+ * <p>A node holds up to a fixed number of <em>entries</em>, each with a bounding box: items
+ * in leaves (level 0), child nodes in inner nodes (level &gt;0). Entry bounds are stored as
+ * one array per dimension (cf. {@link LeafScan}), in the same order as the entries. For inner
+ * nodes, the bounds of an entry are the bounding box of the child node, which is kept up to date
+ * by the tree.</p>
+ * 
+ * <p>Leaf entries are bounded by the extent of their item. For an item inserted with a 
+ * {@linkplain fr.cnrs.iees.uit.space.Sphere Sphere}, these bounds are the bounding box of the 
+ * sphere, and the leaf also keeps its centre and radius so that queries can test the sphere
+ * itself.</p>
+ *
+ * @author agent - 19 oct. 2026
+ *
+ * @param <T> the type of object stored in this tree
+ */
+class RTreeIndexingNode<T> extends IndexingNode<T,RTreeIndexingNode<T>> {
+
+	/** the level of this node in the tree, 0 for leaves */
+	protected final int level;
+	/** the number of entries in this node - leaves store their items in the first n entries 
+	 * of {@link #items}, and do not use {@link #nitems} since inner nodes have entries too */
+	protected int n = 0;
+	/** the sphere extents of the items: centre coordinates followed by the radius, null for 
+	 * items with a box extent (leaves only) */
+	protected double[][] spheres = null;
+	/** the entry bounds */
+	protected double[][] lows;
+	protected double[][] ups;
+	/** the bounding box of all entries of this node */
+	protected double[] lower;
+	protected double[] upper;
+
+	private final int dim;
+
+	/**
+	 * 
+	 * @param level the level of this node (0 for leaves)
+	 * @param dim the dimension of space
+	 * @param capacity the initial entry capacity
+	 */
+	@SuppressWarnings("unchecked")
+	protected RTreeIndexingNode(int level, int dim, int capacity) {
+		super();
+		this.level = level;
+		this.dim = dim;
+		if (level==0) {
+			items = new Object[capacity];
+			spheres = new double[capacity][];
+		}
+		else
+			children = new RTreeIndexingNode[capacity];
+		lows = new double[dim][capacity];
+		ups = new double[dim][capacity];
+		lower = new double[dim];
+		upper = new double[dim];
+	}
+
+	/**
+	 * @return true if this node stores items
+	 */
+	protected final boolean isLeaf() {
+		return level==0;
+	}
+
+	/**
+	 * @param i an entry rank
+	 * @return the item or child node stored as entry i
+	 */
+	protected final Object entry(int i) {
+		return (level==0) ? items[i] : children[i];
+	}
+
+	// rank of an entry, -1 if absent
+	@Override
+	protected final int indexOf(Object entry) {
+		Object[] entries = (level==0) ? items : children;
+		for (int i=0; i<n; i++)
+			if (entry.equals(entries[i]))
+				return i;
+		return -1;
+	}
+
+	/**
+	 * @param i an entry rank
+	 * @return the sphere extent of entry i (centre coordinates followed by the radius), null if 
+	 * the entry is a node or an item with a box extent
+	 */
+	protected final double[] sphereAt(int i) {
+		return (level==0) ? spheres[i] : null;
+	}
+
+	/**
+	 * Appends an entry to this node. If the entry is a node, its parent is set to this node.
+	 * The bounding box of this node is not updated.
+	 * 
+	 * @param entry an item (leaves) or a node (inner nodes)
+	 * @param lo the entry lower bounds
+	 * @param up the entry upper bounds
+	 * @param sphere the sphere extent of the item, null for box extents and nodes
+	 */
+	@SuppressWarnings("unchecked")
+	protected void append(Object entry, double[] lo, double[] up, double[] sphere) {
+		if (n==lows[0].length) {
+			int cap = 2*n;
+			if (level==0) {
+				items = Arrays.copyOf(items,cap);
+				spheres = Arrays.copyOf(spheres,cap);
+			}
+			else
+				children = Arrays.copyOf(children,cap);
+			for (int j=0; j<dim; j++) {
+				lows[j] = Arrays.copyOf(lows[j],cap);
+				ups[j] = Arrays.copyOf(ups[j],cap);
+			}
+		}
+		if (level==0) {
+			items[n] = entry;
+			spheres[n] = sphere;
+		}
+		else {
+			RTreeIndexingNode<T> child = (RTreeIndexingNode<T>) entry;
+			children[n] = child;
+			child.parent = this;
+		}
+		for (int j=0; j<dim; j++) {
+			lows[j][n] = lo[j];
+			ups[j][n] = up[j];
+		}
+		n++;
+	}
+
+	/**
+	 * Removes an entry (the last entry takes its place). The bounding box of this node is 
+	 * not updated.
+	 * 
+	 * @param i the rank of the entry to remove
+	 */
+	protected void removeEntry(int i) {
+		n--;
+		if (level==0) {
+			items[i] = items[n];
+			items[n] = null;
+			spheres[i] = spheres[n];
+			spheres[n] = null;
+		}
+		else {
+			children[i] = children[n];
+			children[n] = null;
+		}
+		for (int j=0; j<dim; j++) {
+			lows[j][i] = lows[j][n];
+			ups[j][i] = ups[j][n];
+		}
+	}
+
+	/**
+	 * Copies the bounds of entry i into lo and up
+	 */
+	protected final void entryBounds(int i, double[] lo, double[] up) {
+		for (int j=0; j<dim; j++) {
+			lo[j] = lows[j][i];
+			up[j] = ups[j][i];
+		}
+	}
+
+	/**
+	 * Sets the bounds of entry i to the bounding box of the child node it refers to.
+	 */
+	protected final void updateEntryBounds(int i) {
+		RTreeIndexingNode<T> child = children[i];
+		for (int j=0; j<dim; j++) {
+			lows[j][i] = child.lower[j];
+			ups[j][i] = child.upper[j];
+		}
+	}
+
+	/**
+	 * Recomputes the bounding box of this node from its entries
+	 */
+	protected void computeBounds() {
+		for (int j=0; j<dim; j++) {
+			double lo = Double.POSITIVE_INFINITY;
+			double up = Double.NEGATIVE_INFINITY;
+			double[] l = lows[j];
+			double[] u = ups[j];
+			for (int i=0; i<n; i++) {
+				if (l[i]<lo) lo = l[i];
+				if (u[i]>up) up = u[i];
+			}
+			lower[j] = lo;
+			upper[j] = up;
+		}
+	}
+
+	/**
+	 * @return the bounding box of this node, null if it is empty
+	 */
+	protected Box region() {
+		if (n==0)
+			return null;
+		return Box.boundingBox(Point.newPoint(lower.clone()),Point.newPoint(upper.clone()));
+	}
+
+	/**
+	 * @return a copy of the items stored in this node only (empty for inner nodes)
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	protected List<T> localItems() {
+		if ((level>0) || (n==0))
+			return Collections.emptyList();
+		return Collections.unmodifiableList(Arrays.asList((T[])Arrays.copyOf(items,n)));
+	}
+
+	@Override
+	public T item() {
+		if ((level>0) || (n==0))
+			return null;
+		if (n==1)
+			return itemAt(0);
+		throw new UnsupportedOperationException("Item list contains more than one item - use items() to get them.");
+	}
+
+	// recursive
+	private void getAllItems(QuickListOfLists<T> list, RTreeIndexingNode<T> node) {
+		if (node.level==0)
+			list.addList(node.localItems());
+		else
+			for (int i=0; i<node.n; i++)
+				getAllItems(list,node.children[i]);
+	}
+
+	@Override
+	public final Collection<T> items() {
+		QuickListOfLists<T> list = new QuickListOfLists<T>();
+		getAllItems(list,this);
+		return list;
+	}
+
+	@Override
+	public final void clear() {
+		if (level==0) {
+			Arrays.fill(items,0,n,null);
+			Arrays.fill(spheres,0,n,null);
+		}
+		else
+			Arrays.fill(children,0,n,null);
+		n = 0;
+	}
+
+	// for debugging
+	/**
+	 *
+	 * @return a short String description of this node
+	 */
+	protected String toShortString() {
+		StringBuilder sb=new StringBuilder();
+		sb.append("level=").append(level).append(", ");
+		if (level==0) {
+			sb.append("items={");
+			for (int i=0; i<n; i++) {
+				if (i>0) sb.append(',');
+				sb.append(items[i].toString());
+			}
+			sb.append("}");
+		}
+		else
+			sb.append(n).append(" children");
+		sb.append('\n');
+		return sb.toString();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb=new StringBuilder();
+		if (n>0)
+			sb.append("region=[")
+				.append(region().lowerBounds().toString())
+				.append("-")
+				.append(region().upperBounds().toString())
+				.append("], ");
+		sb.append(toShortString());
+		return sb.toString();
+	}
+
+}
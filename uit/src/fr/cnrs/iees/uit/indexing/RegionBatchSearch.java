@@ -0,0 +1,408 @@
+/**************************************************************************
+ *  UIT - a Universal Indexing Tree                                       *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            *
+ *                                                                        *
+ *  UIT is a generalisation and re-implementation of QuadTree and Octree  *
+ *  implementations by Paavo Toivanen as downloaded on 27/8/2018 on       *
+ *  <https://dev.solita.fi/2015/08/06/quad-tree.html>                     *
+ *                                                                        *
+ **************************************************************************
+ *  This file is part of UIT (Universal Indexing Tree).                   *
+ *                                                                        *
+ *  UIT is free software: you can redistribute it and/or modify           *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  UIT is distributed in the hope that it will be useful,                *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with UIT.  If not, see <https://www.gnu.org/licenses/gpl.html>. *
+ *                                                                        *
+ **************************************************************************/
+package fr.cnrs.iees.uit.indexing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import fr.cnrs.iees.uit.space.Box;
+import fr.cnrs.iees.uit.space.Point;
+
+/**
+ * <p>A batch of sphere or <em>k</em>-nearest neighbour queries on a {@link RegionIndexingTree}
+ * (cf. {@link RegionIndexingTree#queryBatch(Point[], double)} and
+ * {@link RegionIndexingTree#nearestBatch(Point[], int)}).</p>
+ *
+ * <p>Queries are first sorted in Morton (<em>Z</em>-curve) order of their centres, so that 
+ * consecutive queries are close in space. The sorted queries are split into chunks of 
+ * {@value #GRAIN} queries, searched in parallel on the common {@link ForkJoinPool}. Within a 
+ * chunk, each search starts from the node where the previous one started, climbing up only as far
+ * as needed, instead of descending from the root (except for sphere queries in trees where sibling
+ * regions may overlap, cf. {@link RegionIndexingTree#disjointRegions()}). Each chunk uses its own 
+ * buffers.</p>
+ *
+ * <p>The tree must not be modified during the search.</p>
+ *
+ * @author agent - 19 oct. 2026
+ *
+ * @param <T> the type of object stored in the tree
+ */
+class RegionBatchSearch<T> {
+
+	/** number of queries searched sequentially by a task */
+	static final int GRAIN = 128;
+
+	private final RegionIndexingTree<T> tree;
+	private final int dim;
+	// query centres, as [query][dimension]
+	private final double[][] q;
+	// queries in Morton order
+	private final int[] order;
+	// sphere queries: radius - knn queries: number of neighbours
+	private final double radius;
+	private final int k;
+	// true if searches may start from the smallest node containing the query region
+	private final boolean finger;
+	// items found, per query
+	private final Object[][] found;
+
+	private RegionBatchSearch(RegionIndexingTree<T> tree, Point[] centres, double radius, int k) {
+		super();
+		this.tree = tree;
+		this.dim = tree.dim();
+		this.radius = radius;
+		this.k = k;
+		finger = tree.disjointRegions();
+		int n = centres.length;
+		q = new double[n][dim];
+		for (int i=0; i<n; i++)
+			for (int j=0; j<dim; j++)
+				q[i][j] = centres[i].coordinate(j);
+		order = new int[n];
+		for (int i=0; i<n; i++)
+			order[i] = i;
+		found = new Object[n][];
+	}
+
+	/**
+	 * searches items within distance radius of every centre (wide containment)
+	 */
+	static <T> BatchQueryResult<T> within(RegionIndexingTree<T> tree, Point[] centres, double radius) {
+		return new RegionBatchSearch<T>(tree,centres,radius,0).run();
+	}
+
+	/**
+	 * searches the k nearest items of every centre, by increasing distance
+	 */
+	static <T> BatchQueryResult<T> nearest(RegionIndexingTree<T> tree, Point[] centres, int k) {
+		return new RegionBatchSearch<T>(tree,centres,0.0,k).run();
+	}
+
+	private BatchQueryResult<T> run() {
+		if ((tree.root()==null) || (tree.size()==0) || ((k==0) && (radius<0))) {
+			for (int i=0; i<found.length; i++)
+				found[i] = new Object[0];
+			return BatchQueryResult.concatenate(found);
+		}
+		sortByMortonOrder(tree.root().region());
+		ForkJoinPool.commonPool().invoke(new Chunk(0,order.length));
+		return BatchQueryResult.concatenate(found);
+	}
+
+	// sorts queries by interleaved bits of their cell coordinates in the region, first dimension first
+	private void sortByMortonOrder(Box region) {
+		int bits = Math.min(31,63/dim);
+		if ((bits==0) || (order.length<2))
+			return;
+		long[] key = new long[order.length];
+		long ncells = 1L<<bits;
+		for (int i=0; i<order.length; i++) {
+			long[] cell = new long[dim];
+			for (int j=0; j<dim; j++) {
+				double lo = region.lowerBound(j);
+				double side = region.upperBound(j)-lo;
+				long c = (side>0) ? (long)((q[i][j]-lo)/side*ncells) : 0L;
+				cell[j] = Math.max(0L,Math.min(ncells-1,c));
+			}
+			long m = 0L;
+			for (int b=bits-1; b>=0; b--)
+				for (int j=0; j<dim; j++)
+					m = (m<<1) | ((cell[j]>>b) & 1L);
+			key[i] = m;
+		}
+		sort(order,0,order.length,key);
+	}
+
+	// sorts order[from..to[ by increasing key[order[i]] - quicksort, insertion sort for short ranges
+	private static void sort(int[] order, int from, int to, long[] key) {
+		while (to-from>16) {
+			int mid = (from+to)>>>1;
+			long a = key[order[from]];
+			long b = key[order[mid]];
+			long c = key[order[to-1]];
+			long pivot = Math.max(Math.min(a,b),Math.min(Math.max(a,b),c));
+			int i = from;
+			int j = to-1;
+			while (i<=j) {
+				while (key[order[i]]<pivot) i++;
+				while (key[order[j]]>pivot) j--;
+				if (i<=j) {
+					int o = order[i];
+					order[i] = order[j];
+					order[j] = o;
+					i++;
+					j--;
+				}
+			}
+			// recurse on the smaller part, loop on the larger
+			if (j+1-from<to-i) {
+				sort(order,from,j+1,key);
+				from = i;
+			}
+			else {
+				sort(order,i,to,key);
+				to = j+1;
+			}
+		}
+		for (int i=from+1; i<to; i++) {
+			int o = order[i];
+			int j = i-1;
+			while ((j>=from) && (key[order[j]]>key[o])) {
+				order[j+1] = order[j];
+				j--;
+			}
+			order[j+1] = o;
+		}
+	}
+
+	// searches a range of sorted queries, in parallel for large ranges
+	private class Chunk extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int from;
+		private final int to;
+
+		private Chunk(int from, int to) {
+			super();
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to-from>GRAIN) {
+				int mid = (from+to)>>>1;
+				invokeAll(new Chunk(from,mid),new Chunk(mid,to));
+			}
+			else if (k>0)
+				searchNearest(from,to);
+			else
+				searchWithin(from,to);
+		}
+	}
+
+	// true if the half-open node region contains the box [lo,up]: items on the upper bound of a node
+	// region may be stored in its upper neighbour (cf. RegionIndexingNode.childIndex())
+	private static boolean contains(RegionIndexingNode<?> node, double[] lo, double[] up) {
+		for (int j=0; j<lo.length; j++)
+			if ((lo[j]<node.lower[j]) || (up[j]>=node.upper[j]))
+				return false;
+		return true;
+	}
+
+	// the smallest node containing the box [lo,up], searched from the starting node of the previous query
+	private RegionIndexingNode<T> start(RegionIndexingNode<T> node, double[] lo, double[] up) {
+		while ((node.parent!=null) && !contains(node,lo,up))
+			node = node.parent;
+		boolean deeper = true;
+		while (deeper && (node.children!=null)) {
+			deeper = false;
+			for (int i=0; i<node.children.length; i++) {
+				RegionIndexingNode<T> child = node.children[i];
+				if ((child!=null) && contains(child,lo,up)) {
+					node = child;
+					deeper = true;
+					break;
+				}
+			}
+		}
+		return node;
+	}
+
+	// squared distance from x to the node region (0 if inside)
+	private static double minDist2(RegionIndexingNode<?> node, double[] x) {
+		double d2 = 0.0;
+		for (int j=0; j<x.length; j++) {
+			double d = Math.max(0.0,Math.max(node.lower[j]-x[j],x[j]-node.upper[j]));
+			d2 += d*d;
+		}
+		return d2;
+	}
+
+	private static double dist2(RegionIndexingNode<?> leaf, int i, double[] x) {
+		double d2 = 0.0;
+		for (int j=0; j<x.length; j++) {
+			double d = leaf.lanes[j][i]-x[j];
+			d2 += d*d;
+		}
+		return d2;
+	}
+
+	// sphere queries
+
+	private void searchWithin(int from, int to) {
+		List<T> buffer = new ArrayList<>();
+		double[] lo = new double[dim];
+		double[] up = new double[dim];
+		double r2 = radius*radius;
+		RegionIndexingNode<T> node = tree.root();
+		for (int r=from; r<to; r++) {
+			int i = order[r];
+			double[] x = q[i];
+			for (int j=0; j<dim; j++) {
+				lo[j] = x[j]-radius;
+				up[j] = x[j]+radius;
+			}
+			if (finger)
+				node = start(node,lo,up);
+			buffer.clear();
+			collectWithin(node,x,r2,buffer);
+			found[i] = buffer.toArray();
+		}
+	}
+
+	private void collectWithin(RegionIndexingNode<T> node, double[] x, double r2, List<T> buffer) {
+		if (minDist2(node,x)>r2)
+			return;
+		if (node.children!=null) {
+			for (int i=0; i<node.children.length; i++)
+				if (node.children[i]!=null)
+					collectWithin(node.children[i],x,r2,buffer);
+		}
+		else
+			for (int i=0; i<node.nitems; i++)
+				if (dist2(node,i,x)<=r2)
+					buffer.add(node.itemAt(i));
+	}
+
+	// k nearest neighbour queries
+
+	private void searchNearest(int from, int to) {
+		Neighbours nb = new Neighbours(k);
+		RegionIndexingNode<T> node = tree.root();
+		for (int r=from; r<to; r++) {
+			int i = order[r];
+			double[] x = q[i];
+			node = start(node,x,x);
+			nb.clear();
+			// search the smallest node containing x, then its ancestors until k items are found
+			RegionIndexingNode<T> searched = node;
+			searchNearest(searched,x,nb,null);
+			while (!nb.full() && (searched.parent!=null)) {
+				searchNearest(searched.parent,x,nb,searched);
+				searched = searched.parent;
+			}
+			// then the rest of the tree within the distance of the k-th item
+			searchNearest(tree.root(),x,nb,searched);
+			found[i] = nb.sorted();
+		}
+	}
+
+	private void searchNearest(RegionIndexingNode<T> node, double[] x, Neighbours nb, RegionIndexingNode<T> skip) {
+		if ((node==skip) || (nb.full() && (minDist2(node,x)>nb.bound())))
+			return;
+		if (node.children!=null) {
+			for (int i=0; i<node.children.length; i++)
+				if (node.children[i]!=null)
+					searchNearest(node.children[i],x,nb,skip);
+		}
+		else
+			for (int i=0; i<node.nitems; i++)
+				nb.offer(node.itemAt(i),dist2(node,i,x));
+	}
+
+	// the k nearest items found so far, as a max-heap on distance
+	private static class Neighbours {
+		private final double[] d2;
+		private final Object[] items;
+		private int n = 0;
+
+		private Neighbours(int k) {
+			super();
+			d2 = new double[k];
+			items = new Object[k];
+		}
+
+		private void clear() {
+			for (int i=0; i<n; i++)
+				items[i] = null;
+			n = 0;
+		}
+
+		private boolean full() {
+			return n==d2.length;
+		}
+
+		// squared distance of the k-th item
+		private double bound() {
+			return d2[0];
+		}
+
+		private void offer(Object item, double d) {
+			if (!full()) {
+				int i = n++;
+				while (i>0) {
+					int p = (i-1)>>1;
+					if (d2[p]>=d)
+						break;
+					d2[i] = d2[p];
+					items[i] = items[p];
+					i = p;
+				}
+				d2[i] = d;
+				items[i] = item;
+			}
+			else if (d<d2[0]) {
+				siftDown(0,item,d);
+			}
+		}
+
+		private void siftDown(int i, Object item, double d) {
+			while (true) {
+				int c = 2*i+1;
+				if (c>=n)
+					break;
+				if ((c+1<n) && (d2[c+1]>d2[c]))
+					c++;
+				if (d2[c]<=d)
+					break;
+				d2[i] = d2[c];
+				items[i] = items[c];
+				i = c;
+			}
+			d2[i] = d;
+			items[i] = item;
+		}
+
+		// items by increasing distance - empties the heap
+		private Object[] sorted() {
+			Object[] result = new Object[n];
+			while (n>0) {
+				result[n-1] = items[0];
+				n--;
+				if (n>0)
+					siftDown(0,items[n],d2[n]);
+				items[n] = null;
+			}
+			return result;
+		}
+	}
+
+}
@@ -28,8 +28,10 @@
  **************************************************************************/
 package fr.cnrs.iees.uit.indexing;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
 
 import au.edu.anu.omhtk.collections.QuickListOfLists;
@@ -55,13 +57,32 @@ class RegionIndexingNode<T> extends IndexingNode<T,RegionIndexingNode<T>> {
 	protected static int LEAF_MAX_ITEMS = 10;
 //	protected static int LEAF_MAX_ITEMS = 2; // for testing only
 
-	private Box region;
+	// built lazily from lower and upper when first needed
+	private Box region = null;
+	// region bounds and centre as plain arrays, used in descents and overlap tests
+	protected double[] lower;
+	protected double[] upper;
+	protected double[] centre;
 
-	/** the list of (Point,item) pairs stored in this node */
-	protected Map<T, Point> items = new HashMap<>();
+	/** the handles of the items, if any (same ranks as items, cf. {@link ItemHandle}) */
+	protected Object[] handles = null;
+	/** the ranks of the items, only for leaves holding more than {@link #LEAF_MAX_ITEMS} items
+	 * (i.e. overflow buckets), so that items are found without scanning the whole list */
+	private Map<Object,Integer> ranks = null;
+	/** false if some items of this node are at different locations (may be true
+	 * after removals) */
+	private boolean colocated = true;
 
 	private int dim;
 
+	/** true if this node region is smaller than its slot in its parent, i.e. if the chain of
+	 * single-child nodes between them has been skipped (cf. {@link RegionIndexingTree#setCompression(boolean)}) */
+	protected boolean compressed = false;
+
+	/** the depth of this node, i.e. the number of halvings of the root region to get its region
+	 * (may be negative after the expansion of the root, cf. {@link #expandRootRegion(Point)}) */
+	protected int depth = 0;
+
 	protected RegionIndexingTree<T> tree = null;
 
 	/**
@@ -72,9 +93,36 @@ class RegionIndexingNode<T> extends IndexingNode<T,RegionIndexingNode<T>> {
 	public RegionIndexingNode(RegionIndexingNode<T> parent, Box region, RegionIndexingTree<T> tree) {
 		super();
 		this.parent = parent;
-		this.region = region;
 		dim = region.dim();
 		this.tree = tree;
+		setRegion(region);
+	}
+
+	// constructor for children nodes: bounds are computed by the parent, no Box needed
+	private RegionIndexingNode(RegionIndexingNode<T> parent, double[] lower, double[] upper,
+			RegionIndexingTree<T> tree) {
+		super();
+		this.parent = parent;
+		this.tree = tree;
+		this.lower = lower;
+		this.upper = upper;
+		depth = parent.depth+1;
+		dim = lower.length;
+		centre = new double[dim];
+		for (int i=0; i<dim; i++)
+			centre[i] = (lower[i]+upper[i])/2;
+	}
+
+	private void setRegion(Box newRegion) {
+		region = newRegion;
+		lower = new double[dim];
+		upper = new double[dim];
+		centre = new double[dim];
+		for (int i=0; i<dim; i++) {
+			lower[i] = region.lowerBound(i);
+			upper[i] = region.upperBound(i);
+			centre[i] = (lower[i]+upper[i])/2;
+		}
 	}
 
 	/**
@@ -82,9 +130,157 @@ class RegionIndexingNode<T> extends IndexingNode<T,RegionIndexingNode<T>> {
 	 * @return the portion of space represented by this node
 	 */
 	protected Box region() {
+		if (region==null)
+			region = Box.boundingBox(Point.newPoint(lower.clone()),Point.newPoint(upper.clone()));
 		return region;
 	}
 
+	/**
+	 * Same as {@code region().contains(loc)}, without instantiating the region.
+	 *
+	 * @param loc the point to test
+	 * @return true if loc is within (or on the edge of) this node region
+	 */
+	protected boolean contains(Point loc) {
+		for (int i=0; i<dim; i++) {
+			double x = loc.coordinate(i);
+			if ((x>upper[i]) || (x<lower[i]))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Same as {@code region().overlaps(limits)}, without instantiating the region.
+	 *
+	 * @param limits the box to test
+	 * @return true if this node region strictly overlaps limits
+	 */
+	protected boolean overlaps(Box limits) {
+		for (int i=0; i<dim; i++) {
+			if (upper[i]<=limits.lowerBound(i))
+				return false;
+			if (lower[i]>=limits.upperBound(i))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Same as {@code limits.contains(region())}, without instantiating the region.
+	 *
+	 * @param limits the box to test
+	 * @return true if this node region is fully contained in limits
+	 */
+	protected boolean isWithin(Box limits) {
+		for (int i=0; i<dim; i++)
+			if ((lower[i]<limits.lowerBound(i)) || (upper[i]>limits.upperBound(i)))
+				return false;
+		return true;
+	}
+
+	/**
+	 * @param i the rank of an item in this node
+	 * @return the location of the i<sup>th</sup> item
+	 */
+	protected Point location(int i) {
+		return Point.newPoint(coordinatesAt(i));
+	}
+
+	@Override
+	protected final boolean identity() {
+		return (tree!=null) && tree.identity;
+	}
+
+	// overflow buckets look items up in their rank map
+	@Override
+	protected final int indexOf(Object item) {
+		if (ranks!=null) {
+			Integer i = ranks.get(item);
+			return (i==null) ? -1 : i;
+		}
+		return super.indexOf(item);
+	}
+
+	// adds an item at a location given either as a Point or as raw coordinates (if loc is null)
+	private void add(T item, Point loc, double[] x) {
+		if (items==null)
+			initItems(LEAF_MAX_ITEMS,dim);
+		int i = appendItem(item,(loc==null) ? x : null);
+		for (int j=0; j<dim; j++) {
+			if (loc!=null)
+				lanes[j][i] = loc.coordinate(j);
+			colocated &= (lanes[j][i]==lanes[j][0]);
+		}
+		if (ranks!=null)
+			ranks.put(item,i);
+	}
+
+	// overflow buckets also get a map of item ranks
+	@Override
+	protected void growItems(int capacity) {
+		super.growItems(capacity);
+		if (handles!=null)
+			handles = Arrays.copyOf(handles,capacity);
+		if ((ranks==null) && (nitems>=LEAF_MAX_ITEMS)) {
+			ranks = identity() ? new IdentityHashMap<>() : new HashMap<>();
+			for (int i=0; i<nitems; i++)
+				ranks.put(items[i],i);
+		}
+	}
+
+	/**
+	 * sets the location of the item of rank i
+	 * @param i the rank of the item
+	 * @param loc its new location
+	 */
+	protected void setLocation(int i, Point loc) {
+		// the other items are all at the same location, e.g. that of the item of rank 0 or 1
+		int ref = (i==0) ? 1 : 0;
+		for (int j=0; j<dim; j++) {
+			lanes[j][i] = loc.coordinate(j);
+			if (ref<nitems)
+				colocated &= (lanes[j][i]==lanes[j][ref]);
+		}
+	}
+
+	// also updates the item ranks and handles
+	@SuppressWarnings("unchecked")
+	@Override
+	protected void removeItemAt(int i) {
+		int last = nitems-1;
+		if (ranks!=null) {
+			ranks.remove(items[i]);
+			if (i<last)
+				ranks.put(items[last],i);
+		}
+		if (handles!=null) {
+			ItemHandle<T> h = (ItemHandle<T>) handles[i];
+			if (h!=null)
+				h.node = null;
+			handles[i] = handles[last];
+			handles[last] = null;
+			if (handles[i]!=null)
+				((ItemHandle<T>) handles[i]).slot = i;
+		}
+		super.removeItemAt(i);
+		if (nitems<=1)
+			colocated = true;
+	}
+
+	/**
+	 * attaches a handle to the item of rank i
+	 * @param i the rank of the item
+	 * @param h the handle
+	 */
+	protected void setHandle(int i, ItemHandle<T> h) {
+		if (handles==null)
+			handles = new Object[items.length];
+		handles[i] = h;
+		h.node = this;
+		h.slot = i;
+	}
+
 	/**
 	 * <p>Computes a new region containing the point passed as an argument. Recurses if necessary.</p>
 	 * <p>This method is only used in the {@linkplain ExpandingRegionIndexingTree}.</p>
@@ -93,33 +289,30 @@ class RegionIndexingNode<T> extends IndexingNode<T,RegionIndexingNode<T>> {
 	 */
 	protected RegionIndexingNode<T> expandRootRegion(Point loc) {
 		// if the region is null, enlarge it using the new point as the limit so that the item falls in the region
-		if (region.size()==0.0) {
-			region = Box.boundingCube(region.lowerBounds(), loc);
+		if (region().size()==0.0) {
+			setRegion(Box.boundingCube(region.lowerBounds(), loc));
 			return this;
 		}
 		// if there is no parent, make one (NB this means I am the root and this parent is going to replace me)
 		else {
 			if (parent==null) {
 				// work out the new region boundaries
-				double[] newlows = new double[dim];
-				for (int i=0; i<dim; i++)
-					newlows[i] = region.lowerBound(i);
-				double[] newups = new double[dim];
-				for (int i=0; i<dim; i++)
-					newups[i] = region.upperBound(i);
+				double[] newlows = lower.clone();
+				double[] newups = upper.clone();
 				for (int i=0; i<dim; i++) {
-					if (loc.coordinate(i)<region.lowerBound(i))
-						newlows[i] =  region.lowerBound(i)-region.sideLength(i);
-					if (loc.coordinate(i)>region.upperBound(i))
-						newups[i] = region.upperBound(i)+region.sideLength(i);
+					if (loc.coordinate(i)<lower[i])
+						newlows[i] =  lower[i]-(upper[i]-lower[i]);
+					if (loc.coordinate(i)>upper[i])
+						newups[i] = upper[i]+(upper[i]-lower[i]);
 				}
 //				parent = new RegionIndexingNode<T>(null,
 //					new BoxImpl(Point.newPoint(newlows),Point.newPoint(newups)),tree);
 				parent = new RegionIndexingNode<T>(null,
 					Box.boundingBox(Point.newPoint(newlows),Point.newPoint(newups)),tree);
-				parent.makeChildren(); // this creates empty children in the parent
+				parent.depth = depth-1;
+				parent.makeChildren(); // this makes parent an inner node with no children
 				// place me in my parent's children
-				parent.children[parent.childIndex(region.centre())] = this;
+				parent.addChild(parent.childIndex(centre),this);
 			}
 			return parent;
 		}
@@ -128,18 +321,32 @@ class RegionIndexingNode<T> extends IndexingNode<T,RegionIndexingNode<T>> {
 	// recursive
 	
 	public RegionIndexingNode<T> insert(T item, Point loc) {
+		return insert(item,loc,null);
+	}
+
+	// true if this leaf holds item. The item map, if any, is used rather than the item list,
+	// which may be long in overflow buckets
+	private boolean holds(T item) {
+		if (tree.itemToNodeMap!=null)
+			return tree.itemToNodeMap.get(item)==this;
+		return indexOf(item)>=0;
+	}
+
+	// location given either as a Point or as raw coordinates (if loc is null)
+	private RegionIndexingNode<T> insert(T item, Point loc, double[] x) {
 		// do not insert same item twice at the same location
-		if (!items.containsKey(item)) {
+		if ((children!=null) || !holds(item)) {
 			// insert the item here or in my children
 			// if list of items is full, expand to child nodes
-			if (items.size() >= LEAF_MAX_ITEMS)
+			// (if not possible, the list overflows its nominal capacity)
+			if ((nitems >= LEAF_MAX_ITEMS) && canSplit())
 				makeChildren();
 			// if there are child nodes, put the item in the proper child
 			if (children!=null)
-				return insertInChild(item, this,loc);
+				return insertInChild(item,this,loc,x);
 			// otherwise, put it in this list
 			else {
-				items.put(item,loc);
+				add(item,loc,x);
 				return this;
 			}
 		}
@@ -147,111 +354,239 @@ class RegionIndexingNode<T> extends IndexingNode<T,RegionIndexingNode<T>> {
 			return null;
 	}
 
+	// 1 if x>=c, 0 otherwise, computed from the sign bit of x-c (no branching).
+	// x-c is never -0.0 when x==c, so points on the centre go to the upper child.
+	private static int upperHalf(double x, double c) {
+		return 1-(int)(Double.doubleToRawLongBits(x-c)>>>63);
+	}
+
 	// returns the index of the child node containing the point loc
-	private int childIndex(Point loc) {
-		int[] ix = new int[dim];
-		int index=0;
-		for (int i=0; i<dim; i++) {
-			double prop = (loc.coordinate(i)-region.lowerBound(i))
-					/(region.upperBound(i)-region.lowerBound(i));
-			int nn = (int) Math.floor(2*prop);
-			// could possibly nn equal 2 ? yes.
-			if (nn==2)
-				nn--;
-			ix[i] = nn;
-		}
+	// the first dimension is the most significant bit of the index
+	protected int childIndex(Point loc) {
+		int index = 0;
 		for (int i=0; i<dim; i++)
-			index += ix[i]*(1<<(dim-i-1));
+			index = (index<<1) | upperHalf(loc.coordinate(i),centre[i]);
+		return index;
+	}
 
-		// debug
-		// this is a very rarely occurring bug: index out of range
-		if ((index<0)||(index>(1<<dim))) {
-			System.out.println("RARE BUG occurring!");
-			System.out.println("for point "+loc.toString()+" in region "+region.toString());
+	// same as above using raw coordinates
+	private int childIndex(double[] loc) {
+		int index = 0;
+		for (int i=0; i<dim; i++)
+			index = (index<<1) | upperHalf(loc[i],centre[i]);
+		return index;
+	}
+
+	// true if a cell at depth d can be split without exceeding the tree depth and cell size limits
+	private boolean belowLimits(double[] lo, double[] up, int d) {
+		if (d-tree.root.depth >= tree.maxDepth)
+			return false;
+		double side = 0.0;
+		for (int j=0; j<dim; j++)
+			side = Math.max(side,up[j]-lo[j]);
+		return side/2 >= tree.minCellSize;
+	}
+
+	// true if this leaf can be split, i.e. the tree limits allow it and the split can
+	// separate its items (which is not the case if they all are at the same location)
+	private boolean canSplit() {
+		return !colocated && belowLimits(lower,upper,depth);
+	}
+
+	// inserts item T in the proper child node of node 'node', creating it if needed - recursive
+	private RegionIndexingNode<T> insertInChild(T item, RegionIndexingNode<T> node, Point loc, double[] x) {
+		while (node.children!=null) {
+			int i = (loc==null) ? node.childIndex(x) : node.childIndex(loc);
+			RegionIndexingNode<T> child = node.child(i);
+			if (child==null)
+				child = node.makeChild(i);
+			else if (child.compressed && !node.compressedChildContains(i,child,loc,x))
+				child = node.makeCommonCell(i,child,(loc==null) ? x : Coordinates.of(loc));
+			node = child;
 		}
-		// debug
+		return node.insert(item,loc,x);
+	}
 
+	/**
+	 * Tells if a location falling in slot i of this node is within its compressed child at this slot,
+	 * i.e. if it would have reached this child without chain compression.
+	 * 
+	 * @param i the child index of the location
+	 * @param c the child at index i
+	 * @param loc the location (if null, x is used)
+	 * @param x the location as raw coordinates
+	 * @return true if loc is in c
+	 */
+	protected boolean compressedChildContains(int i, RegionIndexingNode<T> c, Point loc, double[] x) {
+		// cells are half-open intervals, except on the slot upper bounds
+		// on the slot bounds, out-of-slot locations go to the closest cell
+		int[] offsets = tree.childOffsets[i];
+		for (int j=0; j<dim; j++) {
+			double xj = (loc==null) ? x[j] : loc.coordinate(j);
+			if ((xj<c.lower[j]) && (c.lower[j]!=((offsets[j]==0) ? lower[j] : centre[j])))
+				return false;
+			if ((xj>=c.upper[j]) && (c.upper[j]!=((offsets[j]==0) ? centre[j] : upper[j])))
+				return false;
+		}
+		return true;
+	}
+
+	// index of the sub-cell of centre mid containing point x
+	private int cellIndex(double[] x, double[] mid) {
+		int index = 0;
+		for (int j=0; j<dim; j++)
+			index = (index<<1) | upperHalf(x[j],mid[j]);
 		return index;
 	}
 
-	// inserts item T in the proper (existing) child node of node 'node' - recursive
-	private RegionIndexingNode<T> insertInChild(T item, RegionIndexingNode<T> node, Point loc) {
-		while (node.children!=null) {
-			int i = node.childIndex(loc);
-			node = node.children[i];
+	// same for the i-th item of this node
+	private int cellIndex(int i, double[] mid) {
+		int index = 0;
+		for (int j=0; j<dim; j++)
+			index = (index<<1) | upperHalf(lanes[j][i],mid[j]);
+		return index;
+	}
+
+	// replaces the cell bounds by those of its sub-cell k - returns false if the cell cannot shrink
+	private boolean halve(double[] lo, double[] up, double[] mid, int k) {
+		boolean shrunk = false;
+		for (int j=0; j<dim; j++)
+			if (((k>>(dim-j-1)) & 1)==0) {
+				shrunk |= (up[j]!=mid[j]);
+				up[j] = mid[j];
+			}
+			else {
+				shrunk |= (lo[j]!=mid[j]);
+				lo[j] = mid[j];
+			}
+		return shrunk;
+	}
+
+	// centre of a cell
+	private void middle(double[] lo, double[] up, double[] mid) {
+		for (int j=0; j<dim; j++)
+			mid[j] = (lo[j]+up[j])/2;
+	}
+
+	// true if the node region is the same as the cell
+	private boolean hasBounds(double[] lo, double[] up) {
+		return Arrays.equals(lower,lo) && Arrays.equals(upper,up);
+	}
+
+	/*
+	 * Called when location x falls in slot i but outside its compressed child c: makes the smallest
+	 * cell containing both c and x, and puts it in slot i with c as a child.
+	 */
+	@SuppressWarnings("unchecked")
+	private RegionIndexingNode<T> makeCommonCell(int i, RegionIndexingNode<T> c, double[] x) {
+		double[][] bounds = childBounds(i);
+		double[] mid = new double[dim];
+		int levels = 0;
+		while (true) {
+			middle(bounds[0],bounds[1],mid);
+			int k = cellIndex(x,mid);
+			if ((k!=cellIndex(c.centre,mid)) || !halve(bounds[0],bounds[1],mid,k))
+				break;
+			levels++;
 		}
-		return node.insert(item,loc);
-	}
-
-    // index computation for children - veery tricky - carefully checked, OK.
-    private void recurseMin(int depth, int itbase, double[][] result) {
-    	int itmax = 1<<(dim-depth-1);
-    	double min = region.lowerBound(depth);
-    	for (int i=0; i<itmax; i++)
-    		result[i+itbase][depth] = min;
-    	if (depth<dim-1)
-    		recurseMin(depth+1,itbase,result);
-    	double max = (min + region.upperBound(depth))/2;
-    	for (int i=0; i<itmax; i++)
-    		result[itmax+i+itbase][depth] = max;
-    	if (depth<dim-1)
-    		recurseMin(depth+1,itbase+itmax,result);
-    }
-    private void recurseMax(int depth, int itbase, double[][] result) {
-    	int itmax = 1<<(dim-depth-1);
-    	double min = (region.lowerBound(depth)+region.upperBound(depth))/2;
-    	for (int i=0; i<itmax; i++)
-    		result[i+itbase][depth] = min;
-    	if (depth<dim-1)
-    		recurseMax(depth+1,itbase,result);
-    	double max = region.upperBound(depth);
-    	for (int i=0; i<itmax; i++)
-    		result[itmax+i+itbase][depth] = max;
-    	if (depth<dim-1)
-    		recurseMax(depth+1,itbase+itmax,result);
-    }
-
-    // create children nodes according to dimension and region
-    // moves contained items to them
+		RegionIndexingNode<T> cell = new RegionIndexingNode<T>(this,bounds[0],bounds[1],tree);
+		cell.depth += levels;
+		double[][] slot = childBounds(i);
+		cell.compressed = !cell.hasBounds(slot[0],slot[1]);
+		cell.initChildren(new RegionIndexingNode[0],1<<dim);
+		replaceChild(i,cell);
+		int k = cell.childIndex(c.centre);
+		slot = cell.childBounds(k);
+		c.parent = cell;
+		c.compressed = !c.hasBounds(slot[0],slot[1]);
+		cell.addChild(k,c);
+		return cell;
+	}
+
+	// child bounds are either the lower bound and the centre or the centre and the upper bound,
+	// depending on the child offset in each dimension
+	protected double[][] childBounds(int i) {
+		int[] offsets = tree.childOffsets[i];
+		double[][] bounds = new double[2][dim];
+		for (int j=0; j<dim; j++)
+			if (offsets[j]==0) {
+				bounds[0][j] = lower[j];
+				bounds[1][j] = centre[j];
+			}
+			else {
+				bounds[0][j] = centre[j];
+				bounds[1][j] = upper[j];
+			}
+		return bounds;
+	}
+
+	// creates child i (children are only created when they receive an item)
+	private RegionIndexingNode<T> makeChild(int i) {
+		double[][] bounds = childBounds(i);
+		RegionIndexingNode<T> child = new RegionIndexingNode<T>(this,bounds[0],bounds[1],tree);
+		addChild(i,child);
+		return child;
+	}
+
+    // turns this node into an inner node and moves contained items to new children
+	// only the children receiving items are created
 	@SuppressWarnings("unchecked")
 	private void makeChildren() {
-		// work out the new region mins and maxs with the proper indexing
-    	double[][] mins = new double[1<<dim][dim];
-    	recurseMin(0,0,mins);
-    	double[][] maxs = new double[1<<dim][dim];
-    	recurseMax(0,0,maxs);
-    	// setup the new child nodes with the proper regions
-    	children = new RegionIndexingNode[1<<dim];
-    	for (int i=0; i<(1<<dim); i++) {
-    		Point lower = Point.newPoint(mins[i]);
-    		Point upper = Point.newPoint(maxs[i]);
-//    		Box reg = new BoxImpl(lower, upper);
-    		Box reg = Box.boundingBox(lower, upper);
-    		children[i] = new RegionIndexingNode<T>(this,reg,tree);
-    	}
+		initChildren(new RegionIndexingNode[0],1<<dim);
+		if (tree.compression && (nitems>1))
+			makeCompressedChild();
     	// spread the extant items into the child nodes
-    	for (Map.Entry<T,Point> e:items.entrySet()) {
-    		RegionIndexingNode<T> newNode = children[childIndex(e.getValue())];
-    		newNode.insert(e.getKey(),e.getValue());
-    		tree.itemToNodeMap.put(e.getKey(),newNode); // this will replace the former mapping
+    	for (int i=0; i<nitems; i++) {
+    		double[] x = coordinatesAt(i);
+    		int k = childIndex(x);
+    		RegionIndexingNode<T> child = child(k);
+    		if (child==null)
+    			child = makeChild(k);
+    		RegionIndexingNode<T> newNode = child.insert(itemAt(i),null,x);
+    		if (tree.itemToNodeMap!=null)
+    			tree.itemToNodeMap.put(itemAt(i),newNode); // this will replace the former mapping
+    		// the item is the last one of its new node
+    		if ((handles!=null) && (handles[i]!=null) && (newNode!=null))
+    			newNode.setHandle(newNode.nitems-1,(ItemHandle<T>) handles[i]);
     	}
     	// empty the item list now they have been put in the child nodes
-    	items.clear();
+    	clear();
 	}
 
-	@Override
-	public T item() {
-		if (items.isEmpty())
-			return null;
-		if (items.size()==1)
-			return items.keySet().iterator().next();
-		throw new UnsupportedOperationException("Item list contains more than one item - use items() to get them.");
+	// if all items fall in the same child, creates this child directly at the smallest cell
+	// containing all of them, skipping the chain of single-child nodes above it
+	private void makeCompressedChild() {
+		int k = cellIndex(0,centre);
+		for (int i=1; i<nitems; i++)
+			if (cellIndex(i,centre)!=k)
+				return;
+		double[][] bounds = childBounds(k);
+		double[] mid = new double[dim];
+		int levels = 0;
+		// the compressed child must not be deeper than the tree limits
+		while (belowLimits(bounds[0],bounds[1],depth+1+levels)) {
+			middle(bounds[0],bounds[1],mid);
+			int kk = cellIndex(0,mid);
+			boolean same = true;
+			for (int i=1; i<nitems; i++)
+				if (cellIndex(i,mid)!=kk) {
+					same = false;
+					break;
+				}
+			if (!same || !halve(bounds[0],bounds[1],mid,kk))
+				break;
+			levels++;
+		}
+		RegionIndexingNode<T> child = new RegionIndexingNode<T>(this,bounds[0],bounds[1],tree);
+		child.depth += levels;
+		child.compressed = (levels>0);
+		addChild(k,child);
 	}
 
 	// recursive
 	private void getAllItems(QuickListOfLists<T> list, RegionIndexingNode<T> node) {
-		if (!node.items.isEmpty())
-			list.addList(node.items.keySet());
+		if (node.nitems>0)
+			list.addList(node.localItems());
 		else if (node.children!=null)
 			for (int i=0; i<node.children.length; i++)
 				getAllItems(list,node.children[i]);
@@ -266,7 +601,12 @@ class RegionIndexingNode<T> extends IndexingNode<T,RegionIndexingNode<T>> {
 
 	@Override
 	public final void clear() {
-		items.clear();
+		items = null;
+		lanes = null;
+		handles = null;
+		ranks = null;
+		colocated = true;
+		nitems = 0;
 	}
 
 	// for debugging
@@ -277,35 +617,43 @@ class RegionIndexingNode<T> extends IndexingNode<T,RegionIndexingNode<T>> {
 	protected String toShortString() {
 		StringBuilder sb=new StringBuilder();
 		sb.append("items={");
-		char sep = ',';
-		for (T item:items.keySet()) {
-			sb.append(item.toString())
-				.append(sep);
+		for (int i=0; i<nitems; i++) {
+			if (i>0) sb.append(',');
+			sb.append(items[i].toString());
 		}
-		if (sb.charAt(sb.length()-1)==sep)
-			sb.deleteCharAt(sb.length()-1);
 		sb.append("}\n");
 		return sb.toString();
 	}
 
+	/**
+	 * @param i a child index
+	 * @param s true for a short description
+	 * @return the description of child i if it does not exist, i.e. of an empty node 
+	 * (same as {@link #toString()} or {@link #toShortString()})
+	 */
+	protected String emptyChildToString(int i, boolean s) {
+		if (s)
+			return "items={}\n";
+		double[][] bounds = childBounds(i);
+		Box reg = Box.boundingBox(Point.newPoint(bounds[0]),Point.newPoint(bounds[1]));
+		return "region=["+reg.lowerBounds().toString()+"-"+reg.upperBounds().toString()+"], items={}\n";
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder sb=new StringBuilder();
 		sb.append("region=[")
-			.append(region.lowerBounds().toString())
+			.append(region().lowerBounds().toString())
 			.append("-")
-			.append(region.upperBounds().toString())
+			.append(region().upperBounds().toString())
 			.append("], ");
 		sb.append("items={");
-		char sep = ',';
-		for (T item:items.keySet()) {
-			sb.append(item.toString())
+		for (int i=0; i<nitems; i++) {
+			if (i>0) sb.append(',');
+			sb.append(items[i].toString())
 				.append("@")
-				.append(items.get(item).toString())
-				.append(sep);
+				.append(location(i).toString());
 		}
-		if (sb.charAt(sb.length()-1)==sep)
-			sb.deleteCharAt(sb.length()-1);
 		sb.append("}\n");
 		return sb.toString();
 	}
@@ -0,0 +1,241 @@
+/**************************************************************************
+ *  UIT - a Universal Indexing Tree                                       *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            *
+ *                                                                        *
+ *  UIT is a generalisation and re-implementation of QuadTree and Octree  *
+ *  implementations by Paavo Toivanen as downloaded on 27/8/2018 on       *
+ *  <https://dev.solita.fi/2015/08/06/quad-tree.html>                     *
+ *                                                                        *
+ **************************************************************************
+ *  This file is part of UIT (Universal Indexing Tree).                   *
+ *                                                                        *
+ *  UIT is free software: you can redistribute it and/or modify           *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  UIT is distributed in the hope that it will be useful,                *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with UIT.  If not, see <https://www.gnu.org/licenses/gpl.html>. *
+ *                                                                        *
+ **************************************************************************/
+package fr.cnrs.iees.uit.indexing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+import fr.cnrs.iees.uit.space.Box;
+import fr.cnrs.iees.uit.space.Sphere;
+
+/**
+ * <p>A {@link Spliterator} over the items of a {@link RegionIndexingTree}, optionally restricted
+ * to a {@link Box} or a {@link Sphere}.</p>
+ *
+ * <p>Items are traversed leaf by leaf, in depth-first order. The nodes remaining to visit are kept
+ * in a stack, and {@link #trySplit()} hands over the half of this stack that would be visited last,
+ * expanding a single remaining node into its children if needed. Splits thus always follow subtree
+ * boundaries. Subtrees entirely outside the query region are never visited, and items of leaves 
+ * entirely within it are not tested.</p>
+ *
+ * <p>An unsplit spliterator over a whole tree is {@link Spliterator#SIZED SIZED}, with the tree 
+ * size as an exact size. After a split, the size of each part is estimated in proportion of its
+ * number of pending nodes. The tree must not be modified during the traversal.</p>
+ *
+ * @author agent - 19 oct. 2026
+ *
+ * @param <T> the type of object stored in the tree
+ */
+class RegionIndexingSpliterator<T> implements Spliterator<T> {
+
+	// nodes remaining to visit, the next one last
+	private final List<RegionIndexingNode<T>> stack;
+	// the leaf being traversed and the rank of its next item
+	private RegionIndexingNode<T> leaf = null;
+	private int next = 0;
+	// true if all items of leaf are to be returned
+	private boolean whole = false;
+	// query region: a box or a sphere, or none
+	private final double[] lower, upper;
+	private final double[] centre;
+	private final double r2;
+	private long est;
+	private boolean sized;
+
+	private RegionIndexingSpliterator(List<RegionIndexingNode<T>> stack, 
+			double[] lower, double[] upper, double[] centre, double r2, 
+			long est, boolean sized) {
+		super();
+		this.stack = stack;
+		this.lower = lower;
+		this.upper = upper;
+		this.centre = centre;
+		this.r2 = r2;
+		this.est = est;
+		this.sized = sized;
+	}
+
+	private static <T> List<RegionIndexingNode<T>> stack(RegionIndexingNode<T> root) {
+		List<RegionIndexingNode<T>> stack = new ArrayList<>();
+		if (root!=null)
+			stack.add(root);
+		return stack;
+	}
+
+	/**
+	 * @param tree the tree
+	 * @return a spliterator over all the items of the tree
+	 */
+	static <T> RegionIndexingSpliterator<T> of(RegionIndexingTree<T> tree) {
+		return new RegionIndexingSpliterator<T>(stack(tree.root()),null,null,null,0.0,tree.size(),true);
+	}
+
+	/**
+	 * @param tree the tree
+	 * @param limits the query region
+	 * @return a spliterator over the items of the tree within limits (wide containment)
+	 */
+	static <T> RegionIndexingSpliterator<T> of(RegionIndexingTree<T> tree, Box limits) {
+		return new RegionIndexingSpliterator<T>(stack(tree.root()),Coordinates.lowerBounds(limits),
+			Coordinates.upperBounds(limits),null,0.0,tree.size(),false);
+	}
+
+	/**
+	 * @param tree the tree
+	 * @param limits the query region
+	 * @return a spliterator over the items of the tree within limits (wide containment)
+	 */
+	static <T> RegionIndexingSpliterator<T> of(RegionIndexingTree<T> tree, Sphere limits) {
+		double r = limits.radius();
+		return new RegionIndexingSpliterator<T>(stack(tree.root()),null,null,Coordinates.of(limits.centre()),
+			r*r,tree.size(),false);
+	}
+
+	// true if the node region may contain items of the query region (wide overlap)
+	private boolean touches(RegionIndexingNode<T> node) {
+		if (lower!=null) {
+			for (int i=0; i<lower.length; i++)
+				if ((node.upper[i]<lower[i]) || (node.lower[i]>upper[i]))
+					return false;
+		}
+		else if (centre!=null) {
+			double d2 = 0.0;
+			for (int i=0; i<centre.length; i++) {
+				double d = Math.max(0.0,Math.max(node.lower[i]-centre[i],centre[i]-node.upper[i]));
+				d2 += d*d;
+			}
+			return d2<=r2;
+		}
+		return true;
+	}
+
+	// true if the node region is fully contained in the query region
+	private boolean isWithin(RegionIndexingNode<T> node) {
+		if (lower!=null) {
+			for (int i=0; i<lower.length; i++)
+				if ((node.lower[i]<lower[i]) || (node.upper[i]>upper[i]))
+					return false;
+		}
+		else if (centre!=null) {
+			// farthest corner
+			double d2 = 0.0;
+			for (int i=0; i<centre.length; i++) {
+				double d = Math.max(centre[i]-node.lower[i],node.upper[i]-centre[i]);
+				d2 += d*d;
+			}
+			return d2<=r2;
+		}
+		return true;
+	}
+
+	// true if the i-th item of leaf is within the query region
+	private boolean accepts(int i) {
+		if (lower!=null) {
+			for (int k=0; k<lower.length; k++) {
+				double x = leaf.lanes[k][i];
+				if ((x<lower[k]) || (x>upper[k]))
+					return false;
+			}
+			return true;
+		}
+		double d2 = 0.0;
+		for (int k=0; k<centre.length; k++) {
+			double d = leaf.lanes[k][i]-centre[k];
+			d2 += d*d;
+		}
+		return d2<=r2;
+	}
+
+	// pushes the children of node in reverse order, so that they are visited in order
+	private void pushChildren(RegionIndexingNode<T> node) {
+		for (int i=node.children.length-1; i>=0; i--)
+			if ((node.children[i]!=null) && touches(node.children[i]))
+				stack.add(node.children[i]);
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super T> action) {
+		while (true) {
+			if (leaf!=null)
+				while (next<leaf.nitems) {
+					int i = next++;
+					if (whole || accepts(i)) {
+						if (est>0)
+							est--;
+						action.accept(leaf.itemAt(i));
+						return true;
+					}
+				}
+			leaf = null;
+			if (stack.isEmpty())
+				return false;
+			RegionIndexingNode<T> node = stack.remove(stack.size()-1);
+			if (!touches(node))
+				continue;
+			if (node.children!=null)
+				pushChildren(node);
+			else if (node.nitems>0) {
+				leaf = node;
+				next = 0;
+				whole = isWithin(node);
+			}
+		}
+	}
+
+	@Override
+	public Spliterator<T> trySplit() {
+		// expand a single remaining inner node into its children
+		while ((stack.size()==1) && (stack.get(0).children!=null))
+			pushChildren(stack.remove(0));
+		int n = stack.size();
+		if (n<2)
+			return null;
+		// the bottom of the stack is visited last: hand it over
+		int h = n/2;
+		List<RegionIndexingNode<T>> prefix = new ArrayList<>(stack.subList(0,h));
+		stack.subList(0,h).clear();
+		long pest = est*h/n;
+		est -= pest;
+		sized = false;
+		return new RegionIndexingSpliterator<T>(prefix,lower,upper,centre,r2,pest,false);
+	}
+
+	@Override
+	public long estimateSize() {
+		return est;
+	}
+
+	@Override
+	public int characteristics() {
+		return NONNULL | (sized ? SIZED : 0);
+	}
+
+}
@@ -31,8 +31,13 @@ package fr.cnrs.iees.uit.indexing;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import au.edu.anu.omhtk.collections.QuickListOfLists;
 import fr.cnrs.iees.uit.space.Box;
@@ -70,7 +75,39 @@ public abstract class RegionIndexingTree<T> extends AbstractIndexingTree<T,Regio
 	private boolean DYNAMIC_MAX_OBJECTS = false;
     private double MAX_OBJ_TARGET_EXPONENT = 0.333333; // 0.5 a good general solution
    // reverse mapping of items to nodes to facilitate removal of items without knowing their location
-    protected Map<T,RegionIndexingNode<T>> itemToNodeMap = new HashMap<>();
+    // (null if disabled, cf. setItemMap())
+    protected Map<T,RegionIndexingNode<T>> itemToNodeMap;
+    /** true if items are identified by reference rather than by {@code equals()} */
+    protected final boolean identity;
+    // number of items, when itemToNodeMap is disabled
+    private int nItems = 0;
+    // child offset table: childOffsets[i][j] is 0 if child i lies in the lower half of its parent
+    // along dimension j, 1 if in the upper half. Computed once since it only depends on dim.
+    protected int[][] childOffsets;
+    // initial size of work arrays for leaf scans
+    private static final int LEAF_SCAN_SIZE = 16;
+    // compressed quadtree mode
+    protected boolean compression = false;
+    /** default maximal depth of tree, relative to the root */
+    public static final int DEFAULT_MAX_DEPTH = 128;
+    /** maximal depth of tree, relative to the root */
+    protected int maxDepth = DEFAULT_MAX_DEPTH;
+    /** minimal side length of node regions */
+    protected double minCellSize = 0.0;
+    /** default minimal number of items of a subtree to query it in parallel */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 100000;
+    /** minimal number of items of a subtree to query it in parallel (queries are sequential by default) */
+    protected int parallelThreshold = Integer.MAX_VALUE;
+    // the last node located by each thread, cf. setLastNodeCache()
+    private ThreadLocal<LastNode<T>> lastNode = null;
+    // incremented by clear(), which detaches all nodes at once
+    private int generation = 0;
+
+    // a node located by a thread, and the generation of the tree at that time
+    private static class LastNode<T> {
+    	private RegionIndexingNode<T> node = null;
+    	private int generation = 0;
+    }
 
     /**
      * Constructor to use only when the initial region is unknown and has to be built from the first
@@ -78,7 +115,20 @@ public abstract class RegionIndexingTree<T> extends AbstractIndexingTree<T,Regio
      * @param dim
      */
     protected RegionIndexingTree(int dim) {
+    	this(dim,false);
+    }
+
+    /**
+     * Same as {@link #RegionIndexingTree(int)}, with a choice of item semantics.
+     * @param dim
+     * @param identity if true, items are identified by reference ({@code ==}, {@link System#identityHashCode(Object)})
+     * rather than by {@code equals()} and {@code hashCode()}
+     */
+    protected RegionIndexingTree(int dim, boolean identity) {
     	super(dim);
+    	this.identity = identity;
+    	itemToNodeMap = newItemMap();
+    	childOffsets = makeChildOffsets(dim);
     }
 
     /**
@@ -86,10 +136,32 @@ public abstract class RegionIndexingTree<T> extends AbstractIndexingTree<T,Regio
      * @param domain
      */
     protected RegionIndexingTree(Box domain) {
+    	this(domain,false);
+    }
+
+    /**
+     * Same as {@link #RegionIndexingTree(Box)}, with a choice of item semantics.
+     * @param domain
+     * @param identity if true, items are identified by reference ({@code ==}, {@link System#identityHashCode(Object)})
+     * rather than by {@code equals()} and {@code hashCode()}
+     */
+    protected RegionIndexingTree(Box domain, boolean identity) {
     	super(domain);
+    	this.identity = identity;
+    	itemToNodeMap = newItemMap();
+    	childOffsets = makeChildOffsets(dim);
     	root = new RegionIndexingNode<T>(null,domain,this);
     }
 
+    // the first dimension is the most significant bit of the child index
+    private static int[][] makeChildOffsets(int dim) {
+    	int[][] result = new int[1<<dim][dim];
+    	for (int i=0; i<(1<<dim); i++)
+    		for (int j=0; j<dim; j++)
+    			result[i][j] = (i>>(dim-j-1)) & 1;
+    	return result;
+    }
+
     /**
      * <p>Setting this to <strong>true</strong> will balance the tree depth and size following P. Tovainen's
      * benchmarking which shows that a relatively general solution exists which enables to keep performance
@@ -104,20 +176,195 @@ public abstract class RegionIndexingTree<T> extends AbstractIndexingTree<T,Regio
     	DYNAMIC_MAX_OBJECTS = o;
     }
 
+    /**
+     * <p>Setting this to <strong>true</strong> turns this tree into a <em>compressed</em> quadtree
+     * (generalised to dimension <em>k</em>). With clustered data, splitting a full leaf may put all
+     * its items into the same child, and then again into the same grand-child, etc., making long
+     * chains of nodes with a single child that every descent has to walk. In compressed mode, such
+     * chains are skipped: the smallest cell containing all the items is directly stored as a child
+     * of the split node. The skipped levels are re-created, as a single node, only when an item
+     * arrives that falls outside this cell. The number of nodes is then proportional to the number 
+     * of items, whatever the clustering of items.</p>
+     * 
+     * <p>Queries give the same results in both modes. This can be changed at any time: it only
+     * affects the nodes created afterwards.</p>
+     * 
+     * @param c whether chains of single-child nodes should be compressed (<strong>true</strong>) or 
+     * not (<strong>false</strong>).
+     */
+    public void setCompression(boolean c) {
+    	compression = c;
+    }
+
+    /**
+     * <p>Sets the maximal depth of the tree, i.e. the maximal number of times the root region can be
+     * halved (default {@value #DEFAULT_MAX_DEPTH}). Leaves at this depth are never split:
+     * they store all the items falling in their region, whatever their nominal capacity.
+     * This bounds the cost of insertions and queries when many items are very close to each other
+     * (cf. {@link LimitedPrecisionIndexingTree}, where the maximal depth is set by the precision).</p>
+     * 
+     * <p>Whatever the depth limit, a leaf is never split if all its items are at exactly the same 
+     * location.</p>
+     * 
+     * @param depth the maximal depth (&ge;1)
+     */
+    public void setMaxDepth(int depth) {
+    	maxDepth = depth;
+    }
+
+    /**
+     * <p>Sets the minimal size of node regions, i.e. leaves which largest side is lower than 
+     * 2 &#215; {@code size} are never split and store all the items falling in their region
+     * (default 0). This is the same as {@link #setMaxDepth(int)}, expressed as a distance.</p>
+     * 
+     * @param size the minimal side of node regions
+     */
+    public void setMinCellSize(double size) {
+    	minCellSize = size;
+    }
+
+    /**
+     * <p>Setting this to <strong>true</strong> runs {@link #getItemsWithin(Box)} and 
+     * {@link #getItemsWithin(Sphere)} in parallel when this tree holds at least
+     * {@value #DEFAULT_PARALLEL_THRESHOLD} items (cf. {@link #setParallelThreshold(int)}). 
+     * This is worth it for queries covering a large part of the tree domain.</p>
+     *
+     * @param p whether large queries should run in parallel (<strong>true</strong>) or not 
+     * (<strong>false</strong>, the default).
+     */
+    public void setParallelQueries(boolean p) {
+    	parallelThreshold = p ? DEFAULT_PARALLEL_THRESHOLD : Integer.MAX_VALUE;
+    }
+
+    /**
+     * <p>Sets the minimal number of items of a subtree to query it in parallel. Queries on
+     * trees holding less items are sequential. Otherwise the query is split into 
+     * {@linkplain java.util.concurrent.ForkJoinPool fork-join} tasks, one per child node,
+     * recursively as long as the subtree of a node is expected to hold at least {@code size} items
+     * (the expected number of items of a node at depth <em>d</em> is the tree size divided by 
+     * 2<sup><em>d</em> &#215; dim</sup>). Each task searches the overlapping leaves of its
+     * subtree sequentially into its own lists, and the results of all tasks are returned as a 
+     * single concatenated list. Queries give the same items as in sequential mode, in a different 
+     * order.</p>
+     * 
+     * <p>This tree must not be modified during a parallel query.</p>
+     *
+     * @param size the minimal number of items of a subtree to query it in parallel
+     */
+    public void setParallelThreshold(int size) {
+    	parallelThreshold = Math.max(1,size);
+    }
+
+    /**
+     * <p>Setting this to <strong>true</strong> makes every thread remember the last node where it
+     * located a point or a query region. The next query of the same thread starts from this node 
+     * instead of the root, climbing up only as far as needed before descending. This is worth it
+     * when successive queries of a thread are close in space, e.g. when an agent searches around
+     * its position at every time step.</p>
+     * 
+     * <p>Nodes dropped from the tree since they were remembered are ignored. Queries give the same
+     * results with or without the cache. The cache is not used if sibling regions may overlap
+     * (cf. {@link #disjointRegions()}).</p>
+     *
+     * @param c whether the per-thread node cache should be used (<strong>true</strong>) or not 
+     * (<strong>false</strong>, the default).
+     */
+    public void setLastNodeCache(boolean c) {
+    	lastNode = c ? new ThreadLocal<LastNode<T>>() : null;
+    }
+
+    /**
+     * <p>Setting this to <strong>false</strong> drops the map of items to the nodes where they are
+     * stored, which saves one map entry per item. Items can then only be removed or moved through 
+     * the handles returned by {@link #insertWithHandle(Object, Point)}: {@link #remove(Object)}
+     * throws an exception, and items passed as hints to queries are ignored. Setting it back to
+     * <strong>true</strong> rebuilds the map.</p>
+     *
+     * @param m whether the item map should be maintained (<strong>true</strong>, the default) or
+     * not (<strong>false</strong>).
+     */
+    public void setItemMap(boolean m) {
+    	if (m && (itemToNodeMap==null)) {
+    		itemToNodeMap = newItemMap();
+    		fillItemMap(root);
+    		nItems = 0;
+    	}
+    	else if (!m && (itemToNodeMap!=null)) {
+    		nItems = itemToNodeMap.size();
+    		itemToNodeMap = null;
+    	}
+    }
+
+    // an IdentityHashMap is an open-addressing table hashed on System.identityHashCode()
+    private Map<T,RegionIndexingNode<T>> newItemMap() {
+    	if (identity)
+    		return new IdentityHashMap<>();
+    	return new HashMap<>();
+    }
+
+    // recursive
+    private void fillItemMap(RegionIndexingNode<T> node) {
+    	if (node!=null) {
+    		for (int i=0; i<node.nitems; i++)
+    			itemToNodeMap.put(node.itemAt(i),node);
+    		if (node.children!=null)
+    			for (int i=0; i<node.children.length; i++)
+    				fillItemMap(node.children[i]);
+    	}
+    }
+
 	@Override
 	public void insert(T item, Point at) {
+		insert(item,at,null);
+	}
+
+	/**
+	 * <p>Same as {@link #insert(Object, Point)}, but returns a handle on the inserted item, which 
+	 * enables to {@linkplain #remove(ItemHandle) remove} or {@linkplain #move(ItemHandle, Point) move} 
+	 * it without looking it up in the item map. This is useful for items with an expensive
+	 * {@code hashCode()} method, especially if the item map is disabled 
+	 * (cf. {@link #setItemMap(boolean)}).</p>
+	 *
+	 * @param item the object to insert
+	 * @param at the location where to insert it
+	 * @return a handle on the item, or null if the item was already at this location
+	 */
+	public ItemHandle<T> insertWithHandle(T item, Point at) {
+		ItemHandle<T> h = new ItemHandle<T>();
+		return insert(item,at,h) ? h : null;
+	}
+
+	/**
+	 * Inserts an item and attaches a handle to it.
+	 *
+	 * @param item the object to insert
+	 * @param at the location where to insert it
+	 * @param h the handle to attach to the item (may be null)
+	 * @return true if the item was inserted, false if it was already at this location
+	 */
+	protected boolean insert(T item, Point at, ItemHandle<T> h) {
 		RegionIndexingNode<T> node = root.insert(item, at);
-        if (node!=null)
-        	itemToNodeMap.put(item,node);
+		if (node!=null) {
+			if (itemToNodeMap!=null)
+				itemToNodeMap.put(item,node);
+			else
+				nItems++;
+			// the item is the last one of its node
+			if (h!=null) {
+				node.setHandle(node.nitems-1,h);
+				h.generation = generation;
+			}
+		}
 //        if (DYNAMIC_MAX_OBJECTS && nItems % 100 == 0)
-        if (DYNAMIC_MAX_OBJECTS && itemToNodeMap.size() % 100 == 0)
+        if (DYNAMIC_MAX_OBJECTS && size() % 100 == 0)
             adjustMaxObjects();
+        return node!=null;
 	}
 
     // recursive
     private void collectOverlappingNodes(Box limits, RegionIndexingNode<T> node, List<RegionIndexingNode<T>> nodes) {
     	if (node!=null)
-    		if (node.region().overlaps(limits)) {
+    		if (node.overlaps(limits)) {
     			if (node.children!=null)
     				for (int i=0; i<node.children.length; i++)
     					collectOverlappingNodes(limits,node.children[i],nodes);
@@ -133,28 +380,114 @@ public abstract class RegionIndexingTree<T> extends AbstractIndexingTree<T,Regio
 		return nodes;
 	}
 
+	// same, searching from the smallest ancestor of node containing limits
+	private Collection<RegionIndexingNode<T>> getNodesWithin(Box limits, RegionIndexingNode<T> node) {
+		List<RegionIndexingNode<T>> nodes = new ArrayList<RegionIndexingNode<T>>();
+		if (node!=null)
+			collectOverlappingNodes(limits,getEnclosingNode(limits,node),nodes);
+		return nodes;
+	}
+
+	// the node to start a search from: the node of the hint item if any, else the last node
+	// located by this thread (cf. setLastNodeCache()), else the root
+	private RegionIndexingNode<T> startNode(T from) {
+		if (!disjointRegions())
+			return root;
+		RegionIndexingNode<T> node = null;
+		if ((from!=null) && (itemToNodeMap!=null))
+			node = itemToNodeMap.get(from);
+		else if (lastNode!=null) {
+			LastNode<T> last = lastNode.get();
+			// dropped nodes are detached from the tree
+			if ((last!=null) && (last.generation==generation) && (last.node.tree==this))
+				node = last.node;
+		}
+		return (node==null) ? root : node;
+	}
+
+	private void remember(RegionIndexingNode<T> node) {
+		if ((lastNode!=null) && (node!=null)) {
+			LastNode<T> last = lastNode.get();
+			if (last==null) {
+				last = new LastNode<T>();
+				lastNode.set(last);
+			}
+			last.node = node;
+			last.generation = generation;
+		}
+	}
+
+	// true if x lies in the half-open region of node, where a descent from the root puts it
+	// (points on the upper bound of a node go to its upper neighbour, cf. childIndex())
+	private boolean holds(RegionIndexingNode<T> node, double x, int i) {
+		return (x>=node.lower[i]) && (x<node.upper[i]);
+	}
+
+	/**
+	 * Climbs from a node to its smallest ancestor containing a box, i.e. the node from which 
+	 * a descent from the root would search the items of the box.
+	 * 
+	 * @param limits the box
+	 * @param from the node to start from
+	 * @return the smallest ancestor of from containing limits, or the root
+	 */
+	protected RegionIndexingNode<T> getEnclosingNode(Box limits, RegionIndexingNode<T> from) {
+		RegionIndexingNode<T> node = from;
+		while (node.parent!=null) {
+			boolean in = true;
+			for (int i=0; i<dim; i++)
+				if (!holds(node,limits.lowerBound(i),i) || !holds(node,limits.upperBound(i),i)) {
+					in = false;
+					break;
+				}
+			if (in)
+				break;
+			node = node.parent;
+		}
+		return node;
+	}
+
 	// CAUTION. This method is only a helper method. It should not be made public.
 	// It will return the node containing the point, but for points on borders
 	// it may not be the box in which an item is to be found.
 	// So this is safe as long as algos using it are able to jump out if distance to edge = 0
 	// Use with caution.
+	// NB: if the point falls in an empty (hence absent) child, or outside a compressed child,
+	// its parent is returned.
 	protected RegionIndexingNode<T> getNearestNode(Point at) {
+		return getNearestNode(at,root);
+	}
+
+	/**
+	 * Same as {@link #getNearestNode(Point)}, but starts from a node known to be close to the point:
+	 * climbs up from it until a node containing the point is found, then descends from there.
+	 * 
+	 * @param at the point to locate
+	 * @param from the node to start from
+	 * @return the node containing the point
+	 */
+	protected RegionIndexingNode<T> getNearestNode(Point at, RegionIndexingNode<T> from) {
 		if (root==null)
 			return null;
-		RegionIndexingNode<T> node = root;
-		boolean stop = false;
-		// infinite loop looking for [1.3259620779235943,1.7358619279229224] within box (0,0)by(4,4)
-		// I suspect the items have not been partitioned properly due to either a < instead of a <= or > instead of >=
-		while ((!stop) && node.region().contains(at)) {
-			if (node.children!=null) {
-				for (int i=0; i<node.children.length; i++)
-					if (node.children[i].region().contains(at)) {
-						node = node.children[i];
-						break;
-					}
-			}
-			else
-				stop =true;
+		RegionIndexingNode<T> node = from;
+		climb: while (node.parent!=null) {
+			for (int i=0; i<dim; i++)
+				if (!holds(node,at.coordinate(i),i)) {
+					node = node.parent;
+					continue climb;
+				}
+			break;
+		}
+		if (!node.contains(at))
+			return node;
+		// one comparison per dimension and level, no allocation.
+		// Consistent with insertion, i.e. points on a node centre go to the upper child.
+		while (node.children!=null) {
+			int i = node.childIndex(at);
+			RegionIndexingNode<T> child = node.child(i);
+			if ((child==null) || (child.compressed && !node.compressedChildContains(i,child,at,null)))
+				break;
+			node = child;
 		}
 		return node;
 	}
@@ -163,38 +496,76 @@ public abstract class RegionIndexingTree<T> extends AbstractIndexingTree<T,Regio
 	// CAUTION: not resistant to multiple items at the same location !
 	@Override
 	public T getNearestItem(Point at) {
+		return nearestItem(at,startNode(null));
+	}
+
+	/**
+	 * <p>Same as {@link #getNearestItem(Point)}, but the search starts from the node of an item
+	 * (e.g. the item searching for its nearest neighbour) instead of the root, climbing up only
+	 * as far as needed. This is faster when the item is close to the location. The item is ignored
+	 * if sibling regions may overlap (cf. {@link #disjointRegions()}).</p>
+	 * 
+	 * @param at the location
+	 * @param from an item of this tree close to the location (ignored if not in this tree)
+	 * @return the item closest to this location
+	 */
+	public T getNearestItem(Point at, T from) {
+		return nearestItem(at,startNode(from));
+	}
+
+	private T nearestItem(Point at, RegionIndexingNode<T> from) {
 		// find box enclosing the point
-		RegionIndexingNode<T> node = getNearestNode(at);
+		RegionIndexingNode<T> node = getNearestNode(at,from);
+		remember(node);
+		double[] q = Coordinates.of(at);
 		double dist2 = Double.MAX_VALUE;
 //		Point pt = null;
 		T theItem = null;
 		// find the item closest to the point
-		for (T item: node.items.keySet()) {
-			double d = Distance.squaredEuclidianDistance(node.items.get(item), at);
-			if (d<dist2) {
-				theItem = item;
-				dist2 = d;
+		double[] d2 = new double[Math.max(node.nitems,LEAF_SCAN_SIZE)];
+		LeafScan.squaredDistances(node.lanes,node.nitems,q,d2);
+		int k = LeafScan.indexOfMin(d2,node.nitems);
+		if (k>=0) {
+			theItem = node.itemAt(k);
+			dist2 = d2[k];
+		}
+		// if the point is in an empty part of an inner node, use any leaf below it to 
+		// bound the search distance
+		else if (node.children!=null) {
+			RegionIndexingNode<T> leaf = node;
+			while (leaf.children!=null)
+				leaf = leaf.children[0];
+			if (d2.length<leaf.nitems)
+				d2 = new double[leaf.nitems];
+			LeafScan.squaredDistances(leaf.lanes,leaf.nitems,q,d2);
+			k = LeafScan.indexOfMin(d2,leaf.nitems);
+			if (k>=0) {
+				theItem = leaf.itemAt(k);
+				dist2 = d2[k];
 			}
 		}
 		// if the distance of the item to the point is larger than the distance
 		// of the point to the box edges, the item may be in the enclosing box
+		// (always the case for inner nodes since not all their items were tested)
 		double dist = Math.sqrt(dist2);
-		if (dist > Distance.distanceToClosestEdge(at, node.region())) {
+		if ((node.children!=null) || (dist > Distance.distanceToClosestEdge(at, node.region()))) {
 			// search the sphere for items at distance dist from point at
 			// excluding those in node (already tested)
 //			Sphere s = new SphereImpl(at,dist);
 			Sphere s = Sphere.newSphere(at,dist);
 			Box b = Box.boundingBox(s);
-			Collection<RegionIndexingNode<T>> list = getNodesWithin(b);
+			Collection<RegionIndexingNode<T>> list = getNodesWithin(b,from);
 			T item = null;
 			for (RegionIndexingNode<T> n:list)
-				if (n!=node)
-					for (T it: n.items.keySet()) {
-						double d = Distance.squaredEuclidianDistance(n.items.get(it), at);
-						if (d<dist2) {
-							dist2 = d;
-							item = it;
-						}
+				if ((n!=node) && (n.nitems>0)) {
+					if (d2.length<n.nitems)
+						d2 = new double[n.nitems];
+					LeafScan.squaredDistances(n.lanes,n.nitems,q,d2);
+					k = LeafScan.indexOfMin(d2,n.nitems);
+					if (d2[k]<dist2) {
+						dist2 = d2[k];
+						item = n.itemAt(k);
+					}
 				}
 			if (item!=null)
 				return item;
@@ -203,81 +574,265 @@ public abstract class RegionIndexingTree<T> extends AbstractIndexingTree<T,Regio
 	}
 
 	// helper methods for remove() (below)
-	// remove children when they are all empty to adjust tree structure to item content
-	private void shrinkNode(RegionIndexingNode<T> node) {
-		boolean shrink = true;
-		if (node.children!=null) {
-			for (RegionIndexingNode<T> c:node.children)
-				shrink = shrink && (c.children==null) && (c.items.isEmpty()) ;
-			if (shrink) {
-				for (RegionIndexingNode<T> c:node.children)
-					c.tree = null;
-				node.children = null;
-				if (node.items.isEmpty())
-					if (node.parent!=null)
-						shrinkNode(node.parent);
-			}
+	// drop empty nodes to adjust tree structure to item content. A parent with no children left
+	// becomes an empty leaf and is dropped in turn.
+	private void dropNode(RegionIndexingNode<T> node) {
+		while ((node.parent!=null) && (node.children==null) && (node.nitems==0)) {
+			node.parent.removeChild(node);
+			node.tree = null;
+			node = node.parent;
 		}
 	}
 
+	/**
+	 * @throws UnsupportedOperationException if the item map is disabled (cf. {@link #setItemMap(boolean)})
+	 */
 	@Override
 	public boolean remove(T item) {
-		if (itemToNodeMap.containsKey(item)) {
+		if (itemToNodeMap==null)
+			throw new UnsupportedOperationException("RegionIndexingTree: item map disabled - use remove(ItemHandle)");
+		RegionIndexingNode<T> n = itemToNodeMap.remove(item);
+		if (n!=null) {
 			// remove the item in its node list
-			RegionIndexingNode<T> n = itemToNodeMap.get(item);
-			n.items.remove(item);
-			if (n.items.isEmpty())
-				if (n.parent!=null)
-					shrinkNode(n.parent);
-			// remove it from list here.
-			itemToNodeMap.remove(item);
+			n.removeItem(item);
+			dropNode(n);
 			return true;
 		}
 		return false;
 	}
 
+	// true if h refers to an item of this tree
+	private boolean isValid(ItemHandle<T> h) {
+		return (h!=null) && (h.node!=null) && (h.node.tree==this) && (h.generation==generation);
+	}
+
+	/**
+	 * <p>Removes an item given its handle, without looking it up in the item map.</p>
+	 *
+	 * @param h the handle of the item, as returned by {@link #insertWithHandle(Object, Point)}
+	 * @return true if the item was successfully removed, false if the handle is not valid
+	 */
+	public boolean remove(ItemHandle<T> h) {
+		if (!isValid(h))
+			return false;
+		RegionIndexingNode<T> n = h.node;
+		T item = n.itemAt(h.slot);
+		n.removeItemAt(h.slot);
+		if (itemToNodeMap!=null)
+			itemToNodeMap.remove(item);
+		else
+			nItems--;
+		dropNode(n);
+		return true;
+	}
+
+	/**
+	 * <p>Moves an item given its handle. If the new location is in the node where the item is 
+	 * stored, only its coordinates are updated. Otherwise the item is removed and re-inserted 
+	 * at its new location, and the handle is updated accordingly (and the item map too, 
+	 * if not disabled).</p>
+	 *
+	 * @param h the handle of the item, as returned by {@link #insertWithHandle(Object, Point)}
+	 * @param to the new location of the item
+	 * @return true if the item was successfully moved, false if the handle is not valid
+	 */
+	public boolean move(ItemHandle<T> h, Point to) {
+		if (!isValid(h))
+			return false;
+		RegionIndexingNode<T> n = h.node;
+		boolean inNode = true;
+		for (int i=0; i<dim; i++)
+			if (!holds(n,to.coordinate(i),i)) {
+				inNode = false;
+				break;
+			}
+		if (inNode) {
+			n.setLocation(h.slot,to);
+			return true;
+		}
+		T item = n.itemAt(h.slot);
+		n.removeItemAt(h.slot);
+		if (itemToNodeMap==null)
+			nItems--;
+		dropNode(n);
+		// the item map entry is replaced by insert()
+		insert(item,to,h);
+		return true;
+	}
+
 	@Override
 	public int size() {
+		if (itemToNodeMap==null)
+			return nItems;
 		return itemToNodeMap.size();
 	}
 
     private void adjustMaxObjects() {
-        RegionIndexingNode.LEAF_MAX_ITEMS = Math.max(7,(int)Math.pow(itemToNodeMap.size(), MAX_OBJ_TARGET_EXPONENT));
+        RegionIndexingNode.LEAF_MAX_ITEMS = Math.max(7,(int)Math.pow(size(), MAX_OBJ_TARGET_EXPONENT));
     }
 
-    @Override
-	public Collection<T> getItemsWithin(Box limits) {
-    	// get all nodes overlapping limits (including children)
-		Collection<RegionIndexingNode<T>> blist = getNodesWithin(limits);
-		List<T> extraItems = new ArrayList<>();
-		QuickListOfLists<T> result = new QuickListOfLists<T>();
+    // items of the nodes of a list within a box: all items of nodes fully within the box,
+    // and the items within the box of the other nodes (in extraItems)
+    private void scanNodes(Collection<RegionIndexingNode<T>> blist, Box limits,
+    		QuickListOfLists<T> result, List<T> extraItems) {
+		double[] lower = Coordinates.lowerBounds(limits);
+		double[] upper = Coordinates.upperBounds(limits);
+		boolean[] mask = new boolean[LEAF_SCAN_SIZE];
 		// search node list for items
 		for (RegionIndexingNode<T> n:blist)
-			if (!n.items.isEmpty()) // we dont care about empty nodes
+			if (n.nitems>0) // we dont care about empty nodes
 				// node region fully contained in limits: insert all items
-				if (limits.contains(n.region()))
-					result.addList(n.items.keySet());
+				if (n.isWithin(limits))
+					result.addList(n.localItems());
 				// node region not fully contained in limits: check all items
-				else for (T item:n.items.keySet())
-					if (limits.contains(n.items.get(item)))
-						extraItems.add(item);
+				else {
+					if (mask.length<n.nitems)
+						mask = new boolean[n.nitems];
+					if (LeafScan.withinBox(n.lanes,n.nitems,lower,upper,mask)>0)
+						for (int i=0; i<n.nitems; i++)
+							if (mask[i])
+								extraItems.add(n.itemAt(i));
+				}
+    }
+
+    // works exactly as above
+    private void scanNodes(Collection<RegionIndexingNode<T>> blist, Sphere limits,
+    		QuickListOfLists<T> result, List<T> extraItems) {
+		double[] centre = Coordinates.of(limits.centre());
+		double r2 = Distance.sqr(limits.radius());
+		double[] d2 = new double[LEAF_SCAN_SIZE];
+		boolean[] mask = new boolean[LEAF_SCAN_SIZE];
+		for (RegionIndexingNode<T> n:blist)
+			if (n.nitems>0)
+				if (limits.contains(n.region()))
+					result.addList(n.localItems());
+				else {
+					if (mask.length<n.nitems) {
+						d2 = new double[n.nitems];
+						mask = new boolean[n.nitems];
+					}
+					if (LeafScan.withinSphere(n.lanes,n.nitems,centre,r2,d2,mask)>0)
+						for (int i=0; i<n.nitems; i++)
+							if (mask[i])
+								extraItems.add(n.itemAt(i));
+				}
+    }
+
+    /**
+     * <p>A query on a subtree, run as a fork-join task. Subtrees expected to hold more than
+     * {@code parallelThreshold} items are split into one task per child. Each task collects 
+     * items into its own lists, and returns them to its parent task as a single list.</p>
+     */
+    private class QueryTask extends RecursiveTask<QuickListOfLists<T>> {
+		private static final long serialVersionUID = 1L;
+		private final RegionIndexingNode<T> node;
+		// the query region: a box, or a sphere and its bounding box
+		private final Box limits;
+		private final Sphere sphere;
+
+		private QueryTask(RegionIndexingNode<T> node, Box limits, Sphere sphere) {
+			super();
+			this.node = node;
+			this.limits = limits;
+			this.sphere = sphere;
+		}
+
+		@Override
+		protected QuickListOfLists<T> compute() {
+			QuickListOfLists<T> result = new QuickListOfLists<T>();
+			if ((node==null) || !node.overlaps(limits))
+				return result;
+			// expected number of items in the subtree, assuming a uniform distribution
+			int depth = Math.min(node.depth-root.depth,30);
+			long expected = ((long)size())>>Math.min(62,dim*depth);
+			if ((node.children==null) || (expected<parallelThreshold)) {
+				List<RegionIndexingNode<T>> nodes = new ArrayList<RegionIndexingNode<T>>();
+				collectOverlappingNodes(limits,node,nodes);
+				List<T> extraItems = new ArrayList<>();
+				if (sphere==null)
+					scanNodes(nodes,limits,result,extraItems);
+				else
+					scanNodes(nodes,sphere,result,extraItems);
+				result.addList(extraItems);
+			}
+			else {
+				List<QueryTask> tasks = new ArrayList<>();
+				for (int i=0; i<node.children.length; i++)
+					if ((node.children[i]!=null) && node.children[i].overlaps(limits))
+						tasks.add(new QueryTask(node.children[i],limits,sphere));
+				invokeAll(tasks);
+				for (QueryTask task:tasks)
+					result.addList(task.join());
+			}
+			return result;
+		}
+    }
+
+    @Override
+	public Collection<T> getItemsWithin(Box limits) {
+    	if (size()>=parallelThreshold)
+    		return ForkJoinPool.commonPool().invoke(new QueryTask(root,limits,null));
+    	return itemsWithin(limits,startNode(null));
+	}
+
+	/**
+	 * <p>Same as {@link #getItemsWithin(Box)}, but the search starts from the node of an item 
+	 * close to the box (e.g. the item searching for its neighbours) instead of the root, climbing
+	 * up only as far as needed. Always sequential.</p>
+	 * 
+	 * @param limits the Box in which to search for items
+	 * @param from an item of this tree close to the box (ignored if not in this tree)
+	 * @return the list of items contained in the Box
+	 */
+	public Collection<T> getItemsWithin(Box limits, T from) {
+		return itemsWithin(limits,startNode(from));
+	}
+
+	private Collection<T> itemsWithin(Box limits, RegionIndexingNode<T> from) {
+		List<RegionIndexingNode<T>> blist = new ArrayList<RegionIndexingNode<T>>();
+		if (from!=null) {
+			// get all nodes overlapping limits (including children)
+			RegionIndexingNode<T> node = getEnclosingNode(limits,from);
+			remember(node);
+			collectOverlappingNodes(limits,node,blist);
+		}
+		List<T> extraItems = new ArrayList<>();
+		QuickListOfLists<T> result = new QuickListOfLists<T>();
+		scanNodes(blist,limits,result,extraItems);
 		result.addList(extraItems);
 		return result;
 	}
 
-    // works exactly as above
  	@Override
 	public Collection<T> getItemsWithin(Sphere limits) {
-		Collection<RegionIndexingNode<T>> blist = getNodesWithin(Box.boundingBox(limits));
+ 		if (size()>=parallelThreshold)
+ 			return ForkJoinPool.commonPool().invoke(new QueryTask(root,Box.boundingBox(limits),limits));
+		return itemsWithin(limits,startNode(null));
+	}
+
+	/**
+	 * <p>Same as {@link #getItemsWithin(Sphere)}, but the search starts from the node of an item,
+	 * as in {@link #getItemsWithin(Box, Object)}.</p>
+	 * 
+	 * @param limits the Sphere in which to search for items
+	 * @param from an item of this tree close to the sphere (ignored if not in this tree)
+	 * @return the list of items contained in the Sphere
+	 */
+	public Collection<T> getItemsWithin(Sphere limits, T from) {
+		return itemsWithin(limits,startNode(from));
+	}
+
+	private Collection<T> itemsWithin(Sphere limits, RegionIndexingNode<T> from) {
+		Box b = Box.boundingBox(limits);
+		List<RegionIndexingNode<T>> blist = new ArrayList<RegionIndexingNode<T>>();
+		if (from!=null) {
+			RegionIndexingNode<T> node = getEnclosingNode(b,from);
+			remember(node);
+			collectOverlappingNodes(b,node,blist);
+		}
 		List<T> extraItems = new ArrayList<>();
 		QuickListOfLists<T> result = new QuickListOfLists<T>();
-		for (RegionIndexingNode<T> n:blist)
-			if (!n.items.isEmpty())
-				if (limits.contains(n.region()))
-					result.addList(n.items.keySet());
-				else for (T item:n.items.keySet())
-					if (limits.contains(n.items.get(item)))
-						extraItems.add(item);
+		scanNodes(blist,limits,result,extraItems);
 		result.addList(extraItems);
 		return result;
 	}
@@ -291,9 +846,13 @@ public abstract class RegionIndexingTree<T> extends AbstractIndexingTree<T,Regio
 				indent += "--";
 			if (s) sb.append(indent).append(node.toShortString());
 			else sb.append(indent).append(node.toString());
+			// absent children are described as empty nodes
 			if (node.children!=null)
-				for (int i=0; i<node.children.length; i++)
-					sb.append(nodeToString(node.children[i],depth+1,s));
+				for (int i=0; i<(1<<dim); i++)
+					if (node.hasChild(i))
+						sb.append(nodeToString(node.child(i),depth+1,s));
+					else
+						sb.append(indent).append("--").append(node.emptyChildToString(i,s));
 		}
 		return sb.toString();
 	}
@@ -322,6 +881,93 @@ public abstract class RegionIndexingTree<T> extends AbstractIndexingTree<T,Regio
 		return sb.toString();
 	}
 
+	/**
+	 * @return true if the regions of sibling nodes never overlap, so that the items of a region
+	 * can only be in the subtree of the smallest node containing it, and searches may start from 
+	 * this node instead of the root.
+	 */
+	protected boolean disjointRegions() {
+		return true;
+	}
+
+	/**
+	 * <p>Searches the items within a distance of many points at once, e.g. the neighbours of all
+	 * the agents of a simulation. This is much faster than calling {@link #getItemsWithin(Sphere)}
+	 * in a loop: the queries are sorted along a space-filling curve so that consecutive searches
+	 * start from the same region of the tree instead of the root, and groups of queries are run 
+	 * in parallel (cf. {@link RegionBatchSearch}).</p>
+	 *
+	 * <p>Items at exactly {@code radius} of a centre are included. This tree must not be modified
+	 * during the search.</p>
+	 *
+	 * @param centres the centres of the query spheres
+	 * @param radius the radius of the query spheres
+	 * @return the items found for every centre, in the order of {@code centres}
+	 */
+	public BatchQueryResult<T> queryBatch(Point[] centres, double radius) {
+		return RegionBatchSearch.within(this,centres,radius);
+	}
+
+	/**
+	 * <p>Searches the {@code k} nearest items of many points at once. Works as 
+	 * {@link #queryBatch(Point[], double)}.</p>
+	 *
+	 * @param centres the query points
+	 * @param k the number of items to search for every point
+	 * @return the {@code k} nearest items of every point, by increasing distance, in the order of
+	 * {@code centres} (less than {@code k} if the tree holds less than {@code k} items)
+	 */
+	public BatchQueryResult<T> nearestBatch(Point[] centres, int k) {
+		if (k<1)
+			throw new IllegalArgumentException("RegionIndexingTree: k must be at least 1");
+		return RegionBatchSearch.nearest(this,centres,k);
+	}
+
+	/**
+	 * <p>The returned stream is backed by a spliterator following the tree structure, so that
+	 * parallel streams split the work along subtree boundaries (cf. {@link RegionIndexingSpliterator}).</p>
+	 */
+	@Override
+	public Stream<T> stream() {
+		return StreamSupport.stream(RegionIndexingSpliterator.of(this),false);
+	}
+
+	@Override
+	public Stream<T> parallelStream() {
+		return StreamSupport.stream(RegionIndexingSpliterator.of(this),true);
+	}
+
+	/**
+	 * <p>Contrary to {@link #getItemsWithin(Box)}, the query is run lazily as the stream is 
+	 * consumed, and uses wide containment for nodes as well as for items.</p>
+	 */
+	@Override
+	public Stream<T> streamWithin(Box limits) {
+		return StreamSupport.stream(RegionIndexingSpliterator.of(this,limits),false);
+	}
+
+	/**
+	 * <p>Contrary to {@link #getItemsWithin(Sphere)}, the query is run lazily as the stream is 
+	 * consumed, and uses wide containment for nodes as well as for items.</p>
+	 */
+	@Override
+	public Stream<T> streamWithin(Sphere limits) {
+		return StreamSupport.stream(RegionIndexingSpliterator.of(this,limits),false);
+	}
+
+	/**
+	 * <p>Makes an immutable, compact copy of this tree for lock-free parallel querying
+	 * (cf. {@link FrozenRegionIndexingTree}). The copy does not change when this tree is modified
+	 * afterwards.</p>
+	 *
+	 * <p>This tree must not be modified during the copy.</p>
+	 *
+	 * @return a frozen copy of this tree
+	 */
+	public FrozenRegionIndexingTree<T> freeze() {
+		return new FrozenRegionIndexingTree<T>(this);
+	}
+
 	/**
 	 * @return The {@link Box} region.
 	 */
@@ -334,9 +980,13 @@ public abstract class RegionIndexingTree<T> extends AbstractIndexingTree<T,Regio
 
 	@Override
 	public void clear() {
-		itemToNodeMap.clear();
-		root.items.clear();
+		generation++;
+		if (itemToNodeMap!=null)
+			itemToNodeMap.clear();
+		nItems = 0;
+		root.clear();
 		root.children = null;
+		root.occupancy = null;
 	}
 
 }
@@ -0,0 +1,78 @@
+/**************************************************************************
+ *  UIT - a Universal Indexing Tree                                       *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            *
+ *                                                                        *
+ *  UIT is a generalisation and re-implementation of QuadTree and Octree  *
+ *  implementations by Paavo Toivanen as downloaded on 27/8/2018 on       *
+ *  <https://dev.solita.fi/2015/08/06/quad-tree.html>                     *
+ *                                                                        *
+ **************************************************************************
+ *  This file is part of UIT (Universal Indexing Tree).                   *
+ *                                                                        *
+ *  UIT is free software: you can redistribute it and/or modify           *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  UIT is distributed in the hope that it will be useful,                *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with UIT.  If not, see <https://www.gnu.org/licenses/gpl.html>. *
+ *                                                                        *
+ **************************************************************************/
+package fr.cnrs.iees.uit.indexing;
+
+import java.util.Collection;
+
+/**
+ * <p>{@linkplain IndexingNode} used in {@link StaticKdIndexingTree}s.</p>
+ * 
+ * <p>A {@code StaticKdIndexingTree} has no node objects: its structure is implicit in the 
+ * arrays storing items and split planes. This class is only a read-only view on a contiguous 
+ * range of items of the tree, used to provide a {@link IndexingTree#root() root} for the
+ * whole tree.</p>
+ *
+ * @author agent - 19 oct. 2026
+ *
+ * @param <T> the type of object stored in this tree
+ */
+class StaticKdIndexingNode<T> extends IndexingNode<T,StaticKdIndexingNode<T>> {
+
+	private final StaticKdIndexingTree<T> tree;
+	// the range of items covered by this node in the tree arrays
+	private final int from;
+	private final int to;
+
+	protected StaticKdIndexingNode(StaticKdIndexingTree<T> tree, int from, int to) {
+		super();
+		this.tree = tree;
+		this.from = from;
+		this.to = to;
+	}
+
+	@Override
+	public T item() {
+		if (to==from)
+			return null;
+		if (to-from==1)
+			return tree.itemAt(from);
+		throw new UnsupportedOperationException("Item list contains more than one item - use items() to get them.");
+	}
+
+	@Override
+	public Collection<T> items() {
+		return tree.items(from,to);
+	}
+
+	@Override
+	public void clear() {
+		throw new UnsupportedOperationException("StaticKdIndexingTree nodes cannot be modified.");
+	}
+
+}
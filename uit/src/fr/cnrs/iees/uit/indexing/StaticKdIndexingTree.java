@@ -0,0 +1,462 @@
+/**************************************************************************
+ *  UIT - a Universal Indexing Tree                                       *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            *
+ *                                                                        *
+ *  UIT is a generalisation and re-implementation of QuadTree and Octree  *
+ *  implementations by Paavo Toivanen as downloaded on 27/8/2018 on       *
+ *  <https://dev.solita.fi/2015/08/06/quad-tree.html>                     *
+ *                                                                        *
+ **************************************************************************
+ *  This file is part of UIT (Universal Indexing Tree).                   *
+ *                                                                        *
+ *  UIT is free software: you can redistribute it and/or modify           *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  UIT is distributed in the hope that it will be useful,                *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with UIT.  If not, see <https://www.gnu.org/licenses/gpl.html>. *
+ *                                                                        *
+ **************************************************************************/
+package fr.cnrs.iees.uit.indexing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import au.edu.anu.omhtk.collections.QuickListOfLists;
+import fr.cnrs.iees.uit.space.Box;
+import fr.cnrs.iees.uit.space.Point;
+import fr.cnrs.iees.uit.space.Sphere;
+
+/**
+ * <p>An immutable, balanced <em>k</em>-d tree for datasets that are built once and queried 
+ * many times.</p>
+ * 
+ * <p>The tree is built in one go from a set of items and their locations, by recursive median
+ * partitioning: the items of a node are split in two halves of equal size at the median of 
+ * their coordinates along the axis where they are most spread, until there are no more than
+ * {@link #BUCKET_SIZE} items in a node. The tree is thus perfectly balanced whatever the 
+ * distribution of items.</p>
+ * 
+ * <p>There are no node objects and no child pointers: items are reordered so that the items 
+ * of any node form a contiguous range of a single array, and the split axes and positions of 
+ * inner nodes are stored in two arrays indexed as a binary heap (the children of node 
+ * <em>k</em> are nodes 2<em>k</em>+1 and 2<em>k</em>+2). Item coordinates are stored in a 
+ * single array in the same order as the items. All queries therefore scan contiguous memory.</p>
+ * 
+ * <p>Only the query methods of {@link IndexingTree} are supported: {@link #insert(Object, Point)}, 
+ * {@link #remove(Object)} and {@link #clear()} throw an {@link UnsupportedOperationException}.
+ * Since the tree is never modified after construction, it can be queried concurrently from
+ * multiple threads.</p>
+ * 
+ * <p>Box and sphere queries return all the items within or on the border of their argument,
+ * even those lying on the splitting plane of a node, which {@link RegionIndexingTree} may miss
+ * (cf. {@link IndexingTree#getItemsWithin(Box)}).</p>
+ *
+ * @author agent - 19 oct. 2026
+ *
+ * @param <T> type of content to index
+ */
+public class StaticKdIndexingTree<T> implements IndexingTree<T,StaticKdIndexingNode<T>> {
+
+	/** the maximal number of items in a leaf of the tree */
+	public static final int BUCKET_SIZE = 8;
+
+	private final int dim;
+	private final int size;
+	/** the items, ordered so that the items of any node are contiguous */
+	private final Object[] items;
+	private final List<T> itemList;
+	/** item coordinates, in the same order as items: coords[i*dim+j] is the j<sup>th</sup> coordinate of item i */
+	private final double[] coords;
+	/** split axes and positions of inner nodes, indexed as a binary heap */
+	private final int[] axes;
+	private final double[] splits;
+	/** bounds of the item locations */
+	private final double[] lower;
+	private final double[] upper;
+	private final StaticKdIndexingNode<T> root;
+
+	/**
+	 * Builds the tree from a set of items and their locations. The map is not used after
+	 * construction.
+	 * 
+	 * @param locations the items to index, with their locations
+	 */
+	@SuppressWarnings("unchecked")
+	public StaticKdIndexingTree(Map<T,Point> locations) {
+		super();
+		size = locations.size();
+		dim = locations.isEmpty() ? 0 : locations.values().iterator().next().dim();
+		Object[] its = new Object[size];
+		double[] xs = new double[size*dim];
+		int i = 0;
+		for (Map.Entry<T,Point> e:locations.entrySet()) {
+			Point p = e.getValue();
+			if (p.dim()!=dim)
+				throw new IllegalArgumentException("StaticKdIndexingTree: locations of different dimensions");
+			its[i] = e.getKey();
+			for (int j=0; j<dim; j++)
+				xs[i*dim+j] = p.coordinate(j);
+			i++;
+		}
+		// number of levels of inner nodes
+		int levels = 0;
+		for (int m=size; m>BUCKET_SIZE; m=(m+1)/2)
+			levels++;
+		axes = new int[(1<<levels)-1];
+		splits = new double[axes.length];
+		lower = new double[dim];
+		upper = new double[dim];
+		int[] order = new int[size];
+		for (i=0; i<size; i++)
+			order[i] = i;
+		if (size>0) {
+			bounds(xs,order,0,size,lower,upper);
+			build(0,0,size,xs,order,new double[dim],new double[dim]);
+		}
+		// reorder items and coordinates
+		items = new Object[size];
+		coords = new double[size*dim];
+		for (i=0; i<size; i++) {
+			items[i] = its[order[i]];
+			System.arraycopy(xs,order[i]*dim,coords,i*dim,dim);
+		}
+		itemList = Collections.unmodifiableList(Arrays.asList((T[])items));
+		root = new StaticKdIndexingNode<T>(this,0,size);
+	}
+
+	// true if a node with items in [from,to[ is a leaf
+	private static boolean isLeaf(int from, int to) {
+		return to-from<=BUCKET_SIZE;
+	}
+
+	// bounds of the locations of items order[from..to[
+	private void bounds(double[] xs, int[] order, int from, int to, double[] lo, double[] up) {
+		for (int j=0; j<dim; j++) {
+			lo[j] = Double.POSITIVE_INFINITY;
+			up[j] = Double.NEGATIVE_INFINITY;
+		}
+		for (int i=from; i<to; i++)
+			for (int j=0; j<dim; j++) {
+				double x = xs[order[i]*dim+j];
+				if (x<lo[j]) lo[j] = x;
+				if (x>up[j]) up[j] = x;
+			}
+	}
+
+	// recursive - splits items order[from..to[ at their median along the axis of maximal spread
+	private void build(int k, int from, int to, double[] xs, int[] order, double[] lo, double[] up) {
+		if (isLeaf(from,to))
+			return;
+		bounds(xs,order,from,to,lo,up);
+		int axis = 0;
+		for (int j=1; j<dim; j++)
+			if (up[j]-lo[j]>up[axis]-lo[axis])
+				axis = j;
+		int mid = (from+to)>>>1;
+		select(xs,order,axis,from,to-1,mid);
+		axes[k] = axis;
+		splits[k] = xs[order[mid]*dim+axis];
+		build(2*k+1,from,mid,xs,order,lo,up);
+		build(2*k+2,mid,to,xs,order,lo,up);
+	}
+
+	// quickselect: reorders order[from..to] (inclusive) so that the item at rank n has all items
+	// with lower coordinates along axis before it, and all items with higher coordinates after it
+	private void select(double[] xs, int[] order, int axis, int from, int to, int n) {
+		while (to>from) {
+			double pivot = xs[order[(from+to)>>>1]*dim+axis];
+			int i = from, j = to;
+			while (i<=j) {
+				while (xs[order[i]*dim+axis]<pivot) i++;
+				while (xs[order[j]*dim+axis]>pivot) j--;
+				if (i<=j) {
+					int tmp = order[i];
+					order[i] = order[j];
+					order[j] = tmp;
+					i++;
+					j--;
+				}
+			}
+			if (n<=j) to = j;
+			else if (n>=i) from = i;
+			else return;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	protected final T itemAt(int i) {
+		return (T) items[i];
+	}
+
+	// a read-only view on items [from..to[
+	protected final List<T> items(int from, int to) {
+		return itemList.subList(from,to);
+	}
+
+	// squared distance between item i and q
+	private double squaredDistance(int i, double[] q) {
+		int offset = i*dim;
+		double d2 = 0.0;
+		for (int j=0; j<dim; j++) {
+			double d = coords[offset+j]-q[j];
+			d2 += d*d;
+		}
+		return d2;
+	}
+
+	@Override
+	public final int dim() {
+		return dim;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public StaticKdIndexingNode<T> root() {
+		return root;
+	}
+
+	/**
+	 * @return the smallest {@link Box} containing all item locations, null if the tree is empty
+	 */
+	public Box region() {
+		if (size==0)
+			return null;
+		return Box.boundingBox(Point.newPoint(lower.clone()),Point.newPoint(upper.clone()));
+	}
+
+	@Override
+	public void insert(T item, Point at) {
+		throw new UnsupportedOperationException("StaticKdIndexingTree cannot be modified.");
+	}
+
+	@Override
+	public boolean remove(T item) {
+		throw new UnsupportedOperationException("StaticKdIndexingTree cannot be modified.");
+	}
+
+	@Override
+	public void clear() {
+		throw new UnsupportedOperationException("StaticKdIndexingTree cannot be modified.");
+	}
+
+	@Override
+	public Collection<T> getAllItems() {
+		return itemList;
+	}
+
+	// the state of a nearest neighbour search
+	private static class Nearest {
+		double dist2 = Double.POSITIVE_INFINITY;
+		int item = -1;
+		// all the items at distance dist2, if required
+		int[] ties = null;
+		int nties = 0;
+
+		void offer(int i, double d2) {
+			if (d2<dist2) {
+				dist2 = d2;
+				item = i;
+				nties = 0;
+			}
+			if ((ties!=null) && (d2==dist2)) {
+				if (nties==ties.length)
+					ties = Arrays.copyOf(ties,2*nties);
+				ties[nties++] = i;
+			}
+		}
+
+		boolean accepts(double d2) {
+			return (d2<dist2) || ((ties!=null) && (d2==dist2));
+		}
+	}
+
+	// recursive - rd is the squared distance from q to the node region, off its components
+	// along each axis (cf. Arya & Mount 1993, 'Algorithms for fast vector quantization')
+	private void nearest(int k, int from, int to, double[] q, double rd, double[] off, Nearest search) {
+		if (isLeaf(from,to)) {
+			for (int i=from; i<to; i++)
+				search.offer(i,squaredDistance(i,q));
+			return;
+		}
+		int axis = axes[k];
+		int mid = (from+to)>>>1;
+		double diff = q[axis]-splits[k];
+		// search the half containing q first
+		if (diff<0) 
+			nearest(2*k+1,from,mid,q,rd,off,search);
+		else
+			nearest(2*k+2,mid,to,q,rd,off,search);
+		// then the other half if it may contain closer items
+		double old = off[axis];
+		double rd2 = rd-old*old+diff*diff;
+		if (search.accepts(rd2)) {
+			off[axis] = diff;
+			if (diff<0)
+				nearest(2*k+2,mid,to,q,rd2,off,search);
+			else
+				nearest(2*k+1,from,mid,q,rd2,off,search);
+			off[axis] = old;
+		}
+	}
+
+	@Override
+	public T getNearestItem(Point at) {
+		if (size==0)
+			return null;
+		Nearest search = new Nearest();
+		nearest(0,0,size,Coordinates.of(at),0.0,new double[dim],search);
+		return itemAt(search.item);
+	}
+
+	@Override
+	public Collection<T> getNearestItems(Point at) {
+		List<T> result = new ArrayList<>();
+		if (size>0) {
+			Nearest search = new Nearest();
+			search.ties = new int[4];
+			nearest(0,0,size,Coordinates.of(at),0.0,new double[dim],search);
+			for (int i=0; i<search.nties; i++)
+				result.add(itemAt(search.ties[i]));
+		}
+		return result;
+	}
+
+	// recursive - lo and up are the bounds of the node region
+	private void collect(int k, int from, int to, double[] lower, double[] upper,
+			double[] lo, double[] up, QuickListOfLists<T> result, List<T> extraItems) {
+		boolean within = true;
+		for (int j=0; j<dim; j++)
+			if ((lo[j]<lower[j]) || (up[j]>upper[j])) {
+				within = false;
+				break;
+			}
+		// node region fully contained in limits: insert all items
+		if (within)
+			result.addList(items(from,to));
+		// leaf not fully contained in limits: check all items
+		else if (isLeaf(from,to)) {
+			for (int i=from; i<to; i++) {
+				int offset = i*dim;
+				boolean in = true;
+				for (int j=0; j<dim; j++) {
+					double x = coords[offset+j];
+					if ((x<lower[j]) || (x>upper[j])) {
+						in = false;
+						break;
+					}
+				}
+				if (in)
+					extraItems.add(itemAt(i));
+			}
+		}
+		else {
+			int axis = axes[k];
+			double split = splits[k];
+			int mid = (from+to)>>>1;
+			if (lower[axis]<=split) {
+				double old = up[axis];
+				up[axis] = split;
+				collect(2*k+1,from,mid,lower,upper,lo,up,result,extraItems);
+				up[axis] = old;
+			}
+			if (upper[axis]>=split) {
+				double old = lo[axis];
+				lo[axis] = split;
+				collect(2*k+2,mid,to,lower,upper,lo,up,result,extraItems);
+				lo[axis] = old;
+			}
+		}
+	}
+
+	@Override
+	public Collection<T> getItemsWithin(Box limits) {
+		QuickListOfLists<T> result = new QuickListOfLists<T>();
+		if (size>0) {
+			List<T> extraItems = new ArrayList<>();
+			collect(0,0,size,Coordinates.lowerBounds(limits),Coordinates.upperBounds(limits),
+				lower.clone(),upper.clone(),result,extraItems);
+			result.addList(extraItems);
+		}
+		return result;
+	}
+
+	// recursive - lo and up are the bounds of the node region
+	private void collect(int k, int from, int to, double[] centre, double r2,
+			double[] lo, double[] up, QuickListOfLists<T> result, List<T> extraItems) {
+		// distances from the centre to the closest and farthest points of the node region
+		double near = 0.0, far = 0.0;
+		for (int j=0; j<dim; j++) {
+			double c = centre[j];
+			double d = (c<lo[j]) ? lo[j]-c : (c>up[j]) ? c-up[j] : 0.0;
+			near += d*d;
+			d = Math.max(c-lo[j],up[j]-c);
+			far += d*d;
+		}
+		if (near>r2)
+			return;
+		// node region fully contained in limits: insert all items
+		if (far<=r2)
+			result.addList(items(from,to));
+		// leaf not fully contained in limits: check all items
+		else if (isLeaf(from,to)) {
+			for (int i=from; i<to; i++)
+				if (squaredDistance(i,centre)<=r2)
+					extraItems.add(itemAt(i));
+		}
+		else {
+			int axis = axes[k];
+			double split = splits[k];
+			int mid = (from+to)>>>1;
+			double old = up[axis];
+			up[axis] = split;
+			collect(2*k+1,from,mid,centre,r2,lo,up,result,extraItems);
+			up[axis] = old;
+			old = lo[axis];
+			lo[axis] = split;
+			collect(2*k+2,mid,to,centre,r2,lo,up,result,extraItems);
+			lo[axis] = old;
+		}
+	}
+
+	@Override
+	public Collection<T> getItemsWithin(Sphere limits) {
+		QuickListOfLists<T> result = new QuickListOfLists<T>();
+		if (size>0) {
+			List<T> extraItems = new ArrayList<>();
+			double r = limits.radius();
+			collect(0,0,size,Coordinates.of(limits.centre()),r*r,
+				lower.clone(),upper.clone(),result,extraItems);
+			result.addList(extraItems);
+		}
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(getClass().getSimpleName()).append('\n');
+		if (size>0)
+			sb.append("region = ").append(region().toString()).append('\n');
+		sb.append("size = ").append(size).append('\n');
+		return sb.toString();
+	}
+
+}
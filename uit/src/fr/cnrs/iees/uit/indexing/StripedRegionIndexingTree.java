@@ -0,0 +1,484 @@
+/**************************************************************************
+ *  UIT - a Universal Indexing Tree                                       *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            *
+ *                                                                        *
+ *  UIT is a generalisation and re-implementation of QuadTree and Octree  *
+ *  implementations by Paavo Toivanen as downloaded on 27/8/2018 on       *
+ *  <https://dev.solita.fi/2015/08/06/quad-tree.html>                     *
+ *                                                                        *
+ **************************************************************************
+ *  This file is part of UIT (Universal Indexing Tree).                   *
+ *                                                                        *
+ *  UIT is free software: you can redistribute it and/or modify           *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  UIT is distributed in the hope that it will be useful,                *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with UIT.  If not, see <https://www.gnu.org/licenses/gpl.html>. *
+ *                                                                        *
+ **************************************************************************/
+package fr.cnrs.iees.uit.indexing;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+import fr.cnrs.iees.uit.space.Box;
+import fr.cnrs.iees.uit.space.Point;
+import fr.cnrs.iees.uit.space.Sphere;
+
+/**
+ * <p>A thread-safe region tree for parallel insertions and removals.</p>
+ * 
+ * <p>The top {@code levels} levels of this tree are fixed at construction: the domain is cut 
+ * into 2<sup>{@code levels}</sup> slices along every dimension, as the nodes of a 
+ * {@link RegionIndexingTree} at depth {@code levels}, e.g. 64 cells for 3 levels in dimension 2.
+ * Each cell, or <em>stripe</em>, is indexed by its own {@link BoundedRegionIndexingTree}, 
+ * with its own lock and item-to-node map. Threads modifying different stripes never 
+ * contend. The stripe of every item is kept in a {@link ConcurrentHashMap} to find it on
+ * removal, and the tree size in a {@link LongAdder}.</p>
+ * 
+ * <p>Queries read-lock all the stripes they overlap, always in the same order (increasing 
+ * stripe index), so that their result is consistent across stripes and that they cannot 
+ * deadlock with concurrent moves. {@link #getNearestItem(Point)} locks one stripe at a time, 
+ * visiting rings of stripes outwards from the stripe containing the location. As in 
+ * {@link ConcurrentRegionIndexingTree}, the collections returned by queries are copies.</p>
+ * 
+ * <p>All items are expected to lie within the tree domain. Items out of it are put into
+ * the closest stripe.</p>
+ *
+ * @author agent - 19 oct. 2026
+ *
+ * @param <T> type of content to index
+ */
+public class StripedRegionIndexingTree<T> implements IndexingTree<T,RegionIndexingNode<T>> {
+
+	/** the maximal number of stripes */
+	public static final int MAX_STRIPES = 1<<16;
+
+	// one stripe = one subtree with its lock
+	private static class Stripe<T> {
+		final int index;
+		final BoundedRegionIndexingTree<T> tree;
+		final StampedLock lock = new StampedLock();
+		final double[] lower;
+		final double[] upper;
+		Stripe(int index, double[] lower, double[] upper) {
+			this.index = index;
+			this.lower = lower;
+			this.upper = upper;
+			tree = new BoundedRegionIndexingTree<T>(Box.boundingBox(Point.newPoint(lower),Point.newPoint(upper)));
+		}
+	}
+
+	private final int dim;
+	private final Box domain;
+	// number of slices along every dimension
+	private final int slices;
+	// slice limits along every dimension (slices+1 values)
+	private final double[][] cuts;
+	private final Stripe<T>[] stripes;
+	private final ConcurrentHashMap<T,Stripe<T>> itemToStripeMap = new ConcurrentHashMap<>();
+	private final LongAdder size = new LongAdder();
+
+	/**
+	 * 
+	 * @param domain the region indexed by this tree
+	 * @param levels the number of fixed levels (2<sup>dim &#215; levels</sup> stripes, at most
+	 * {@value #MAX_STRIPES})
+	 */
+	@SuppressWarnings("unchecked")
+	public StripedRegionIndexingTree(Box domain, int levels) {
+		super();
+		dim = domain.dim();
+		if ((levels<0) || ((long)dim*levels>Integer.numberOfTrailingZeros(MAX_STRIPES)))
+			throw new IllegalArgumentException("StripedRegionIndexingTree: number of stripes must be in [1,"
+				+MAX_STRIPES+"]");
+		this.domain = domain;
+		slices = 1<<levels;
+		// cuts are computed as region tree node limits, by successive halving
+		cuts = new double[dim][slices+1];
+		for (int j=0; j<dim; j++) {
+			cuts[j][0] = domain.lowerBound(j);
+			cuts[j][slices] = domain.upperBound(j);
+			for (int step=slices/2; step>=1; step/=2)
+				for (int c=step; c<slices; c+=2*step)
+					cuts[j][c] = (cuts[j][c-step]+cuts[j][c+step])/2;
+		}
+		int nstripes = 1<<(dim*levels);
+		stripes = new Stripe[nstripes];
+		for (int s=0; s<nstripes; s++) {
+			double[] lower = new double[dim];
+			double[] upper = new double[dim];
+			int k = s;
+			for (int j=dim-1; j>=0; j--) {
+				int c = k%slices;
+				k /= slices;
+				lower[j] = cuts[j][c];
+				upper[j] = cuts[j][c+1];
+			}
+			stripes[s] = new Stripe<T>(s,lower,upper);
+		}
+	}
+
+	// slice containing x along dimension j - values on a cut go to the upper slice, as in region trees
+	private int slice(double x, int j) {
+		double[] cut = cuts[j];
+		int c = (int) Math.floor((x-cut[0])/(cut[slices]-cut[0])*slices);
+		c = Math.max(0,Math.min(slices-1,c));
+		// correct rounding errors
+		while ((c>0) && (x<cut[c]))
+			c--;
+		while ((c<slices-1) && (x>=cut[c+1]))
+			c++;
+		return c;
+	}
+
+	private Stripe<T> stripe(Point at) {
+		int s = 0;
+		for (int j=0; j<dim; j++)
+			s = s*slices+slice(at.coordinate(j),j);
+		return stripes[s];
+	}
+
+	// the stripes overlapping a box, in increasing index order
+	private List<Stripe<T>> stripes(Box limits) {
+		int[] from = new int[dim];
+		int[] to = new int[dim];
+		for (int j=0; j<dim; j++) {
+			from[j] = slice(limits.lowerBound(j),j);
+			to[j] = slice(limits.upperBound(j),j);
+		}
+		List<Stripe<T>> result = new ArrayList<>();
+		int[] c = from.clone();
+		while (true) {
+			int s = 0;
+			for (int j=0; j<dim; j++)
+				s = s*slices+c[j];
+			result.add(stripes[s]);
+			// next cell, last dimension first
+			int j = dim-1;
+			while ((j>=0) && (c[j]==to[j])) {
+				c[j] = from[j];
+				j--;
+			}
+			if (j<0)
+				break;
+			c[j]++;
+		}
+		return result;
+	}
+
+	@Override
+	public final int dim() {
+		return dim;
+	}
+
+	/**
+	 * This tree has no single root node.
+	 * 
+	 * @return null
+	 */
+	@Override
+	public RegionIndexingNode<T> root() {
+		return null;
+	}
+
+	/**
+	 * @return The {@link Box} region.
+	 */
+	public Box region() {
+		return domain;
+	}
+
+	/**
+	 * @return the number of stripes
+	 */
+	public int nStripes() {
+		return stripes.length;
+	}
+
+	@Override
+	public int size() {
+		return size.intValue();
+	}
+
+	/**
+	 * An item already present in this tree is not inserted again - use {@link #move(Object, Point)}
+	 * to change its location.
+	 */
+	@Override
+	public void insert(T item, Point at) {
+		Stripe<T> stripe = stripe(at);
+		long stamp = stripe.lock.writeLock();
+		try {
+			if (itemToStripeMap.putIfAbsent(item,stripe)==null) {
+				stripe.tree.insert(item,at);
+				size.increment();
+			}
+		}
+		finally {
+			stripe.lock.unlockWrite(stamp);
+		}
+	}
+
+	@Override
+	public boolean remove(T item) {
+		// loop in case the item is moved to another stripe meanwhile
+		while (true) {
+			Stripe<T> stripe = itemToStripeMap.get(item);
+			if (stripe==null)
+				return false;
+			long stamp = stripe.lock.writeLock();
+			try {
+				if (itemToStripeMap.remove(item,stripe)) {
+					stripe.tree.remove(item);
+					size.decrement();
+					return true;
+				}
+			}
+			finally {
+				stripe.lock.unlockWrite(stamp);
+			}
+		}
+	}
+
+	/**
+	 * Moves an item to a new location, as a single operation for concurrent readers.
+	 * 
+	 * @param item the item to move
+	 * @param to its new location
+	 * @return false if the item was not in the tree
+	 */
+	public boolean move(T item, Point to) {
+		Stripe<T> target = stripe(to);
+		while (true) {
+			Stripe<T> source = itemToStripeMap.get(item);
+			if (source==null)
+				return false;
+			// lock in increasing stripe order
+			Stripe<T> first = (source.index<=target.index) ? source : target;
+			Stripe<T> second = (first==source) ? target : source;
+			long stamp1 = first.lock.writeLock();
+			long stamp2 = (second!=first) ? second.lock.writeLock() : 0L;
+			try {
+				if (itemToStripeMap.get(item)==source) {
+					source.tree.remove(item);
+					target.tree.insert(item,to);
+					itemToStripeMap.put(item,target);
+					return true;
+				}
+			}
+			finally {
+				if (second!=first)
+					second.lock.unlockWrite(stamp2);
+				first.lock.unlockWrite(stamp1);
+			}
+		}
+	}
+
+	@Override
+	public void clear() {
+		long[] stamps = new long[stripes.length];
+		for (int s=0; s<stripes.length; s++)
+			stamps[s] = stripes[s].lock.writeLock();
+		try {
+			for (Stripe<T> stripe:stripes)
+				stripe.tree.clear();
+			itemToStripeMap.clear();
+			size.reset();
+		}
+		finally {
+			for (int s=stripes.length-1; s>=0; s--)
+				stripes[s].lock.unlockWrite(stamps[s]);
+		}
+	}
+
+	@Override
+	public Collection<T> getItemsWithin(Box limits) {
+		List<Stripe<T>> list = stripes(limits);
+		long[] stamps = new long[list.size()];
+		for (int s=0; s<stamps.length; s++)
+			stamps[s] = list.get(s).lock.readLock();
+		try {
+			List<T> result = new ArrayList<>();
+			for (Stripe<T> stripe:list)
+				result.addAll(stripe.tree.getItemsWithin(limits));
+			return result;
+		}
+		finally {
+			for (int s=stamps.length-1; s>=0; s--)
+				list.get(s).lock.unlockRead(stamps[s]);
+		}
+	}
+
+	@Override
+	public Collection<T> getItemsWithin(Sphere limits) {
+		List<Stripe<T>> list = stripes(Box.boundingBox(limits));
+		long[] stamps = new long[list.size()];
+		for (int s=0; s<stamps.length; s++)
+			stamps[s] = list.get(s).lock.readLock();
+		try {
+			List<T> result = new ArrayList<>();
+			for (Stripe<T> stripe:list)
+				result.addAll(stripe.tree.getItemsWithin(limits));
+			return result;
+		}
+		finally {
+			for (int s=stamps.length-1; s>=0; s--)
+				list.get(s).lock.unlockRead(stamps[s]);
+		}
+	}
+
+	@Override
+	public Collection<T> getAllItems() {
+		long[] stamps = new long[stripes.length];
+		for (int s=0; s<stripes.length; s++)
+			stamps[s] = stripes[s].lock.readLock();
+		try {
+			List<T> result = new ArrayList<>(size());
+			for (Stripe<T> stripe:stripes)
+				result.addAll(stripe.tree.getAllItems());
+			return result;
+		}
+		finally {
+			for (int s=stripes.length-1; s>=0; s--)
+				stripes[s].lock.unlockRead(stamps[s]);
+		}
+	}
+
+	// squared distance from a point to a stripe region
+	private double squaredDistance(Stripe<T> stripe, double[] x) {
+		double d2 = 0.0;
+		for (int j=0; j<dim; j++) {
+			double d = Math.max(0.0,Math.max(stripe.lower[j]-x[j],x[j]-stripe.upper[j]));
+			d2 += d*d;
+		}
+		return d2;
+	}
+
+	// squared distance from a point to an item of a stripe tree
+	private double squaredDistance(Stripe<T> stripe, T item, double[] x) {
+		RegionIndexingNode<T> node = stripe.tree.itemToNodeMap.get(item);
+		int i = node.indexOf(item);
+		double d2 = 0.0;
+		for (int j=0; j<dim; j++) {
+			double d = node.lanes[j][i]-x[j];
+			d2 += d*d;
+		}
+		return d2;
+	}
+
+	// lower bound of the squared distance from x to the stripes at slice distance r from the
+	// centre stripe, i.e. distance to the outside of the block of stripes at distance < r
+	// (infinite if there are no such stripes)
+	private double ringSquaredDistance(double[] x, int[] centre, int r) {
+		double d = Double.POSITIVE_INFINITY;
+		for (int j=0; j<dim; j++) {
+			if (centre[j]-r>=0)
+				d = Math.min(d,x[j]-cuts[j][centre[j]-r+1]);
+			if (centre[j]+r<slices)
+				d = Math.min(d,cuts[j][centre[j]+r]-x[j]);
+		}
+		if (d==Double.POSITIVE_INFINITY)
+			return d;
+		d = Math.max(0.0,d);
+		return d*d;
+	}
+
+	// the stripes at slice distance r from the centre stripe, i.e. on the boundary of the
+	// block of (2r+1)^dim stripes around it
+	private List<Stripe<T>> ring(int[] centre, int r) {
+		List<Stripe<T>> result = new ArrayList<>();
+		int last = dim-1;
+		int[] from = new int[dim];
+		int[] to = new int[dim];
+		for (int j=0; j<dim; j++) {
+			from[j] = Math.max(0,centre[j]-r);
+			to[j] = Math.min(slices-1,centre[j]+r);
+		}
+		int[] c = from.clone();
+		while (true) {
+			// if no other slice is at distance r, only the two end slices of the last dimension are
+			boolean onRing = false;
+			int s = 0;
+			for (int j=0; j<last; j++) {
+				onRing |= Math.abs(c[j]-centre[j])==r;
+				s = s*slices+c[j];
+			}
+			int step = onRing ? 1 : Math.max(1,2*r);
+			for (int cl=onRing ? from[last] : centre[last]-r; cl<=to[last]; cl+=step)
+				if (cl>=0)
+					result.add(stripes[s*slices+cl]);
+			// next cell, last but one dimension first
+			int j = last-1;
+			while ((j>=0) && (c[j]==to[j])) {
+				c[j] = from[j];
+				j--;
+			}
+			if (j<0)
+				break;
+			c[j]++;
+		}
+		return result;
+	}
+
+	/**
+	 * Searches stripes ring by ring around the stripe containing the location, until the
+	 * next ring is farther than the closest item found, locking one stripe at a time.
+	 */
+	@Override
+	public T getNearestItem(Point at) {
+		double[] x = Coordinates.of(at);
+		int[] centre = new int[dim];
+		for (int j=0; j<dim; j++)
+			centre[j] = slice(x[j],j);
+		T best = null;
+		double bestd2 = Double.POSITIVE_INFINITY;
+		for (int r=0; r<slices; r++) {
+			if (ringSquaredDistance(x,centre,r)>=bestd2)
+				break;
+			for (Stripe<T> stripe:ring(centre,r)) {
+				if (squaredDistance(stripe,x)>=bestd2)
+					continue;
+				long stamp = stripe.lock.readLock();
+				try {
+					if (stripe.tree.size()>0) {
+						T item = stripe.tree.getNearestItem(at);
+						double d = squaredDistance(stripe,item,x);
+						if (d<bestd2) {
+							bestd2 = d;
+							best = item;
+						}
+					}
+				}
+				finally {
+					stripe.lock.unlockRead(stamp);
+				}
+			}
+		}
+		return best;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(getClass().getSimpleName()).append('\n');
+		sb.append("region = ").append(domain.toString()).append('\n');
+		sb.append("stripes = ").append(stripes.length).append(", size = ").append(size()).append('\n');
+		return sb.toString();
+	}
+
+}
@@ -52,6 +52,10 @@ public class LocatorFactory implements Dimensioned {
 	Box limits;
 	// hash code stored for performance
 	private int hash = 0;
+	// number of bits per coordinate in packed locators (0 if packing is not possible)
+	private int packedBits = 0;
+	// packed coordinates lie in [-packedLimit,packedLimit[
+	private long packedLimit = 0L;
 	
 	/**
 	 * <p>This constructor checks that precision*maxDistance is smaller than {@code Long.MAX_VALUE},
@@ -73,6 +77,13 @@ public class LocatorFactory implements Dimensioned {
 		this.limits = limits;
 		this.precision = precision; 
 		dim = limits.dim();
+		if (dim==2)
+			packedBits = 32;
+		else if (dim==3)
+			packedBits = 21;
+		// in 2D, one bit is left unused so that squared distances between packed locators fit in a long
+		if (packedBits>0)
+			packedLimit = 1L<<(Math.min(packedBits,31)-1);
 	}
 	
 	/** 
@@ -120,6 +131,150 @@ public class LocatorFactory implements Dimensioned {
 		return new LocatorND(this,x1);
 	}
 
+	/**
+	 * <p>Whether locators of this factory can be <em>packed</em>, i.e. have all their coordinates 
+	 * stored in a single {@code long}. This is only possible in dimensions 2 and 3, where coordinates
+	 * are stored as signed integers of 32 bits (2D) or 21 bits (3D). The first coordinate is stored
+	 * in the most significant bits. Packable coordinates lie in [-2<sup>30</sup>,2<sup>30</sup>[ in 2D
+	 * and in [-2<sup>20</sup>,2<sup>20</sup>[ in 3D (cf. {@link #canPack(long)}).</p>
+	 * 
+	 * @return {@code true} if locators can be packed
+	 */
+	public boolean packable() {
+		return packedBits>0;
+	}
+	
+	/**
+	 * Checks that a locator coordinate fits in the bits allowed for packed coordinates. In 2D,
+	 * coordinates are limited to 31 bits although 32 are stored, so that 
+	 * {@link #packedSquaredDistance(long, long)} cannot overflow.
+	 * 
+	 * @param x a locator coordinate
+	 * @return {@code true} if x can be packed
+	 */
+	public boolean canPack(long x) {
+		if (packedBits==0)
+			return false;
+		return (x>=-packedLimit) && (x<packedLimit);
+	}
+	
+	/**
+	 * Checks that a point can be converted to a packed locator.
+	 * 
+	 * @param P the point to convert
+	 * @return {@code true} if all the locator coordinates of P can be packed
+	 */
+	public boolean canPack(Point P) {
+		if ((P.dim()!=dim) || (packedBits==0))
+			return false;
+		for (int i=0; i<dim; i++)
+			if (!canPack(convert(P.coordinate(i),i)))
+				return false;
+		return true;
+	}
+	
+	// packs one coordinate at its place in the packed locator
+	private long packCoordinate(long x, int i) {
+		if (!canPack(x))
+			throw new IllegalArgumentException("Invalid operation: coordinate too large to be packed");
+		return (x & ((1L<<packedBits)-1)) << ((dim-1-i)*packedBits);
+	}
+	
+	/**
+	 * Converts a point to a packed locator, without instantiating any {@code Locator}.
+	 * 
+	 * @param P the point to convert
+	 * @return the packed locator matching P
+	 * @see #packable()
+	 */
+	public long pack(Point P) {
+		if (P.dim()!=dim)
+			throw new IllegalArgumentException("Invalid operation: argument must have the same dimension as factory");
+		long packed = 0L;
+		for (int i=0; i<dim; i++)
+			packed |= packCoordinate(convert(P.coordinate(i),i),i);
+		return packed;
+	}
+	
+	/**
+	 * Converts a locator to a packed locator.
+	 * 
+	 * @param L the locator to convert
+	 * @return the packed locator matching L
+	 * @see #packable()
+	 */
+	public long pack(Locator L) {
+		if (L.dim()!=dim)
+			throw new IllegalArgumentException("Invalid operation: argument must have the same dimension as factory");
+		long packed = 0L;
+		for (int i=0; i<dim; i++)
+			packed |= packCoordinate(L.coordinate(i),i);
+		return packed;
+	}
+	
+	/**
+	 * Converts locator coordinates to a packed locator, without instantiating any {@code Locator}.
+	 * 
+	 * @param x the locator coordinates
+	 * @return the packed locator matching x
+	 * @see #packable()
+	 */
+	public long pack(long[] x) {
+		if (x.length!=dim)
+			throw new IllegalArgumentException("Invalid operation: argument must have the same dimension as factory");
+		long packed = 0L;
+		for (int i=0; i<dim; i++)
+			packed |= packCoordinate(x[i],i);
+		return packed;
+	}
+	
+	/**
+	 * Accessor to the coordinates of a packed locator.
+	 * 
+	 * @param packed the packed locator
+	 * @param i the index of the coordinate
+	 * @return i<sup>th</sup> coordinate of the locator
+	 */
+	public long packedCoordinate(long packed, int i) {
+		// move the coordinate to the most significant bits, then shift back with sign extension
+		return (packed << (64-(dim-i)*packedBits)) >> (64-packedBits);
+	}
+	
+	/**
+	 * Converts a packed locator to a {@code Locator}.
+	 * 
+	 * @param packed the packed locator
+	 * @return the matching {@code Locator}
+	 */
+	public Locator unpack(long packed) {
+		long[] x = new long[dim];
+		for (int i=0; i<dim; i++)
+			x[i] = packedCoordinate(packed,i);
+		return newLocator(x);
+	}
+	
+	/**
+	 * Squared euclidian distance between two packed locators. The result is exact, as in
+	 * {@link IntDistance#squaredEuclidianDistance(Locator, Locator)}: coordinate differences between
+	 * packable locators are below 2<sup>31</sup> in absolute value, so that the sum of their squares 
+	 * fits in a {@code long}.
+	 * 
+	 * @param a a packed locator
+	 * @param b another packed locator
+	 * @return the square of the distance between a and b
+	 */
+	public long packedSquaredDistance(long a, long b) {
+		if (dim==2) {
+			long dx = (a>>32)-(b>>32);
+			long dy = (long)(int)a-(long)(int)b;
+			return dx*dx+dy*dy;
+		}
+		long dx = packedCoordinate(a,0)-packedCoordinate(b,0);
+		long dy = packedCoordinate(a,1)-packedCoordinate(b,1);
+		long dz = packedCoordinate(a,2)-packedCoordinate(b,2);
+		return dx*dx+dy*dy+dz*dz;
+	}
+
 	/**
 	 * Converts a Locator to a Point
 	 * 
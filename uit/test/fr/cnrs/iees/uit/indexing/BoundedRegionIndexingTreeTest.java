@@ -30,10 +30,23 @@ package fr.cnrs.iees.uit.indexing;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import fr.cnrs.iees.uit.space.Box;
+import fr.cnrs.iees.uit.space.Distance;
 import fr.cnrs.iees.uit.space.Point;
 import fr.cnrs.iees.uit.space.Sphere;
 
@@ -72,7 +85,7 @@ class BoundedRegionIndexingTreeTest {
 	//	----items={}
 	//	----items={}
 	//	----items={}
-	//	----items={32,33,34,21,37,28,29,30}
+	//	----items={21,28,29,30,32,33,34,37}
 	//	----items={}
 	//	----items={}
 	//	----items={}
@@ -80,7 +93,7 @@ class BoundedRegionIndexingTreeTest {
 	//	----items={}
 	//	----items={}
 	//	----items={}
-	//	----items={35,36,38,31}
+	//	----items={31,35,36,38}
 	//	----items={4}
 	//	----items={}
 	//	----items={}
@@ -88,13 +101,13 @@ class BoundedRegionIndexingTreeTest {
 	//	--items={5}
 	//	--items={6}
 	//	--items={7,24}
-	//	--items={20,8,25,26}
+	//	--items={8,20,25,26}
 	//	--items={9}
 	//	--items={10}
 	//	--items={11}
 	//	--items={12}
 	//	--items={13}
-	//	--items={23,14}
+	//	--items={14,23}
 	//	--items={15}
 	//	--items={16,17,19}
 	//
@@ -240,13 +253,13 @@ class BoundedRegionIndexingTreeTest {
 				"--items={5}\n" +
 				"--items={6}\n" +
 				"--items={7,24}\n" +
-				"--items={20,8,25,26}\n" +
+				"--items={8,20,25,26}\n" +
 				"--items={9}\n" +
 				"--items={10}\n" +
 				"--items={11}\n" +
 				"--items={12}\n" +
 				"--items={13}\n" +
-				"--items={23,14}\n" +
+				"--items={14,23}\n" +
 				"--items={15}\n" +
 				"--items={16,17,19}\n");
 		// adding more points in one of the quadrants to see it split in 16
@@ -264,17 +277,17 @@ class BoundedRegionIndexingTreeTest {
 				"--items={1,18}\n" +
 				"--items={2,22,27}\n" +
 				"--items={3}\n" +
-				"--items={32,33,34,35,4,21,28,29,30,31}\n" +
+				"--items={4,21,28,29,30,31,32,33,34,35}\n" +
 				"--items={5}\n" +
 				"--items={6}\n" +
 				"--items={7,24}\n" +
-				"--items={20,8,25,26}\n" +
+				"--items={8,20,25,26}\n" +
 				"--items={9}\n" +
 				"--items={10}\n" +
 				"--items={11}\n" +
 				"--items={12}\n" +
 				"--items={13}\n" +
-				"--items={23,14}\n" +
+				"--items={14,23}\n" +
 				"--items={15}\n" +
 				"--items={16,17,19}\n");
 		p = Point.newPoint(4,2,6,10); 		tree.insert(36, p);
@@ -288,7 +301,7 @@ class BoundedRegionIndexingTreeTest {
 				"----items={}\n" +
 				"----items={}\n" +
 				"----items={}\n" +
-				"----items={32,33,34,21,28,29,30}\n" +
+				"----items={21,28,29,30,32,33,34}\n" +
 				"----items={}\n" +
 				"----items={}\n" +
 				"----items={}\n" +
@@ -296,7 +309,7 @@ class BoundedRegionIndexingTreeTest {
 				"----items={}\n" +
 				"----items={}\n" +
 				"----items={}\n" +
-				"----items={35,36,31}\n" +
+				"----items={31,35,36}\n" +
 				"----items={4}\n" +
 				"----items={}\n" +
 				"----items={}\n" +
@@ -304,13 +317,13 @@ class BoundedRegionIndexingTreeTest {
 				"--items={5}\n" +
 				"--items={6}\n" +
 				"--items={7,24}\n" +
-				"--items={20,8,25,26}\n" +
+				"--items={8,20,25,26}\n" +
 				"--items={9}\n" +
 				"--items={10}\n" +
 				"--items={11}\n" +
 				"--items={12}\n" +
 				"--items={13}\n" +
-				"--items={23,14}\n" +
+				"--items={14,23}\n" +
 				"--items={15}\n" +
 				"--items={16,17,19}\n");
 		// adding items at already existing locations
@@ -367,12 +380,30 @@ class BoundedRegionIndexingTreeTest {
 		p = Point.newPoint(4,13);
 		assertEquals(tree2.getNearestNode(p).toString(),"region=[[0.0,8.0]-[8.0,16.0]], items={3@[4.0,12.0]}\n");
 		p = Point.newPoint(12,12);
-		// here, the region returned correctly contains point (12,12), but not point 4 which was the target.
-		assertEquals(tree2.getNearestNode(p).toString(),"region=[[10.0,10.0]-[12.0,12.0]], items={8@[10.0,10.0]}\n");
+		// points on a node centre are located in the upper child, as when inserting, so the node
+		// returned is the one containing point 4.
+		assertEquals(tree2.getNearestNode(p).toString(),"region=[[12.0,12.0]-[16.0,16.0]], items={4@[12.0,12.0],6@[14.0,14.0],10@[13.0,13.0]}\n");
 		p = Point.newPoint(10.5,9.5);
 		assertEquals(tree2.getNearestNode(p).toString(),"region=[[10.0,8.0]-[12.0,10.0]], items={17@[10.5,9.5],18@[11.5,9.5],19@[10.5,8.5],20@[11.5,9.5],21@[11.5,9.6],22@[11.5,9.5]}\n");
 	}
 
+	@Test
+	void testGetNearestNode2() {
+		// point location must always find the node where an item was inserted,
+		// including for items lying on node borders
+		fillTree();
+		for (int i=0; i<64*64; i++)
+			tree2.insert(i, Point.newPoint((i%64)/4.0,(i/64)/4.0));
+		for (Integer item:tree2.itemToNodeMap.keySet()) {
+			RegionIndexingNode<Integer> node = tree2.itemToNodeMap.get(item);
+			assertSame(tree2.getNearestNode(node.location(node.indexOf(item))),node);
+		}
+		for (Integer item:tree.itemToNodeMap.keySet()) {
+			RegionIndexingNode<Integer> node = tree.itemToNodeMap.get(item);
+			assertSame(tree.getNearestNode(node.location(node.indexOf(item))),node);
+		}
+	}
+
 	@Test
 	void testGetAllItems() {
 		fillTree();
@@ -389,8 +420,8 @@ class BoundedRegionIndexingTreeTest {
 		p = Point.newPoint(1,2,6,9.01); // very close to 30
 		assertEquals(tree.getNearestItem(p),Integer.valueOf(30));
 		p = Point.newPoint(6,6,3,6); // halfway between 13 and 14
-		// returns 13 but should rather return both items...
-		assertEquals(tree.getNearestItem(p),Integer.valueOf(13));
+		// returns 14 (found first, in the node containing p) but should rather return both items...
+		assertEquals(tree.getNearestItem(p),Integer.valueOf(14));
 	}
 
 	@Test
@@ -556,7 +587,7 @@ class BoundedRegionIndexingTreeTest {
 				"----region=[[0.0,0.0,4.0,6.0]-[2.5,2.5,6.0,9.0]], items={}\n" +
 				"----region=[[0.0,0.0,4.0,9.0]-[2.5,2.5,6.0,12.0]], items={}\n" +
 				"----region=[[0.0,0.0,6.0,6.0]-[2.5,2.5,8.0,9.0]], items={}\n" +
-				"----region=[[0.0,0.0,6.0,9.0]-[2.5,2.5,8.0,12.0]], items={32@[2.0,1.0,6.0,11.0],33@[2.0,1.0,7.0,10.0],34@[2.0,2.0,6.0,9.0],21@[0.0,0.0,8.0,12.0],37@[2.0,2.0,6.0,9.0],28@[1.0,1.0,6.0,11.0],29@[1.0,1.0,7.0,10.0],30@[1.0,2.0,6.0,9.0]}\n" +
+				"----region=[[0.0,0.0,6.0,9.0]-[2.5,2.5,8.0,12.0]], items={21@[0.0,0.0,8.0,12.0],28@[1.0,1.0,6.0,11.0],29@[1.0,1.0,7.0,10.0],30@[1.0,2.0,6.0,9.0],32@[2.0,1.0,6.0,11.0],33@[2.0,1.0,7.0,10.0],34@[2.0,2.0,6.0,9.0],37@[2.0,2.0,6.0,9.0]}\n" +
 				"----region=[[0.0,2.5,4.0,6.0]-[2.5,5.0,6.0,9.0]], items={}\n" +
 				"----region=[[0.0,2.5,4.0,9.0]-[2.5,5.0,6.0,12.0]], items={}\n" +
 				"----region=[[0.0,2.5,6.0,6.0]-[2.5,5.0,8.0,9.0]], items={}\n" +
@@ -564,7 +595,7 @@ class BoundedRegionIndexingTreeTest {
 				"----region=[[2.5,0.0,4.0,6.0]-[5.0,2.5,6.0,9.0]], items={}\n" +
 				"----region=[[2.5,0.0,4.0,9.0]-[5.0,2.5,6.0,12.0]], items={}\n" +
 				"----region=[[2.5,0.0,6.0,6.0]-[5.0,2.5,8.0,9.0]], items={}\n" +
-				"----region=[[2.5,0.0,6.0,9.0]-[5.0,2.5,8.0,12.0]], items={35@[4.0,2.0,6.0,10.0],36@[4.0,2.0,6.0,10.0],38@[4.0,2.0,6.0,10.0],31@[3.0,2.0,6.0,10.0]}\n" +
+				"----region=[[2.5,0.0,6.0,9.0]-[5.0,2.5,8.0,12.0]], items={31@[3.0,2.0,6.0,10.0],35@[4.0,2.0,6.0,10.0],36@[4.0,2.0,6.0,10.0],38@[4.0,2.0,6.0,10.0]}\n" +
 				"----region=[[2.5,2.5,4.0,6.0]-[5.0,5.0,6.0,9.0]], items={4@[4.0,4.0,5.0,7.0]}\n" +
 				"----region=[[2.5,2.5,4.0,9.0]-[5.0,5.0,6.0,12.0]], items={}\n" +
 				"----region=[[2.5,2.5,6.0,6.0]-[5.0,5.0,8.0,9.0]], items={}\n" +
@@ -572,13 +603,13 @@ class BoundedRegionIndexingTreeTest {
 				"--region=[[0.0,5.0,0.0,0.0]-[5.0,10.0,4.0,6.0]], items={5@[4.0,6.0,3.0,5.0]}\n" +
 				"--region=[[0.0,5.0,0.0,6.0]-[5.0,10.0,4.0,12.0]], items={6@[4.0,6.0,3.0,7.0]}\n" +
 				"--region=[[0.0,5.0,4.0,0.0]-[5.0,10.0,8.0,6.0]], items={7@[4.0,6.0,5.0,5.0],24@[0.0,10.0,8.0,0.0]}\n" +
-				"--region=[[0.0,5.0,4.0,6.0]-[5.0,10.0,8.0,12.0]], items={20@[0.0,10.0,8.0,12.0],8@[4.0,6.0,5.0,7.0],25@[0.0,5.0,5.0,12.0],26@[0.0,5.0,8.0,6.0]}\n" +
+				"--region=[[0.0,5.0,4.0,6.0]-[5.0,10.0,8.0,12.0]], items={8@[4.0,6.0,5.0,7.0],20@[0.0,10.0,8.0,12.0],25@[0.0,5.0,5.0,12.0],26@[0.0,5.0,8.0,6.0]}\n" +
 				"--region=[[5.0,0.0,0.0,0.0]-[10.0,5.0,4.0,6.0]], items={9@[6.0,4.0,3.0,5.0]}\n" +
 				"--region=[[5.0,0.0,0.0,6.0]-[10.0,5.0,4.0,12.0]], items={10@[6.0,4.0,3.0,7.0]}\n" +
 				"--region=[[5.0,0.0,4.0,0.0]-[10.0,5.0,8.0,6.0]], items={11@[6.0,4.0,5.0,5.0]}\n" +
 				"--region=[[5.0,0.0,4.0,6.0]-[10.0,5.0,8.0,12.0]], items={12@[6.0,4.0,5.0,7.0]}\n" +
 				"--region=[[5.0,5.0,0.0,0.0]-[10.0,10.0,4.0,6.0]], items={13@[6.0,6.0,3.0,5.0]}\n" +
-				"--region=[[5.0,5.0,0.0,6.0]-[10.0,10.0,4.0,12.0]], items={23@[10.0,10.0,0.0,12.0],14@[6.0,6.0,3.0,7.0]}\n" +
+				"--region=[[5.0,5.0,0.0,6.0]-[10.0,10.0,4.0,12.0]], items={14@[6.0,6.0,3.0,7.0],23@[10.0,10.0,0.0,12.0]}\n" +
 				"--region=[[5.0,5.0,4.0,0.0]-[10.0,10.0,8.0,6.0]], items={15@[6.0,6.0,5.0,5.0]}\n" +
 				"--region=[[5.0,5.0,4.0,6.0]-[10.0,10.0,8.0,12.0]], items={16@[6.0,6.0,5.0,7.0],17@[5.0,5.0,4.0,6.0],19@[10.0,10.0,8.0,12.0]}\n");
 	}
@@ -596,7 +627,7 @@ class BoundedRegionIndexingTreeTest {
 				"----items={}\n" +
 				"----items={}\n" +
 				"----items={}\n" +
-				"----items={32,33,34,21,37,28,29,30}\n" +
+				"----items={21,28,29,30,32,33,34,37}\n" +
 				"----items={}\n" +
 				"----items={}\n" +
 				"----items={}\n" +
@@ -604,7 +635,7 @@ class BoundedRegionIndexingTreeTest {
 				"----items={}\n" +
 				"----items={}\n" +
 				"----items={}\n" +
-				"----items={35,36,38,31}\n" +
+				"----items={31,35,36,38}\n" +
 				"----items={4}\n" +
 				"----items={}\n" +
 				"----items={}\n" +
@@ -612,15 +643,532 @@ class BoundedRegionIndexingTreeTest {
 				"--items={5}\n" +
 				"--items={6}\n" +
 				"--items={7,24}\n" +
-				"--items={20,8,25,26}\n" +
+				"--items={8,20,25,26}\n" +
 				"--items={9}\n" +
 				"--items={10}\n" +
 				"--items={11}\n" +
 				"--items={12}\n" +
 				"--items={13}\n" +
-				"--items={23,14}\n" +
+				"--items={14,23}\n" +
 				"--items={15}\n" +
 				"--items={16,17,19}\n");
 	}
 
+
+	// counts the nodes actually allocated
+	private static int countNodes(RegionIndexingNode<Integer> node) {
+		int n = 1;
+		if (node.children!=null)
+			for (RegionIndexingNode<Integer> c:node.children)
+				n += countNodes(c);
+		return n;
+	}
+
+	@Test
+	void testSparseChildren() {
+		// clustered items in 7D: a full split would create 128 children
+		Box b = Box.boundingBox(Point.newPoint(0,0,0,0,0,0,0),Point.newPoint(100,100,100,100,100,100,100));
+		RegionIndexingTree<Integer> t = new BoundedRegionIndexingTree<>(b);
+		int n = RegionIndexingNode.LEAF_MAX_ITEMS+5;
+		for (int i=0; i<n; i++)
+			t.insert(i,Point.newPoint(i%2,i*0.5,1,1,1,1,i%3));
+		t.insert(n,Point.newPoint(90,90,90,90,90,90,90));
+		assertEquals(n+1,t.size());
+		// root split once: only the two children holding items exist
+		assertEquals(2,t.root.children.length);
+		assertTrue(t.root.hasChild(0));
+		assertTrue(t.root.hasChild(127));
+		assertFalse(t.root.hasChild(64));
+		assertEquals(127,t.root.nextChild(1));
+		assertEquals(-1,t.root.nextChild(128));
+		assertTrue(countNodes(t.root)<n);
+		assertEquals(n,t.getNearestItem(Point.newPoint(80,80,80,80,80,80,80)));
+		assertEquals(n+1,t.getItemsWithin(b).size());
+		// an absent child is created on first insertion
+		t.insert(n+1,Point.newPoint(90,10,10,10,10,10,10));
+		assertTrue(t.root.hasChild(64));
+		assertEquals(3,t.root.children.length);
+		// and dropped on last removal
+		t.remove(n);
+		assertFalse(t.root.hasChild(127));
+		assertEquals(2,t.root.children.length);
+		for (int i=0; i<n; i++)
+			t.remove(i);
+		assertEquals(1,t.root.children.length);
+		t.remove(n+1);
+		assertNull(t.root.children);
+		assertEquals(0,t.size());
+	}
+
+
+	private static int depth(RegionIndexingNode<Integer> node) {
+		int d = 0;
+		if (node.children!=null)
+			for (RegionIndexingNode<Integer> c:node.children)
+				d = Math.max(d,depth(c));
+		return d+1;
+	}
+
+	@Test
+	void testCompression() {
+		Box b = Box.boundingBox(Point.newPoint(0,0),Point.newPoint(100,100));
+		RegionIndexingTree<Integer> ref = new BoundedRegionIndexingTree<>(b);
+		RegionIndexingTree<Integer> t = new BoundedRegionIndexingTree<>(b);
+		t.setCompression(true);
+		// three tight clusters (seed shadows)
+		Random rnd = new Random(12);
+		Point[] locs = new Point[600];
+		for (int i=0; i<locs.length; i++) {
+			double cx = 10+(i%3)*35.1;
+			double cy = 20+(i%3)*27.3;
+			locs[i] = Point.newPoint(cx+rnd.nextGaussian()*1e-5,cy+rnd.nextGaussian()*1e-5);
+			ref.insert(i,locs[i]);
+			t.insert(i,locs[i]);
+		}
+		assertEquals(ref.size(),t.size());
+		assertTrue(depth(t.root)<depth(ref.root)/2);
+		assertTrue(countNodes(t.root)<countNodes(ref.root));
+		for (int k=0; k<300; k++) {
+			// query points close to the clusters or anywhere
+			Point q = (k%2==0) ? Point.add(locs[rnd.nextInt(locs.length)],rnd.nextGaussian()*1e-5) :
+				Point.newPoint(rnd.nextDouble()*100,rnd.nextDouble()*100);
+			double d = Double.MAX_VALUE;
+			for (Point p:locs)
+				d = Math.min(d,Distance.euclidianDistance(p,q));
+			assertEquals(d,Distance.euclidianDistance(q,locs[t.getNearestItem(q)]));
+			Box qb = Box.boundingBox(q,Point.add(q,rnd.nextDouble()*1e-5));
+			assertEquals(new HashSet<>(ref.getItemsWithin(qb)),new HashSet<>(t.getItemsWithin(qb)));
+			Sphere s = Sphere.newSphere(q,rnd.nextDouble()*2e-5);
+			Set<Integer> inSphere = new HashSet<>();
+			for (int i=0; i<locs.length; i++)
+				if (s.contains(locs[i]))
+					inSphere.add(i);
+			// NB: Sphere.contains(Box) only checks two corners of the box, so a few extra items may be found
+			assertTrue(t.getItemsWithin(s).containsAll(inSphere));
+		}
+		// removal
+		for (int i=0; i<locs.length; i+=2)
+			assertTrue(t.remove(i));
+		assertEquals(locs.length/2,t.size());
+		assertEquals(1,t.getNearestItem(locs[1]));
+		for (int i=1; i<locs.length; i+=2)
+			assertTrue(t.remove(i));
+		assertNull(t.root.children);
+	}
+
+
+	@Test
+	void testColocatedItems() {
+		Box b = Box.boundingBox(Point.newPoint(0,0),Point.newPoint(100,100));
+		RegionIndexingTree<Integer> t = new BoundedRegionIndexingTree<>(b);
+		// sessile organisms snapped to a grid
+		int n = 5*RegionIndexingNode.LEAF_MAX_ITEMS;
+		for (int i=0; i<n; i++)
+			t.insert(i,Point.newPoint(10*(i%2),10));
+		assertEquals(n,t.size());
+		// the two locations are separated, then co-located items stay in the same leaf
+		assertEquals(5,depth(t.root));
+		assertEquals(n/2,t.getItemsWithin(Box.boundingBox(Point.newPoint(9,9),Point.newPoint(11,11))).size());
+		int k = t.getNearestItem(Point.newPoint(9,10));
+		assertEquals(1,k%2);
+		t.insert(n,Point.newPoint(10,10.5));
+		assertEquals(n,t.getNearestItem(Point.newPoint(10,10.6)));
+		for (int i=0; i<n; i++)
+			assertTrue(t.remove(i));
+		assertEquals(1,t.size());
+	}
+
+	@Test
+	void testMaxDepth() {
+		Box b = Box.boundingBox(Point.newPoint(0,0),Point.newPoint(1,1));
+		RegionIndexingTree<Integer> t = new BoundedRegionIndexingTree<>(b);
+		t.setMaxDepth(5);
+		int n = 4*RegionIndexingNode.LEAF_MAX_ITEMS;
+		Point[] locs = new Point[n];
+		for (int i=0; i<n; i++) {
+			locs[i] = Point.newPoint(0.5+i*1e-9,0.5);
+			t.insert(i,locs[i]);
+		}
+		assertEquals(6,depth(t.root));
+		assertEquals(n,t.getItemsWithin(Sphere.newSphere(Point.newPoint(0.5,0.5),1e-6)).size());
+		assertEquals(7,t.getNearestItem(locs[7]));
+		// minimal cell size: 1/16 is the smallest side allowed
+		t = new BoundedRegionIndexingTree<>(b);
+		t.setMinCellSize(1.0/16);
+		for (int i=0; i<n; i++)
+			t.insert(i,locs[i]);
+		assertEquals(5,depth(t.root));
+		assertEquals(7,t.getNearestItem(locs[7]));
+		// compressed children do not exceed the limit either
+		t = new BoundedRegionIndexingTree<>(b);
+		t.setCompression(true);
+		t.setMaxDepth(5);
+		for (int i=0; i<n; i++)
+			t.insert(i,locs[i]);
+		assertTrue(depth(t.root)<=6);
+		RegionIndexingNode<Integer> leaf = t.itemToNodeMap.get(0);
+		assertTrue(leaf.depth<=5);
+		assertEquals(7,t.getNearestItem(locs[7]));
+	}
+
+	@Test
+	void testResultCopies() {
+		QueryChecks.checkResultCopies(new BoundedRegionIndexingTree<>(Box.boundingBox(Point.newPoint(0,0),Point.newPoint(100,100))),100);
+		QueryChecks.checkResultCopies(new ExpandingRegionIndexingTree<>(2),100);
+	}
+
+	@Test
+	void testLargeOverflowBucket() {
+		// insertions and removals in an overflow bucket do not scan it: with 10^5 items at the
+		// same location, this takes well below a second
+		int n = 100000;
+		Point p = Point.newPoint(50,50);
+		Box b = Box.boundingBox(Point.newPoint(0,0),Point.newPoint(100,100));
+		assertTimeout(Duration.ofSeconds(10),() -> {
+			RegionIndexingTree<Integer> t = new BoundedRegionIndexingTree<>(b);
+			for (int i=0; i<n; i++)
+				t.insert(i,p);
+			// no duplicates
+			for (int i=0; i<n; i+=100)
+				t.insert(i,p);
+			assertEquals(n,t.size());
+			RegionIndexingNode<Integer> leaf = t.itemToNodeMap.get(0);
+			assertEquals(n,leaf.nitems);
+			t.insert(n,Point.newPoint(50,60));
+			assertEquals(n,t.getNearestItem(Point.newPoint(50,59)));
+			assertEquals(n,t.getItemsWithin(Sphere.newSphere(p,1)).size());
+			for (int i=0; i<n; i+=2)
+				assertTrue(t.remove(i));
+			assertFalse(t.remove(0));
+			assertEquals(n/2+1,t.size());
+			Set<Integer> left = new HashSet<>(t.getItemsWithin(Sphere.newSphere(p,1)));
+			assertEquals(n/2,left.size());
+			assertTrue(left.contains(n-1));
+			assertFalse(left.contains(n-2));
+			// items removed from the bucket are not found again
+			for (int i=1; i<n; i+=2)
+				assertEquals(i,leaf.itemAt(leaf.indexOf(i)));
+			assertEquals(-1,leaf.indexOf(0));
+			// same without item map
+			t = new BoundedRegionIndexingTree<>(b);
+			t.setItemMap(false);
+			List<ItemHandle<Integer>> handles = new ArrayList<>();
+			for (int i=0; i<n; i++)
+				handles.add(t.insertWithHandle(i,p));
+			assertNull(t.insertWithHandle(7,p));
+			for (int i=0; i<n; i+=2)
+				assertTrue(t.remove(handles.get(i)));
+			assertEquals(n/2,t.size());
+			// once its items are no longer co-located, the bucket is split at the next insertion
+			assertTrue(t.move(handles.get(1),Point.newPoint(50.5,50)));
+			assertTrue(t.move(handles.get(3),Point.newPoint(90,90)));
+			assertNull(t.root.children);
+			t.insert(n,p);
+			assertNotNull(t.root.children);
+			assertEquals(1,t.getNearestItem(Point.newPoint(50.6,50)));
+			assertEquals(3,t.getNearestItem(Point.newPoint(80,80)));
+			assertEquals(n/2-1,t.getItemsWithin(Sphere.newSphere(p,0.1)).size());
+		});
+	}
+
+	@Test
+	void testParallelQueries() {
+		Box b = Box.boundingBox(Point.newPoint(0,0),Point.newPoint(100,100));
+		RegionIndexingTree<Integer> t = new BoundedRegionIndexingTree<>(b);
+		Random rng = new Random(42);
+		int n = 20000;
+		for (int i=0; i<n; i++)
+			t.insert(i,Point.newPoint(rng.nextDouble()*100,rng.nextDouble()*100));
+		Box q = Box.boundingBox(Point.newPoint(5,12),Point.newPoint(93,81));
+		Sphere s = Sphere.newSphere(Point.newPoint(40,55),37);
+		Set<Integer> inBox = new HashSet<>(t.getItemsWithin(q));
+		Set<Integer> inSphere = new HashSet<>(t.getItemsWithin(s));
+		// small threshold so that the query is split into many tasks
+		t.setParallelThreshold(100);
+		assertEquals(inBox.size(),t.getItemsWithin(q).size());
+		assertEquals(inBox,new HashSet<>(t.getItemsWithin(q)));
+		assertEquals(inSphere.size(),t.getItemsWithin(s).size());
+		assertEquals(inSphere,new HashSet<>(t.getItemsWithin(s)));
+		assertEquals(n,t.getItemsWithin(b).size());
+		assertEquals(0,t.getItemsWithin(Box.boundingBox(Point.newPoint(200,200),Point.newPoint(300,300))).size());
+		// back to sequential queries
+		t.setParallelQueries(false);
+		assertEquals(inBox,new HashSet<>(t.getItemsWithin(q)));
+	}
+
+	@Test
+	void testStreams() {
+		Box b = Box.boundingBox(Point.newPoint(0,0),Point.newPoint(100,100));
+		RegionIndexingTree<Integer> t = new BoundedRegionIndexingTree<>(b);
+		assertEquals(0,t.stream().count());
+		Random rng = new Random(7);
+		int n = 20000;
+		Point[] locs = new Point[n];
+		for (int i=0; i<n; i++) {
+			locs[i] = Point.newPoint(rng.nextDouble()*100,rng.nextDouble()*100);
+			t.insert(i,locs[i]);
+		}
+		assertEquals(n,t.stream().count());
+		assertEquals(n,t.stream().spliterator().getExactSizeIfKnown());
+		assertEquals(n,t.parallelStream().distinct().count());
+		assertEquals((long)n*(n-1)/2,t.parallelStream().mapToLong(i->i).sum());
+		// splits follow the tree and share the size estimate
+		Spliterator<Integer> sp = t.stream().spliterator();
+		Spliterator<Integer> half = sp.trySplit();
+		assertNotNull(half);
+		assertTrue(sp.estimateSize()+half.estimateSize()<=n);
+		// queries
+		Box q = Box.boundingBox(Point.newPoint(5,12),Point.newPoint(93,81));
+		Sphere s = Sphere.newSphere(Point.newPoint(40,55),37);
+		Set<Integer> inBox = new HashSet<>();
+		Set<Integer> inSphere = new HashSet<>();
+		for (int i=0; i<n; i++) {
+			if (q.contains(locs[i]))
+				inBox.add(i);
+			if (Distance.squaredEuclidianDistance(s.centre(),locs[i])<=s.radius()*s.radius())
+				inSphere.add(i);
+		}
+		assertEquals(inBox,t.streamWithin(q).collect(Collectors.toSet()));
+		assertEquals(inBox.size(),t.streamWithin(q).parallel().count());
+		assertEquals(inSphere,t.streamWithin(s).parallel().collect(Collectors.toSet()));
+		assertEquals(inSphere.size(),t.streamWithin(s).count());
+	}
+
+	@Test
+	void testBatchQueries() {
+		Box b = Box.boundingBox(Point.newPoint(0,0),Point.newPoint(100,100));
+		RegionIndexingTree<Integer> t = new BoundedRegionIndexingTree<>(b);
+		Random rng = new Random(11);
+		int n = 5000;
+		Point[] locs = new Point[n];
+		for (int i=0; i<n; i++) {
+			locs[i] = Point.newPoint(rng.nextDouble()*100,rng.nextDouble()*100);
+			t.insert(i,locs[i]);
+		}
+		// every item looks for its neighbours, plus a few points outside the domain
+		Point[] centres = new Point[n+2];
+		System.arraycopy(locs,0,centres,0,n);
+		centres[n] = Point.newPoint(-10,50);
+		centres[n+1] = Point.newPoint(150,150);
+		double r = 3.0;
+		BatchQueryResult<Integer> res = t.queryBatch(centres,r);
+		assertEquals(n+2,res.nQueries());
+		int total = 0;
+		for (int c=0; c<centres.length; c++) {
+			Set<Integer> expected = new HashSet<>();
+			for (int i=0; i<n; i++)
+				if (Distance.squaredEuclidianDistance(centres[c],locs[i])<=r*r)
+					expected.add(i);
+			assertEquals(expected.size(),res.count(c));
+			assertEquals(expected,new HashSet<>(res.items(c)));
+			assertEquals(total,res.start(c));
+			total += res.count(c);
+		}
+		assertEquals(total,res.size());
+		assertEquals(0,res.count(n+1));
+		// k nearest neighbours, by increasing distance
+		int k = 7;
+		res = t.nearestBatch(centres,k);
+		for (int c=0; c<centres.length; c+=37) {
+			final Point p = centres[c];
+			List<Integer> ranked = new ArrayList<>();
+			for (int i=0; i<n; i++)
+				ranked.add(i);
+			ranked.sort((i,j)->Double.compare(Distance.squaredEuclidianDistance(p,locs[i]),
+				Distance.squaredEuclidianDistance(p,locs[j])));
+			assertEquals(ranked.subList(0,k),res.items(c));
+		}
+		assertEquals(t.getNearestItem(centres[n]),res.item(res.start(n)));
+		// less items than k
+		RegionIndexingTree<Integer> t2 = new BoundedRegionIndexingTree<>(b);
+		t2.insert(1,Point.newPoint(1,1));
+		t2.insert(2,Point.newPoint(2,2));
+		res = t2.nearestBatch(new Point[] {Point.newPoint(3,3)},5);
+		assertEquals(Arrays.asList(2,1),res.items(0));
+		assertThrows(IllegalArgumentException.class,()->t2.nearestBatch(centres,0));
+		// items on node borders
+		RegionIndexingTree<Integer> t3 = new BoundedRegionIndexingTree<>(b);
+		int m = 0;
+		for (int x=0; x<=100; x+=10)
+			for (int y=0; y<=100; y+=10)
+				t3.insert(m++,Point.newPoint(x,y));
+		Point[] cs = new Point[] {Point.newPoint(50,50),Point.newPoint(40,45),Point.newPoint(40,40)};
+		res = t3.queryBatch(cs,10);
+		assertEquals(5,res.count(0));
+		assertEquals(2,res.count(1));
+		assertEquals(5,res.count(2));
+	}
+
+	@Test
+	void testFingerSearch() {
+		Box b = Box.boundingBox(Point.newPoint(0,0),Point.newPoint(100,100));
+		RegionIndexingTree<Integer> t = new BoundedRegionIndexingTree<>(b);
+		Random rng = new Random(5);
+		int n = 2000;
+		Point[] locs = new Point[n];
+		for (int i=0; i<n; i++) {
+			// grid locations to get items on node borders
+			locs[i] = Point.newPoint(rng.nextInt(100)*0.5+25,rng.nextInt(100)*0.5+25);
+			t.insert(i,locs[i]);
+		}
+		Map<Integer,Set<Integer>> inSphere = new HashMap<>();
+		Map<Integer,Integer> nearest = new HashMap<>();
+		for (int i=0; i<n; i+=7) {
+			Sphere s = Sphere.newSphere(locs[i],2.5);
+			Box q = Box.boundingBox(s);
+			inSphere.put(i,new HashSet<>(t.getItemsWithin(s)));
+			assertEquals(inSphere.get(i),new HashSet<>(t.getItemsWithin(s,i)));
+			assertEquals(new HashSet<>(t.getItemsWithin(q)),new HashSet<>(t.getItemsWithin(q,i)));
+			Point p = Point.newPoint(locs[i].coordinate(0)+0.1,locs[i].coordinate(1)-0.3);
+			nearest.put(i,t.getNearestItem(p));
+			assertEquals(nearest.get(i),t.getNearestItem(p,i));
+			// a hint far from the query, or not in the tree
+			assertEquals(inSphere.get(i),new HashSet<>(t.getItemsWithin(s,(i+n/2)%n)));
+			assertEquals(inSphere.get(i),new HashSet<>(t.getItemsWithin(s,-1)));
+		}
+		// per thread cache
+		t.setLastNodeCache(true);
+		for (int i=0; i<n; i+=7) {
+			Sphere s = Sphere.newSphere(locs[i],2.5);
+			assertEquals(inSphere.get(i),new HashSet<>(t.getItemsWithin(s)));
+			Point p = Point.newPoint(locs[i].coordinate(0)+0.1,locs[i].coordinate(1)-0.3);
+			assertEquals(nearest.get(i),t.getNearestItem(p));
+		}
+		// cached nodes dropped by removals are ignored
+		for (int i=0; i<n; i++)
+			if (i%7!=0)
+				t.remove(i);
+		Sphere s = Sphere.newSphere(locs[0],1.0);
+		t.getItemsWithin(s);
+		for (int i=0; i<n; i+=7)
+			t.remove(i);
+		assertEquals(0,t.getItemsWithin(s).size());
+		t.insert(1,locs[0]);
+		assertEquals(1,t.getItemsWithin(s).size());
+		// and so are nodes detached by clear()
+		t.clear();
+		t.insert(2,locs[0]);
+		assertEquals(1,t.getItemsWithin(s).size());
+		assertEquals(2,t.getNearestItem(locs[1]));
+	}
+
+	@Test
+	void testItemHandles() {
+		Box b = Box.boundingBox(Point.newPoint(0,0),Point.newPoint(100,100));
+		RegionIndexingTree<Integer> t = new BoundedRegionIndexingTree<>(b);
+		Random rng = new Random(13);
+		int n = 1000;
+		Point[] locs = new Point[n];
+		List<ItemHandle<Integer>> handles = new ArrayList<>();
+		for (int i=0; i<n; i++) {
+			locs[i] = Point.newPoint(rng.nextDouble()*100,rng.nextDouble()*100);
+			handles.add(t.insertWithHandle(i,locs[i]));
+		}
+		assertNull(t.insertWithHandle(0,locs[0]));
+		assertEquals(n,t.size());
+		// handles follow their items through node splits and removals
+		for (int i=0; i<n; i+=3) {
+			assertTrue(t.remove(handles.get(i)));
+			assertFalse(t.remove(handles.get(i)));
+		}
+		assertFalse(t.remove(handles.get(3)));
+		for (int i=1; i<n; i+=3) {
+			// small moves mostly stay in the same node, large ones do not
+			double d = (i%2==0) ? 0.01 : 30.0;
+			locs[i] = Point.newPoint((locs[i].coordinate(0)+d)%100,(locs[i].coordinate(1)+d)%100);
+			assertTrue(t.move(handles.get(i),locs[i]));
+		}
+		Set<Integer> expected = new HashSet<>();
+		for (int i=0; i<n; i++)
+			if (i%3!=0)
+				expected.add(i);
+		assertEquals(expected,new HashSet<>(t.getAllItems()));
+		assertEquals(expected.size(),t.size());
+		for (int i=1; i<n; i+=3) {
+			assertEquals(i,t.getNearestItem(locs[i]));
+			assertTrue(t.getItemsWithin(Box.boundingBox(locs[i],locs[i])).contains(i));
+		}
+		// without the item map
+		t.setItemMap(false);
+		assertNull(t.itemToNodeMap);
+		assertEquals(expected.size(),t.size());
+		assertThrows(UnsupportedOperationException.class,()->t.remove(1));
+		assertTrue(t.remove(handles.get(1)));
+		assertTrue(t.move(handles.get(2),Point.newPoint(50,50)));
+		ItemHandle<Integer> h = t.insertWithHandle(n,Point.newPoint(1,1));
+		assertEquals(expected.size(),t.size());
+		assertEquals(n,t.getNearestItem(Point.newPoint(1,1)));
+		assertEquals(2,t.getNearestItem(Point.newPoint(50,50)));
+		// the map is rebuilt
+		t.setItemMap(true);
+		assertEquals(expected.size(),t.size());
+		assertEquals(t.size(),t.itemToNodeMap.size());
+		assertTrue(t.remove(4));
+		assertFalse(t.remove(handles.get(4)));
+		// handles are invalid after clear()
+		t.clear();
+		assertFalse(t.remove(h));
+		assertFalse(t.move(handles.get(5),Point.newPoint(1,1)));
+		assertEquals(0,t.size());
+	}
+
+	// agents equal by value
+	private static class Agent {
+		private final String species;
+		private Agent(String species) {
+			this.species = species;
+		}
+		@Override
+		public boolean equals(Object o) {
+			return (o instanceof Agent) && ((Agent)o).species.equals(species);
+		}
+		@Override
+		public int hashCode() {
+			return species.hashCode();
+		}
+	}
+
+	@Test
+	void testIdentity() {
+		Box b = Box.boundingBox(Point.newPoint(0,0),Point.newPoint(16,16));
+		Agent a1 = new Agent("oak");
+		Agent a2 = new Agent("oak");
+		Point p = Point.newPoint(1,1);
+		// value semantics: a2 is a1
+		RegionIndexingTree<Agent> t = new BoundedRegionIndexingTree<>(b);
+		t.insert(a1,p);
+		t.insert(a2,p);
+		assertEquals(1,t.size());
+		assertEquals(1,t.getAllItems().size());
+		assertTrue(t.remove(a2));
+		assertEquals(0,t.size());
+		// identity semantics
+		t = new BoundedRegionIndexingTree<>(b,true);
+		t.insert(a1,p);
+		t.insert(a2,p);
+		t.insert(a2,p);
+		assertEquals(2,t.size());
+		assertEquals(2,t.getAllItems().size());
+		// many equal agents, spread over several nodes
+		List<Agent> agents = new ArrayList<>();
+		for (int i=0; i<100; i++) {
+			agents.add(new Agent("oak"));
+			t.insert(agents.get(i),Point.newPoint(i%16,i/16));
+		}
+		assertEquals(102,t.size());
+		assertTrue(t.remove(a2));
+		assertFalse(t.remove(a2));
+		assertTrue(t.getAllItems().stream().anyMatch(a->a==a1));
+		assertFalse(t.getAllItems().stream().anyMatch(a->a==a2));
+		for (int i=0; i<100; i+=2)
+			assertTrue(t.remove(agents.get(i)));
+		assertEquals(51,t.size());
+		// the rebuilt item map keeps identity semantics
+		t.setItemMap(false);
+		t.setItemMap(true);
+		assertEquals(51,t.size());
+		assertTrue(t.remove(agents.get(1)));
+		assertEquals(50,t.size());
+	}
+
 }
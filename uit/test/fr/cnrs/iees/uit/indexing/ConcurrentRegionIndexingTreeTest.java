@@ -0,0 +1,235 @@
+/**************************************************************************
+ *  UIT - a Universal Indexing Tree                                       *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            *
+ *                                                                        *
+ *  UIT is a generalisation and re-implementation of QuadTree and Octree  *
+ *  implementations by Paavo Toivanen as downloaded on 27/8/2018 on       *
+ *  <https://dev.solita.fi/2015/08/06/quad-tree.html>                     *
+ *                                                                        *
+ **************************************************************************
+ *  This file is part of UIT (Universal Indexing Tree).                   *
+ *                                                                        *
+ *  UIT is free software: you can redistribute it and/or modify           *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  UIT is distributed in the hope that it will be useful,                *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with UIT.  If not, see <https://www.gnu.org/licenses/gpl.html>. *
+ *                                                                        *
+ **************************************************************************/
+package fr.cnrs.iees.uit.indexing;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static fr.cnrs.iees.uit.indexing.QueryChecks.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.jupiter.api.Test;
+
+import fr.cnrs.iees.uit.space.Box;
+import fr.cnrs.iees.uit.space.Point;
+import fr.cnrs.iees.uit.space.Sphere;
+
+/**
+ * Checks concurrent tree queries during concurrent insertions and removals
+ *
+ * @author agent - 19 oct. 2026
+ *
+ */
+class ConcurrentRegionIndexingTreeTest {
+
+	private static final int NWRITERS = 4;
+	private static final int NITEMS = 5000;
+
+	// item i is always at the same location
+	private static Point location(int i) {
+		Random rnd = new Random(i);
+		return Point.newPoint(rnd.nextDouble()*100,rnd.nextDouble()*100);
+	}
+
+	@Test
+	void testQueries() {
+		Box domain = Box.boundingBox(Point.newPoint(0,0),Point.newPoint(100,100));
+		ConcurrentRegionIndexingTree<Integer> tree = new ConcurrentRegionIndexingTree<>(domain);
+		Map<Integer,Point> locs = new HashMap<>();
+		for (int i=0; i<3000; i++) {
+			// some items on node limits, some co-located
+			Point p = (i%10==0) ? Point.newPoint(12.5*(i%8),25*(i%4)) : location(i);
+			tree.insert(i,p);
+			locs.put(i,p);
+		}
+		// no duplicates
+		tree.insert(1,location(2));
+		Random rnd = new Random(5);
+		checkQueries(tree,locs,rnd);
+		// move items within and across leaves
+		for (int k=0; k<100; k++) {
+			int i = rnd.nextInt(3000);
+			Point p = (k%2==0) ? Point.add(locs.get(i),1e-6) : location(-k);
+			assertTrue(tree.move(i,p));
+			locs.put(i,p);
+		}
+		checkQueries(tree,locs,rnd);
+		// box with limits on node limits
+		Box b = Box.boundingBox(Point.newPoint(12.5,25),Point.newPoint(50,62.5));
+		Set<Integer> inBox = new HashSet<>();
+		for (Map.Entry<Integer,Point> e:locs.entrySet())
+			if (b.contains(e.getValue()))
+				inBox.add(e.getKey());
+		assertEquals(inBox,new HashSet<>(tree.getItemsWithin(b)));
+		for (int i=0; i<3000; i+=2) {
+			assertTrue(tree.remove(i));
+			assertFalse(tree.remove(i));
+			assertFalse(tree.move(i,location(i)));
+		}
+		assertEquals(1500,tree.size());
+		assertThrows(IllegalArgumentException.class,()->tree.insert(-1,Point.newPoint(-1,50)));
+		tree.clear();
+		assertEquals(0,tree.size());
+		assertTrue(tree.getAllItems().isEmpty());
+		assertNull(tree.getNearestItem(Point.newPoint(50,50)));
+	}
+
+	@Test
+	void testColocatedItems() {
+		ConcurrentRegionIndexingTree<Integer> tree = 
+			new ConcurrentRegionIndexingTree<>(Box.boundingBox(Point.newPoint(0,0),Point.newPoint(100,100)));
+		int n = 5*RegionIndexingNode.LEAF_MAX_ITEMS;
+		for (int i=0; i<n; i++)
+			tree.insert(i,Point.newPoint(10*(i%2),10));
+		assertEquals(n,tree.size());
+		assertEquals(n/2,tree.getItemsWithin(Box.boundingBox(Point.newPoint(9,9),Point.newPoint(11,11))).size());
+		// a single leaf holds all the items at one location
+		assertEquals(n/2,tree.itemToNodeMap.get(1).nitems);
+	}
+
+	@Test
+	void testRemovalsDuringSplits() throws Exception {
+		int nwriters = 8;
+		int nitems = 5000;
+		ExecutorService pool = Executors.newFixedThreadPool(nwriters);
+		for (int round=0; round<50; round++) {
+			ConcurrentRegionIndexingTree<Integer> tree = 
+				new ConcurrentRegionIndexingTree<>(Box.boundingBox(Point.newPoint(0,0),Point.newPoint(100,100)));
+			AtomicIntegerArray inserted = new AtomicIntegerArray(nwriters);
+			List<Future<?>> tasks = new ArrayList<>();
+			// each writer inserts items along its own column, so that the leaves it splits hold 
+			// its latest items, and removes the latest items of the other writers
+			for (int w=0; w<nwriters; w++) {
+				int writer = w;
+				tasks.add(pool.submit(() -> {
+					Random rnd = new Random(writer);
+					for (int i=0; i<nitems; i++) {
+						tree.insert(writer*nitems+i,
+							Point.newPoint(writer*12.5+rnd.nextDouble()*12.5,i*100.0/nitems));
+						inserted.set(writer,i+1);
+						int other = (writer+1+rnd.nextInt(nwriters-1))%nwriters;
+						int n = inserted.get(other);
+						if (n>5)
+							tree.remove(other*nitems+n-1-rnd.nextInt(5));
+					}
+					return null;
+				}));
+			}
+			for (Future<?> f:tasks)
+				f.get(10,TimeUnit.SECONDS);
+			// every item is mapped to a leaf which contains it
+			assertEquals(tree.itemToNodeMap.size(),tree.size());
+			for (Map.Entry<Integer,ConcurrentRegionIndexingNode<Integer>> e:tree.itemToNodeMap.entrySet()) {
+				assertFalse(e.getValue().inner);
+				assertTrue(e.getValue().indexOf(e.getKey())>=0);
+			}
+			assertEquals(tree.size(),tree.getAllItems().size());
+		}
+		pool.shutdown();
+		assertTrue(pool.awaitTermination(10,TimeUnit.SECONDS));
+	}
+
+	@Test
+	void testConcurrentAccess() throws Exception {
+		ConcurrentRegionIndexingTree<Integer> tree = 
+			new ConcurrentRegionIndexingTree<>(Box.boundingBox(Point.newPoint(0,0),Point.newPoint(100,100)));
+		ExecutorService pool = Executors.newFixedThreadPool(2*NWRITERS);
+		List<Future<?>> tasks = new ArrayList<>();
+		// writers insert their items, remove one half of them, and move the other half back in place
+		for (int w=0; w<NWRITERS; w++) {
+			int first = w*NITEMS;
+			tasks.add(pool.submit(() -> {
+				for (int i=first; i<first+NITEMS; i++)
+					tree.insert(i,location(i));
+				for (int i=first; i<first+NITEMS; i+=2)
+					assertTrue(tree.remove(i));
+				for (int i=first+1; i<first+NITEMS; i+=2)
+					assertTrue(tree.move(i,location(i)));
+				return null;
+			}));
+		}
+		// readers check that all items found are where they should be
+		for (int r=0; r<NWRITERS; r++) {
+			Random rnd = new Random(r);
+			tasks.add(pool.submit(() -> {
+				for (int k=0; k<2000; k++) {
+					Point p = Point.newPoint(rnd.nextDouble()*100,rnd.nextDouble()*100);
+					Box b = Box.boundingBox(p,Point.add(p,10));
+					for (Integer i:tree.getItemsWithin(b))
+						assertTrue(b.contains(location(i)));
+					// NB region trees may return items close to the sphere (cf. Sphere.contains(Box))
+					Sphere s = Sphere.newSphere(p,5);
+					for (Integer i:tree.getItemsWithin(s))
+						assertTrue(Box.boundingBox(s).contains(location(i)));
+					tree.getNearestItem(p);
+					assertTrue(tree.size()<=NWRITERS*NITEMS);
+				}
+				return null;
+			}));
+		}
+		for (Future<?> f:tasks)
+			f.get();
+		pool.shutdown();
+		assertTrue(pool.awaitTermination(10,TimeUnit.SECONDS));
+		// final content
+		assertEquals(NWRITERS*NITEMS/2,tree.size());
+		Set<Integer> expected = new HashSet<>();
+		for (int i=1; i<NWRITERS*NITEMS; i+=2)
+			expected.add(i);
+		assertEquals(expected,new HashSet<>(tree.getAllItems()));
+		Box b = Box.boundingBox(Point.newPoint(20,20),Point.newPoint(60,70));
+		Set<Integer> inBox = new HashSet<>();
+		for (Integer i:expected)
+			if (b.contains(location(i)))
+				inBox.add(i);
+		assertEquals(inBox,new HashSet<>(tree.getItemsWithin(b)));
+		// returned collections are copies
+		Collection<Integer> all = tree.getAllItems();
+		tree.clear();
+		assertEquals(expected.size(),all.size());
+		assertEquals(0,tree.size());
+	}
+
+	@Test
+	void testResultCopies() {
+		checkResultCopies(new ConcurrentRegionIndexingTree<>(domain(2,100)),100);
+	}
+
+}
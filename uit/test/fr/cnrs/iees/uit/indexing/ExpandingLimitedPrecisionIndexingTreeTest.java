@@ -28,6 +28,9 @@
  **************************************************************************/
 package fr.cnrs.iees.uit.indexing;
 
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 import java.util.Random;
@@ -70,4 +73,41 @@ class ExpandingLimitedPrecisionIndexingTreeTest {
 		fail("Not yet implemented");
 	}
 
+	@Test
+	void testNodeTable() {
+		// the node table must follow root expansions
+		Random rng = new Random();
+		Box limits = Box.boundingBox(Point.newPoint(0,0),Point.newPoint(100,100));
+		tree = new ExpandingLimitedPrecisionIndexingTree<>(limits,1);
+		tree.setNodeTable(true);
+		for (int i=0; i<2000; i++) {
+			double[] coord = new double[2];
+			for (int j=0; j<2; j++)
+				coord[j] = limits.lowerBound(j)+(rng.nextDouble()-0.5)*limits.sideLength(j)*(1+i/100);
+			tree.insert(i, Point.newPoint(coord));
+		}
+		for (Integer item:tree.itemToNodeMap.keySet()) {
+			LimitedPrecisionIndexingNode<Integer> node = tree.itemToNodeMap.get(item);
+			assertSame(tree.getNearestNode(node.locator(node.indexOf(item))),node);
+		}
+	}
+
+	@Test
+	void testPackedLocators() {
+		// locators are unpacked when the root region becomes too large
+		Box limits = Box.boundingBox(Point.newPoint(0,0),Point.newPoint(100,100));
+		tree = new ExpandingLimitedPrecisionIndexingTree<>(limits,0.0000001);
+		assertTrue(tree.packed);
+		for (int i=0; i<100; i++)
+			tree.insert(i, Point.newPoint(i,100-i));
+		tree.insert(100, Point.newPoint(150,50));
+		assertFalse(tree.packed);
+		for (int i=0; i<=100; i++) {
+			LimitedPrecisionIndexingNode<Integer> node = tree.itemToNodeMap.get(i);
+			assertSame(tree.getNearestNode(node.locator(node.indexOf(i))),node);
+		}
+		assertTrue(tree.getNearestItems(Point.newPoint(149,50)).contains(100));
+		assertTrue(tree.getNearestItems(Point.newPoint(10,90)).contains(10));
+	}
+
 }
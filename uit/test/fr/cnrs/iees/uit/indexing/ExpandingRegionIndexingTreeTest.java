@@ -30,10 +30,13 @@ package fr.cnrs.iees.uit.indexing;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.util.Random;
+
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import fr.cnrs.iees.uit.space.Box;
+import fr.cnrs.iees.uit.space.Distance;
 import fr.cnrs.iees.uit.space.Point;
 
 class ExpandingRegionIndexingTreeTest {
@@ -162,6 +165,38 @@ class ExpandingRegionIndexingTreeTest {
 //		System.out.println(tree2.toShortString());
 	}
 
+	@Test
+	void testBatchQueries() {
+		// sibling regions of expanding trees may overlap
+		Random rnd = new Random(43);
+		Point[] locs = new Point[2000];
+		for (int i=0; i<locs.length; i++) {
+			locs[i] = Point.newPoint(rnd.nextDouble()*100,rnd.nextDouble()*100);
+			tree2.insert(i,locs[i]);
+		}
+		BatchQueryResult<Integer> res = tree2.queryBatch(locs,3.0);
+		for (int c=0; c<locs.length; c++) {
+			int n = 0;
+			for (int i=0; i<locs.length; i++)
+				if (Distance.euclidianDistance(locs[c],locs[i])<=3.0)
+					n++;
+			assertEquals(n,res.count(c));
+		}
+	}
+
+	@Test
+	void testItemHandles() {
+		ItemHandle<Integer> h1 = tree2.insertWithHandle(1,Point.newPoint(1,1));
+		ItemHandle<Integer> h2 = tree2.insertWithHandle(2,Point.newPoint(2,2));
+		// moves out of the initial region expand the tree
+		assertTrue(tree2.move(h2,Point.newPoint(20,30)));
+		assertEquals(2,tree2.getNearestItem(Point.newPoint(19,29)));
+		assertTrue(tree2.remove(h1));
+		assertEquals(1,tree2.size());
+		assertTrue(tree2.remove(h2));
+		assertEquals(0,tree2.size());
+	}
+
 //	@Test
 //	void testExpansion() {
 //		// NB this test must be run with RegionIndexingNode.LEAF_MAX_ITEMS=2
@@ -0,0 +1,121 @@
+/**************************************************************************
+ *  UIT - a Universal Indexing Tree                                       *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            *
+ *                                                                        *
+ *  UIT is a generalisation and re-implementation of QuadTree and Octree  *
+ *  implementations by Paavo Toivanen as downloaded on 27/8/2018 on       *
+ *  <https://dev.solita.fi/2015/08/06/quad-tree.html>                     *
+ *                                                                        *
+ **************************************************************************
+ *  This file is part of UIT (Universal Indexing Tree).                   *
+ *                                                                        *
+ *  UIT is free software: you can redistribute it and/or modify           *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  UIT is distributed in the hope that it will be useful,                *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with UIT.  If not, see <https://www.gnu.org/licenses/gpl.html>. *
+ *                                                                        *
+ **************************************************************************/
+package fr.cnrs.iees.uit.indexing;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static fr.cnrs.iees.uit.indexing.QueryChecks.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import fr.cnrs.iees.uit.space.Point;
+
+/**
+ * Checks frozen tree queries against brute force searches
+ *
+ * @author agent - 19 oct. 2026
+ *
+ */
+class FrozenRegionIndexingTreeTest {
+
+	@Test
+	void testFreeze() {
+		Random rnd = new Random(5);
+		for (int dim=1; dim<=3; dim++)
+			for (boolean compression:new boolean[] {false,true}) {
+				BoundedRegionIndexingTree<Integer> tree = new BoundedRegionIndexingTree<>(domain(dim,100));
+				tree.setCompression(compression);
+				Map<Integer,Point> locs = new HashMap<>();
+				for (int i=0; i<20000; i++) {
+					// clustered and uniform items
+					Point p = (i%2==0) ? randomPoint(rnd,dim,100) : Point.add(randomPoint(rnd,dim,0.01),50);
+					tree.insert(i,p);
+					locs.put(i,p);
+				}
+				FrozenRegionIndexingTree<Integer> frozen = tree.freeze();
+				assertEquals(tree.region(),frozen.region());
+				assertEquals(locs.size(),frozen.root().items().size());
+				// modifications of the source tree do not affect the frozen copy
+				Map<Integer,Point> frozenLocs = new HashMap<>(locs);
+				for (int i=0; i<20000; i+=2) {
+					tree.remove(i);
+					locs.remove(i);
+				}
+				checkQueries(frozen,frozenLocs,rnd);
+				checkQueries(tree.freeze(),locs,rnd);
+				assertThrows(UnsupportedOperationException.class,()->frozen.insert(-1,randomPoint(rnd,1,1)));
+				assertThrows(UnsupportedOperationException.class,()->frozen.remove(0));
+				assertThrows(UnsupportedOperationException.class,()->frozen.clear());
+				tree.clear();
+				assertEquals(0,tree.freeze().size());
+				assertNull(tree.freeze().getNearestItem(randomPoint(rnd,dim,1)));
+			}
+		// expanding trees have no root before the first insertion
+		FrozenRegionIndexingTree<Integer> empty = new ExpandingRegionIndexingTree<Integer>(2).freeze();
+		assertEquals(0,empty.size());
+		assertNull(empty.root());
+		assertTrue(empty.getItemsWithin(domain(2,1)).isEmpty());
+	}
+
+	@Test
+	void testConcurrentQueries() throws Exception {
+		Random rnd = new Random(55);
+		BoundedRegionIndexingTree<Integer> tree = new BoundedRegionIndexingTree<>(domain(2,100));
+		Map<Integer,Point> locs = new HashMap<>();
+		for (int i=0; i<20000; i++) {
+			Point p = randomPoint(rnd,2,100);
+			tree.insert(i,p);
+			locs.put(i,p);
+		}
+		FrozenRegionIndexingTree<Integer> frozen = tree.freeze();
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		List<Future<?>> tasks = new ArrayList<>();
+		for (int r=0; r<4; r++) {
+			Random qrnd = new Random(r);
+			tasks.add(pool.submit(() -> {
+				checkQueries(frozen,locs,qrnd);
+				return null;
+			}));
+		}
+		for (Future<?> f:tasks)
+			f.get();
+		pool.shutdown();
+		assertTrue(pool.awaitTermination(10,TimeUnit.SECONDS));
+	}
+
+}
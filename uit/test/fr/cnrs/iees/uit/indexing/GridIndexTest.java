@@ -0,0 +1,130 @@
+/**************************************************************************
+ *  UIT - a Universal Indexing Tree                                       *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            *
+ *                                                                        *
+ *  UIT is a generalisation and re-implementation of QuadTree and Octree  *
+ *  implementations by Paavo Toivanen as downloaded on 27/8/2018 on       *
+ *  <https://dev.solita.fi/2015/08/06/quad-tree.html>                     *
+ *                                                                        *
+ **************************************************************************
+ *  This file is part of UIT (Universal Indexing Tree).                   *
+ *                                                                        *
+ *  UIT is free software: you can redistribute it and/or modify           *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  UIT is distributed in the hope that it will be useful,                *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with UIT.  If not, see <https://www.gnu.org/licenses/gpl.html>. *
+ *                                                                        *
+ **************************************************************************/
+package fr.cnrs.iees.uit.indexing;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static fr.cnrs.iees.uit.indexing.QueryChecks.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import fr.cnrs.iees.uit.space.Box;
+import fr.cnrs.iees.uit.space.Point;
+
+/**
+ * Checks grid queries against brute force searches, for dense and hashed cell storage
+ *
+ * @author agent - 19 oct. 2026
+ *
+ */
+class GridIndexTest {
+
+	// brute force checks, and nearest items
+	private void checkQueries(GridIndex<Integer> grid, Map<Integer,Point> locs, Random rnd, double min, double max) {
+		QueryChecks.checkQueries(grid,locs,rnd,min,max,true);
+		if (!locs.isEmpty())
+			for (int k=0; k<20; k++) {
+				Point q = randomPoint(rnd,grid.dim(),2*min-max,2*max-min);
+				assertTrue(grid.getNearestItems(q).contains(grid.getNearestItem(q)));
+			}
+	}
+
+	private void check(GridIndex<Integer> grid, int n, Random rnd, double min, double max) {
+		Map<Integer,Point> locs = new HashMap<>();
+		for (int i=0; i<n; i++) {
+			Point p = randomPoint(rnd,grid.dim(),min,max);
+			locs.put(i,p);
+			grid.insert(i,p);
+		}
+		checkQueries(grid,locs,rnd,min,max);
+		// move a third of the items, some in the same cell, others farther
+		for (int i=0; i<n; i+=3) {
+			Point p = (i%2==0) ? Point.add(locs.get(i),grid.cellSize()/100) : randomPoint(rnd,grid.dim(),min,max);
+			assertTrue(grid.move(i,p));
+			locs.put(i,p);
+		}
+		checkQueries(grid,locs,rnd,min,max);
+		// remove half of the items
+		for (int i=0; i<n; i+=2) {
+			assertTrue(grid.remove(i));
+			assertFalse(grid.remove(i));
+			locs.remove(i);
+		}
+		assertFalse(grid.move(0,Point.add(Point.newPoint(new double[grid.dim()]),min)));
+		checkQueries(grid,locs,rnd,min,max);
+		grid.clear();
+		locs.clear();
+		checkQueries(grid,locs,rnd,min,max);
+	}
+
+	@Test
+	void testDenseGrid() {
+		check(new GridIndex<>(domain(1,0,100),1.5),500,new Random(60),0,100);
+		check(new GridIndex<>(domain(2,0,100),2),3000,new Random(61),0,100);
+		check(new GridIndex<>(domain(3,-50,50),7),3000,new Random(62),-50,50);
+		check(new GridIndex<>(domain(5,0,1),0.1),2000,new Random(63),0,1);
+	}
+
+	@Test
+	void testHashedGrid() {
+		check(new GridIndex<>(2,2.5),3000,new Random(64),-100,100);
+		check(new GridIndex<>(3,10),3000,new Random(65),-100,100);
+		// too many cells for a dense array
+		check(new GridIndex<>(domain(2,0,1e6),1),3000,new Random(66),0,1e6);
+	}
+
+	@Test
+	void testDomain() {
+		GridIndex<Integer> grid = new GridIndex<>(domain(2,0,10),1);
+		grid.insert(1,Point.newPoint(10,10));
+		grid.insert(1,Point.newPoint(5,5));
+		assertEquals(1,grid.size());
+		assertEquals(1,grid.getNearestItem(Point.newPoint(-100,-100)));
+		assertThrows(IllegalArgumentException.class,()->grid.insert(2,Point.newPoint(11,5)));
+		assertThrows(IllegalArgumentException.class,()->grid.move(1,Point.newPoint(5,-1)));
+		assertEquals(1,grid.getItemsWithin(Box.boundingBox(Point.newPoint(9,9),Point.newPoint(10,10))).size());
+		assertThrows(IllegalArgumentException.class,()->new GridIndex<Integer>(4,1));
+		// too many cells for a dense array, and no hashed storage in 4D
+		IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+			()->new GridIndex<Integer>(domain(4,0,100),1));
+		assertTrue(e.getMessage().contains(String.valueOf(GridIndex.MAX_DENSE_CELLS)));
+		// too many cells along one dimension for packed locators
+		assertThrows(IllegalArgumentException.class,()->new GridIndex<Integer>(domain(2,0,1e10),1));
+		assertNull(grid.root());
+	}
+
+	@Test
+	void testResultCopies() {
+		checkResultCopies(new GridIndex<>(domain(2,100),10),100);
+	}
+
+}
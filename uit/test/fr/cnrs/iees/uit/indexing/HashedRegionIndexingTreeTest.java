@@ -0,0 +1,121 @@
+/**************************************************************************
+ *  UIT - a Universal Indexing Tree                                       *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            *
+ *                                                                        *
+ *  UIT is a generalisation and re-implementation of QuadTree and Octree  *
+ *  implementations by Paavo Toivanen as downloaded on 27/8/2018 on       *
+ *  <https://dev.solita.fi/2015/08/06/quad-tree.html>                     *
+ *                                                                        *
+ **************************************************************************
+ *  This file is part of UIT (Universal Indexing Tree).                   *
+ *                                                                        *
+ *  UIT is free software: you can redistribute it and/or modify           *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  UIT is distributed in the hope that it will be useful,                *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with UIT.  If not, see <https://www.gnu.org/licenses/gpl.html>. *
+ *                                                                        *
+ **************************************************************************/
+package fr.cnrs.iees.uit.indexing;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static fr.cnrs.iees.uit.indexing.QueryChecks.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import fr.cnrs.iees.uit.space.Point;
+import fr.cnrs.iees.uit.space.Sphere;
+
+/**
+ * Checks hashed tree queries against brute force searches
+ *
+ * @author agent - 19 oct. 2026
+ *
+ */
+class HashedRegionIndexingTreeTest {
+
+	private void check(int dim, int n, Random rnd) {
+		HashedRegionIndexingTree<Integer> tree = new HashedRegionIndexingTree<>(domain(dim,100));
+		Map<Integer,Point> locs = new HashMap<>();
+		for (int i=0; i<n; i++) {
+			Point p = randomPoint(rnd,dim,100);
+			locs.put(i,p);
+			tree.insert(i,p);
+		}
+		checkQueries(tree,locs,rnd);
+		// move a third of the items, some very close, others anywhere
+		for (int i=0; i<n; i+=3) {
+			Point p = (i%2==0) ? Point.add(locs.get(i),1e-3) : randomPoint(rnd,dim,100);
+			assertTrue(tree.move(i,p));
+			locs.put(i,p);
+		}
+		checkQueries(tree,locs,rnd);
+		// remove half of the items
+		for (int i=0; i<n; i+=2) {
+			assertTrue(tree.remove(i));
+			assertFalse(tree.remove(i));
+			assertFalse(tree.move(i,locs.get(i)));
+			locs.remove(i);
+		}
+		checkQueries(tree,locs,rnd);
+		// removing all items only leaves the root
+		for (int i:locs.keySet())
+			assertTrue(tree.remove(i));
+		assertTrue(tree.root().isLeaf());
+		locs.clear();
+		checkQueries(tree,locs,rnd);
+	}
+
+	@Test
+	void testQueries() {
+		check(1,500,new Random(70));
+		check(2,3000,new Random(71));
+		check(3,3000,new Random(72));
+		check(6,2000,new Random(73));
+	}
+
+	@Test
+	void testColocatedItems() {
+		HashedRegionIndexingTree<Integer> tree = new HashedRegionIndexingTree<>(domain(3,100));
+		Point p = Point.newPoint(10,20,30);
+		for (int i=0; i<50; i++)
+			tree.insert(i,p);
+		// the leaf is not split
+		assertTrue(tree.root().isLeaf());
+		assertEquals(50,tree.size());
+		tree.insert(50,Point.newPoint(10,20,31));
+		tree.insert(51,Point.newPoint(10,20,31));
+		assertFalse(tree.root().isLeaf());
+		assertEquals(52,tree.getItemsWithin(Sphere.newSphere(p,10)).size());
+		assertEquals(50,tree.getNearestItem(Point.newPoint(10,20,32)));
+		tree.clear();
+		assertEquals(0,tree.size());
+		assertTrue(tree.root().isLeaf());
+		assertTrue(tree.getAllItems().isEmpty());
+	}
+
+	@Test
+	void testDimension() {
+		assertThrows(IllegalArgumentException.class,()->new HashedRegionIndexingTree<Integer>(domain(7,1)));
+	}
+
+	@Test
+	void testResultCopies() {
+		checkResultCopies(new HashedRegionIndexingTree<>(domain(2,100)),100);
+	}
+
+}
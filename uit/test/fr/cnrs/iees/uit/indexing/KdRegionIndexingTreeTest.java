@@ -0,0 +1,182 @@
+/**************************************************************************
+ *  UIT - a Universal Indexing Tree                                       *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            *
+ *                                                                        *
+ *  UIT is a generalisation and re-implementation of QuadTree and Octree  *
+ *  implementations by Paavo Toivanen as downloaded on 27/8/2018 on       *
+ *  <https://dev.solita.fi/2015/08/06/quad-tree.html>                     *
+ *                                                                        *
+ **************************************************************************
+ *  This file is part of UIT (Universal Indexing Tree).                   *
+ *                                                                        *
+ *  UIT is free software: you can redistribute it and/or modify           *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  UIT is distributed in the hope that it will be useful,                *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with UIT.  If not, see <https://www.gnu.org/licenses/gpl.html>. *
+ *                                                                        *
+ **************************************************************************/
+package fr.cnrs.iees.uit.indexing;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static fr.cnrs.iees.uit.indexing.QueryChecks.*;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import fr.cnrs.iees.uit.indexing.KdRegionIndexingTree.SplitRule;
+import fr.cnrs.iees.uit.space.Box;
+import fr.cnrs.iees.uit.space.Distance;
+import fr.cnrs.iees.uit.space.Point;
+import fr.cnrs.iees.uit.space.Sphere;
+
+/**
+ * Checks binary k-d tree queries against brute force searches in 6 dimensions, and their specific features
+ *
+ * @author agent - 19 oct. 2026
+ *
+ */
+class KdRegionIndexingTreeTest {
+
+	private static final int DIM = 6;
+
+	// every node has either no or 2 children
+	private static void checkBinary(KdRegionIndexingNode<Integer> node) {
+		if (node.children!=null) {
+			assertEquals(2,node.children.length);
+			assertEquals(0,node.nitems);
+			checkBinary(node.children[0]);
+			checkBinary(node.children[1]);
+		}
+	}
+
+	// fills the tree and checks queries against brute force searches
+	private void check(KdRegionIndexingTree<Integer> tree, Random rnd) {
+		Map<Integer,Point> locs = insertRandomItems(tree,2000,100,rnd);
+		checkBinary(tree.root);
+		checkQueries(tree,locs,rnd);
+		// remove half of the items
+		for (int i=0; i<2000; i+=2) {
+			assertTrue(tree.remove(i));
+			assertFalse(tree.remove(i));
+			locs.remove(i);
+		}
+		checkQueries(tree,locs,rnd);
+		tree.clear();
+		assertEquals(0,tree.size());
+		assertTrue(tree.getAllItems().isEmpty());
+	}
+
+	@Test
+	void testBoundedKdRegionIndexingTree() {
+		check(new BoundedKdRegionIndexingTree<>(domain(DIM,100)),new Random(42));
+		check(new BoundedKdRegionIndexingTree<>(domain(DIM,100),SplitRule.MAX_SPREAD),new Random(43));
+		check(new BoundedKdRegionIndexingTree<>(domain(DIM,100),SplitRule.MEDIAN),new Random(47));
+	}
+
+	@Test
+	void testExpandingKdRegionIndexingTree() {
+		check(new ExpandingKdRegionIndexingTree<>(DIM),new Random(44));
+		ExpandingKdRegionIndexingTree<Integer> tree = new ExpandingKdRegionIndexingTree<>(DIM);
+		tree.setSplitRule(SplitRule.MAX_SPREAD);
+		check(tree,new Random(45));
+	}
+
+	@Test
+	void testExpansion() {
+		ExpandingKdRegionIndexingTree<Integer> tree = new ExpandingKdRegionIndexingTree<>(2);
+		Random rnd = new Random(46);
+		Point[] locs = new Point[500];
+		for (int i=0; i<locs.length; i++) {
+			locs[i] = Point.newPoint(rnd.nextGaussian()*50,rnd.nextGaussian()*50);
+			tree.insert(i,locs[i]);
+			assertTrue(tree.region().contains(locs[i]));
+		}
+		// items on the former root edges must still be found
+		for (int i=0; i<locs.length; i++) {
+			assertEquals(i,tree.getNearestItem(locs[i]));
+			assertTrue(tree.getItemsWithin(Sphere.newSphere(locs[i],1e-6)).contains(i));
+		}
+		checkBinary(tree.root);
+	}
+
+	private static int depth(KdRegionIndexingNode<Integer> node) {
+		if (node.children==null)
+			return 0;
+		return 1+Math.max(depth(node.children[0]),depth(node.children[1]));
+	}
+
+	@Test
+	void testMedianSplit() {
+		// strongly skewed distribution: most items packed near the origin
+		Random rnd = new Random(48);
+		Point[] locs = new Point[5000];
+		for (int i=0; i<locs.length; i++) {
+			double[] x = new double[DIM];
+			for (int j=0; j<DIM; j++)
+				x[j] = 100*Math.pow(rnd.nextDouble(),8);
+			locs[i] = Point.newPoint(x);
+		}
+		BoundedKdRegionIndexingTree<Integer> middle = new BoundedKdRegionIndexingTree<>(domain(DIM,100));
+		BoundedKdRegionIndexingTree<Integer> median = new BoundedKdRegionIndexingTree<>(domain(DIM,100),SplitRule.MEDIAN);
+		for (int i=0; i<locs.length; i++) {
+			middle.insert(i,locs[i]);
+			median.insert(i,locs[i]);
+		}
+		checkBinary(median.root);
+		// leaf depth tracks log(n) for median splits, not for middle splits
+		double nleaves = locs.length/KdRegionIndexingNode.LEAF_MAX_ITEMS;
+		assertTrue(depth(median.root)<=2*Math.log(nleaves)/Math.log(2));
+		assertTrue(depth(median.root)<depth(middle.root)/2);
+		for (int k=0; k<100; k++) {
+			Point p = locs[rnd.nextInt(locs.length)];
+			Sphere s = Sphere.newSphere(p,rnd.nextDouble());
+			assertEquals(new HashSet<>(middle.getItemsWithin(s)),new HashSet<>(median.getItemsWithin(s)));
+			Box b = Box.boundingBox(p,Point.add(p,rnd.nextDouble()*10));
+			assertEquals(new HashSet<>(middle.getItemsWithin(b)),new HashSet<>(median.getItemsWithin(b)));
+			Point q = randomPoint(rnd,DIM,1);
+			assertEquals(Distance.euclidianDistance(q,locs[middle.getNearestItem(q)]),
+				Distance.euclidianDistance(q,locs[median.getNearestItem(q)]));
+		}
+		for (int i=0; i<locs.length; i+=2)
+			assertTrue(median.remove(i));
+		assertEquals(locs.length/2,median.size());
+		assertFalse(median.getAllItems().contains(0));
+	}
+
+	@Test
+	void testColocatedItems() {
+		for (SplitRule rule:SplitRule.values()) {
+			BoundedKdRegionIndexingTree<Integer> tree = new BoundedKdRegionIndexingTree<>(domain(DIM,100),rule);
+			Point p = Point.add(Point.newPoint(new double[DIM]),10);
+			for (int i=0; i<50; i++)
+				tree.insert(i,p);
+			// the leaf is not split
+			assertNull(tree.root.children);
+			assertEquals(50,tree.size());
+			tree.insert(50,Point.add(p,1));
+			assertEquals(51,tree.getItemsWithin(Sphere.newSphere(p,10)).size());
+			assertEquals(50,tree.getNearestItem(Point.add(p,2)));
+		}
+	}
+
+	@Test
+	void testResultCopies() {
+		checkResultCopies(new BoundedKdRegionIndexingTree<>(domain(DIM,100)),100);
+		checkResultCopies(new ExpandingKdRegionIndexingTree<>(DIM),100);
+	}
+
+}
@@ -0,0 +1,124 @@
+/**************************************************************************
+ *  UIT - a Universal Indexing Tree                                       *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            *
+ *                                                                        *
+ *  UIT is a generalisation and re-implementation of QuadTree and Octree  *
+ *  implementations by Paavo Toivanen as downloaded on 27/8/2018 on       *
+ *  <https://dev.solita.fi/2015/08/06/quad-tree.html>                     *
+ *                                                                        *
+ **************************************************************************
+ *  This file is part of UIT (Universal Indexing Tree).                   *
+ *                                                                        *
+ *  UIT is free software: you can redistribute it and/or modify           *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  UIT is distributed in the hope that it will be useful,                *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with UIT.  If not, see <https://www.gnu.org/licenses/gpl.html>. *
+ *                                                                        *
+ **************************************************************************/
+package fr.cnrs.iees.uit.indexing;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import fr.cnrs.iees.uit.space.Box;
+import fr.cnrs.iees.uit.space.Distance;
+import fr.cnrs.iees.uit.space.Point;
+import fr.cnrs.iees.uit.space.Sphere;
+
+/**
+ * Checks that leaf scans give exactly the same results as the space classes
+ *
+ * @author agent - 19 oct. 2026
+ *
+ */
+class LeafScanTest {
+
+	private static final int n = 37;
+	private static final int dim = 3;
+	private Random rnd = new Random(7);
+
+	private Point[] points() {
+		Point[] pts = new Point[n];
+		for (int i=0; i<n; i++)
+			pts[i] = Point.newPoint(rnd.nextDouble()*10,rnd.nextDouble()*10,Math.floor(rnd.nextDouble()*10));
+		return pts;
+	}
+
+	private double[][] lanes(Point[] pts) {
+		double[][] lanes = new double[dim][n+5];
+		for (int i=0; i<n; i++)
+			for (int j=0; j<dim; j++)
+				lanes[j][i] = pts[i].coordinate(j);
+		return lanes;
+	}
+
+	private double[] coords(Point p) {
+		double[] x = new double[p.dim()];
+		for (int j=0; j<p.dim(); j++)
+			x[j] = p.coordinate(j);
+		return x;
+	}
+
+	@Test
+	void testSquaredDistances() {
+		Point[] pts = points();
+		Point q = Point.newPoint(5,5,5);
+		double[] d2 = new double[n];
+		LeafScan.squaredDistances(lanes(pts),n,coords(q),d2);
+		int imin = 0;
+		for (int i=0; i<n; i++) {
+			assertEquals(Distance.squaredEuclidianDistance(pts[i],q),d2[i]);
+			if (d2[i]<d2[imin])
+				imin = i;
+		}
+		assertEquals(imin,LeafScan.indexOfMin(d2,n));
+		assertEquals(-1,LeafScan.indexOfMin(d2,0));
+		// no item
+		LeafScan.squaredDistances(null,0,coords(q),d2);
+	}
+
+	@Test
+	void testWithinBox() {
+		Point[] pts = points();
+		Box b = Box.boundingBox(Point.newPoint(2,3,4),Point.newPoint(8,7,6));
+		boolean[] mask = new boolean[n];
+		int count = LeafScan.withinBox(lanes(pts),n,coords(b.lowerBounds()),coords(b.upperBounds()),mask);
+		int c = 0;
+		for (int i=0; i<n; i++) {
+			assertEquals(b.contains(pts[i]),mask[i]);
+			if (mask[i]) c++;
+		}
+		assertEquals(c,count);
+		assertTrue(count>0);
+	}
+
+	@Test
+	void testWithinSphere() {
+		Point[] pts = points();
+		Sphere s = Sphere.newSphere(Point.newPoint(5,5,5),3);
+		boolean[] mask = new boolean[n];
+		int count = LeafScan.withinSphere(lanes(pts),n,coords(s.centre()),9.0,new double[n],mask);
+		int c = 0;
+		for (int i=0; i<n; i++) {
+			assertEquals(s.contains(pts[i]),mask[i]);
+			if (mask[i]) c++;
+		}
+		assertEquals(c,count);
+		assertTrue(count>0);
+	}
+
+}
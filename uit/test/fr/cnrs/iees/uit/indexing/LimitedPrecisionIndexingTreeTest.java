@@ -30,7 +30,9 @@ package fr.cnrs.iees.uit.indexing;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.Random;
 
 import org.junit.jupiter.api.BeforeEach;
@@ -166,6 +168,71 @@ class LimitedPrecisionIndexingTreeTest {
 		assertTrue(l.contains(9));
 	}
 	
+	// checks that point location finds the nodes where items were inserted
+	private void checkNodes(LimitedPrecisionIndexingTree<Integer> t) {
+		for (Integer item:t.itemToNodeMap.keySet()) {
+			LimitedPrecisionIndexingNode<Integer> node = t.itemToNodeMap.get(item);
+			assertSame(t.getNearestNode(node.locator(node.indexOf(item))),node);
+		}
+	}
+
+	@Test
+	void testGetNearestNode() {
+		fillTree();
+		checkNodes(tree);
+		// same with the node table
+		tree.setNodeTable(true);
+		checkNodes(tree);
+		// 2D grid with many items on node borders
+		tree2 = new LimitedPrecisionIndexingTree<>(limits2,0.5);
+		tree2.setNodeTable(true);
+		for (int i=0; i<10000; i++)
+			tree2.insert(i, Point.newPoint((i%100)*1.0,(i/100)*1.0));
+		checkNodes(tree2);
+		for (int i=0; i<10000; i+=3)
+			tree2.remove(i);
+		checkNodes(tree2);
+		tree2.setNodeTable(false);
+		checkNodes(tree2);
+		tree2.clear();
+		tree2.setNodeTable(true);
+		for (int i=0; i<1000; i++)
+			tree2.insert(i, Point.newPoint(Math.random()*100,Math.random()*100));
+		checkNodes(tree2);
+	}
+
+	@Test
+	void testPackedLocators() {
+		// 4D locators cannot be packed, 2D can
+		assertFalse(tree.packed);
+		assertTrue(tree2.packed);
+		LimitedPrecisionIndexingTree<Integer> ref = new LimitedPrecisionIndexingTree<>(limits2,0.0000001);
+		ref.unpackLocators();
+		assertFalse(ref.packed);
+		Random rng = new Random(12);
+		for (int i=0; i<5000; i++) {
+			Point p = Point.newPoint(rng.nextDouble()*100,rng.nextDouble()*100);
+			tree2.insert(i,p);
+			ref.insert(i,p);
+		}
+		assertEquals(ref.toString(),tree2.toString());
+		for (int k=0; k<100; k++) {
+			Point p = Point.newPoint(rng.nextDouble()*100,rng.nextDouble()*100);
+			assertEquals(new ArrayList<>(ref.getNearestItems(p,3)),new ArrayList<>(tree2.getNearestItems(p,3)));
+			Sphere s = Sphere.newSphere(p,rng.nextDouble()*10);
+			assertEquals(new HashSet<>(ref.getItemsWithin(s)),new HashSet<>(tree2.getItemsWithin(s)));
+		}
+		// a point too far away for packed locators
+		tree2.insert(5000,Point.newPoint(1E5,1E5));
+		assertFalse(tree2.packed);
+		ref.insert(5000,Point.newPoint(1E5,1E5));
+		assertEquals(ref.toString(),tree2.toString());
+		assertTrue(tree2.remove(5000));
+		checkNodes(tree2);
+		tree2.clear();
+		assertTrue(tree2.packed);
+	}
+
 	@Test
 	void testGetNearestItemsRank() {
 		tree2.insert(1, Point.newPoint(0,0));
@@ -217,6 +284,12 @@ class LimitedPrecisionIndexingTreeTest {
 		fillTree();
 		assertEquals(tree.getAllItems().size(),38);
 	}
+
+	@Test
+	void testResultCopies() {
+		Box box = Box.boundingBox(Point.newPoint(0,0),Point.newPoint(100,100));
+		QueryChecks.checkResultCopies(new LimitedPrecisionIndexingTree<>(box,0.0001),100);
+	}
 	
 	@SuppressWarnings("unused")
 	@Test
@@ -298,4 +371,58 @@ class LimitedPrecisionIndexingTreeTest {
 //		System.out.println("...done in "+(System.currentTimeMillis()-t0)+" ms.");
 	}
 
+
+	@Test
+	void testSparseChildren() {
+		tree2.setNodeTable(true);
+		// a full leaf of items in the same quadrant: only one child of the root is created
+		int n = LimitedPrecisionIndexingNode.LEAF_MAX_ITEMS+1;
+		for (int i=0; i<n; i++)
+			tree2.insert(i,Point.newPoint(10+i*0.5,10));
+		assertEquals(1,tree2.root.children.length);
+		assertTrue(tree2.root.hasChild(0));
+		assertFalse(tree2.root.hasChild(3));
+		// empty children are not searched but items are still found around them
+		assertEquals(n-1,tree2.getNearestItems(Point.newPoint(90,90)).iterator().next());
+		assertEquals(n,tree2.getItemsWithin(limits2).size());
+		tree2.insert(n,Point.newPoint(90,90));
+		assertEquals(2,tree2.root.children.length);
+		assertTrue(tree2.root.hasChild(3));
+		assertEquals(n,tree2.getNearestItems(Point.newPoint(80,80)).iterator().next());
+		// last removal drops the child
+		tree2.remove(n);
+		assertFalse(tree2.root.hasChild(3));
+		assertEquals(n-1,tree2.getNearestItems(Point.newPoint(90,90)).iterator().next());
+		for (int i=0; i<n; i++)
+			tree2.remove(i);
+		assertNull(tree2.root.children);
+		tree2.insert(n+1,Point.newPoint(90,90));
+		assertEquals(n+1,tree2.getNearestItems(Point.newPoint(0,0)).iterator().next());
+	}
+
+	@Test
+	void testFingerSearch() {
+		Random rng = new Random(3);
+		int n = 2000;
+		Point[] locs = new Point[n];
+		for (int i=0; i<n; i++) {
+			// grid locations to get items on node borders
+			locs[i] = Point.newPoint(rng.nextInt(100)*0.5+25,rng.nextInt(100)*0.5+25);
+			tree2.insert(i,locs[i]);
+		}
+		for (int i=0; i<n; i+=7) {
+			Sphere s = Sphere.newSphere(locs[i],2.5);
+			Box b = Box.boundingBox(s);
+			assertEquals(new HashSet<>(tree2.getItemsWithin(s)),new HashSet<>(tree2.getItemsWithin(s,i)));
+			assertEquals(new HashSet<>(tree2.getItemsWithin(b)),new HashSet<>(tree2.getItemsWithin(b,i)));
+			Point p = Point.newPoint(locs[i].coordinate(0)+0.1,locs[i].coordinate(1)-0.3);
+			assertEquals(new HashSet<>(tree2.getNearestItems(p,3)),new HashSet<>(tree2.getNearestItems(p,3,i)));
+			// a hint far from the query
+			assertEquals(new HashSet<>(tree2.getItemsWithin(s)),new HashSet<>(tree2.getItemsWithin(s,(i+n/2)%n)));
+		}
+		// unknown hint
+		Box b = Box.boundingBox(Point.newPoint(30,30),Point.newPoint(40,40));
+		assertEquals(new HashSet<>(tree2.getItemsWithin(b)),new HashSet<>(tree2.getItemsWithin(b,-1)));
+	}
+
 }
@@ -0,0 +1,75 @@
+/**************************************************************************
+ *  UIT - a Universal Indexing Tree                                       *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            *
+ *                                                                        *
+ *  UIT is a generalisation and re-implementation of QuadTree and Octree  *
+ *  implementations by Paavo Toivanen as downloaded on 27/8/2018 on       *
+ *  <https://dev.solita.fi/2015/08/06/quad-tree.html>                     *
+ *                                                                        *
+ **************************************************************************
+ *  This file is part of UIT (Universal Indexing Tree).                   *
+ *                                                                        *
+ *  UIT is free software: you can redistribute it and/or modify           *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  UIT is distributed in the hope that it will be useful,                *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with UIT.  If not, see <https://www.gnu.org/licenses/gpl.html>. *
+ *                                                                        *
+ **************************************************************************/
+package fr.cnrs.iees.uit.indexing;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class LongHashMapTest {
+
+	@Test
+	void testPutGet() {
+		LongHashMap<String> map = new LongHashMap<>();
+		assertNull(map.get(1L));
+		assertNull(map.put(1L,"a"));
+		assertNull(map.put(5L,"b"));
+		assertEquals(map.put(1L,"c"),"a");
+		assertEquals(map.get(1L),"c");
+		assertEquals(map.get(5L),"b");
+		assertEquals(map.size(),2);
+		assertThrows(IllegalArgumentException.class,()->map.put(0L,"d"));
+	}
+
+	@Test
+	void testRemove() {
+		// compare with a HashMap under random insertions and removals
+		LongHashMap<Long> map = new LongHashMap<>();
+		Map<Long,Long> ref = new HashMap<>();
+		Random rng = new Random(42);
+		for (int i=0; i<100000; i++) {
+			long key = 1+rng.nextInt(5000);
+			if (rng.nextBoolean())
+				assertEquals(map.put(key,key*2),ref.put(key,key*2));
+			else
+				assertEquals(map.remove(key),ref.remove(key));
+		}
+		assertEquals(map.size(),ref.size());
+		for (long key=1; key<=5000; key++)
+			assertEquals(map.get(key),ref.get(key));
+		map.clear();
+		assertEquals(map.size(),0);
+		assertNull(map.get(1L));
+	}
+
+}
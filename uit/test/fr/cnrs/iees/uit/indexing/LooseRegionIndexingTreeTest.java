@@ -0,0 +1,205 @@
+/**************************************************************************
+ *  UIT - a Universal Indexing Tree                                       *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            *
+ *                                                                        *
+ *  UIT is a generalisation and re-implementation of QuadTree and Octree  *
+ *  implementations by Paavo Toivanen as downloaded on 27/8/2018 on       *
+ *  <https://dev.solita.fi/2015/08/06/quad-tree.html>                     *
+ *                                                                        *
+ **************************************************************************
+ *  This file is part of UIT (Universal Indexing Tree).                   *
+ *                                                                        *
+ *  UIT is free software: you can redistribute it and/or modify           *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  UIT is distributed in the hope that it will be useful,                *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with UIT.  If not, see <https://www.gnu.org/licenses/gpl.html>. *
+ *                                                                        *
+ **************************************************************************/
+package fr.cnrs.iees.uit.indexing;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static fr.cnrs.iees.uit.indexing.QueryChecks.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import fr.cnrs.iees.uit.space.Box;
+import fr.cnrs.iees.uit.space.Point;
+import fr.cnrs.iees.uit.space.Sphere;
+
+/**
+ * Checks loose tree queries against brute force searches, with items of various extents
+ *
+ * @author agent - 19 oct. 2026
+ *
+ */
+class LooseRegionIndexingTreeTest {
+
+	// an item extent: a box [lo,up] enlarged by r
+	private static class Extent {
+		double[] lo, up;
+		double r;
+		Extent(double[] lo, double[] up, double r) {
+			this.lo = lo;
+			this.up = up;
+			this.r = r;
+		}
+		// distance between the extent box and the box [l,u]
+		double boxDistance(double[] l, double[] u) {
+			double d2 = 0.0;
+			for (int j=0; j<lo.length; j++) {
+				double d = Math.max(0.0,Math.max(lo[j]-u[j],l[j]-up[j]));
+				d2 += d*d;
+			}
+			return Math.sqrt(d2);
+		}
+	}
+
+	// inserts items with random box, sphere or point extents of sizes up to maxSize
+	private void fill(LooseRegionIndexingTree<Integer> tree, Map<Integer,Extent> extents, 
+			int n, double maxSize, Random rnd) {
+		int dim = tree.dim();
+		for (int i=0; i<n; i++) {
+			double[] c = randomCoordinates(rnd,dim,100);
+			int item = extents.size();
+			double size = maxSize*Math.pow(rnd.nextDouble(),3);
+			switch (item%3) {
+			case 0:
+				double[] up = c.clone();
+				for (int j=0; j<dim; j++)
+					up[j] += rnd.nextDouble()*size;
+				tree.insert(item,Box.boundingBox(Point.newPoint(c),Point.newPoint(up)));
+				extents.put(item,new Extent(c,up,0.0));
+				break;
+			case 1:
+				tree.insert(item,Sphere.newSphere(Point.newPoint(c),size));
+				extents.put(item,new Extent(c,c,size));
+				break;
+			default:
+				tree.insert(item,Point.newPoint(c));
+				extents.put(item,new Extent(c,c,0.0));
+			}
+		}
+	}
+
+	// checks queries against brute force searches
+	private void checkQueries(LooseRegionIndexingTree<Integer> tree, Map<Integer,Extent> extents, Random rnd) {
+		int dim = tree.dim();
+		assertEquals(extents.size(),tree.size());
+		assertEquals(extents.keySet(),new HashSet<>(tree.getAllItems()));
+		for (int k=0; k<100; k++) {
+			double[] l = randomCoordinates(rnd,dim,100);
+			double[] u = l.clone();
+			for (int j=0; j<dim; j++)
+				u[j] += rnd.nextDouble()*30;
+			double[] c = randomCoordinates(rnd,dim,120);
+			double radius = rnd.nextDouble()*20;
+			Set<Integer> inBox = new HashSet<>();
+			Set<Integer> inSphere = new HashSet<>();
+			double dmin = Double.MAX_VALUE;
+			for (Map.Entry<Integer,Extent> e:extents.entrySet()) {
+				Extent x = e.getValue();
+				if (x.boxDistance(l,u)<=x.r)
+					inBox.add(e.getKey());
+				double d = x.boxDistance(c,c);
+				if (d<=x.r+radius)
+					inSphere.add(e.getKey());
+				dmin = Math.min(dmin,Math.max(0.0,d-x.r));
+			}
+			assertEquals(inBox,new HashSet<>(tree.getItemsWithin(
+				Box.boundingBox(Point.newPoint(l),Point.newPoint(u)))));
+			assertEquals(inSphere,new HashSet<>(tree.getItemsWithin(Sphere.newSphere(Point.newPoint(c),radius))));
+			if (!extents.isEmpty()) {
+				Extent x = extents.get(tree.getNearestItem(Point.newPoint(c)));
+				assertEquals(dmin,Math.max(0.0,x.boxDistance(c,c)-x.r),1e-9);
+			}
+		}
+	}
+
+	@Test
+	void testQueries() {
+		Random rnd = new Random(123);
+		for (int dim=1; dim<=3; dim++) {
+			LooseRegionIndexingTree<Integer> tree = new LooseRegionIndexingTree<>(domain(dim,100));
+			Map<Integer,Extent> extents = new HashMap<>();
+			fill(tree,extents,2000,20,rnd);
+			checkQueries(tree,extents,rnd);
+			// remove half of the items
+			for (int i=0; i<2000; i+=2) {
+				assertTrue(tree.remove(i));
+				extents.remove(i);
+			}
+			assertFalse(tree.remove(0));
+			checkQueries(tree,extents,rnd);
+			tree.clear();
+			extents.clear();
+			assertEquals(0,tree.size());
+			assertTrue(tree.getAllItems().isEmpty());
+			fill(tree,extents,500,5,rnd);
+			checkQueries(tree,extents,rnd);
+		}
+	}
+
+	@Test
+	void testLooseness() {
+		Random rnd = new Random(321);
+		// looseness 1 is a plain region tree, items crossing node limits stay in upper nodes
+		for (double looseness:new double[] {1.0,1.5,3.0}) {
+			LooseRegionIndexingTree<Integer> tree = new LooseRegionIndexingTree<>(domain(2,100),looseness);
+			assertEquals(looseness,tree.looseness());
+			Map<Integer,Extent> extents = new HashMap<>();
+			fill(tree,extents,1000,10,rnd);
+			checkQueries(tree,extents,rnd);
+		}
+		assertThrows(IllegalArgumentException.class,()->new LooseRegionIndexingTree<Integer>(domain(2,100),0.5));
+	}
+
+	@Test
+	void testItemPlacement() {
+		LooseRegionIndexingTree<Integer> tree = new LooseRegionIndexingTree<>(domain(2,100));
+		// many identical extents must not split the tree indefinitely
+		for (int i=0; i<50; i++)
+			tree.insert(i,Sphere.newSphere(Point.newPoint(10,10),1));
+		assertEquals(50,tree.size());
+		assertNull(tree.root().children);
+		// small items go down the tree, the largest one stays at the root
+		for (int i=50; i<100; i++)
+			tree.insert(i,Point.newPoint(i,i));
+		tree.insert(100,Box.boundingBox(Point.newPoint(1,1),Point.newPoint(99,99)));
+		assertNotNull(tree.root().children);
+		assertTrue(tree.root().localItems().contains(100));
+		assertFalse(tree.root().localItems().contains(99));
+		assertEquals(new HashSet<>(Arrays.asList(50,100)),
+			new HashSet<>(tree.getItemsWithin(Sphere.newSphere(Point.newPoint(50,50),0.1))));
+		// same item inserted twice is ignored
+		tree.insert(100,Box.boundingBox(Point.newPoint(1,1),Point.newPoint(99,99)));
+		assertEquals(101,tree.size());
+		for (int i=0; i<=100; i++)
+			assertTrue(tree.remove(i));
+		assertEquals(0,tree.size());
+		assertTrue(tree.root().isEmpty());
+	}
+
+	@Test
+	void testResultCopies() {
+		checkResultCopies(new LooseRegionIndexingTree<>(domain(2,100)),100);
+	}
+
+}
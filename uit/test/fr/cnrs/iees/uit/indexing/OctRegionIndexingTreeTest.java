@@ -0,0 +1,207 @@
+/**************************************************************************
+ *  UIT - a Universal Indexing Tree                                       *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            *
+ *                                                                        *
+ *  UIT is a generalisation and re-implementation of QuadTree and Octree  *
+ *  implementations by Paavo Toivanen as downloaded on 27/8/2018 on       *
+ *  <https://dev.solita.fi/2015/08/06/quad-tree.html>                     *
+ *                                                                        *
+ **************************************************************************
+ *  This file is part of UIT (Universal Indexing Tree).                   *
+ *                                                                        *
+ *  UIT is free software: you can redistribute it and/or modify           *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  UIT is distributed in the hope that it will be useful,                *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with UIT.  If not, see <https://www.gnu.org/licenses/gpl.html>. *
+ *                                                                        *
+ **************************************************************************/
+package fr.cnrs.iees.uit.indexing;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static fr.cnrs.iees.uit.indexing.QueryChecks.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import fr.cnrs.iees.uit.space.Box;
+import fr.cnrs.iees.uit.space.Point;
+import fr.cnrs.iees.uit.space.Sphere;
+
+/**
+ * Checks octree queries against brute force searches, and their specific features
+ *
+ * @author agent - 19 oct. 2026
+ *
+ */
+class OctRegionIndexingTreeTest {
+
+	// fills the tree and checks queries against brute force searches
+	private void check(OctRegionIndexingTree<Integer> tree, Random rnd) {
+		Map<Integer,Point> locs = insertRandomItems(tree,2000,100,rnd);
+		checkQueries(tree,locs,rnd);
+		// remove half of the items
+		for (int i=0; i<2000; i+=2) {
+			assertTrue(tree.remove(i));
+			assertFalse(tree.remove(i));
+			locs.remove(i);
+		}
+		checkQueries(tree,locs,rnd);
+		tree.clear();
+		assertEquals(0,tree.size());
+		assertTrue(tree.getAllItems().isEmpty());
+	}
+
+	@Test
+	void testBoundedOctRegionIndexingTree() {
+		check(new BoundedOctRegionIndexingTree<>(domain(3,100)),new Random(42));
+	}
+
+	@Test
+	void testExpandingOctRegionIndexingTree() {
+		check(new ExpandingOctRegionIndexingTree<>(),new Random(43));
+	}
+
+	// distinct strings, equal by value
+	private void checkIdentity(OctRegionIndexingTree<String> byValue, OctRegionIndexingTree<String> t) {
+		String a1 = new String("oak");
+		String a2 = new String("oak");
+		Point p = Point.newPoint(1,1,1);
+		byValue.insert(a1,p);
+		byValue.insert(a2,p);
+		assertEquals(1,byValue.size());
+		assertTrue(byValue.remove(a2));
+		assertEquals(0,byValue.size());
+		t.insert(a1,p);
+		t.insert(a2,p);
+		t.insert(a2,p);
+		assertEquals(2,t.size());
+		assertEquals(2,t.getAllItems().size());
+		// many equal items, spread over several nodes
+		List<String> oaks = new ArrayList<>();
+		for (int i=0; i<100; i++) {
+			oaks.add(new String("oak"));
+			t.insert(oaks.get(i),Point.newPoint(i%16,i/16,1));
+		}
+		assertEquals(102,t.size());
+		assertTrue(t.remove(a2));
+		assertFalse(t.remove(a2));
+		assertTrue(t.getAllItems().stream().anyMatch(a->a==a1));
+		assertFalse(t.getAllItems().stream().anyMatch(a->a==a2));
+		for (int i=0; i<100; i+=2)
+			assertTrue(t.remove(oaks.get(i)));
+		assertEquals(51,t.size());
+	}
+
+	@Test
+	void testIdentity() {
+		Box b = domain(3,16);
+		checkIdentity(new BoundedOctRegionIndexingTree<>(b),new BoundedOctRegionIndexingTree<>(b,true));
+		checkIdentity(new ExpandingOctRegionIndexingTree<>(),new ExpandingOctRegionIndexingTree<>(true));
+		checkIdentity(new ExpandingOctRegionIndexingTree<>(b),new ExpandingOctRegionIndexingTree<>(b,true));
+	}
+
+	@Test
+	void testResultCopies() {
+		checkResultCopies(new BoundedOctRegionIndexingTree<>(domain(3,100)),100);
+		checkResultCopies(new ExpandingOctRegionIndexingTree<>(),100);
+	}
+
+	@Test
+	void testRegion() {
+		ExpandingRegionIndexingTree<Integer> ref = new ExpandingRegionIndexingTree<>(3);
+		ExpandingOctRegionIndexingTree<Integer> tree = new ExpandingOctRegionIndexingTree<>();
+		Random rnd = new Random(44);
+		for (int i=0; i<100; i++) {
+			Point p = Point.newPoint(rnd.nextGaussian()*50,rnd.nextGaussian()*50,rnd.nextGaussian()*50);
+			ref.insert(i,p);
+			tree.insert(i,p);
+			assertEquals(ref.region().toString(),tree.region().toString());
+		}
+	}
+
+	@Test
+	void testDimension() {
+		assertThrows(IllegalArgumentException.class,
+			()->new BoundedOctRegionIndexingTree<Integer>(Box.boundingBox(Point.newPoint(0,0),Point.newPoint(1,1))));
+		OctRegionIndexingTree<Integer> tree = new ExpandingOctRegionIndexingTree<>();
+		assertThrows(IllegalArgumentException.class,()->tree.insert(1,Point.newPoint(0,0)));
+	}
+
+	// number of levels of nodes below node
+	private static int depth(OctRegionIndexingNode<Integer> node) {
+		int d = 0;
+		if (node.children!=null)
+			for (OctRegionIndexingNode<Integer> c:node.children)
+				d = Math.max(d,depth(c));
+		return d+1;
+	}
+
+	// more than LEAF_MAX_ITEMS items at two locations only
+	private void checkColocatedItems(OctRegionIndexingTree<Integer> t) {
+		int n = 5*OctRegionIndexingNode.LEAF_MAX_ITEMS;
+		for (int i=0; i<n; i++)
+			t.insert(i,Point.newPoint(10*(i%2),10,10));
+		assertEquals(n,t.size());
+		assertEquals(n/2,t.getItemsWithin(Box.boundingBox(Point.newPoint(9,9,9),Point.newPoint(11,11,11))).size());
+		assertEquals(1,t.getNearestItem(Point.newPoint(9,10,10))%2);
+		// a single leaf holds all the items at one location
+		assertEquals(n/2,t.itemToNodeMap.get(1).nitems);
+		for (int i=0; i<n; i++)
+			assertTrue(t.remove(i));
+		assertEquals(0,t.size());
+	}
+
+	@Test
+	void testColocatedItems() {
+		checkColocatedItems(new BoundedOctRegionIndexingTree<>(
+			Box.boundingBox(Point.newPoint(0,0,0),Point.newPoint(100,100,100))));
+		checkColocatedItems(new ExpandingOctRegionIndexingTree<>());
+		// all items at the same location from the start: the root region is a point
+		ExpandingOctRegionIndexingTree<Integer> t = new ExpandingOctRegionIndexingTree<>();
+		int n = 3*OctRegionIndexingNode.LEAF_MAX_ITEMS;
+		for (int i=0; i<n; i++)
+			t.insert(i,Point.newPoint(0.5,0.5,0.5));
+		assertEquals(n,t.size());
+		assertEquals(1,depth(t.root));
+		assertEquals(n,t.getItemsWithin(Sphere.newSphere(Point.newPoint(0.5,0.5,0.5),1)).size());
+	}
+
+	@Test
+	void testMaxDepth() {
+		Box b = Box.boundingBox(Point.newPoint(0,0,0),Point.newPoint(1,1,1));
+		OctRegionIndexingTree<Integer> t = new BoundedOctRegionIndexingTree<>(b);
+		t.setMaxDepth(5);
+		int n = 4*OctRegionIndexingNode.LEAF_MAX_ITEMS;
+		Point[] locs = new Point[n];
+		for (int i=0; i<n; i++) {
+			locs[i] = Point.newPoint(0.5+i*1e-9,0.5,0.5);
+			t.insert(i,locs[i]);
+		}
+		assertEquals(6,depth(t.root));
+		assertEquals(n,t.getItemsWithin(Sphere.newSphere(Point.newPoint(0.5,0.5,0.5),1e-6)).size());
+		assertEquals(7,t.getNearestItem(locs[7]));
+		// minimal cell size: 1/16 is the smallest side allowed
+		t = new BoundedOctRegionIndexingTree<>(b);
+		t.setMinCellSize(1.0/16);
+		for (int i=0; i<n; i++)
+			t.insert(i,locs[i]);
+		assertEquals(5,depth(t.root));
+		assertEquals(7,t.getNearestItem(locs[7]));
+	}
+
+}
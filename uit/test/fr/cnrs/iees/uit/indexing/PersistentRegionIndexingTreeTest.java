@@ -0,0 +1,157 @@
+/**************************************************************************
+ *  UIT - a Universal Indexing Tree                                       *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            *
+ *                                                                        *
+ *  UIT is a generalisation and re-implementation of QuadTree and Octree  *
+ *  implementations by Paavo Toivanen as downloaded on 27/8/2018 on       *
+ *  <https://dev.solita.fi/2015/08/06/quad-tree.html>                     *
+ *                                                                        *
+ **************************************************************************
+ *  This file is part of UIT (Universal Indexing Tree).                   *
+ *                                                                        *
+ *  UIT is free software: you can redistribute it and/or modify           *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  UIT is distributed in the hope that it will be useful,                *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with UIT.  If not, see <https://www.gnu.org/licenses/gpl.html>. *
+ *                                                                        *
+ **************************************************************************/
+package fr.cnrs.iees.uit.indexing;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static fr.cnrs.iees.uit.indexing.QueryChecks.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import fr.cnrs.iees.uit.space.Point;
+import fr.cnrs.iees.uit.space.Sphere;
+
+/**
+ * Checks persistent tree versions against brute force searches
+ *
+ * @author agent - 19 oct. 2026
+ *
+ */
+class PersistentRegionIndexingTreeTest {
+
+	@Test
+	void testVersions() {
+		Random rnd = new Random(31);
+		for (int dim=1; dim<=3; dim++) {
+			PersistentRegionIndexingTree<Integer> tree = new PersistentRegionIndexingTree<>(domain(dim,100));
+			Map<Integer,Point> locs = new HashMap<>();
+			List<IndexingTree<Integer,PersistentRegionIndexingNode<Integer>>> snapshots = new ArrayList<>();
+			List<Map<Integer,Point>> states = new ArrayList<>();
+			snapshots.add(tree.snapshot());
+			states.add(new HashMap<>(locs));
+			for (int step=0; step<5; step++) {
+				for (int i=0; i<500; i++) {
+					int item = 1000*step+i;
+					Point p = randomPoint(rnd,dim,100);
+					tree.insert(item,p);
+					locs.put(item,p);
+				}
+				// remove and move some of the previous items
+				for (int i=0; i<100; i++) {
+					int item = 1000*rnd.nextInt(step+1)+rnd.nextInt(500);
+					if (rnd.nextBoolean())
+						assertEquals(locs.remove(item)!=null,tree.remove(item));
+					else {
+						Point p = randomPoint(rnd,dim,100);
+						assertEquals(locs.containsKey(item),tree.move(item,p));
+						if (locs.containsKey(item))
+							locs.put(item,p);
+					}
+				}
+				checkQueries(tree,locs,rnd);
+				snapshots.add(tree.snapshot());
+				states.add(new HashMap<>(locs));
+			}
+			// all past versions are still available
+			for (int v=0; v<snapshots.size(); v++)
+				checkQueries(snapshots.get(v),states.get(v),rnd);
+			// snapshots cannot be modified
+			assertThrows(UnsupportedOperationException.class,()->snapshots.get(1).insert(-1,randomPoint(rnd,1,1)));
+			assertThrows(UnsupportedOperationException.class,()->snapshots.get(1).remove(0));
+			tree.clear();
+			assertEquals(0,tree.size());
+			checkQueries(snapshots.get(snapshots.size()-1),states.get(states.size()-1),rnd);
+		}
+	}
+
+	@Test
+	void testStructuralSharing() {
+		Random rnd = new Random(13);
+		PersistentRegionIndexingTree<Integer> tree = new PersistentRegionIndexingTree<>(domain(2,100));
+		for (int i=0; i<10000; i++)
+			tree.insert(i,randomPoint(rnd,2,100));
+		PersistentRegionIndexingNode<Integer> before = tree.snapshot().root();
+		tree.insert(-1,Point.newPoint(10,10));
+		PersistentRegionIndexingNode<Integer> after = tree.root();
+		assertNotSame(before,after);
+		// only the child on the path to the new item was copied
+		assertNotSame(before.children[0],after.children[0]);
+		for (int i=1; i<4; i++)
+			assertSame(before.children[i],after.children[i]);
+		// removing an item restores a compact tree
+		assertTrue(tree.remove(-1));
+		for (int i=0; i<10000; i++)
+			assertTrue(tree.remove(i));
+		assertTrue(tree.root().isLeaf());
+		// co-located items do not split leaves indefinitely
+		for (int i=0; i<100; i++)
+			tree.insert(i,Point.newPoint(1,1));
+		assertTrue(tree.root().isLeaf());
+		assertEquals(100,tree.getItemsWithin(Sphere.newSphere(Point.newPoint(1,1),0.1)).size());
+	}
+
+	@Test
+	void testConcurrentSnapshotQueries() throws Exception {
+		Random rnd = new Random(3);
+		PersistentRegionIndexingTree<Integer> tree = new PersistentRegionIndexingTree<>(domain(2,100));
+		Map<Integer,Point> locs = new HashMap<>();
+		for (int i=0; i<5000; i++) {
+			Point p = randomPoint(rnd,2,100);
+			tree.insert(i,p);
+			locs.put(i,p);
+		}
+		IndexingTree<Integer,PersistentRegionIndexingNode<Integer>> snapshot = tree.snapshot();
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		List<Future<?>> tasks = new ArrayList<>();
+		for (int r=0; r<4; r++) {
+			Random qrnd = new Random(r);
+			tasks.add(pool.submit(() -> {
+				checkQueries(snapshot,locs,qrnd);
+				return null;
+			}));
+		}
+		// the writer keeps modifying the tree
+		for (int i=0; i<5000; i++)
+			tree.move(i,randomPoint(rnd,2,100));
+		for (Future<?> f:tasks)
+			f.get();
+		pool.shutdown();
+		assertTrue(pool.awaitTermination(10,TimeUnit.SECONDS));
+	}
+
+}
@@ -0,0 +1,194 @@
+/**************************************************************************
+ *  UIT - a Universal Indexing Tree                                       *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            *
+ *                                                                        *
+ *  UIT is a generalisation and re-implementation of QuadTree and Octree  *
+ *  implementations by Paavo Toivanen as downloaded on 27/8/2018 on       *
+ *  <https://dev.solita.fi/2015/08/06/quad-tree.html>                     *
+ *                                                                        *
+ **************************************************************************
+ *  This file is part of UIT (Universal Indexing Tree).                   *
+ *                                                                        *
+ *  UIT is free software: you can redistribute it and/or modify           *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  UIT is distributed in the hope that it will be useful,                *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with UIT.  If not, see <https://www.gnu.org/licenses/gpl.html>. *
+ *                                                                        *
+ **************************************************************************/
+package fr.cnrs.iees.uit.indexing;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import fr.cnrs.iees.uit.space.Box;
+import fr.cnrs.iees.uit.space.Distance;
+import fr.cnrs.iees.uit.space.Point;
+import fr.cnrs.iees.uit.space.Sphere;
+
+/**
+ * Random data and brute force checks of the queries of {@link IndexingTree}s, shared by the
+ * tests of the various tree implementations
+ *
+ * @author agent - 19 oct. 2026
+ *
+ */
+final class QueryChecks {
+
+	private QueryChecks() {}
+
+	static double[] randomCoordinates(Random rnd, int dim, double min, double max) {
+		double[] x = new double[dim];
+		for (int i=0; i<dim; i++)
+			x[i] = min+rnd.nextDouble()*(max-min);
+		return x;
+	}
+
+	static double[] randomCoordinates(Random rnd, int dim, double size) {
+		return randomCoordinates(rnd,dim,0,size);
+	}
+
+	static Point randomPoint(Random rnd, int dim, double min, double max) {
+		return Point.newPoint(randomCoordinates(rnd,dim,min,max));
+	}
+
+	static Point randomPoint(Random rnd, int dim, double size) {
+		return randomPoint(rnd,dim,0,size);
+	}
+
+	/**
+	 * @return the box [min,max]<sup>dim</sup>
+	 */
+	static Box domain(int dim, double min, double max) {
+		Point lower = Point.add(Point.newPoint(new double[dim]),min);
+		return Box.boundingBox(lower,Point.add(lower,max-min));
+	}
+
+	/**
+	 * @return the box [0,size]<sup>dim</sup>
+	 */
+	static Box domain(int dim, double size) {
+		return domain(dim,0,size);
+	}
+
+	/**
+	 * Inserts n items at random locations of [0,size]<sup>dim</sup>
+	 * 
+	 * @return the item locations
+	 */
+	static Map<Integer,Point> insertRandomItems(IndexingTree<Integer,?> tree, int n, double size, Random rnd) {
+		Map<Integer,Point> locs = new HashMap<>();
+		for (int i=0; i<n; i++) {
+			Point p = randomPoint(rnd,tree.dim(),size);
+			locs.put(i,p);
+			tree.insert(i,p);
+		}
+		return locs;
+	}
+
+	/**
+	 * Checks the tree content and its box, sphere and nearest item queries against 
+	 * brute force searches, for items located within [0,100]<sup>dim</sup>.
+	 */
+	static void checkQueries(IndexingTree<Integer,?> tree, Map<Integer,Point> locs, Random rnd) {
+		checkQueries(tree,locs,rnd,0,100,true);
+	}
+
+	/**
+	 * Checks the tree content and its box, sphere and nearest item queries against 
+	 * brute force searches. Query boxes cover on average 15% of [min,max]<sup>dim</sup>,
+	 * whatever the dimension, and nearest items are searched from locations within and 
+	 * around it.
+	 * 
+	 * @param tree the tree to check
+	 * @param locs the locations of all the items in the tree
+	 * @param rnd random number generator for query limits
+	 * @param min lower bound of item coordinates
+	 * @param max upper bound of item coordinates
+	 * @param exactSpheres if false, sphere queries may return items out of the sphere, within its
+	 * bounding box (cf. {@link Sphere#contains(Box)}, used by {@link RegionIndexingTree})
+	 */
+	static void checkQueries(IndexingTree<Integer,?> tree, Map<Integer,Point> locs, Random rnd,
+			double min, double max, boolean exactSpheres) {
+		int dim = tree.dim();
+		double size = max-min;
+		assertEquals(locs.size(),tree.size());
+		assertEquals(locs.size(),tree.getAllItems().size());
+		assertEquals(locs.keySet(),new HashSet<>(tree.getAllItems()));
+		for (int k=0; k<100; k++) {
+			Point p = randomPoint(rnd,dim,min,max);
+			double side = size*Math.pow(0.3*rnd.nextDouble(),1.0/dim);
+			Box b = Box.boundingBox(p,Point.add(p,side));
+			Sphere s = Sphere.newSphere(p,side*rnd.nextDouble());
+			Point q = randomPoint(rnd,dim,min-size/5,max+size/5);
+			Set<Integer> inBox = new HashSet<>();
+			Set<Integer> inSphere = new HashSet<>();
+			double dmin = Double.MAX_VALUE;
+			for (Map.Entry<Integer,Point> e:locs.entrySet()) {
+				if (b.contains(e.getValue()))
+					inBox.add(e.getKey());
+				if (s.contains(e.getValue()))
+					inSphere.add(e.getKey());
+				dmin = Math.min(dmin,Distance.euclidianDistance(q,e.getValue()));
+			}
+			assertEquals(inBox.size(),tree.getItemsWithin(b).size());
+			assertEquals(inBox,new HashSet<>(tree.getItemsWithin(b)));
+			if (exactSpheres) {
+				assertEquals(inSphere.size(),tree.getItemsWithin(s).size());
+				assertEquals(inSphere,new HashSet<>(tree.getItemsWithin(s)));
+			}
+			else {
+				Box sb = Box.boundingBox(s);
+				for (Integer i:tree.getItemsWithin(s))
+					assertTrue(inSphere.contains(i) || sb.contains(locs.get(i)));
+				assertTrue(tree.getItemsWithin(s).containsAll(inSphere));
+			}
+			if (locs.isEmpty())
+				assertNull(tree.getNearestItem(q));
+			else
+				assertEquals(dmin,Distance.euclidianDistance(q,locs.get(tree.getNearestItem(q))));
+		}
+	}
+
+	/**
+	 * Checks that the collections returned by queries are not modified by later insertions and
+	 * removals. The tree must be empty and accept items in [0,size]<sup>dim</sup>.
+	 */
+	static void checkResultCopies(IndexingTree<Integer,?> tree, double size) {
+		Point origin = Point.newPoint(new double[tree.dim()]);
+		Set<Integer> expected = new HashSet<>();
+		for (int i=0; i<5; i++) {
+			tree.insert(i,Point.add(origin,size*(0.1+0.01*i)));
+			expected.add(i);
+		}
+		Collection<Integer> all = tree.getAllItems();
+		Collection<Integer> inBox = tree.getItemsWithin(domain(tree.dim(),size));
+		assertTrue(tree.remove(1));
+		assertTrue(tree.remove(3));
+		// enough items to reallocate or split leaves
+		for (int i=5; i<50; i++)
+			tree.insert(i,Point.add(origin,size*(0.1+0.01*i)));
+		assertEquals(5,all.size());
+		assertEquals(expected,new HashSet<>(all));
+		assertEquals(5,inBox.size());
+		assertEquals(expected,new HashSet<>(inBox));
+		assertEquals(48,tree.getAllItems().size());
+	}
+
+}
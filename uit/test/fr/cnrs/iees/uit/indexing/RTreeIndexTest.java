@@ -0,0 +1,360 @@
+/**************************************************************************
+ *  UIT - a Universal Indexing Tree                                       *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            *
+ *                                                                        *
+ *  UIT is a generalisation and re-implementation of QuadTree and Octree  *
+ *  implementations by Paavo Toivanen as downloaded on 27/8/2018 on       *
+ *  <https://dev.solita.fi/2015/08/06/quad-tree.html>                     *
+ *                                                                        *
+ **************************************************************************
+ *  This file is part of UIT (Universal Indexing Tree).                   *
+ *                                                                        *
+ *  UIT is free software: you can redistribute it and/or modify           *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  UIT is distributed in the hope that it will be useful,                *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with UIT.  If not, see <https://www.gnu.org/licenses/gpl.html>. *
+ *                                                                        *
+ **************************************************************************/
+package fr.cnrs.iees.uit.indexing;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static fr.cnrs.iees.uit.indexing.QueryChecks.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import fr.cnrs.iees.uit.space.Box;
+import fr.cnrs.iees.uit.space.Distance;
+import fr.cnrs.iees.uit.space.Point;
+import fr.cnrs.iees.uit.space.Sphere;
+
+/**
+ * Checks R-tree structure and queries against brute force searches
+ *
+ * @author agent - 19 oct. 2026
+ *
+ */
+class RTreeIndexTest {
+
+	// random boxes of various sizes, one third of them points
+	private static Map<Integer,Box> randomExtents(Random rnd, int dim, int n, int first) {
+		Map<Integer,Box> extents = new HashMap<>();
+		for (int i=first; i<first+n; i++) {
+			Point p = randomPoint(rnd,dim,100);
+			if (i%3==0)
+				extents.put(i,Box.boundingBox(p,p));
+			else
+				extents.put(i,Box.boundingBox(p,Point.add(p,randomPoint(rnd,dim,10*Math.pow(rnd.nextDouble(),3)))));
+		}
+		return extents;
+	}
+
+	// checks node bounds, entry bounds, node occupancy and leaf depths - returns the leaf depth
+	private int checkNode(RTreeIndex<Integer> tree, RTreeIndexingNode<Integer> node, int max) {
+		assertTrue(node.n<=max);
+		if (node!=tree.root())
+			assertTrue(node.n>0);
+		double[] lo = node.lower.clone();
+		double[] up = node.upper.clone();
+		node.computeBounds();
+		assertArrayEquals(lo,node.lower);
+		assertArrayEquals(up,node.upper);
+		if (node.level==0) {
+			for (int i=0; i<node.n; i++)
+				assertSame(node,tree.itemToNodeMap.get(node.itemAt(i)));
+			return 0;
+		}
+		for (int i=0; i<node.n; i++) {
+			RTreeIndexingNode<Integer> child = node.children[i];
+			assertSame(node,child.parent);
+			assertEquals(node.level-1,child.level);
+			for (int j=0; j<tree.dim(); j++) {
+				assertEquals(child.lower[j],node.lows[j][i]);
+				assertEquals(child.upper[j],node.ups[j][i]);
+			}
+			assertEquals(node.level-1,checkNode(tree,child,max));
+		}
+		return node.level;
+	}
+
+	// checks queries against brute force searches
+	private void checkQueries(RTreeIndex<Integer> tree, Map<Integer,Box> extents, Random rnd) {
+		int dim = tree.dim();
+		assertEquals(extents.size(),tree.size());
+		assertEquals(extents.keySet(),new HashSet<>(tree.getAllItems()));
+		for (int k=0; k<100; k++) {
+			Point p = randomPoint(rnd,dim,100);
+			Box b = Box.boundingBox(p,Point.add(p,rnd.nextDouble()*30));
+			Sphere s = Sphere.newSphere(p,rnd.nextDouble()*30);
+			Point q = randomPoint(rnd,dim,120);
+			Box small = Box.boundingBox(q,Point.add(q,rnd.nextDouble()));
+			Set<Integer> within = new HashSet<>();
+			Set<Integer> inSphere = new HashSet<>();
+			Set<Integer> overlapping = new HashSet<>();
+			Set<Integer> containingPoint = new HashSet<>();
+			Set<Integer> containingBox = new HashSet<>();
+			double dmin = Double.MAX_VALUE;
+			for (Map.Entry<Integer,Box> e:extents.entrySet()) {
+				Box x = e.getValue();
+				if (b.contains(x))
+					within.add(e.getKey());
+				double far = 0.0;
+				double near = 0.0;
+				for (int j=0; j<dim; j++) {
+					double c = s.centre().coordinate(j);
+					far += Math.pow(Math.max(c-x.lowerBound(j),x.upperBound(j)-c),2);
+					double d = Math.max(0.0,Math.max(x.lowerBound(j)-q.coordinate(j),q.coordinate(j)-x.upperBound(j)));
+					near += d*d;
+				}
+				if (far<=s.radius()*s.radius())
+					inSphere.add(e.getKey());
+				if (x.overlaps(b))
+					overlapping.add(e.getKey());
+				if (x.contains(q))
+					containingPoint.add(e.getKey());
+				if (x.contains(small))
+					containingBox.add(e.getKey());
+				dmin = Math.min(dmin,near);
+			}
+			assertEquals(within,new HashSet<>(tree.getItemsWithin(b)));
+			assertEquals(inSphere,new HashSet<>(tree.getItemsWithin(s)));
+			assertEquals(overlapping,new HashSet<>(tree.getItemsOverlapping(b)));
+			assertEquals(containingPoint,new HashSet<>(tree.getItemsContaining(q)));
+			assertEquals(containingBox,new HashSet<>(tree.getItemsContaining(small)));
+			if (!extents.isEmpty()) {
+				Box x = extents.get(tree.getNearestItem(q));
+				double near = 0.0;
+				for (int j=0; j<dim; j++) {
+					double d = Math.max(0.0,Math.max(x.lowerBound(j)-q.coordinate(j),q.coordinate(j)-x.upperBound(j)));
+					near += d*d;
+				}
+				assertEquals(dmin,near,1e-9);
+			}
+		}
+	}
+
+	// removes half the items, inserts new ones and checks again
+	private void checkUpdates(RTreeIndex<Integer> tree, Map<Integer,Box> extents, Random rnd, int max) {
+		List<Integer> items = new ArrayList<>(extents.keySet());
+		for (int i=0; i<items.size(); i+=2) {
+			assertTrue(tree.remove(items.get(i)));
+			assertFalse(tree.remove(items.get(i)));
+			extents.remove(items.get(i));
+		}
+		checkNode(tree,tree.root(),max);
+		checkQueries(tree,extents,rnd);
+		Map<Integer,Box> more = randomExtents(rnd,tree.dim(),500,100000);
+		for (Map.Entry<Integer,Box> e:more.entrySet())
+			tree.insert(e.getKey(),e.getValue());
+		extents.putAll(more);
+		checkNode(tree,tree.root(),max);
+		checkQueries(tree,extents,rnd);
+	}
+
+	@Test
+	void testInsertion() {
+		Random rnd = new Random(42);
+		for (int dim=1; dim<=3; dim++) {
+			RTreeIndex<Integer> tree = new RTreeIndex<>(dim);
+			Map<Integer,Box> extents = randomExtents(rnd,dim,3000,0);
+			for (Map.Entry<Integer,Box> e:extents.entrySet())
+				tree.insert(e.getKey(),e.getValue());
+			// same item is not inserted twice
+			tree.insert(0,extents.get(0));
+			assertTrue(tree.height()>2);
+			checkNode(tree,tree.root(),RTreeIndex.DEFAULT_MAX_ENTRIES);
+			checkQueries(tree,extents,rnd);
+			checkUpdates(tree,extents,rnd,RTreeIndex.DEFAULT_MAX_ENTRIES);
+		}
+	}
+
+	@Test
+	void testBulkLoading() {
+		Random rnd = new Random(24);
+		for (int dim=1; dim<=3; dim++) {
+			Map<Integer,Box> extents = randomExtents(rnd,dim,3000,0);
+			RTreeIndex<Integer> tree = new RTreeIndex<>(dim,extents,8);
+			assertEquals(extents.size(),tree.size());
+			// packed tree: all nodes full except one per level at most
+			int nleaves = (3000+7)/8;
+			int height = 1;
+			for (int n=nleaves; n>1; n=(n+7)/8)
+				height++;
+			assertTrue(tree.height()<=height+1);
+			checkNode(tree,tree.root(),8);
+			checkQueries(tree,extents,rnd);
+			checkUpdates(tree,extents,rnd,8);
+		}
+		RTreeIndex<Integer> empty = new RTreeIndex<>(2,new HashMap<Integer,Box>());
+		assertEquals(0,empty.size());
+		assertNull(empty.getNearestItem(Point.newPoint(0,0)));
+		assertTrue(empty.getItemsContaining(Point.newPoint(0,0)).isEmpty());
+	}
+
+	@Test
+	void testRemoveAll() {
+		Random rnd = new Random(4242);
+		Map<Integer,Box> extents = randomExtents(rnd,2,1000,0);
+		RTreeIndex<Integer> tree = new RTreeIndex<>(2,4);
+		for (Map.Entry<Integer,Box> e:extents.entrySet())
+			tree.insert(e.getKey(),e.getValue());
+		checkNode(tree,tree.root(),4);
+		for (int i=0; i<1000; i++) {
+			assertTrue(tree.remove(i));
+			if (i%100==0)
+				checkNode(tree,tree.root(),4);
+		}
+		assertEquals(0,tree.size());
+		assertEquals(1,tree.height());
+		assertNull(tree.region());
+		tree.insert(1,Point.newPoint(1,1));
+		tree.clear();
+		assertTrue(tree.getAllItems().isEmpty());
+	}
+
+	// distances from a point to an extent, 0 if within the extent
+	private static double distance(Sphere x, Point p) {
+		return Math.max(0.0,Math.sqrt(Distance.squaredEuclidianDistance(x.centre(),p))-x.radius());
+	}
+
+	private static double distance(Box x, Point p) {
+		double d2 = 0.0;
+		for (int j=0; j<x.dim(); j++) {
+			double d = Math.max(0.0,Math.max(x.lowerBound(j)-p.coordinate(j),p.coordinate(j)-x.upperBound(j)));
+			d2 += d*d;
+		}
+		return Math.sqrt(d2);
+	}
+
+	// checks queries on sphere extents against brute force searches, with box extents as well
+	private void checkSphereQueries(RTreeIndex<Integer> tree, Map<Integer,Box> boxes, 
+			Map<Integer,Sphere> spheres, Random rnd) {
+		int dim = tree.dim();
+		assertEquals(boxes.size()+spheres.size(),tree.size());
+		for (int k=0; k<100; k++) {
+			Point p = randomPoint(rnd,dim,100);
+			Box b = Box.boundingBox(p,Point.add(p,rnd.nextDouble()*30));
+			Sphere s = Sphere.newSphere(p,rnd.nextDouble()*30);
+			Point q = randomPoint(rnd,dim,120);
+			Box small = Box.boundingBox(q,Point.add(q,rnd.nextDouble()));
+			Set<Integer> within = new HashSet<>();
+			Set<Integer> inSphere = new HashSet<>();
+			Set<Integer> overlapping = new HashSet<>();
+			Set<Integer> containingPoint = new HashSet<>();
+			Set<Integer> containingBox = new HashSet<>();
+			double dmin = Double.MAX_VALUE;
+			for (Map.Entry<Integer,Box> e:boxes.entrySet()) {
+				Box x = e.getValue();
+				if (b.contains(x))
+					within.add(e.getKey());
+				double far = 0.0;
+				for (int j=0; j<dim; j++) {
+					double c = s.centre().coordinate(j);
+					far += Math.pow(Math.max(c-x.lowerBound(j),x.upperBound(j)-c),2);
+				}
+				if (far<=s.radius()*s.radius())
+					inSphere.add(e.getKey());
+				if (x.overlaps(b))
+					overlapping.add(e.getKey());
+				if (x.contains(q))
+					containingPoint.add(e.getKey());
+				if (x.contains(small))
+					containingBox.add(e.getKey());
+				dmin = Math.min(dmin,distance(x,q));
+			}
+			for (Map.Entry<Integer,Sphere> e:spheres.entrySet()) {
+				Sphere x = e.getValue();
+				if (b.contains(x))
+					within.add(e.getKey());
+				if (Math.sqrt(Distance.squaredEuclidianDistance(x.centre(),s.centre()))+x.radius()<=s.radius())
+					inSphere.add(e.getKey());
+				double near = 0.0;
+				double far = 0.0;
+				for (int j=0; j<dim; j++) {
+					double c = x.centre().coordinate(j);
+					double d = Math.max(0.0,Math.max(b.lowerBound(j)-c,c-b.upperBound(j)));
+					near += d*d;
+					far += Math.pow(Math.max(c-small.lowerBound(j),small.upperBound(j)-c),2);
+				}
+				if (near<x.radius()*x.radius())
+					overlapping.add(e.getKey());
+				if (x.contains(q))
+					containingPoint.add(e.getKey());
+				if (far<=x.radius()*x.radius())
+					containingBox.add(e.getKey());
+				dmin = Math.min(dmin,distance(x,q));
+			}
+			assertEquals(within,new HashSet<>(tree.getItemsWithin(b)));
+			assertEquals(inSphere,new HashSet<>(tree.getItemsWithin(s)));
+			assertEquals(overlapping,new HashSet<>(tree.getItemsOverlapping(b)));
+			assertEquals(containingPoint,new HashSet<>(tree.getItemsContaining(q)));
+			assertEquals(containingBox,new HashSet<>(tree.getItemsContaining(small)));
+			Integer nearest = tree.getNearestItem(q);
+			if (spheres.containsKey(nearest))
+				assertEquals(dmin,distance(spheres.get(nearest),q),1e-9);
+			else
+				assertEquals(dmin,distance(boxes.get(nearest),q),1e-9);
+		}
+	}
+
+	@Test
+	void testSphereExtents() {
+		// the corner of the bounding box is not in the sphere
+		RTreeIndex<Integer> tree = new RTreeIndex<>(2);
+		tree.insert(1,Sphere.newSphere(Point.newPoint(0,0),1));
+		assertTrue(tree.getItemsContaining(Point.newPoint(0.9,0.9)).isEmpty());
+		assertEquals(1,tree.getItemsContaining(Point.newPoint(0.6,0.6)).size());
+		assertTrue(tree.getItemsOverlapping(Box.boundingBox(Point.newPoint(0.8,0.8),Point.newPoint(2,2))).isEmpty());
+		assertEquals(1,tree.getItemsWithin(Sphere.newSphere(Point.newPoint(0.5,0),1.5)).size());
+		tree.insert(2,Point.newPoint(0.95,0.95));
+		assertEquals(1,tree.getNearestItem(Point.newPoint(-2,-2)));
+		assertThrows(IllegalArgumentException.class,()->tree.insert(3,Sphere.newSphere(Point.newPoint(0,0,0),1)));
+		// random boxes and spheres, with splits, reinsertions and removals
+		Random rnd = new Random(47);
+		for (int dim=1; dim<=3; dim++) {
+			RTreeIndex<Integer> t = new RTreeIndex<>(dim,8);
+			Map<Integer,Box> boxes = randomExtents(rnd,dim,500,0);
+			Map<Integer,Sphere> spheres = new HashMap<>();
+			for (int i=1000; i<1500; i++)
+				spheres.put(i,Sphere.newSphere(randomPoint(rnd,dim,100),10*Math.pow(rnd.nextDouble(),3)));
+			for (Map.Entry<Integer,Box> e:boxes.entrySet())
+				t.insert(e.getKey(),e.getValue());
+			for (Map.Entry<Integer,Sphere> e:spheres.entrySet())
+				t.insert(e.getKey(),e.getValue());
+			checkNode(t,t.root(),8);
+			checkSphereQueries(t,boxes,spheres,rnd);
+			for (int i=0; i<500; i+=2) {
+				assertTrue(t.remove(i));
+				assertTrue(t.remove(1000+i));
+				boxes.remove(i);
+				spheres.remove(1000+i);
+			}
+			checkNode(t,t.root(),8);
+			checkSphereQueries(t,boxes,spheres,rnd);
+		}
+	}
+
+	@Test
+	void testResultCopies() {
+		checkResultCopies(new RTreeIndex<>(2),100);
+	}
+
+}
@@ -0,0 +1,128 @@
+/**************************************************************************
+ *  UIT - a Universal Indexing Tree                                       *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            *
+ *                                                                        *
+ *  UIT is a generalisation and re-implementation of QuadTree and Octree  *
+ *  implementations by Paavo Toivanen as downloaded on 27/8/2018 on       *
+ *  <https://dev.solita.fi/2015/08/06/quad-tree.html>                     *
+ *                                                                        *
+ **************************************************************************
+ *  This file is part of UIT (Universal Indexing Tree).                   *
+ *                                                                        *
+ *  UIT is free software: you can redistribute it and/or modify           *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  UIT is distributed in the hope that it will be useful,                *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with UIT.  If not, see <https://www.gnu.org/licenses/gpl.html>. *
+ *                                                                        *
+ **************************************************************************/
+package fr.cnrs.iees.uit.indexing;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static fr.cnrs.iees.uit.indexing.QueryChecks.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import fr.cnrs.iees.uit.space.Box;
+import fr.cnrs.iees.uit.space.Point;
+import fr.cnrs.iees.uit.space.Sphere;
+
+/**
+ * Checks static k-d tree queries against brute force searches
+ *
+ * @author agent - 19 oct. 2026
+ *
+ */
+class StaticKdIndexingTreeTest {
+
+	// skewed locations within [0,100]^dim, denser close to 0 for skew>1
+	private static Point skewedPoint(Random rnd, int dim, double skew) {
+		double[] x = randomCoordinates(rnd,dim,1);
+		for (int i=0; i<dim; i++)
+			x[i] = Math.pow(x[i],skew)*100;
+		return Point.newPoint(x);
+	}
+
+	private void check(int dim, int n, double skew, Random rnd) {
+		Map<Integer,Point> locs = new HashMap<>();
+		for (int i=0; i<n; i++)
+			locs.put(i,skewedPoint(rnd,dim,skew));
+		StaticKdIndexingTree<Integer> tree = new StaticKdIndexingTree<>(locs);
+		assertEquals(dim,tree.dim());
+		assertEquals(locs.keySet(),new HashSet<>(tree.root().items()));
+		checkQueries(tree,locs,rnd);
+		// items are their own nearest neighbours
+		for (int k=0; k<100; k++) {
+			int i = rnd.nextInt(n);
+			assertEquals(i,tree.getNearestItem(locs.get(i)));
+		}
+	}
+
+	@Test
+	void testQueries() {
+		check(1,1000,1,new Random(50));
+		check(2,5000,1,new Random(51));
+		check(3,5,1,new Random(52));
+		check(6,3000,1,new Random(53));
+		check(2,5000,8,new Random(54));
+	}
+
+	@Test
+	void testNearestItems() {
+		Map<Integer,Point> locs = new HashMap<>();
+		// a regular grid: the centre of a cell is at the same distance of its 4 corners
+		for (int i=0; i<20; i++)
+			for (int j=0; j<20; j++)
+				locs.put(i*20+j,Point.newPoint(i,j));
+		StaticKdIndexingTree<Integer> tree = new StaticKdIndexingTree<>(locs);
+		Set<Integer> found = new HashSet<>(tree.getNearestItems(Point.newPoint(3.5,7.5)));
+		assertEquals(new HashSet<>(Arrays.asList(3*20+7,3*20+8,4*20+7,4*20+8)),found);
+		assertEquals(new HashSet<>(Arrays.asList(5*20+5)),new HashSet<>(tree.getNearestItems(Point.newPoint(5.1,4.9))));
+		assertEquals(5*20+5,tree.getNearestItem(Point.newPoint(5.1,4.9)));
+	}
+
+	@Test
+	void testColocatedItems() {
+		Map<Integer,Point> locs = new HashMap<>();
+		Point p = Point.newPoint(1,2,3);
+		for (int i=0; i<100; i++)
+			locs.put(i,p);
+		locs.put(100,Point.newPoint(3,2,1));
+		StaticKdIndexingTree<Integer> tree = new StaticKdIndexingTree<>(locs);
+		assertEquals(100,tree.getNearestItems(Point.newPoint(1,2,2)).size());
+		assertEquals(101,tree.getItemsWithin(Sphere.newSphere(p,3)).size());
+		assertEquals(100,tree.getItemsWithin(Box.boundingBox(p,p)).size());
+		assertEquals(100,tree.getNearestItem(Point.newPoint(4,2,1)));
+	}
+
+	@Test
+	void testImmutability() {
+		StaticKdIndexingTree<Integer> tree = new StaticKdIndexingTree<>(new HashMap<>());
+		assertEquals(0,tree.size());
+		assertNull(tree.getNearestItem(Point.newPoint(0,0)));
+		assertTrue(tree.getNearestItems(Point.newPoint(0,0)).isEmpty());
+		assertTrue(tree.getAllItems().isEmpty());
+		assertThrows(UnsupportedOperationException.class,()->tree.insert(1,Point.newPoint(0,0)));
+		assertThrows(UnsupportedOperationException.class,()->tree.remove(1));
+		assertThrows(UnsupportedOperationException.class,()->tree.clear());
+		assertThrows(UnsupportedOperationException.class,()->tree.getAllItems().add(1));
+	}
+
+}
@@ -0,0 +1,182 @@
+/**************************************************************************
+ *  UIT - a Universal Indexing Tree                                       *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            *
+ *                                                                        *
+ *  UIT is a generalisation and re-implementation of QuadTree and Octree  *
+ *  implementations by Paavo Toivanen as downloaded on 27/8/2018 on       *
+ *  <https://dev.solita.fi/2015/08/06/quad-tree.html>                     *
+ *                                                                        *
+ **************************************************************************
+ *  This file is part of UIT (Universal Indexing Tree).                   *
+ *                                                                        *
+ *  UIT is free software: you can redistribute it and/or modify           *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  UIT is distributed in the hope that it will be useful,                *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with UIT.  If not, see <https://www.gnu.org/licenses/gpl.html>. *
+ *                                                                        *
+ **************************************************************************/
+package fr.cnrs.iees.uit.indexing;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static fr.cnrs.iees.uit.indexing.QueryChecks.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import fr.cnrs.iees.uit.space.Box;
+import fr.cnrs.iees.uit.space.Point;
+
+/**
+ * Checks striped tree queries against brute force searches, and concurrent modifications
+ *
+ * @author agent - 19 oct. 2026
+ *
+ */
+class StripedRegionIndexingTreeTest {
+
+	private static final Box DOMAIN = Box.boundingBox(Point.newPoint(0,0),Point.newPoint(100,100));
+
+	// item i is always at the same location
+	private static Point location(int i) {
+		Random rnd = new Random(i);
+		return Point.newPoint(rnd.nextDouble()*100,rnd.nextDouble()*100);
+	}
+
+	// checks queries against brute force searches, including a box with limits on stripe limits
+	private void check(StripedRegionIndexingTree<Integer> tree, Map<Integer,Point> locs, Random rnd) {
+		checkQueries(tree,locs,rnd,0,100,false);
+		Box b = Box.boundingBox(Point.newPoint(12.5,25),Point.newPoint(50,62.5));
+		Set<Integer> inBox = new HashSet<>();
+		for (Map.Entry<Integer,Point> e:locs.entrySet())
+			if (b.contains(e.getValue()))
+				inBox.add(e.getKey());
+		assertEquals(inBox,new HashSet<>(tree.getItemsWithin(b)));
+	}
+
+	@Test
+	void testQueries() {
+		Random rnd = new Random(7);
+		for (int levels=0; levels<=3; levels++) {
+			StripedRegionIndexingTree<Integer> tree = new StripedRegionIndexingTree<>(DOMAIN,levels);
+			assertEquals(1<<(2*levels),tree.nStripes());
+			Map<Integer,Point> locs = new HashMap<>();
+			for (int i=0; i<3000; i++) {
+				// some items on stripe limits
+				Point p = (i%10==0) ? Point.newPoint(12.5*(i%8),25*(i%4)) : location(i);
+				tree.insert(i,p);
+				locs.put(i,p);
+			}
+			// no duplicates
+			tree.insert(1,location(2));
+			check(tree,locs,rnd);
+			for (int i=0; i<3000; i+=3) {
+				assertTrue(tree.remove(i));
+				assertFalse(tree.remove(i));
+				locs.remove(i);
+			}
+			for (int i=1; i<3000; i+=3) {
+				Point p = location(-i);
+				assertTrue(tree.move(i,p));
+				locs.put(i,p);
+			}
+			assertFalse(tree.move(0,location(0)));
+			check(tree,locs,rnd);
+			tree.clear();
+			locs.clear();
+			check(tree,locs,rnd);
+		}
+		assertThrows(IllegalArgumentException.class,()->new StripedRegionIndexingTree<Integer>(DOMAIN,9));
+	}
+
+	@Test
+	void testManyStripes() {
+		// 65536 stripes for 1000 items: most stripes are empty
+		StripedRegionIndexingTree<Integer> tree = new StripedRegionIndexingTree<>(DOMAIN,8);
+		assertEquals(StripedRegionIndexingTree.MAX_STRIPES,tree.nStripes());
+		Map<Integer,Point> locs = new HashMap<>();
+		for (int i=0; i<1000; i++) {
+			tree.insert(i,location(i));
+			locs.put(i,location(i));
+		}
+		check(tree,locs,new Random(8));
+		// a single item far from the query locations
+		tree.clear();
+		locs.clear();
+		tree.insert(0,Point.newPoint(99.9,0.1));
+		locs.put(0,Point.newPoint(99.9,0.1));
+		check(tree,locs,new Random(9));
+		// 3 dimensions, 32768 stripes
+		tree = new StripedRegionIndexingTree<>(Box.boundingBox(Point.newPoint(0,0,0),Point.newPoint(100,100,100)),5);
+		for (int i=0; i<100; i++)
+			tree.insert(i,Point.newPoint(i*0.01,50,50));
+		assertEquals(99,tree.getNearestItem(Point.newPoint(50,50,50)));
+		assertEquals(0,tree.getNearestItem(Point.newPoint(-1,99,0)));
+	}
+
+	@Test
+	void testConcurrentAccess() throws Exception {
+		int nthreads = 4;
+		int nitems = 5000;
+		StripedRegionIndexingTree<Integer> tree = new StripedRegionIndexingTree<>(DOMAIN,2);
+		ExecutorService pool = Executors.newFixedThreadPool(2*nthreads);
+		List<Future<?>> tasks = new ArrayList<>();
+		// writers insert their items, remove half of them and move the other half across stripes
+		for (int w=0; w<nthreads; w++) {
+			int first = w*nitems;
+			tasks.add(pool.submit(() -> {
+				for (int i=first; i<first+nitems; i++)
+					tree.insert(i,location(i));
+				for (int i=first; i<first+nitems; i+=2)
+					assertTrue(tree.remove(i));
+				for (int i=first+1; i<first+nitems; i+=2)
+					assertTrue(tree.move(i,location(-i)));
+				return null;
+			}));
+		}
+		// readers check that all items found are within the query box
+		for (int r=0; r<nthreads; r++) {
+			Random rnd = new Random(r);
+			tasks.add(pool.submit(() -> {
+				for (int k=0; k<2000; k++) {
+					Point p = Point.newPoint(rnd.nextDouble()*100,rnd.nextDouble()*100);
+					Box b = Box.boundingBox(p,Point.add(p,20));
+					for (Integer i:tree.getItemsWithin(b))
+						assertTrue(b.contains(location(i)) || b.contains(location(-i)));
+					tree.getNearestItem(p);
+				}
+				return null;
+			}));
+		}
+		for (Future<?> f:tasks)
+			f.get();
+		pool.shutdown();
+		assertTrue(pool.awaitTermination(10,TimeUnit.SECONDS));
+		Map<Integer,Point> locs = new HashMap<>();
+		for (int i=1; i<nthreads*nitems; i+=2)
+			locs.put(i,location(-i));
+		check(tree,locs,new Random(77));
+	}
+
+}
@@ -113,4 +113,44 @@ class LocatorTest {
 		assertEquals(lB.toString(),"[125,4587,224,10000000]");
 	}
 
+	@Test
+	void testPack() {
+		assertFalse(lf.packable());
+		// 2D: 32 bits per coordinate
+		LocatorFactory lf2 = new LocatorFactory(0.1,Box.boundingBox(Point.newPoint(0,0),Point.newPoint(1E6,1E6)));
+		assertTrue(lf2.packable());
+		Point A = Point.newPoint(12.5,-458.657);
+		long pA = lf2.pack(A);
+		assertEquals(lf2.packedCoordinate(pA,0),125);
+		assertEquals(lf2.packedCoordinate(pA,1),-4587);
+		assertEquals(lf2.unpack(pA),lf2.newLocator(A));
+		assertEquals(lf2.pack(lf2.newLocator(A)),pA);
+		Point B = Point.newPoint(-3.0,1E5);
+		assertEquals(lf2.packedSquaredDistance(pA,lf2.pack(B)),
+			IntDistance.squaredEuclidianDistance(lf2.newLocator(A),lf2.newLocator(B)));
+		// 31 bits are used, so that distances between extreme locators do not overflow
+		long lim = 1L<<30;
+		assertTrue(lf2.canPack(-lim));
+		assertTrue(lf2.canPack(lim-1));
+		assertFalse(lf2.canPack(lim));
+		assertFalse(lf2.canPack(-lim-1));
+		assertFalse(lf2.canPack(Integer.MAX_VALUE));
+		long pMin = lf2.pack(new long[] {-lim,-lim});
+		long pMax = lf2.pack(new long[] {lim-1,lim-1});
+		assertEquals(2*(2*lim-1)*(2*lim-1),lf2.packedSquaredDistance(pMin,pMax));
+		assertEquals(lf2.packedSquaredDistance(pMin,pMax),
+			IntDistance.squaredEuclidianDistance(lf2.unpack(pMin),lf2.unpack(pMax)));
+		assertFalse(lf2.canPack(Point.newPoint(1E9,0)));
+		assertThrows(IllegalArgumentException.class,()->lf2.pack(Point.newPoint(1E9,0)));
+		// 3D: 21 bits per coordinate
+		LocatorFactory lf3 = new LocatorFactory(1,Box.boundingBox(Point.newPoint(0,0,0),Point.newPoint(1E6,1E6,1E6)));
+		Point C = Point.newPoint(-1048576,1048575,-1);
+		long pC = lf3.pack(C);
+		assertEquals(lf3.unpack(pC),lf3.newLocator(C));
+		Point D = Point.newPoint(17,-25,1000000);
+		assertEquals(lf3.packedSquaredDistance(pC,lf3.pack(D)),
+			IntDistance.squaredEuclidianDistance(lf3.newLocator(C),lf3.newLocator(D)));
+		assertFalse(lf3.canPack(Point.newPoint(1048576,0,0)));
+	}
+
 }